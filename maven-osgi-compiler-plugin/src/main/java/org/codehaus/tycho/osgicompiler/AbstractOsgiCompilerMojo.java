@@ -21,10 +21,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.apache.maven.artifact.Artifact;
@@ -37,11 +44,10 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.artifact.ProjectArtifact;
 import org.apache.maven.repository.RepositorySystem;
 import org.codehaus.plexus.compiler.CompilerConfiguration;
-import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
 import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
-import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.tycho.BundleProject;
 import org.codehaus.tycho.TychoProject;
 import org.codehaus.tycho.UnknownEnvironmentException;
@@ -139,9 +145,39 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 	private Set<String> excludeResources = new HashSet<String>();
 	
 	/**
-	 * Current build output jar
+	 * If set to true, the compiler records the types referenced by each source
+	 * file and compiles only sources affected by changes: changed sources,
+	 * sources that reference changed API of other sources, and sources that
+	 * reference changed API of classpath entries, e.g. of upstream bundles.
+	 * Otherwise, only sources that are newer than their class files are
+	 * compiled. See {@link IncrementalBuildState} for details.
+	 * 
+	 * @parameter expression="${tycho.compiler.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
+	/**
+	 * Number of threads used to compile bundles with several output jars,
+	 * see build.properties. Output jars that do not depend on each other are
+	 * compiled concurrently, and resources are copied while sources are
+	 * compiled. See {@link OutputJarDependencies} for how dependencies
+	 * between output jars are determined.
+	 * 
+	 * @parameter expression="${tycho.compiler.threads}" default-value="1"
 	 */
-	private BuildOutputJar outputJar;
+	private int threads;
+
+	/**
+	 * Current build output jar, per thread because output jars may be
+	 * compiled concurrently
+	 */
+	private final ThreadLocal<BuildOutputJar> outputJar = new ThreadLocal<BuildOutputJar>();
+
+	/**
+	 * Dependency information of the current build output jar, only used for
+	 * incremental compilation
+	 */
+	private final ThreadLocal<IncrementalBuildState> incrementalState = new ThreadLocal<IncrementalBuildState>();
 
 	/**
 	 * @component role="org.codehaus.tycho.TychoProject"
@@ -153,11 +189,20 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 			getLog().info("Using compile source roots from build.properties");
 		}
 
-		for (BuildOutputJar jar : getEclipsePluginProject().getOutputJars()) {
-			this.outputJar = jar;
-			this.outputJar.getOutputDirectory().mkdirs();
-			super.execute();
-			copyResources();
+		List<BuildOutputJar> outputJars = getEclipsePluginProject().getOutputJars();
+		if (threads > 1 && outputJars.size() > 1) {
+			executeConcurrently(outputJars);
+		} else {
+			for (BuildOutputJar jar : outputJars) {
+				jar.getOutputDirectory().mkdirs();
+				this.outputJar.set(jar);
+				try {
+					super.execute();
+					copyResources();
+				} finally {
+					this.outputJar.remove();
+				}
+			}
 		}
 
 		// this does not include classes from nested jars
@@ -167,45 +212,238 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 		}
 	}
 
+	private void executeConcurrently(List<BuildOutputJar> outputJars) throws MojoExecutionException,
+			CompilationFailureException {
+		Map<BuildOutputJar, Set<BuildOutputJar>> dependencies;
+		try {
+			dependencies = OutputJarDependencies.getDependencies(outputJars);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not determine dependencies between output jars", e);
+		}
+
+		// fail early and outside of worker threads if the classpath is not available
+		getClasspath();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, outputJars.size()));
+		try {
+			// jars are submitted in dependency order, so a task only ever waits
+			// for tasks that were taken from the queue before it
+			final Map<BuildOutputJar, Future<?>> compilations = new LinkedHashMap<BuildOutputJar, Future<?>>();
+			List<Future<?>> copies = new ArrayList<Future<?>>();
+			for (Map.Entry<BuildOutputJar, Set<BuildOutputJar>> entry : dependencies.entrySet()) {
+				final BuildOutputJar jar = entry.getKey();
+				final Set<BuildOutputJar> prerequisites = entry.getValue();
+				jar.getOutputDirectory().mkdirs();
+				compilations.put(jar, executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						for (BuildOutputJar prerequisite : prerequisites) {
+							// throws if the prerequisite failed to compile
+							compilations.get(prerequisite).get();
+						}
+						outputJar.set(jar);
+						try {
+							AbstractOsgiCompilerMojo.super.execute();
+						} finally {
+							outputJar.remove();
+						}
+						return null;
+					}
+				}));
+				copies.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						outputJar.set(jar);
+						try {
+							copyResources();
+						} finally {
+							outputJar.remove();
+						}
+						return null;
+					}
+				}));
+			}
+
+			// report the first failure in compile order
+			for (BuildOutputJar jar : outputJars) {
+				waitFor(compilations.get(jar));
+			}
+			for (Future<?> copy : copies) {
+				waitFor(copy);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void waitFor(Future<?> future) throws MojoExecutionException, CompilationFailureException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while compiling", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof ExecutionException) {
+				// failure of a prerequisite
+				cause = cause.getCause();
+			}
+			if (cause instanceof CompilationFailureException) {
+				throw (CompilationFailureException) cause;
+			} else if (cause instanceof MojoExecutionException) {
+				throw (MojoExecutionException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new MojoExecutionException(cause.getMessage(), cause);
+		}
+	}
+
 	/*
 	 * mimics the behavior of the PDE incremental builder which by default copies all
-	 * (non-java) resource files in source directories into the target folder
+	 * (non-java) resource files in source directories into the target folder.
+	 * Like the PDE builder, only changed resources are copied, see ResourceSynchronizer.
 	 */
 	private void copyResources() throws MojoExecutionException {
+		Set<String> excludes = new HashSet<String>();
+		excludes.addAll(excludeResources);
+		excludes.add("**/*.java");
+
+		File outputDirectory = getOutputDirectory();
+		ResourceSynchronizer resources = new ResourceSynchronizer(outputDirectory, new File(outputDirectory
+				.getParentFile(), outputDirectory.getName() + ".resources"));
 		for (String sourceRoot : getCompileSourceRoots()) {
-			// StaleSourceScanner.getIncludedSources throws IllegalStateException
-			// if directory doesnt't exist
 			File sourceRootFile = new File(sourceRoot);
 			if (!sourceRootFile.isDirectory()) {
 				getLog().warn("Source directory " + sourceRoot + " does not exist");
 				continue;
 			}
 
-			Set<String> excludes = new HashSet<String>();
-			excludes.addAll(excludeResources);
-			excludes.add("**/*.java");
-			StaleSourceScanner scanner = new StaleSourceScanner(0L, MATCH_ALL, excludes);
-			CopyMapping copyMapping = new CopyMapping();
-			scanner.addSourceMapping(copyMapping);
-			try {
-				scanner.getIncludedSources(sourceRootFile, this.outputJar
-						.getOutputDirectory());
-				for (CopyMapping.SourceTargetPair sourceTargetPair : copyMapping
-						.getSourceTargetPairs()) {
-					FileUtils.copyFile(new File(sourceRoot, sourceTargetPair.source),
-							sourceTargetPair.target);
+			DirectoryScanner scanner = new DirectoryScanner();
+			scanner.setBasedir(sourceRootFile);
+			scanner.setIncludes(MATCH_ALL.toArray(new String[MATCH_ALL.size()]));
+			scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+			scanner.addDefaultExcludes();
+			scanner.scan();
+			resources.addResources(sourceRootFile, scanner.getIncludedFiles());
+		}
+
+		try {
+			int copied = resources.synchronize();
+			getLog().debug("Copied " + copied + " changed resource files to " + outputDirectory);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Exception copying resource files to " + outputDirectory, e);
+		}
+	}
+
+	@Override
+	protected Set<File> getAffectedSources(CompilerConfiguration compilerConfiguration, Set<File> staleSources)
+			throws MojoExecutionException {
+		incrementalState.remove();
+		if (!incremental) {
+			// the state does not cover what this build compiles, so a later incremental build must start over
+			getIncrementalStateFile().delete();
+			return staleSources;
+		}
+
+		try {
+			Map<File, String> allSources = getIncludedSources();
+			IncrementalBuildState state = new IncrementalBuildState(getIncrementalStateFile(), getOutputDirectory(),
+					getClasspathLocations(), getConfigurationDescription(compilerConfiguration));
+			Set<File> sources = state.getAffectedSources(allSources, staleSources);
+			if (sources.isEmpty()) {
+				state.save();
+			} else {
+				// a failed compilation leaves no valid state behind
+				state.discard();
+				incrementalState.set(state);
+				getLog().info("Compiling " + sources.size() + " of " + allSources.size() + " source files");
+			}
+			return sources;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not compute sources affected by changes", e);
+		}
+	}
+
+	@Override
+	protected Set<File> getDependentSources(CompilerConfiguration compilerConfiguration, Set<File> compiledSources)
+			throws MojoExecutionException {
+		IncrementalBuildState state = incrementalState.get();
+		if (state == null) {
+			return Collections.emptySet();
+		}
+
+		try {
+			Set<File> sources = state.getDependentSources(compiledSources);
+			if (sources.isEmpty()) {
+				state.save();
+				incrementalState.remove();
+			} else {
+				getLog().info("Compiling " + sources.size() + " source files affected by API changes");
+			}
+			return sources;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not compute sources affected by API changes", e);
+		}
+	}
+
+	private File getIncrementalStateFile() {
+		File outputDirectory = getOutputDirectory();
+		return new File(outputDirectory.getParentFile(), outputDirectory.getName() + ".incremental");
+	}
+
+	/**
+	 * @return all included sources and their paths relative to the source folder
+	 */
+	private Map<File, String> getIncludedSources() throws MojoExecutionException {
+		Map<File, String> sources = new LinkedHashMap<File, String>();
+		for (String sourceRoot : getCompileSourceRoots()) {
+			File sourceRootFile = new File(sourceRoot);
+			if (!sourceRootFile.isDirectory()) {
+				continue;
+			}
+			DirectoryScanner scanner = new DirectoryScanner();
+			scanner.setBasedir(sourceRootFile);
+			scanner.setIncludes(includes.isEmpty() ? new String[] { "**/*.java" } : includes
+					.toArray(new String[includes.size()]));
+			scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+			scanner.scan();
+			for (String path : scanner.getIncludedFiles()) {
+				sources.put(new File(sourceRoot, path), path.replace(File.separatorChar, '/'));
+			}
+		}
+		return sources;
+	}
+
+	private List<File> getClasspathLocations() throws MojoExecutionException {
+		File outputDirectory = getOutputDirectory().getAbsoluteFile();
+		List<File> locations = new ArrayList<File>();
+		for (ClasspathEntry cpe : getClasspath()) {
+			for (File location : cpe.getLocations()) {
+				if (!outputDirectory.equals(location.getAbsoluteFile())) {
+					locations.add(location.getAbsoluteFile());
 				}
-			} catch (InclusionScanException e) {
-				throw new MojoExecutionException(
-						"Exception while scanning for resource files in "
-								+ sourceRoot, e);
-			} catch (IOException e) {
-				throw new MojoExecutionException(
-						"Exception copying resource files from " + sourceRoot
-								+ " to " + this.outputJar.getOutputDirectory(),
-						e);
 			}
 		}
+		return locations;
+	}
+
+	/**
+	 * @return compiler inputs other than the sources
+	 */
+	private String getConfigurationDescription(CompilerConfiguration compilerConfiguration) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("classpath:").append(compilerConfiguration.getClasspathEntries()).append('\n');
+		sb.append("sourcepath:").append(compilerConfiguration.getSourceLocations()).append('\n');
+		sb.append("includes:").append(new TreeSet<String>(includes)).append('\n');
+		sb.append("excludes:").append(new TreeSet<String>(excludes)).append('\n');
+		sb.append("source:").append(compilerConfiguration.getSourceVersion()).append('\n');
+		sb.append("target:").append(compilerConfiguration.getTargetVersion()).append('\n');
+		sb.append("encoding:").append(compilerConfiguration.getSourceEncoding()).append('\n');
+		sb.append("debug:").append(compilerConfiguration.isDebug()).append('\n');
+		sb.append("optimize:").append(compilerConfiguration.isOptimize()).append('\n');
+		sb.append("arguments:").append(compilerConfiguration.getCustomCompilerArguments()).append('\n');
+		return sb.toString();
 	}
 
 	/** public for testing purposes */ 
@@ -215,7 +453,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 
 	@Override
 	protected File getOutputDirectory() {
-		return outputJar.getOutputDirectory();
+		return outputJar.get().getOutputDirectory();
 	}
 
 	public List<String> getClasspathElements() throws MojoExecutionException {
@@ -292,9 +530,8 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 		if (includes.isEmpty() && excludes.isEmpty()) {
 			scanner = new StaleSourceScanner(staleMillis);
 		} else {
-			if (includes.isEmpty()) {
-				includes.add("**/*.java");
-			}
+			// do not modify the configured includes, scanners may be created concurrently
+			Set<String> includes = this.includes.isEmpty() ? Collections.singleton("**/*.java") : this.includes;
 			scanner = new StaleSourceScanner(staleMillis, includes, excludes);
 		}
 		return scanner;
@@ -304,23 +541,16 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 			String inputFileEnding) {
 		SourceInclusionScanner scanner = null;
 
-		if (includes.isEmpty() && excludes.isEmpty()) {
-			includes = Collections.singleton("**/*." + inputFileEnding);
-			scanner = new SimpleSourceInclusionScanner(includes,
-					Collections.EMPTY_SET);
-		} else {
-			if (includes.isEmpty()) {
-				includes.add("**/*." + inputFileEnding);
-			}
-			scanner = new SimpleSourceInclusionScanner(includes, excludes);
-		}
+		Set<String> includes = this.includes.isEmpty() ? Collections.singleton("**/*." + inputFileEnding)
+				: this.includes;
+		scanner = new SimpleSourceInclusionScanner(includes, excludes);
 
 		return scanner;
 	}
 
 	protected List<String> getPdeCompileSourceRoots() throws MojoExecutionException {
 		ArrayList<String> roots = new ArrayList<String>();
-		for (File folder : outputJar.getSourceFolders()) {
+		for (File folder : outputJar.get().getSourceFolders()) {
 			try {
 				roots.add(folder.getCanonicalPath());
 			} catch (IOException e) {
@@ -335,7 +565,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo impl
 		CompilerConfiguration compilerConfiguration = super.getCompilerConfiguration(compileSourceRoots);
 		if (usePdeSourceRoots) {
 			Properties props = getEclipsePluginProject().getBuildProperties();
-			String encoding = props.getProperty("javacDefaultEncoding." + outputJar.getName());
+			String encoding = props.getProperty("javacDefaultEncoding." + outputJar.get().getName());
 			if (encoding != null) {
 				compilerConfiguration.setSourceEncoding(encoding);
 			}
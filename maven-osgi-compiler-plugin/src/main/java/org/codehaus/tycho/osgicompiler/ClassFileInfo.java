@@ -0,0 +1,393 @@
+package org.codehaus.tycho.osgicompiler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.codehaus.tycho.utils.DigestUtils;
+
+/**
+ * Minimal class file reader that extracts what incremental compilation needs to know about a compiled type: the
+ * source file it was compiled from, the types it references and a digest of its API.
+ * <p>
+ * The API digest covers everything other types compile against: modifiers, super types, generic signatures, and
+ * non-private, non-synthetic fields, methods and member types including constant values. Changes of method bodies
+ * and private members do not change the digest. Values of constant fields are additionally digested separately,
+ * because the compiler inlines them into referencing classes without leaving a reference to the declaring type.
+ */
+public class ClassFileInfo {
+
+	private static final int ACC_PRIVATE = 0x0002;
+
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	private final String name;
+
+	private String sourceFile;
+
+	private final Set<String> referencedTypes = new LinkedHashSet<String>();
+
+	private final List<String> api = new ArrayList<String>();
+
+	private final List<String> constants = new ArrayList<String>();
+
+	private String apiDigest;
+
+	private String constantsDigest;
+
+	private ClassFileInfo(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return internal name of the type, e.g. <code>java/util/Map$Entry</code>
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return simple name of the source file, or <code>null</code> if the class was compiled without debug
+	 *         information
+	 */
+	public String getSourceFile() {
+		return sourceFile;
+	}
+
+	/**
+	 * @return internal names of all types referenced from the constant pool, descriptors and generic signatures
+	 */
+	public Set<String> getReferencedTypes() {
+		return referencedTypes;
+	}
+
+	public String getApiDigest() {
+		return apiDigest;
+	}
+
+	/**
+	 * @return digest of the values of all constant fields, or empty string if the type has no constant fields
+	 */
+	public String getConstantsDigest() {
+		return constantsDigest;
+	}
+
+	public static ClassFileInfo read(File file) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	public static ClassFileInfo read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != 0xCAFEBABE) {
+			throw new IOException("Not a class file");
+		}
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		int count = in.readUnsignedShort();
+		Object[] pool = new Object[count];
+		int[] classes = new int[count];
+		int[] strings = new int[count];
+		List<Integer> descriptors = new ArrayList<Integer>();
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8
+				pool[i] = in.readUTF();
+				break;
+			case 3: // Integer
+				pool[i] = Integer.valueOf(in.readInt());
+				break;
+			case 4: // Float
+				pool[i] = Float.valueOf(in.readFloat());
+				break;
+			case 5: // Long
+				pool[i++] = Long.valueOf(in.readLong());
+				break;
+			case 6: // Double
+				pool[i++] = Double.valueOf(in.readDouble());
+				break;
+			case 7: // Class
+				classes[i] = in.readUnsignedShort();
+				break;
+			case 8: // String
+				strings[i] = in.readUnsignedShort();
+				break;
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 18: // InvokeDynamic
+				in.readInt();
+				break;
+			case 12: // NameAndType
+				in.readUnsignedShort();
+				descriptors.add(Integer.valueOf(in.readUnsignedShort()));
+				break;
+			case 15: // MethodHandle
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+				break;
+			case 16: // MethodType
+				descriptors.add(Integer.valueOf(in.readUnsignedShort()));
+				break;
+			default:
+				throw new IOException("Unsupported constant pool tag " + tag);
+			}
+		}
+
+		int access = in.readUnsignedShort();
+		ClassFileInfo info = new ClassFileInfo(getClassName(pool, classes, in.readUnsignedShort()));
+		String superName = getClassName(pool, classes, in.readUnsignedShort());
+
+		for (int i = 1; i < count; i++) {
+			if (classes[i] != 0) {
+				info.addType((String) pool[classes[i]]);
+			}
+		}
+		for (Integer descriptor : descriptors) {
+			info.addTypes((String) pool[descriptor.intValue()]);
+		}
+
+		List<String> interfaces = new ArrayList<String>();
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			interfaces.add(getClassName(pool, classes, in.readUnsignedShort()));
+		}
+		Collections.sort(interfaces);
+		StringBuilder header = new StringBuilder("class:");
+		header.append(access & ~ACC_SUPER).append(' ').append(info.name).append(' ').append(superName);
+		header.append(' ').append(interfaces);
+
+		// fields
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			int fieldAccess = in.readUnsignedShort();
+			String fieldName = (String) pool[in.readUnsignedShort()];
+			String descriptor = (String) pool[in.readUnsignedShort()];
+			info.addTypes(descriptor);
+
+			String signature = null;
+			Object constant = null;
+			for (int j = in.readUnsignedShort(); j > 0; j--) {
+				String attribute = (String) pool[in.readUnsignedShort()];
+				int length = in.readInt();
+				if ("ConstantValue".equals(attribute)) {
+					int index = in.readUnsignedShort();
+					constant = strings[index] != 0 ? "\"" + pool[strings[index]] + "\"" : pool[index];
+				} else if ("Signature".equals(attribute)) {
+					signature = (String) pool[in.readUnsignedShort()];
+					info.addTypes(signature);
+				} else {
+					skip(in, length);
+				}
+			}
+
+			if (isApi(fieldAccess)) {
+				String field = "field:" + fieldAccess + " " + fieldName + " " + descriptor + " " + signature;
+				info.api.add(field + " " + constant);
+				if (constant != null) {
+					info.constants.add(field + " " + constant);
+				}
+			}
+		}
+
+		// methods
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			int methodAccess = in.readUnsignedShort();
+			String methodName = (String) pool[in.readUnsignedShort()];
+			String descriptor = (String) pool[in.readUnsignedShort()];
+			info.addTypes(descriptor);
+
+			String signature = null;
+			List<String> exceptions = new ArrayList<String>();
+			for (int j = in.readUnsignedShort(); j > 0; j--) {
+				String attribute = (String) pool[in.readUnsignedShort()];
+				int length = in.readInt();
+				if ("Exceptions".equals(attribute)) {
+					for (int k = in.readUnsignedShort(); k > 0; k--) {
+						exceptions.add(getClassName(pool, classes, in.readUnsignedShort()));
+					}
+				} else if ("Signature".equals(attribute)) {
+					signature = (String) pool[in.readUnsignedShort()];
+					info.addTypes(signature);
+				} else {
+					skip(in, length);
+				}
+			}
+
+			if (isApi(methodAccess)) {
+				Collections.sort(exceptions);
+				info.api.add("method:" + methodAccess + " " + methodName + " " + descriptor + " " + signature + " "
+						+ exceptions);
+			}
+		}
+
+		// class attributes
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			String attribute = (String) pool[in.readUnsignedShort()];
+			int length = in.readInt();
+			if ("SourceFile".equals(attribute)) {
+				info.sourceFile = (String) pool[in.readUnsignedShort()];
+			} else if ("Signature".equals(attribute)) {
+				String signature = (String) pool[in.readUnsignedShort()];
+				info.addTypes(signature);
+				header.append(' ').append(signature);
+			} else if ("InnerClasses".equals(attribute)) {
+				for (int j = in.readUnsignedShort(); j > 0; j--) {
+					String inner = getClassName(pool, classes, in.readUnsignedShort());
+					String outer = getClassName(pool, classes, in.readUnsignedShort());
+					in.readUnsignedShort(); // simple name
+					int innerAccess = in.readUnsignedShort();
+					if ((info.name.equals(inner) || info.name.equals(outer)) && isApi(innerAccess)) {
+						info.api.add("inner:" + innerAccess + " " + inner + " " + outer);
+					}
+				}
+			} else {
+				skip(in, length);
+			}
+		}
+
+		info.referencedTypes.remove(info.name);
+		info.api.add(header.toString());
+		info.apiDigest = digest(info.api);
+		info.constantsDigest = info.constants.isEmpty() ? "" : digest(info.constants);
+		return info;
+	}
+
+	private static boolean isApi(int access) {
+		return (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+	}
+
+	private static String getClassName(Object[] pool, int[] classes, int index) {
+		return index != 0 ? (String) pool[classes[index]] : null;
+	}
+
+	/**
+	 * Adds a class name as found in CONSTANT_Class entries, i.e. either an internal name or an array descriptor.
+	 */
+	private void addType(String type) {
+		if (type.startsWith("[")) {
+			addTypes(type);
+		} else {
+			referencedTypes.add(type);
+		}
+	}
+
+	/**
+	 * Adds all types from a field, method or generic signature descriptor.
+	 */
+	private void addTypes(String descriptor) {
+		int i = 0;
+		if (descriptor.startsWith("<")) {
+			i = addFormalTypeParameters(descriptor, 1);
+		}
+		while (i < descriptor.length()) {
+			i = addTypes(descriptor, i);
+		}
+	}
+
+	/**
+	 * Adds the types of the bounds of the formal type parameters of a generic signature, e.g.
+	 * <code>&lt;T:Ljava/lang/Object;U::Ljava/lang/Comparable&lt;TT;&gt;;&gt;</code>. The names of the type parameters
+	 * are skipped.
+	 * 
+	 * @return the index after the closing '&gt;'
+	 */
+	private int addFormalTypeParameters(String signature, int i) {
+		while (signature.charAt(i) != '>') {
+			// skip the name, bounds start with ':' and the class bound may be empty
+			i = signature.indexOf(':', i);
+			while (signature.charAt(i) == ':') {
+				i++;
+				if ("LT[".indexOf(signature.charAt(i)) >= 0) {
+					i = addTypes(signature, i);
+				}
+			}
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Adds the types of the descriptor element at the given index, which is a type or a character between types like
+	 * '(' or '^'.
+	 * 
+	 * @return the index after the element
+	 */
+	private int addTypes(String descriptor, int i) {
+		switch (descriptor.charAt(i)) {
+		case 'L':
+			return addClassType(descriptor, i + 1);
+		case 'T':
+			// type variable, its name is no type
+			return descriptor.indexOf(';', i) + 1;
+		case '[':
+		case '+':
+		case '-':
+			return addTypes(descriptor, i + 1);
+		default:
+			return i + 1;
+		}
+	}
+
+	/**
+	 * @return the index after the ';' that ends the class type starting at the given index
+	 */
+	private int addClassType(String descriptor, int start) {
+		boolean added = false;
+		int i = start;
+		while (true) {
+			char c = descriptor.charAt(i);
+			if (c == ';' || c == '<' || c == '.') {
+				if (!added) {
+					// '.' separates member types in generic signatures, the outer type is referenced already
+					referencedTypes.add(descriptor.substring(start, i));
+					added = true;
+				}
+				if (c == ';') {
+					return i + 1;
+				} else if (c == '<') {
+					i++;
+					while (descriptor.charAt(i) != '>') {
+						i = addTypes(descriptor, i);
+					}
+				}
+			}
+			i++;
+		}
+	}
+
+	private static void skip(DataInputStream in, int length) throws IOException {
+		while (length > 0) {
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of class file");
+			}
+			length -= skipped;
+		}
+	}
+
+	static String digest(List<String> elements) {
+		List<String> sorted = new ArrayList<String>(elements);
+		Collections.sort(sorted);
+		MessageDigest digest = DigestUtils.newDigest();
+		for (String element : sorted) {
+			DigestUtils.update(digest, element);
+			digest.update((byte) '\n');
+		}
+		return DigestUtils.toHex(digest.digest());
+	}
+}
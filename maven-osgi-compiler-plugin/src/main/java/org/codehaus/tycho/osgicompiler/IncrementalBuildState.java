@@ -0,0 +1,550 @@
+package org.codehaus.tycho.osgicompiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Dependency information of the last successful compilation of one build output jar, used to compute the sources
+ * that need to be compiled after sources or classpath entries changed.
+ * <p>
+ * For each source file, the state records the types compiled from it and the types its classes reference. For each
+ * referenced type from the classpath, it records the classpath entry the type was found in and the digest of its API
+ * as computed by {@link ClassFileInfo}. Sources are recompiled if they reference a type whose API changed, was
+ * removed, or appeared in a different classpath entry. Changes of method bodies or private members of upstream
+ * bundles do not cause any recompilation. Classpath jars are only opened if their timestamp or length changed, class
+ * files in classpath folders only if their timestamp or length changed.
+ * <p>
+ * After each compilation, the API of the compiled types is compared with the previous API and sources referencing
+ * changed types are compiled as well, until no more API changes are found. If the value of a constant changes, all
+ * sources are compiled, because referencing classes do not refer to the declaring type of inlined constants.
+ * Constants inlined from classpath types that are not otherwise referenced are not tracked; a clean build is needed
+ * if their values change.
+ * <p>
+ * The state is only valid for one configuration of classpath, source folders and compiler options. If any of these
+ * change, all sources are compiled.
+ */
+public class IncrementalBuildState {
+
+	private static final int MAGIC = 0x54494253; // "TIBS"
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private static class SourceInfo {
+		/** types compiled from the source */
+		final Set<String> types;
+
+		/** types referenced from these types */
+		final Set<String> references;
+
+		SourceInfo(Set<String> types, Set<String> references) {
+			this.types = types;
+			this.references = references;
+		}
+	}
+
+	private static class TypeInfo {
+		final String api;
+
+		final String constants;
+
+		TypeInfo(String api, String constants) {
+			this.api = api;
+			this.constants = constants;
+		}
+	}
+
+	private static class ExternalType {
+		/** index of the classpath entry containing the type, or -1 if the type was not found */
+		final int entry;
+
+		/** timestamp and length of class files in classpath folders */
+		final long lastModified;
+
+		final long length;
+
+		/** api digest, or <code>null</code> if the type was not found */
+		final String api;
+
+		ExternalType(int entry, long lastModified, long length, String api) {
+			this.entry = entry;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.api = api;
+		}
+
+		boolean isSameApi(ExternalType other) {
+			return entry == other.entry && (api != null ? api.equals(other.api) : other.api == null);
+		}
+	}
+
+	private final File file;
+
+	private final File outputDirectory;
+
+	private final List<File> classpath;
+
+	private final String configuration;
+
+	private boolean valid;
+
+	private final Map<File, SourceInfo> sources = new LinkedHashMap<File, SourceInfo>();
+
+	private final Map<String, TypeInfo> types = new HashMap<String, TypeInfo>();
+
+	private final Map<String, ExternalType> externalTypes = new HashMap<String, ExternalType>();
+
+	private final Map<String, long[]> stamps = new HashMap<String, long[]>();
+
+	/** all current sources and their paths relative to the source folder */
+	private Map<File, String> allSources;
+
+	/**
+	 * @param file location of the persisted state
+	 * @param outputDirectory output directory of the compiled classes
+	 * @param classpath classpath entries, without the output directory itself
+	 * @param configuration textual representation of all compiler inputs except the sources, e.g. classpath and
+	 *            compiler options; a different configuration invalidates the persisted state
+	 */
+	public IncrementalBuildState(File file, File outputDirectory, List<File> classpath, String configuration) {
+		this.file = file;
+		this.outputDirectory = outputDirectory;
+		this.classpath = classpath;
+		this.configuration = ClassFileInfo.digest(Collections.singletonList(configuration));
+		try {
+			valid = read();
+		} catch (IOException e) {
+			// corrupted or truncated, all sources will be compiled
+			valid = false;
+		}
+		if (!valid) {
+			sources.clear();
+			types.clear();
+			externalTypes.clear();
+			stamps.clear();
+		}
+	}
+
+	/**
+	 * Computes the sources that need to be compiled and deletes their class files.
+	 *
+	 * @param allSources all sources and their paths relative to the source folder
+	 * @param staleSources sources that are newer than their class files
+	 * @return all sources if there is no valid state, or stale, new, and sources affected by changes otherwise
+	 */
+	public Set<File> getAffectedSources(Map<File, String> allSources, Set<File> staleSources) throws IOException {
+		this.allSources = allSources;
+		boolean[] changedJars = updateStamps();
+		if (!valid) {
+			return new LinkedHashSet<File>(allSources.keySet());
+		}
+
+		Set<String> changedTypes = new HashSet<String>();
+		boolean constantsChanged = false;
+
+		// removed sources
+		for (File source : new ArrayList<File>(sources.keySet())) {
+			if (!allSources.containsKey(source)) {
+				SourceInfo info = sources.remove(source);
+				deleteClassFiles(info);
+				for (String type : info.types) {
+					TypeInfo removed = types.remove(type);
+					changedTypes.add(type);
+					constantsChanged |= removed != null && !"".equals(removed.constants);
+				}
+			}
+		}
+
+		// classpath changes
+		changedTypes.addAll(updateExternalTypes(changedJars));
+
+		Set<File> result = new LinkedHashSet<File>();
+		for (File source : allSources.keySet()) {
+			if (!sources.containsKey(source) || staleSources.contains(source)) {
+				result.add(source);
+			}
+		}
+		result.addAll(getDependentSources(changedTypes, constantsChanged, Collections.<File> emptySet()));
+
+		for (File source : result) {
+			deleteClassFiles(sources.get(source));
+		}
+		return result;
+	}
+
+	/**
+	 * Records types and references of the given compiled sources, which must be a subset of the sources passed to
+	 * {@link #getAffectedSources(Map, Set)}, and computes the sources that need to be compiled
+	 * because they depend on changed API of the compiled sources. Class files of the returned sources are deleted.
+	 *
+	 * @return sources depending on changed API of the compiled sources, or empty set if there were no API changes
+	 */
+	public Set<File> getDependentSources(Set<File> compiledSources) throws IOException {
+		Set<String> changedTypes = new HashSet<String>();
+		boolean constantsChanged = false;
+
+		Map<File, List<ClassFileInfo>> classFiles = new HashMap<File, List<ClassFileInfo>>();
+		Map<File, SourceInfo> compiled = new LinkedHashMap<File, SourceInfo>();
+		for (File source : compiledSources) {
+			Set<String> newTypes = new LinkedHashSet<String>();
+			Set<String> references = new LinkedHashSet<String>();
+			for (ClassFileInfo classFile : getClassFiles(classFiles, allSources.get(source))) {
+				newTypes.add(classFile.getName());
+				references.addAll(classFile.getReferencedTypes());
+
+				TypeInfo old = types.put(classFile.getName(), new TypeInfo(classFile.getApiDigest(), classFile
+						.getConstantsDigest()));
+				if (old == null || !old.api.equals(classFile.getApiDigest())) {
+					changedTypes.add(classFile.getName());
+				}
+				constantsChanged |= old != null && !old.constants.equals(classFile.getConstantsDigest());
+			}
+
+			SourceInfo old = sources.get(source);
+			if (old != null) {
+				for (String type : old.types) {
+					if (!newTypes.contains(type)) {
+						TypeInfo removed = types.remove(type);
+						changedTypes.add(type);
+						constantsChanged |= removed != null && !"".equals(removed.constants);
+					}
+				}
+			}
+			compiled.put(source, new SourceInfo(newTypes, references));
+		}
+		sources.putAll(compiled);
+		externalTypes.keySet().removeAll(types.keySet());
+
+		// types referenced for the first time
+		Set<String> newExternalTypes = new LinkedHashSet<String>();
+		for (SourceInfo info : compiled.values()) {
+			for (String type : info.references) {
+				if (!types.containsKey(type) && !externalTypes.containsKey(type) && isTracked(type)) {
+					newExternalTypes.add(type);
+				}
+			}
+		}
+		if (!newExternalTypes.isEmpty()) {
+			Map<Integer, ZipFile> jars = new HashMap<Integer, ZipFile>();
+			try {
+				for (String type : newExternalTypes) {
+					externalTypes.put(type, locate(type, null, null, jars));
+				}
+			} finally {
+				close(jars);
+			}
+		}
+
+		Set<File> result = getDependentSources(changedTypes, constantsChanged, compiledSources);
+		for (File source : result) {
+			deleteClassFiles(sources.get(source));
+		}
+		return result;
+	}
+
+	private Set<File> getDependentSources(Set<String> changedTypes, boolean constantsChanged, Set<File> excluded) {
+		Set<File> result = new LinkedHashSet<File>();
+		if (changedTypes.isEmpty() && !constantsChanged) {
+			return result;
+		}
+		for (Map.Entry<File, SourceInfo> entry : sources.entrySet()) {
+			if (excluded.contains(entry.getKey())) {
+				continue;
+			}
+			if (constantsChanged || !Collections.disjoint(entry.getValue().references, changedTypes)) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Types from java.* packages can only come from the boot classpath and never change API within one
+	 * configuration.
+	 */
+	private static boolean isTracked(String type) {
+		return !type.startsWith("java/");
+	}
+
+	/**
+	 * Locates all referenced classpath types again, if the classpath entry they were found in or any entry before it
+	 * changed.
+	 *
+	 * @return types whose api changed
+	 */
+	private Set<String> updateExternalTypes(boolean[] changedJars) throws IOException {
+		Set<String> changedTypes = new HashSet<String>();
+		Map<Integer, ZipFile> jars = new HashMap<Integer, ZipFile>();
+		try {
+			for (Map.Entry<String, ExternalType> entry : externalTypes.entrySet()) {
+				ExternalType type = locate(entry.getKey(), entry.getValue(), changedJars, jars);
+				if (!type.isSameApi(entry.getValue())) {
+					changedTypes.add(entry.getKey());
+				}
+				entry.setValue(type);
+			}
+		} finally {
+			close(jars);
+		}
+		return changedTypes;
+	}
+
+	/**
+	 * Records timestamp and length of all classpath jars.
+	 *
+	 * @return classpath jars that changed since the previous compilation
+	 */
+	private boolean[] updateStamps() {
+		boolean[] changedJars = new boolean[classpath.size()];
+		Map<String, long[]> newStamps = new HashMap<String, long[]>();
+		for (int i = 0; i < classpath.size(); i++) {
+			File entry = classpath.get(i);
+			if (entry.isDirectory()) {
+				continue;
+			}
+			long[] stamp = new long[] { entry.lastModified(), entry.length() };
+			long[] oldStamp = stamps.get(entry.getAbsolutePath());
+			changedJars[i] = oldStamp == null || oldStamp[0] != stamp[0] || oldStamp[1] != stamp[1];
+			newStamps.put(entry.getAbsolutePath(), stamp);
+		}
+		stamps.clear();
+		stamps.putAll(newStamps);
+		return changedJars;
+	}
+
+	/**
+	 * @param old previous location of the type, or <code>null</code> if the type was not located before
+	 * @param changedJars classpath jars that changed since the previous location
+	 */
+	private ExternalType locate(String type, ExternalType old, boolean[] changedJars, Map<Integer, ZipFile> jars)
+			throws IOException {
+		String path = type + CLASS_SUFFIX;
+		for (int i = 0; i < classpath.size(); i++) {
+			File entry = classpath.get(i);
+			if (entry.isDirectory()) {
+				File classFile = new File(entry, path);
+				if (classFile.isFile()) {
+					if (old != null && old.entry == i && old.lastModified == classFile.lastModified()
+							&& old.length == classFile.length()) {
+						return old;
+					}
+					return new ExternalType(i, classFile.lastModified(), classFile.length(), ClassFileInfo.read(
+							classFile).getApiDigest());
+				}
+			} else if (entry.isFile()) {
+				if (old != null && !changedJars[i] && (old.entry < 0 || i <= old.entry)) {
+					// unchanged jar contains the type if and only if it did so before
+					if (i == old.entry) {
+						return old;
+					}
+					continue;
+				}
+				ZipFile jar = jars.get(Integer.valueOf(i));
+				if (jar == null) {
+					jar = new ZipFile(entry);
+					jars.put(Integer.valueOf(i), jar);
+				}
+				ZipEntry zipEntry = jar.getEntry(path);
+				if (zipEntry != null) {
+					InputStream is = jar.getInputStream(zipEntry);
+					try {
+						return new ExternalType(i, 0, 0, ClassFileInfo.read(is).getApiDigest());
+					} finally {
+						is.close();
+					}
+				}
+			}
+		}
+		return new ExternalType(-1, 0, 0, null);
+	}
+
+	private static void close(Map<Integer, ZipFile> jars) {
+		for (ZipFile jar : jars.values()) {
+			try {
+				jar.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
+
+	/**
+	 * @return class files in the output directory compiled from the given source
+	 */
+	private List<ClassFileInfo> getClassFiles(Map<File, List<ClassFileInfo>> cache, String sourcePath)
+			throws IOException {
+		int idx = sourcePath.lastIndexOf('/');
+		String fileName = sourcePath.substring(idx + 1);
+		File directory = idx >= 0 ? new File(outputDirectory, sourcePath.substring(0, idx)) : outputDirectory;
+
+		List<ClassFileInfo> classFiles = cache.get(directory);
+		if (classFiles == null) {
+			classFiles = new ArrayList<ClassFileInfo>();
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File classFile : files) {
+					if (classFile.isFile() && classFile.getName().endsWith(CLASS_SUFFIX)) {
+						classFiles.add(ClassFileInfo.read(classFile));
+					}
+				}
+			}
+			cache.put(directory, classFiles);
+		}
+
+		String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+		List<ClassFileInfo> result = new ArrayList<ClassFileInfo>();
+		for (ClassFileInfo classFile : classFiles) {
+			String sourceFile = classFile.getSourceFile();
+			if (sourceFile != null ? sourceFile.equals(fileName) : isCompiledFrom(classFile.getName(), baseName)) {
+				result.add(classFile);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Guesses the source of classes compiled without debug information from the class name.
+	 */
+	private static boolean isCompiledFrom(String type, String baseName) {
+		String simpleName = type.substring(type.lastIndexOf('/') + 1);
+		return simpleName.equals(baseName) || simpleName.startsWith(baseName + "$");
+	}
+
+	private void deleteClassFiles(SourceInfo info) {
+		if (info != null) {
+			for (String type : info.types) {
+				new File(outputDirectory, type + CLASS_SUFFIX).delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the persisted state, so an interrupted or failed compilation is followed by a full compilation.
+	 */
+	public void discard() {
+		file.delete();
+	}
+
+	public void save() throws IOException {
+		// drop classpath types that are no longer referenced
+		Set<String> referenced = new HashSet<String>();
+		for (SourceInfo info : sources.values()) {
+			referenced.addAll(info.references);
+		}
+		externalTypes.keySet().retainAll(referenced);
+
+		file.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(configuration);
+
+			out.writeInt(stamps.size());
+			for (Map.Entry<String, long[]> entry : stamps.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue()[0]);
+				out.writeLong(entry.getValue()[1]);
+			}
+
+			out.writeInt(sources.size());
+			for (Map.Entry<File, SourceInfo> entry : sources.entrySet()) {
+				out.writeUTF(entry.getKey().getAbsolutePath());
+				writeStrings(out, entry.getValue().types);
+				writeStrings(out, entry.getValue().references);
+			}
+
+			out.writeInt(types.size());
+			for (Map.Entry<String, TypeInfo> entry : types.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue().api);
+				out.writeUTF(entry.getValue().constants);
+			}
+
+			out.writeInt(externalTypes.size());
+			for (Map.Entry<String, ExternalType> entry : externalTypes.entrySet()) {
+				ExternalType type = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeInt(type.entry);
+				out.writeLong(type.lastModified);
+				out.writeLong(type.length);
+				out.writeUTF(type.api != null ? type.api : "");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private boolean read() throws IOException {
+		if (!file.isFile()) {
+			return false;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !configuration.equals(in.readUTF())) {
+				return false;
+			}
+
+			for (int i = in.readInt(); i > 0; i--) {
+				stamps.put(in.readUTF(), new long[] { in.readLong(), in.readLong() });
+			}
+
+			for (int i = in.readInt(); i > 0; i--) {
+				File source = new File(in.readUTF());
+				sources.put(source, new SourceInfo(readStrings(in), readStrings(in)));
+			}
+
+			for (int i = in.readInt(); i > 0; i--) {
+				types.put(in.readUTF(), new TypeInfo(in.readUTF(), in.readUTF()));
+			}
+
+			for (int i = in.readInt(); i > 0; i--) {
+				String type = in.readUTF();
+				int entry = in.readInt();
+				long lastModified = in.readLong();
+				long length = in.readLong();
+				String api = in.readUTF();
+				externalTypes.put(type, new ExternalType(entry, lastModified, length, api.length() > 0 ? api : null));
+			}
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String str : strings) {
+			out.writeUTF(str);
+		}
+	}
+
+	private static Set<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Set<String> strings = new LinkedHashSet<String>(size * 2);
+		for (int i = 0; i < size; i++) {
+			strings.add(in.readUTF());
+		}
+		return strings;
+	}
+}
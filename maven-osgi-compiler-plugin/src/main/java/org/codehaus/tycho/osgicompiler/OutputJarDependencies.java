@@ -0,0 +1,165 @@
+package org.codehaus.tycho.osgicompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.osgitools.project.BuildOutputJar;
+
+/**
+ * Infers which output jars of a bundle need to be compiled before which other output jars, so independent jars can
+ * be compiled concurrently.
+ * <p>
+ * All output folders of a bundle are on the classpath of each of its jars, so the dependencies are not declared
+ * anywhere. A jar is considered to depend on another jar if
+ * <ul>
+ * <li>both jars have sources in the same package and the other jar comes first in compile order, or</li>
+ * <li>its sources contain a qualified name in one of the packages of the other jar, e.g. in an import statement.</li>
+ * </ul>
+ * The sources are not parsed, so a qualified name in a comment results in an unnecessary dependency, but never in
+ * a wrong compile order. If the inferred dependencies are cyclic, all jars are compiled one after the other in
+ * compile order, like with sequential compilation.
+ */
+class OutputJarDependencies {
+
+	private static final String JAVA_SUFFIX = ".java";
+
+	private static final String DEFAULT_PACKAGE = "";
+
+	private OutputJarDependencies() {
+	}
+
+	/**
+	 * @param jars output jars in compile order, see <code>jars.compile.order</code>
+	 * @return the given jars in an order they can be compiled in, each mapped to the jars it depends on
+	 */
+	public static Map<BuildOutputJar, Set<BuildOutputJar>> getDependencies(List<BuildOutputJar> jars)
+			throws IOException {
+		Map<BuildOutputJar, Set<String>> packages = new HashMap<BuildOutputJar, Set<String>>();
+		Map<BuildOutputJar, List<File>> sources = new HashMap<BuildOutputJar, List<File>>();
+		for (BuildOutputJar jar : jars) {
+			Set<String> jarPackages = new HashSet<String>();
+			List<File> jarSources = new ArrayList<File>();
+			for (File sourceFolder : jar.getSourceFolders()) {
+				collectSources(sourceFolder, DEFAULT_PACKAGE, jarPackages, jarSources);
+			}
+			packages.put(jar, jarPackages);
+			sources.put(jar, jarSources);
+		}
+
+		Map<BuildOutputJar, Set<BuildOutputJar>> dependencies = new HashMap<BuildOutputJar, Set<BuildOutputJar>>();
+		for (int i = 0; i < jars.size(); i++) {
+			BuildOutputJar jar = jars.get(i);
+			Set<BuildOutputJar> jarDependencies = new LinkedHashSet<BuildOutputJar>();
+			Map<BuildOutputJar, Set<String>> referencable = new LinkedHashMap<BuildOutputJar, Set<String>>();
+			for (int j = 0; j < jars.size(); j++) {
+				if (i == j) {
+					continue;
+				}
+				BuildOutputJar other = jars.get(j);
+				if (j < i && !Collections.disjoint(packages.get(jar), packages.get(other))) {
+					jarDependencies.add(other);
+					continue;
+				}
+				Set<String> otherPackages = new HashSet<String>(packages.get(other));
+				otherPackages.removeAll(packages.get(jar));
+				otherPackages.remove(DEFAULT_PACKAGE);
+				if (!otherPackages.isEmpty()) {
+					referencable.put(other, otherPackages);
+				}
+			}
+			for (File source : sources.get(jar)) {
+				if (referencable.isEmpty()) {
+					break;
+				}
+				// the encoding does not matter, package names are matched as ASCII
+				String text = FileUtils.fileRead(source, "ISO-8859-1");
+				for (Iterator<Map.Entry<BuildOutputJar, Set<String>>> iter = referencable.entrySet().iterator(); iter
+						.hasNext();) {
+					Map.Entry<BuildOutputJar, Set<String>> entry = iter.next();
+					if (references(text, entry.getValue())) {
+						jarDependencies.add(entry.getKey());
+						iter.remove();
+					}
+				}
+			}
+			dependencies.put(jar, jarDependencies);
+		}
+
+		return sort(jars, dependencies);
+	}
+
+	/**
+	 * Topological sort that keeps the compile order for independent jars.
+	 */
+	private static Map<BuildOutputJar, Set<BuildOutputJar>> sort(List<BuildOutputJar> jars,
+			Map<BuildOutputJar, Set<BuildOutputJar>> dependencies) {
+		Map<BuildOutputJar, Set<BuildOutputJar>> result = new LinkedHashMap<BuildOutputJar, Set<BuildOutputJar>>();
+		boolean progress = true;
+		while (progress && result.size() < jars.size()) {
+			progress = false;
+			for (BuildOutputJar jar : jars) {
+				if (!result.containsKey(jar) && result.keySet().containsAll(dependencies.get(jar))) {
+					result.put(jar, dependencies.get(jar));
+					progress = true;
+					break;
+				}
+			}
+		}
+
+		if (result.size() < jars.size()) {
+			// cyclic dependencies
+			result.clear();
+			BuildOutputJar previous = null;
+			for (BuildOutputJar jar : jars) {
+				Set<BuildOutputJar> chain = previous != null ? Collections.singleton(previous) : Collections
+						.<BuildOutputJar> emptySet();
+				result.put(jar, chain);
+				previous = jar;
+			}
+		}
+		return result;
+	}
+
+	private static void collectSources(File directory, String pkg, Set<String> packages, List<File> sources) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				String name = file.getName();
+				collectSources(file, DEFAULT_PACKAGE.equals(pkg) ? name : pkg + "." + name, packages, sources);
+			} else if (file.getName().endsWith(JAVA_SUFFIX)) {
+				packages.add(pkg);
+				sources.add(file);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the text contains a name qualified with one of the given packages
+	 */
+	static boolean references(String text, Set<String> packages) {
+		for (String pkg : packages) {
+			String prefix = pkg + ".";
+			for (int idx = text.indexOf(prefix); idx >= 0; idx = text.indexOf(prefix, idx + 1)) {
+				char previous = idx > 0 ? text.charAt(idx - 1) : ' ';
+				if (previous != '.' && !Character.isJavaIdentifierPart(previous)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,200 @@
+package org.codehaus.tycho.osgicompiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies resource files from source folders to an output directory, touching only what changed since the last build.
+ * <p>
+ * Copied files get the timestamp of their source, so files whose length and timestamp match in the output directory
+ * are not copied again. The paths of all copied resources are recorded in a state file, and resources copied by the
+ * previous build whose source no longer exists are deleted from the output directory. Other files in the output
+ * directory, e.g. class files, are never deleted. Files are copied with {@link FileChannel#transferTo}, in parallel if
+ * there are many of them.
+ */
+public class ResourceSynchronizer {
+
+	private static final int MAGIC = 0x54525352; // "TRSR"
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int THREADS = 4;
+
+	/** copying fewer files in parallel does not pay off */
+	private static final int MIN_PARALLEL_COPIES = 32;
+
+	private final File outputDirectory;
+
+	private final File stateFile;
+
+	/** resource paths relative to the output directory, mapped to their source */
+	private final Map<String, File> resources = new LinkedHashMap<String, File>();
+
+	/**
+	 * @param outputDirectory directory to copy resources to
+	 * @param stateFile location of the list of previously copied resources
+	 */
+	public ResourceSynchronizer(File outputDirectory, File stateFile) {
+		this.outputDirectory = outputDirectory;
+		this.stateFile = stateFile;
+	}
+
+	/**
+	 * Adds resources of a source folder. If several source folders contain the same path, the folder added last wins.
+	 *
+	 * @param paths paths of the resources relative to the source folder
+	 */
+	public void addResources(File sourceFolder, String[] paths) {
+		for (String path : paths) {
+			resources.put(path.replace(File.separatorChar, '/'), new File(sourceFolder, path));
+		}
+	}
+
+	/**
+	 * Copies all changed resources and deletes resources that no longer exist.
+	 *
+	 * @return number of copied resources
+	 */
+	public int synchronize() throws IOException {
+		for (String path : readState()) {
+			if (!resources.containsKey(path)) {
+				new File(outputDirectory, path).delete();
+			}
+		}
+
+		final List<File[]> copies = new ArrayList<File[]>();
+		for (Map.Entry<String, File> entry : resources.entrySet()) {
+			File source = entry.getValue();
+			File target = new File(outputDirectory, entry.getKey());
+			if (!target.isFile() || target.length() != source.length()
+					|| target.lastModified() != source.lastModified()) {
+				copies.add(new File[] { source, target });
+			}
+		}
+
+		if (copies.size() < MIN_PARALLEL_COPIES) {
+			for (File[] copy : copies) {
+				copy(copy[0], copy[1]);
+			}
+		} else {
+			copyConcurrently(copies);
+		}
+
+		// only written if all resources were copied, so failed builds keep the previous list
+		writeState();
+		return copies.size();
+	}
+
+	private void copyConcurrently(List<File[]> copies) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final File[] copy : copies) {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						copy(copy[0], copy[1]);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while copying resources");
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	static void copy(File source, File target) throws IOException {
+		target.getParentFile().mkdirs();
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				long size = inChannel.size();
+				long position = 0;
+				while (position < size) {
+					position += inChannel.transferTo(position, size - position, outChannel);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		target.setLastModified(source.lastModified());
+	}
+
+	private Set<String> readState() {
+		Set<String> paths = new HashSet<String>();
+		if (!stateFile.isFile()) {
+			return paths;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+					return paths;
+				}
+				for (int i = in.readInt(); i > 0; i--) {
+					paths.add(in.readUTF());
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// corrupted or truncated, stale resources are not deleted
+		}
+		return paths;
+	}
+
+	private void writeState() throws IOException {
+		stateFile.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stateFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(resources.size());
+			for (String path : resources.keySet()) {
+				out.writeUTF(path);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -18,6 +18,7 @@ package org.codehaus.tycho.osgicompiler.copied;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -299,7 +300,7 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		CompilerConfiguration compilerConfiguration = getCompilerConfiguration(compileSourceRoots);
 
 		// TODO: have an option to always compile (without need to clean)
-		Set staleSources;
+		Set<File> staleSources;
 
 		boolean canUpdateTarget;
 
@@ -322,6 +323,8 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 
 				compilerConfiguration.setSourceFiles(sources);
 			} else {
+				staleSources = getAffectedSources(compilerConfiguration, staleSources);
+
 				compilerConfiguration.setSourceFiles(staleSources);
 			}
 		} catch (CompilerException e) {
@@ -386,23 +389,43 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		// Compile!
 		// ----------------------------------------------------------------------
 
-		List messages;
-
-		try {
-			messages = compiler.compile(compilerConfiguration);
-		} catch (Exception e) {
-			// TODO: don't catch Exception
-			throw new MojoExecutionException("Fatal error compiling", e);
-		}
+		List messages = new ArrayList();
 
 		boolean compilationError = false;
 
-		for (Iterator i = messages.iterator(); i.hasNext();) {
-			CompilerError message = (CompilerError) i.next();
+		while (true) {
+			List roundMessages;
+
+			try {
+				roundMessages = compiler.compile(compilerConfiguration);
+			} catch (Exception e) {
+				// TODO: don't catch Exception
+				throw new MojoExecutionException("Fatal error compiling", e);
+			}
+
+			messages.addAll(roundMessages);
+
+			for (Iterator i = roundMessages.iterator(); i.hasNext();) {
+				CompilerError message = (CompilerError) i.next();
+
+				if (message.isError()) {
+					compilationError = true;
+				}
+			}
+
+			if (compilationError) {
+				break;
+			}
+
+			Set<File> dependentSources = getDependentSources(
+					compilerConfiguration, compilerConfiguration
+							.getSourceFiles());
 
-			if (message.isError()) {
-				compilationError = true;
+			if (dependentSources.isEmpty()) {
+				break;
 			}
+
+			compilerConfiguration.setSourceFiles(dependentSources);
 		}
 
 		if (compilationError) {
@@ -416,6 +439,28 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * Returns the sources to compile, given the sources that are newer than
+	 * their class files. Only called for compilers that produce one output file
+	 * per input file.
+	 */
+	protected Set<File> getAffectedSources(
+			CompilerConfiguration compilerConfiguration, Set<File> staleSources)
+			throws MojoExecutionException {
+		return staleSources;
+	}
+
+	/**
+	 * Called after the given sources compiled without errors. Returns
+	 * additional sources to compile, e.g. because they depend on changed
+	 * classes, or an empty set.
+	 */
+	protected Set<File> getDependentSources(
+			CompilerConfiguration compilerConfiguration,
+			Set<File> compiledSources) throws MojoExecutionException {
+		return Collections.emptySet();
+	}
+
 	protected CompilerConfiguration getCompilerConfiguration(List<String> compileSourceRoots) throws MojoExecutionException {
 
 		CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
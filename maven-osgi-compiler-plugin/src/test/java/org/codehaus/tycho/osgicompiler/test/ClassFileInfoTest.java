@@ -0,0 +1,59 @@
+package org.codehaus.tycho.osgicompiler.test;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.codehaus.tycho.osgicompiler.ClassFileInfo;
+
+public class ClassFileInfoTest
+    extends TestCase
+{
+    public void testGenericSignatures()
+        throws Exception
+    {
+        Set<String> types = read( Generic.class ).getReferencedTypes();
+
+        assertTrue( types.toString(), types.contains( "java/lang/Runnable" ) );
+        assertTrue( types.toString(), types.contains( "java/util/Map" ) );
+        assertTrue( types.toString(), types.contains( "java/lang/Number" ) );
+        assertTrue( types.toString(), types.contains( "java/util/List" ) );
+        assertTrue( types.toString(), types.contains( "java/lang/Integer" ) );
+
+        // names of type variables are no types, even if they start with 'L'
+        for ( String type : types )
+        {
+            assertTrue( types.toString(), type.indexOf( '/' ) > 0 );
+        }
+    }
+
+    private static ClassFileInfo read( Class<?> type )
+        throws Exception
+    {
+        InputStream is = type.getResourceAsStream( type.getName().substring( type.getName().lastIndexOf( '.' ) + 1 )
+            + ".class" );
+        try
+        {
+            return ClassFileInfo.read( is );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    static class Generic<LIST extends Runnable, TYPE>
+    {
+        LIST list;
+
+        Map<LIST, ? extends Number> map;
+
+        <LOCAL extends List<TYPE>> LOCAL get( Class<? super Integer> type )
+        {
+            return null;
+        }
+    }
+}
@@ -143,6 +143,20 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
 		assertEquals(2, sourcepath.size());
 	}
 
+	public void test_multipleOutputJars_concurrently() throws Exception {
+		File basedir = getBasedir("projects/multijar");
+		List<MavenProject> projects = getSortedProjects(basedir, null);
+
+		MavenProject project = projects.get(0);
+		AbstractOsgiCompilerMojo mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "threads", Integer.valueOf(2));
+		mojo.execute();
+
+		// library.jar references classes of . and must be compiled after it
+		assertTrue(new File(project.getBasedir(), "target/classes/src/Src.class").canRead());
+		assertTrue(new File(project.getBasedir(), "target/library.jar-classes/src2/Src2.class").canRead());
+	}
+
 	public void test_multipleOutputJars_getSourcepath() throws Exception {
         File basedir = getBasedir("projects/multijar");
         List<MavenProject> projects = getSortedProjects(basedir, null);
@@ -170,6 +184,30 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
 		assertTrue(new File(project.getBasedir(), "target/classes/testresources/test.properties").canRead());
 	}
 
+	public void testCopyResourcesIncrementally() throws Exception {
+		File basedir = getBasedir("projects/resources/p001");
+		List<MavenProject> projects = getSortedProjects(basedir, null);
+		MavenProject project = projects.get(0);
+		File source = new File(basedir, "src/testresources/test.properties");
+		File target = new File(basedir, "target/classes/testresources/test.properties");
+		FileUtils.fileWrite(source.getAbsolutePath(), "key=value");
+		getMojo(projects, project).execute();
+		assertEquals("key=value", FileUtils.fileRead(target));
+		assertEquals(source.lastModified(), target.lastModified());
+
+		// resources with same length and timestamp are not copied again
+		FileUtils.fileWrite(target.getAbsolutePath(), "key=other");
+		target.setLastModified(source.lastModified());
+		getMojo(projects, project).execute();
+		assertEquals("key=other", FileUtils.fileRead(target));
+
+		// removed resources are deleted, class files are kept
+		assertTrue(source.delete());
+		getMojo(projects, project).execute();
+		assertFalse(target.exists());
+		assertTrue(new File(basedir, "target/classes/testresources/Test.class").canRead());
+	}
+
 	public void testExcludeCopyResources() throws Exception { 
 		File basedir = getBasedir("projects/resources/p002");
 		List<MavenProject> projects = getSortedProjects(basedir, null);
@@ -228,4 +266,70 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
         mojo.execute();
         assertTrue( new File( projects.get(3).getBasedir(), "target/classes/a/A.class" ).canRead() );
     }
+
+    public void testIncrementalCompilation()
+        throws Exception
+    {
+        File basedir = getBasedir( "projects/incremental/p001" );
+        List<MavenProject> projects = getSortedProjects( basedir, null );
+        MavenProject project = projects.get( 0 );
+
+        AbstractOsgiCompilerMojo mojo = getMojo( projects, project );
+        setVariableValueToObject( mojo, "incremental", Boolean.TRUE );
+        mojo.execute();
+
+        File classA = new File( basedir, "target/classes/a/A.class" );
+        File classB = new File( basedir, "target/classes/b/B.class" );
+        File classC = new File( basedir, "target/classes/c/C.class" );
+        assertTrue( classA.canRead() );
+        assertTrue( classB.canRead() );
+        assertTrue( classC.canRead() );
+        assertTrue( new File( basedir, "target/classes.incremental" ).canRead() );
+
+        // recompiled class files get the current time
+        long marker = ( System.currentTimeMillis() / 1000 + 3600 ) * 1000;
+        classB.setLastModified( marker );
+        classC.setLastModified( marker );
+
+        // implementation change, dependent B is not recompiled
+        File sourceA = new File( basedir, "src/a/A.java" );
+        FileUtils.fileWrite( sourceA.getAbsolutePath(),
+                             "package a; public class A { public static String getValue() { return \"changed\"; } }" );
+        sourceA.setLastModified( marker + 1000 );
+        mojo = getMojo( projects, project );
+        setVariableValueToObject( mojo, "incremental", Boolean.TRUE );
+        mojo.execute();
+        assertEquals( marker, classB.lastModified() );
+        assertEquals( marker, classC.lastModified() );
+
+        // api change, dependent B is recompiled
+        FileUtils.fileWrite( sourceA.getAbsolutePath(), "package a; public class A { "
+            + "public static String getValue() { return \"changed\"; } public static void newMethod() {} }" );
+        sourceA.setLastModified( marker + 2000 );
+        mojo = getMojo( projects, project );
+        setVariableValueToObject( mojo, "incremental", Boolean.TRUE );
+        mojo.execute();
+        assertFalse( marker == classB.lastModified() );
+        assertEquals( marker, classC.lastModified() );
+    }
+
+    public void testNonIncrementalCompilationDiscardsState()
+        throws Exception
+    {
+        File basedir = getBasedir( "projects/incremental/p001" );
+        List<MavenProject> projects = getSortedProjects( basedir, null );
+        MavenProject project = projects.get( 0 );
+
+        AbstractOsgiCompilerMojo mojo = getMojo( projects, project );
+        setVariableValueToObject( mojo, "incremental", Boolean.TRUE );
+        mojo.execute();
+        File state = new File( basedir, "target/classes.incremental" );
+        assertTrue( state.canRead() );
+
+        // the state would not reflect sources compiled by this build
+        mojo = getMojo( projects, project );
+        setVariableValueToObject( mojo, "incremental", Boolean.FALSE );
+        mojo.execute();
+        assertFalse( state.exists() );
+    }
 }
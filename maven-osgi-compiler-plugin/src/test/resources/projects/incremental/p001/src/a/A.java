@@ -0,0 +1,7 @@
+package a;
+
+public class A {
+	public static String getValue() {
+		return "value";
+	}
+}
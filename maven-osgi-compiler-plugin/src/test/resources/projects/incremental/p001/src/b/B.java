@@ -0,0 +1,9 @@
+package b;
+
+import a.A;
+
+public class B {
+	public String getValue() {
+		return A.getValue();
+	}
+}
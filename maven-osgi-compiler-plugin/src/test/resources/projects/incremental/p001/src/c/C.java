@@ -0,0 +1,4 @@
+package c;
+
+public class C {
+}
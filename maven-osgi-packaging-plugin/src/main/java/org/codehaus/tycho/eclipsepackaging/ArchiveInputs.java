@@ -0,0 +1,207 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.archiver.ManifestConfiguration;
+import org.apache.maven.archiver.ManifestSection;
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.tycho.utils.DigestUtils;
+
+/**
+ * Digest of everything that goes into an archive, used to skip creation of archives whose inputs did not change.
+ * <p>
+ * Files are represented by their archive path, length and timestamp, small files that are generated on each build,
+ * like the manifest with the expanded qualifier, by their content. The digest is stored in a stamp file together with
+ * length and timestamp of the created archive, so archives that were modified or deleted since are created again.
+ */
+public class ArchiveInputs
+{
+    private static final int MAGIC = 0x54414943; // "TAIC"
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final MessageDigest digest;
+
+    public ArchiveInputs()
+    {
+        digest = DigestUtils.newDigest();
+    }
+
+    /**
+     * Adds all files of a directory, as added to an archive with the given prefix.
+     */
+    public void addDirectory( File directory, String prefix )
+    {
+        addString( "directory:" + prefix );
+        if ( !directory.isDirectory() )
+        {
+            return;
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( directory );
+        scanner.scan();
+        addFiles( directory, prefix, scanner.getIncludedFiles() );
+    }
+
+    /**
+     * Adds the files of a directory that match the given patterns, see
+     * {@link AbstractTychoPackagingMojo#getFileSet(File, List, List)}.
+     */
+    public void addFileSet( File directory, List<String> includes, List<String> excludes, boolean useDefaultExcludes )
+    {
+        addString( "fileset:" + includes + " " + excludes + " " + useDefaultExcludes );
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( directory );
+        scanner.setIncludes( includes.toArray( new String[includes.size()] ) );
+        scanner.setExcludes( excludes.toArray( new String[excludes.size()] ) );
+        if ( useDefaultExcludes )
+        {
+            scanner.addDefaultExcludes();
+        }
+        scanner.scan();
+        addFiles( directory, "", scanner.getIncludedFiles() );
+    }
+
+    private void addFiles( File directory, String prefix, String[] paths )
+    {
+        // scanner order depends on the file system
+        Arrays.sort( paths );
+        for ( String path : paths )
+        {
+            File file = new File( directory, path );
+            addString( "file:" + prefix + path.replace( File.separatorChar, '/' ) + " " + file.length() + " "
+                + file.lastModified() );
+        }
+    }
+
+    /**
+     * Adds the content of a file.
+     */
+    public void addContent( String name, File file )
+        throws IOException
+    {
+        addString( "content:" + name );
+        if ( !file.isFile() )
+        {
+            return;
+        }
+        DigestUtils.update( digest, file );
+    }
+
+    /**
+     * Adds the effective archive configuration, which may be inherited from parent poms or set on the command line,
+     * so it is not covered by the content of the project pom.
+     */
+    public void addArchiveConfiguration( MavenArchiveConfiguration archive )
+        throws IOException
+    {
+        addString( "archive:" + archive.isCompress() + " " + archive.isIndex() + " " + archive.isAddMavenDescriptor() );
+
+        ManifestConfiguration manifest = archive.getManifest();
+        addString( "archive.manifest:" + manifest.getMainClass() + " " + manifest.getPackageName() + " "
+            + manifest.isAddClasspath() + " " + manifest.getClasspathPrefix() + " " + manifest.isAddExtensions() + " "
+            + manifest.isAddDefaultImplementationEntries() + " " + manifest.isAddDefaultSpecificationEntries() );
+
+        addEntries( "archive.manifestEntries", archive.getManifestEntries() );
+        for ( Object section : archive.getManifestSections() )
+        {
+            addEntries( "archive.manifestSection:" + ( (ManifestSection) section ).getName(),
+                        ( (ManifestSection) section ).getManifestEntries() );
+        }
+
+        if ( archive.getManifestFile() != null )
+        {
+            addContent( "archive.manifestFile", archive.getManifestFile() );
+        }
+        if ( archive.getPomPropertiesFile() != null )
+        {
+            addContent( "archive.pomPropertiesFile", archive.getPomPropertiesFile() );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void addEntries( String name, Map entries )
+    {
+        // configured order is not significant
+        addString( name + ":" + ( entries != null ? new TreeMap<Object, Object>( entries ) : null ) );
+    }
+
+    public void addString( String str )
+    {
+        DigestUtils.update( digest, str );
+        digest.update( (byte) '\n' );
+    }
+
+    /**
+     * Completes the digest. No inputs can be added afterwards.
+     */
+    public String getDigest()
+    {
+        return DigestUtils.toHex( digest.digest() );
+    }
+
+    /**
+     * @return <code>true</code> if the archive was created from inputs with the given digest and was not modified
+     *         since
+     */
+    public static boolean isUpToDate( File archive, File stampFile, String digest )
+    {
+        if ( !archive.isFile() || !stampFile.isFile() )
+        {
+            return false;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( stampFile ) ) );
+            try
+            {
+                return in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && digest.equals( in.readUTF() )
+                    && archive.length() == in.readLong() && archive.lastModified() == in.readLong();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // corrupted or truncated, archive will be created again
+            return false;
+        }
+    }
+
+    /**
+     * Records that the archive was created from inputs with the given digest.
+     */
+    public static void writeStamp( File archive, File stampFile, String digest )
+        throws IOException
+    {
+        stampFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( stampFile ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeUTF( digest );
+            out.writeLong( archive.length() );
+            out.writeLong( archive.lastModified() );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
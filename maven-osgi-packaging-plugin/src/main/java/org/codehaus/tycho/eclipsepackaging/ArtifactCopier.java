@@ -0,0 +1,162 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Copies and unpacks artifacts into update sites and products, avoiding redundant I/O.
+ * <ul>
+ * <li>Files are copied with {@link FileChannel#transferTo} and keep their timestamp. Target files with the same length
+ * and timestamp as the source are not copied again, e.g. when a product directory is assembled again without clean.</li>
+ * <li>A jar that is unpacked more than once, e.g. into the product directories of several target environments, is
+ * only inflated the first time. Later unpacks copy the files of the first unpacked directory.</li>
+ * </ul>
+ * One instance should be shared by all assemblers of a build, so unpacked directories are shared across environments.
+ */
+public class ArtifactCopier
+{
+    /**
+     * Directories jars were unpacked to, by jar location, length and timestamp
+     */
+    private final Map<String, File> unpacked = new HashMap<String, File>();
+
+    public void copyFile( File source, File target )
+        throws IOException
+    {
+        if ( target.isFile() && target.length() == source.length() && target.lastModified() == source.lastModified() )
+        {
+            return;
+        }
+
+        target.getParentFile().mkdirs();
+        FileInputStream in = new FileInputStream( source );
+        try
+        {
+            FileOutputStream out = new FileOutputStream( target );
+            try
+            {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while ( position < size )
+                {
+                    position += inChannel.transferTo( position, size - position, outChannel );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        target.setLastModified( source.lastModified() );
+    }
+
+    public void copyDirectory( File source, File target )
+        throws IOException
+    {
+        File[] files = source.listFiles();
+        if ( files == null )
+        {
+            throw new IOException( "Could not list directory " + source.getAbsolutePath() );
+        }
+        target.mkdirs();
+        for ( File file : files )
+        {
+            if ( file.isDirectory() )
+            {
+                copyDirectory( file, new File( target, file.getName() ) );
+            }
+            else
+            {
+                copyFile( file, new File( target, file.getName() ) );
+            }
+        }
+    }
+
+    public void unpackJar( File jar, File target )
+        throws IOException
+    {
+        String key = jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified();
+        File previous = unpacked.get( key );
+        if ( previous != null && previous.isDirectory() && !previous.equals( target ) )
+        {
+            copyDirectory( previous, target );
+            return;
+        }
+
+        target.mkdirs();
+        if ( !target.isDirectory() )
+        {
+            throw new IOException( "Could not create output directory " + target.getAbsolutePath() );
+        }
+
+        String targetPath = target.getCanonicalPath() + File.separator;
+        ZipFile zip = new ZipFile( jar );
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while ( entries.hasMoreElements() )
+            {
+                ZipEntry entry = entries.nextElement();
+                File file = new File( target, entry.getName() );
+                // entries like ../../file must not be written outside of the target directory
+                if ( !( file.getCanonicalPath() + File.separator ).startsWith( targetPath ) )
+                {
+                    throw new IOException( "Entry " + entry.getName() + " of " + jar.getAbsolutePath()
+                        + " is outside of the target directory" );
+                }
+                if ( entry.isDirectory() )
+                {
+                    file.mkdirs();
+                    continue;
+                }
+
+                file.getParentFile().mkdirs();
+                InputStream is = zip.getInputStream( entry );
+                try
+                {
+                    OutputStream os = new FileOutputStream( file );
+                    try
+                    {
+                        IOUtil.copy( is, os );
+                    }
+                    finally
+                    {
+                        os.close();
+                    }
+                }
+                finally
+                {
+                    is.close();
+                }
+                if ( entry.getTime() != -1 )
+                {
+                    file.setLastModified( entry.getTime() );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        unpacked.put( key, target );
+    }
+}
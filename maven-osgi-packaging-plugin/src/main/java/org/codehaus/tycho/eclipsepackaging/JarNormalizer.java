@@ -0,0 +1,152 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Rewrites jars so that jars created from the same inputs are identical byte for byte, independent of when and in
+ * which order the archiver added the entries.
+ * <ul>
+ * <li>Entries are sorted by name. The manifest stays first, where {@link java.util.jar.JarInputStream} expects it.</li>
+ * <li>All entries get the same timestamp, see {@link #TIMESTAMP}.</li>
+ * <li>Comments are removed from <code>pom.properties</code> files, which Maven writes with the build date.</li>
+ * </ul>
+ */
+public class JarNormalizer
+{
+    /**
+     * Timestamp of all normalized entries, 1980-02-01 00:00 local time. Zip entries store local time, so this is
+     * stored the same in all time zones, and is safely after 1980-01-01, the earliest time zip entries can store.
+     */
+    public static final long TIMESTAMP = new GregorianCalendar( 1980, 1, 1, 0, 0, 0 ).getTimeInMillis();
+
+    private static final String MANIFEST_DIR = "META-INF/";
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final Comparator<ZipEntry> ENTRY_ORDER = new Comparator<ZipEntry>()
+    {
+        public int compare( ZipEntry o1, ZipEntry o2 )
+        {
+            int rank = getRank( o1.getName() ) - getRank( o2.getName() );
+            return rank != 0 ? rank : o1.getName().compareTo( o2.getName() );
+        }
+
+        private int getRank( String name )
+        {
+            if ( MANIFEST_DIR.equals( name ) )
+            {
+                return 0;
+            }
+            else if ( MANIFEST.equalsIgnoreCase( name ) )
+            {
+                return 1;
+            }
+            return 2;
+        }
+    };
+
+    public static void normalize( File jar )
+        throws IOException
+    {
+        File tmpFile = File.createTempFile( jar.getName(), ".tmp", jar.getParentFile() );
+        try
+        {
+            ZipFile zip = new ZipFile( jar );
+            try
+            {
+                List<ZipEntry> entries = new ArrayList<ZipEntry>();
+                for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+                {
+                    entries.add( e.nextElement() );
+                }
+                Collections.sort( entries, ENTRY_ORDER );
+
+                ZipOutputStream os = new ZipOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
+                try
+                {
+                    for ( ZipEntry entry : entries )
+                    {
+                        ZipEntry normalized = new ZipEntry( entry.getName() );
+                        normalized.setTime( TIMESTAMP );
+                        os.putNextEntry( normalized );
+                        InputStream is = zip.getInputStream( entry );
+                        try
+                        {
+                            if ( isPomProperties( entry.getName() ) )
+                            {
+                                os.write( removeComments( is ) );
+                            }
+                            else
+                            {
+                                IOUtil.copy( is, os );
+                            }
+                        }
+                        finally
+                        {
+                            is.close();
+                        }
+                        os.closeEntry();
+                    }
+                }
+                finally
+                {
+                    os.close();
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+
+            jar.delete();
+            if ( !tmpFile.renameTo( jar ) )
+            {
+                throw new IOException( "Could not replace " + jar.getAbsolutePath() );
+            }
+        }
+        finally
+        {
+            tmpFile.delete();
+        }
+    }
+
+    private static boolean isPomProperties( String name )
+    {
+        return name.startsWith( "META-INF/maven/" ) && name.endsWith( "/pom.properties" );
+    }
+
+    private static byte[] removeComments( InputStream is )
+        throws IOException
+    {
+        // properties files are ISO-8859-1
+        BufferedReader reader = new BufferedReader( new InputStreamReader( is, "ISO-8859-1" ) );
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        String line;
+        while ( ( line = reader.readLine() ) != null )
+        {
+            if ( !line.startsWith( "#" ) )
+            {
+                result.write( ( line + "\n" ).getBytes( "ISO-8859-1" ) );
+            }
+        }
+        return result.toByteArray();
+    }
+}
@@ -7,8 +7,14 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
@@ -61,6 +67,12 @@ public class PackagePluginMojo extends AbstractTychoPackagingMojo {
 	 */
 	private MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
 
+	/**
+	 * @parameter expression="${plugin.version}"
+	 * @readonly
+	 */
+	private String pluginVersion;
+
 	public void execute() throws MojoExecutionException {
 		pdeProject = (EclipsePluginProject) project.getContextValue( TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT );
 		
@@ -73,38 +85,98 @@ public class PackagePluginMojo extends AbstractTychoPackagingMojo {
 		project.getArtifact().setFile(pluginFile);
 	}
 
+	/**
+	 * Nested jars are independent of each other and created concurrently.
+	 */
 	private void createSubJars() throws MojoExecutionException {
 	    BuildOutputJar dotOutputJar = pdeProject.getDotOutputJar();
         String dotOutputJarName = dotOutputJar != null ? dotOutputJar.getName() : ".";
+        List<BuildOutputJar> subJars = new ArrayList<BuildOutputJar>();
 		for (BuildOutputJar jar : pdeProject.getOutputJars()) {
             if (!jar.getName().equals( dotOutputJarName )) {
-				makeJar(jar.getName(), jar.getOutputDirectory());
+				subJars.add(jar);
+			}
+		}
+		if (subJars.size() == 1) {
+			makeJar(subJars.get(0).getName(), subJars.get(0).getOutputDirectory());
+			return;
+		} else if (subJars.isEmpty()) {
+			return;
+		}
+
+		int threads = Math.min(subJars.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<File>> futures = new ArrayList<Future<File>>();
+			for (final BuildOutputJar jar : subJars) {
+				futures.add(executor.submit(new Callable<File>() {
+					public File call() throws MojoExecutionException {
+						return makeJar(jar.getName(), jar.getOutputDirectory());
+					}
+				}));
 			}
+			for (Future<File> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while creating nested jars", e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof MojoExecutionException) {
+						throw (MojoExecutionException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new MojoExecutionException(cause.getMessage(), cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
 	private File makeJar(String jarName, File classesFolder) throws MojoExecutionException {
 		try {
 			File jarFile = new File(project.getBasedir(), jarName);
+			ArchiveInputs inputs = new ArchiveInputs();
+			inputs.addDirectory(classesFolder, "");
+			inputs.addString("plugin:" + pluginVersion);
+			String digest = inputs.getDigest();
+			File stampFile = getStampFile(jarName);
+			if (ArchiveInputs.isUpToDate(jarFile, stampFile, digest)) {
+				getLog().info("Nested jar " + jarName + " is up to date");
+				return jarFile;
+			}
+
 			JarArchiver archiver = new JarArchiver();
 			archiver.setDestFile(jarFile);
 			archiver.addDirectory(classesFolder);
 	        archiver.createArchive();
+	        JarNormalizer.normalize(jarFile);
+	        ArchiveInputs.writeStamp(jarFile, stampFile, digest);
 			return jarFile;
 		} catch (Exception e) {
 			throw new MojoExecutionException("Could not create jar " + jarName, e);
 		}
 	}
 
+	/**
+	 * @return location of the digest of the inputs the given archive was last created from
+	 */
+	private File getStampFile(String archiveName) {
+		return new File(buildDirectory, "archive-inputs/" + archiveName + ".inputs");
+	}
+
 	private File createPluginJar() throws MojoExecutionException {
 		try {
 			MavenArchiver archiver = new MavenArchiver();
 			archiver.setArchiver(jarArchiver);
 
 			File pluginFile = new File(buildDirectory, finalName + ".jar");
-			if (pluginFile.exists()) {
-				pluginFile.delete();
-			}
+			ArchiveInputs inputs = new ArchiveInputs();
 			Properties buildProperties = pdeProject.getBuildProperties();
 			List<String> binInludesList = toFilePattern(buildProperties.getProperty("bin.includes"));
 			List<String> binExcludesList = toFilePattern(buildProperties.getProperty("bin.excludes"));
@@ -121,10 +193,12 @@ public class PackagePluginMojo extends AbstractTychoPackagingMojo {
 				    prefix = "";
 				}
 				archiver.getArchiver().addDirectory(dotOutputJar.getOutputDirectory(), prefix);
+				inputs.addDirectory(dotOutputJar.getOutputDirectory(), prefix);
 			}
 			
 			if (binInludesList.size() > 0) {
 				archiver.getArchiver().addFileSet(getFileSet(project.getBasedir(), binInludesList, binExcludesList));
+				inputs.addFileSet(project.getBasedir(), binInludesList, binExcludesList, useDefaultExcludes);
 			}
 
 			File manifest = updateManifest();
@@ -132,15 +206,34 @@ public class PackagePluginMojo extends AbstractTychoPackagingMojo {
 				archive.setManifestFile(manifest);
 			}
 
+			// the manifest contains the expanded qualifier. The archive configuration may be inherited, and
+			// another version of this plugin may create different archives from the same inputs
+			inputs.addContent("manifest", manifest);
+			inputs.addContent("pom", project.getFile());
+			inputs.addArchiveConfiguration(archive);
+			inputs.addString("plugin:" + pluginVersion);
+			String digest = inputs.getDigest();
+			File stampFile = getStampFile(pluginFile.getName());
+			if (ArchiveInputs.isUpToDate(pluginFile, stampFile, digest)) {
+				getLog().info("Plugin jar is up to date");
+				return pluginFile;
+			}
+			if (pluginFile.exists()) {
+				pluginFile.delete();
+			}
+
 			archiver.setOutputFile(pluginFile);
             if ( !archive.isForced() )
             {
-                // optimized archive creation not supported for now because of build qualifier mismatch issues
-                // see TYCHO-502
+                // plexus up-to-date check not supported because of build qualifier mismatch issues, see TYCHO-502.
+                // unchanged jars are detected above, based on inputs including the expanded qualifier
                 getLog().warn( "ignoring unsupported archive forced = false parameter." );
                 archive.setForced( true );
             }
 			archiver.createArchive(project, archive);
+			// entry order and timestamps depend on the archiver and on the time of the build
+			JarNormalizer.normalize(pluginFile);
+			ArchiveInputs.writeStamp(pluginFile, stampFile, digest);
 
 			return pluginFile;
 		} catch (Exception e) {
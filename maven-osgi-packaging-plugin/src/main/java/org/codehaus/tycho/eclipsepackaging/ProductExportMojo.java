@@ -116,6 +116,11 @@ public class ProductExportMojo
      */
     private BundleReader manifestReader;
 
+    /**
+     * Shared by all target environments, so bundles are unpacked only once
+     */
+    private final ArtifactCopier copier = new ArtifactCopier();
+
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
@@ -156,6 +161,7 @@ public class ProductExportMojo
 
                 ProductAssembler assembler = new ProductAssembler( session, manifestReader, targetEclipse, environment );
                 assembler.setIncludeSources( includeSources );
+                assembler.setCopier( copier );
                 getDependencyWalker( environment ).walk( assembler );
 
                 if ( productConfiguration.includeLaunchers() )
@@ -185,6 +191,7 @@ public class ProductExportMojo
 
             ProductAssembler assembler = new ProductAssembler( session, manifestReader, targetEclipse, null );
             assembler.setIncludeSources( includeSources );
+            assembler.setCopier( copier );
             if ( forcePackedDependencies )
             {
                 assembler.setUnpackFeatures( false );
@@ -885,9 +892,7 @@ public class ProductExportMojo
 
         for ( String relPath : ds.getIncludedFiles() )
         {
-            File targetFile = new File( target, relPath );
-            targetFile.getParentFile().mkdirs();
-            FileUtils.copyFile( new File( source, relPath ), targetFile );
+            copier.copyFile( new File( source, relPath ), new File( target, relPath ) );
         }
     }
 
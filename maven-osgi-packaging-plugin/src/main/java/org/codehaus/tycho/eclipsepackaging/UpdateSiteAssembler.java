@@ -7,21 +7,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.maven.execution.MavenSession;
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.gzip.GZipCompressor;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
-import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
-import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.tycho.ArtifactDependencyVisitor;
 import org.codehaus.tycho.FeatureDescription;
 import org.codehaus.tycho.PluginDescription;
 import org.codehaus.tycho.eclipsepackaging.pack200.Pack200Archiver;
 import org.codehaus.tycho.model.PluginRef;
+import org.codehaus.tycho.utils.DigestUtils;
 import org.sonatype.tycho.ReactorProject;
 
 /**
@@ -44,7 +56,8 @@ public class UpdateSiteAssembler
     private Map<String, String> archives;
 
     /**
-     * If true, will copy/generate pack200 archives in additional to plugin jar files.
+     * If true, will copy/generate pack200 archives in additional to plugin jar files. Unsigned jars are pack200
+     * conditioned, i.e. replaced by the jar unpacked from their archive.
      */
     private boolean pack200;
 
@@ -60,6 +73,22 @@ public class UpdateSiteAssembler
      */
     private boolean unpackFeatures;
 
+    /**
+     * Directory of pack200 archives from earlier builds, by checksum of the jar before it was conditioned, or
+     * <code>null</code>.
+     */
+    private File pack200Cache;
+
+    /** Creates pack200 archives concurrently with copying the remaining jars */
+    private ExecutorService packExecutor;
+
+    private final List<Future<?>> packResults = new ArrayList<Future<?>>();
+
+    /** Jars that were shipped with pack200 archives, which must not be copied again while they are conditioned */
+    private final Set<File> packedJars = new HashSet<File>();
+
+    private ArtifactCopier copier = new ArtifactCopier();
+
     public UpdateSiteAssembler( MavenSession session, File target )
     {
         this.session = session;
@@ -186,6 +215,12 @@ public class UpdateSiteAssembler
             // need a jar
             File outputJar = getOutputFile( PLUGINS_DIR, bundleId, version, ".jar" );
 
+            if ( pack200 && !packedJars.add( outputJar ) )
+            {
+                // already copied and possibly being conditioned
+                return;
+            }
+
             if ( location.isDirectory() )
             {
                 packDir( location, outputJar );
@@ -195,10 +230,10 @@ public class UpdateSiteAssembler
                 copyFile( location, outputJar );
             }
 
-            // if ( pack200 )
-            // {
-            // shipPack200( outputJar );
-            // }
+            if ( pack200 )
+            {
+                shipPack200( outputJar );
+            }
         }
     }
 
@@ -210,31 +245,11 @@ public class UpdateSiteAssembler
 
     private void unpackJar( File location, File outputJar )
     {
-        ZipUnArchiver unzip;
-        try
-        {
-            unzip = (ZipUnArchiver) session.lookup( ZipUnArchiver.ROLE, "zip" );
-        }
-        catch ( ComponentLookupException e )
-        {
-            throw new RuntimeException( "Could not lookup required component", e );
-        }
-
-        outputJar.mkdirs();
-
-        if ( !outputJar.isDirectory() )
-        {
-            throw new RuntimeException( "Could not create output directory " + outputJar.getAbsolutePath() );
-        }
-
-        unzip.setSourceFile( location );
-        unzip.setDestDirectory( outputJar );
-
         try
         {
-            unzip.extract();
+            copier.unpackJar( location, outputJar );
         }
-        catch ( ArchiverException e )
+        catch ( IOException e )
         {
             throw new RuntimeException( "Could not unpack jar", e );
         }
@@ -244,7 +259,7 @@ public class UpdateSiteAssembler
     {
         try
         {
-            FileUtils.copyDirectoryStructure( location, outputJar );
+            copier.copyDirectory( location, outputJar );
         }
         catch ( IOException e )
         {
@@ -285,7 +300,7 @@ public class UpdateSiteAssembler
     {
         try
         {
-            FileUtils.copyFile( source, destination );
+            copier.copyFile( source, destination );
         }
         catch ( IOException e )
         {
@@ -293,37 +308,192 @@ public class UpdateSiteAssembler
         }
     }
 
-    private void shipPack200( File jar )
+    /**
+     * Conditions the given jar and creates its pack200 archive in the background, see {@link #finish()}.
+     */
+    void shipPack200( final File jar )
+    {
+        if ( packExecutor == null )
+        {
+            packExecutor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+        }
+        packResults.add( packExecutor.submit( new Callable<Object>()
+        {
+            public Object call()
+                throws IOException
+            {
+                pack200( jar );
+                return null;
+            }
+        } ) );
+    }
+
+    private void pack200( File jar )
+        throws IOException
     {
-        // TODO validate if the jar has been pack200 pre-conditioned
+        Properties eclipseInf = getEclipseInf( jar );
+        if ( Boolean.parseBoolean( eclipseInf.getProperty( "jarprocessor.exclude.pack" ) ) )
+        {
+            return;
+        }
+        // conditioning rewrites the jar, so signed jars can only be packed if they were conditioned before signing
+        boolean conditioned = Boolean.parseBoolean( eclipseInf.getProperty( "pack200.conditioned" ) );
+        if ( !conditioned && isSigned( jar ) )
+        {
+            return;
+        }
 
-        File outputPack = new File( jar.getParentFile(), jar.getName() + ".pack" );
+        File outputPack = new File( jar.getParentFile(), jar.getName() + ".pack.gz" );
+
+        File cachedPack = null;
+        if ( pack200Cache != null )
+        {
+            cachedPack = new File( pack200Cache, DigestUtils.digest( jar ) + ".pack.gz" );
+            if ( cachedPack.isFile() )
+            {
+                copier.copyFile( cachedPack, outputPack );
+                if ( !conditioned )
+                {
+                    Pack200Archiver.unpack( outputPack, jar );
+                }
+                return;
+            }
+        }
 
         Pack200Archiver packArchiver = new Pack200Archiver();
         packArchiver.setSourceJar( jar );
         packArchiver.setDestFile( outputPack );
-        try
+        if ( conditioned )
         {
             packArchiver.createArchive();
         }
-        catch ( IOException e )
+        else
         {
-            throw new RuntimeException( "Could not create pack200 archive", e );
+            packArchiver.createConditionedArchive();
         }
 
-        GZipCompressor gzCompressor = new GZipCompressor();
-        gzCompressor.setDestFile( new File( jar.getParentFile(), jar.getName() + ".pack.gz" ) );
-        gzCompressor.setSourceFile( outputPack );
+        if ( cachedPack != null )
+        {
+            // rename a unique temporary file, so concurrent builds never see partial files
+            pack200Cache.mkdirs();
+            File tmpFile = File.createTempFile( cachedPack.getName(), ".tmp", pack200Cache );
+            try
+            {
+                copier.copyFile( outputPack, tmpFile );
+                tmpFile.renameTo( cachedPack );
+            }
+            finally
+            {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the properties of <code>META-INF/eclipse.inf</code> of the given jar, which control its pack200
+     *         processing
+     */
+    private static Properties getEclipseInf( File jar )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        ZipFile zip = new ZipFile( jar );
         try
         {
-            gzCompressor.execute();
+            ZipEntry entry = zip.getEntry( "META-INF/eclipse.inf" );
+            if ( entry != null )
+            {
+                InputStream is = zip.getInputStream( entry );
+                try
+                {
+                    properties.load( is );
+                }
+                finally
+                {
+                    is.close();
+                }
+            }
         }
-        catch ( ArchiverException e )
+        finally
         {
-            throw new RuntimeException( e.getMessage(), e );
+            zip.close();
         }
+        return properties;
+    }
 
-        outputPack.delete();
+    private static boolean isSigned( File jar )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( jar );
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while ( entries.hasMoreElements() )
+            {
+                String name = entries.nextElement().getName().toUpperCase( Locale.ENGLISH );
+                if ( name.startsWith( "META-INF/" ) && name.endsWith( ".SF" ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    /**
+     * Waits until all pack200 archives are created. Must be called after all features and plugins were visited.
+     */
+    public void finish()
+    {
+        try
+        {
+            for ( Future<?> result : packResults )
+            {
+                try
+                {
+                    result.get();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException( "Interrupted while creating pack200 archives", e );
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    else if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException( "Could not create pack200 archive", cause );
+                }
+            }
+        }
+        finally
+        {
+            dispose();
+        }
+    }
+
+    /**
+     * Stops creation of pack200 archives, e.g. after visiting failed.
+     */
+    public void dispose()
+    {
+        if ( packExecutor != null )
+        {
+            packExecutor.shutdownNow();
+            packExecutor = null;
+        }
+        packResults.clear();
     }
 
     private void packDir( File sourceDir, File targetZip )
@@ -364,6 +534,19 @@ public class UpdateSiteAssembler
         this.pack200 = pack200;
     }
 
+    /**
+     * Sets the copier to share unpacked jars with other assemblers.
+     */
+    public void setCopier( ArtifactCopier copier )
+    {
+        this.copier = copier;
+    }
+
+    public void setPack200Cache( File pack200Cache )
+    {
+        this.pack200Cache = pack200Cache;
+    }
+
     public void setUnpackPlugins( boolean unpack )
     {
         this.unpackPlugins = unpack;
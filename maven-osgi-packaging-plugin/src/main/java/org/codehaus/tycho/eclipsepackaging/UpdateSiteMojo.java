@@ -29,6 +29,15 @@ public class UpdateSiteMojo
     /** @parameter */
     private boolean inlineArchives;
 
+    /**
+     * Directory to keep pack200 archives in, by checksum of the jar before it was conditioned. Pack200 archives of jars
+     * that were packed before, e.g. by an earlier build, are copied from this directory instead of being created
+     * again. Only used if site.xml requests pack200 archives.
+     * 
+     * @parameter expression="${tycho.pack200.cacheDirectory}"
+     */
+    private File pack200CacheDirectory;
+
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
@@ -48,12 +57,21 @@ public class UpdateSiteMojo
 
             UpdateSiteAssembler assembler = new UpdateSiteAssembler( session, target );
             assembler.setPack200( site.isPack200() );
+            assembler.setPack200Cache( pack200CacheDirectory );
             if ( inlineArchives )
             {
                 assembler.setArchives( site.getArchives() );
             }
 
-            getDependencyWalker().walk( assembler );
+            try
+            {
+                getDependencyWalker().walk( assembler );
+                assembler.finish();
+            }
+            finally
+            {
+                assembler.dispose();
+            }
             getDependencyWalker().traverseUpdateSite( site, new ArtifactDependencyVisitor()
             {
                 @Override
@@ -1,16 +1,30 @@
 package org.codehaus.tycho.eclipsepackaging.pack200;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
 import java.util.jar.Pack200.Packer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Packs a jar with pack200. If the name of the destination file ends with <code>.gz</code>, the pack200 stream is
+ * gzipped on the fly, without writing the intermediate <code>.pack</code> file.
+ */
 public class Pack200Archiver {
 
+	private static final String GZIP_SUFFIX = ".gz";
+
 	private Map<? extends String, ? extends String> properties;
 
 	private File sourceJar;
@@ -37,16 +51,77 @@ public class Pack200Archiver {
 	}
 
 	public void createArchive() throws IOException {
-		// Create the Packer object
-		Packer packer = Pack200.newPacker();
+		boolean success = false;
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(getDestFile()));
+		try {
+			if (getDestFile().getName().endsWith(GZIP_SUFFIX)) {
+				GZIPOutputStream gzos = new GZIPOutputStream(os);
+				pack(gzos);
+				gzos.finish();
+			} else {
+				pack(os);
+			}
+			success = true;
+		} finally {
+			os.close();
+			if (!success) {
+				getDestFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * Conditions the source jar for pack200 and creates its archive. The source jar is replaced by the jar unpacked
+	 * from the archive, so the archive unpacks to exactly the conditioned jar. Signatures do not survive this, so
+	 * jars must be conditioned before they are signed.
+	 */
+	public void createConditionedArchive() throws IOException {
+		createArchive();
+		unpack(getDestFile(), getSourceJar());
+	}
 
+	/**
+	 * Unpacks the given pack200 archive, which is gzipped if its name ends with <code>.gz</code>, to the given jar.
+	 */
+	public static void unpack(File packFile, File jar) throws IOException {
+		File tmpFile = File.createTempFile(jar.getName(), ".tmp", jar.getParentFile());
+		try {
+			InputStream is = new BufferedInputStream(new FileInputStream(packFile));
+			try {
+				if (packFile.getName().endsWith(GZIP_SUFFIX)) {
+					is = new GZIPInputStream(is);
+				}
+				JarOutputStream os = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+				try {
+					Pack200.newUnpacker().unpack(is, os);
+				} finally {
+					os.close();
+				}
+			} finally {
+				is.close();
+			}
+			jar.delete();
+			if (!tmpFile.renameTo(jar)) {
+				throw new IOException("Could not replace " + jar.getAbsolutePath());
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Writes the pack200 stream of the source jar to the given stream, which is not closed.
+	 */
+	public void pack(OutputStream os) throws IOException {
+		// packers are not thread safe, so each archive uses its own
+		Packer packer = Pack200.newPacker();
 		packer.properties().putAll(getProperties());
 		JarFile jarFile = new JarFile(getSourceJar());
-		FileOutputStream fos = new FileOutputStream(getDestFile());
-		// Call the packer
-		packer.pack(jarFile, fos);
-		jarFile.close();
-		fos.close();
+		try {
+			packer.pack(jarFile, os);
+		} finally {
+			jarFile.close();
+		}
 	}
 
 	public File getSourceJar() {
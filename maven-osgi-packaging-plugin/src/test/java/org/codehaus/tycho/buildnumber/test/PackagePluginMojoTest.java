@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenExecutionResult;
 import org.apache.maven.execution.MavenSession;
@@ -79,6 +80,60 @@ public class PackagePluginMojoTest extends AbstractTychoMojoTestCase {
         }
 	}
 
+    public void testUnchangedPluginJarIsNotRecreated()
+        throws Exception
+    {
+        File basedir = getBasedir( "projects/binIncludesSpaces" );
+        File classes = new File( basedir, "target/classes" );
+        classes.mkdirs();
+        File resource = new File( classes, "foo.bar" );
+        FileUtils.fileWrite( resource.getCanonicalPath(), "foobar" );
+        execMaven( basedir ).execute();
+
+        File pluginJar = new File( basedir, "target/test.jar" );
+        long lastModified = pluginJar.lastModified();
+
+        // make sure a recreated jar would have a different timestamp
+        Thread.sleep( 1000L );
+        execMaven( basedir ).execute();
+        assertEquals( lastModified, pluginJar.lastModified() );
+
+        FileUtils.fileWrite( resource.getCanonicalPath(), "foobar changed" );
+        execMaven( basedir ).execute();
+        assertTrue( lastModified != pluginJar.lastModified() );
+    }
+
+    public void testPluginJarIsRecreatedForChangedConfiguration()
+        throws Exception
+    {
+        File basedir = getBasedir( "projects/binIncludesSpaces" );
+        File classes = new File( basedir, "target/classes" );
+        classes.mkdirs();
+        FileUtils.fileWrite( new File( classes, "foo.bar" ).getCanonicalPath(), "foobar" );
+        execMaven( basedir ).execute();
+
+        File pluginJar = new File( basedir, "target/test.jar" );
+        long lastModified = pluginJar.lastModified();
+        Thread.sleep( 1000L );
+
+        // archive configuration inherited from a parent pom or set on the command line
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.addManifestEntry( "Built-By", "tycho" );
+        PackagePluginMojo mojo = execMaven( basedir );
+        setVariableValueToObject( mojo, "archive", archive );
+        mojo.execute();
+        assertTrue( lastModified != pluginJar.lastModified() );
+        lastModified = pluginJar.lastModified();
+        Thread.sleep( 1000L );
+
+        // other plugin version
+        mojo = execMaven( basedir );
+        setVariableValueToObject( mojo, "archive", archive );
+        setVariableValueToObject( mojo, "pluginVersion", "0.0.0.other" );
+        mojo.execute();
+        assertTrue( lastModified != pluginJar.lastModified() );
+    }
+
 	public void testNoManifestVersion() throws Exception {
         File basedir = getBasedir( "projects/noManifestVersion" );
         PackagePluginMojo mojo = execMaven(basedir);
@@ -0,0 +1,104 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ArtifactCopierTest
+    extends TestCase
+{
+    private File basedir;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/artifactcopier" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+    }
+
+    public void testUnpackJar()
+        throws Exception
+    {
+        File jar = createJar( "test.jar", "META-INF/", "META-INF/MANIFEST.MF", "p/A.class" );
+        File target = new File( basedir, "target1" );
+
+        ArtifactCopier copier = new ArtifactCopier();
+        copier.unpackJar( jar, target );
+        assertTrue( new File( target, "META-INF/MANIFEST.MF" ).isFile() );
+        assertTrue( new File( target, "p/A.class" ).isFile() );
+
+        // the jar is unpacked again by copying the first directory
+        File other = new File( basedir, "target2" );
+        copier.unpackJar( jar, other );
+        assertEquals( "p/A.class", FileUtils.fileRead( new File( other, "p/A.class" ) ) );
+    }
+
+    public void testEntryOutsideOfTarget()
+        throws Exception
+    {
+        File jar = createJar( "evil.jar", "p/A.class", "../../evil.txt" );
+        File target = new File( basedir, "unpacked/dir" );
+
+        try
+        {
+            new ArtifactCopier().unpackJar( jar, target );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "../../evil.txt" ) );
+        }
+        assertFalse( new File( basedir, "evil.txt" ).exists() );
+    }
+
+    public void testEntryInSiblingDirectory()
+        throws Exception
+    {
+        // shares the name prefix with the target directory
+        File jar = createJar( "evil.jar", "../dir-sibling/evil.txt" );
+        File target = new File( basedir, "dir" );
+
+        try
+        {
+            new ArtifactCopier().unpackJar( jar, target );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        assertFalse( new File( basedir, "dir-sibling/evil.txt" ).exists() );
+    }
+
+    private File createJar( String name, String... entries )
+        throws IOException
+    {
+        File jar = new File( basedir, name );
+        ZipOutputStream os = new ZipOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            for ( String entry : entries )
+            {
+                os.putNextEntry( new ZipEntry( entry ) );
+                if ( !entry.endsWith( "/" ) )
+                {
+                    os.write( entry.getBytes( "UTF-8" ) );
+                }
+                os.closeEntry();
+            }
+        }
+        finally
+        {
+            os.close();
+        }
+        return jar;
+    }
+}
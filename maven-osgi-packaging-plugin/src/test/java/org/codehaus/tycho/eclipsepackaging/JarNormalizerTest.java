@@ -0,0 +1,131 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.tycho.utils.DigestUtils;
+
+public class JarNormalizerTest
+    extends TestCase
+{
+    private static final String POM_PROPERTIES = "META-INF/maven/g/a/pom.properties";
+
+    private File basedir;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/jarnormalizer" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+    }
+
+    public void testSameInputsSameBytes()
+        throws Exception
+    {
+        File jar1 = new File( basedir, "1.jar" );
+        writeJar( jar1, 1000000000000L, "#Mon Sep 20 10:00:00 CEST 2010\nversion=1.0.0\n", "b.txt", "a/", "a/a.txt",
+                  "META-INF/MANIFEST.MF", "META-INF/" );
+        File jar2 = new File( basedir, "2.jar" );
+        writeJar( jar2, 1200000000000L, "#Tue Sep 21 11:00:00 CEST 2010\nversion=1.0.0\n", "META-INF/",
+                  "META-INF/MANIFEST.MF", "a/", "a/a.txt", "b.txt" );
+
+        JarNormalizer.normalize( jar1 );
+        JarNormalizer.normalize( jar2 );
+
+        assertEquals( DigestUtils.digest( jar1 ), DigestUtils.digest( jar2 ) );
+    }
+
+    public void testNormalizedEntries()
+        throws Exception
+    {
+        File jar = new File( basedir, "test.jar" );
+        writeJar( jar, 1000000000000L, "#Mon Sep 20 10:00:00 CEST 2010\nversion=1.0.0\n", "b.txt", "a.txt",
+                  "META-INF/MANIFEST.MF", "META-INF/" );
+
+        JarNormalizer.normalize( jar );
+
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile( jar );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = e.nextElement();
+                names.add( entry.getName() );
+                assertEquals( JarNormalizer.TIMESTAMP, entry.getTime() );
+            }
+            assertEquals( "version=1.0.0\n", IOUtil.toString( zip.getInputStream( zip.getEntry( POM_PROPERTIES ) ),
+                                                              "ISO-8859-1" ) );
+            assertEquals( "b.txt", IOUtil.toString( zip.getInputStream( zip.getEntry( "b.txt" ) ), "UTF-8" ) );
+        }
+        finally
+        {
+            zip.close();
+        }
+        assertEquals( "[META-INF/, META-INF/MANIFEST.MF, META-INF/maven/g/a/pom.properties, a.txt, b.txt]",
+                      names.toString() );
+
+        // the manifest is still found by JarInputStream
+        JarInputStream is = new JarInputStream( new FileInputStream( jar ) );
+        try
+        {
+            assertNotNull( is.getManifest() );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Writes a jar with the given entries, in the given order, and a pom.properties file with the given content.
+     * Files contain their name.
+     */
+    private static void writeJar( File file, long time, String pomProperties, String... names )
+        throws IOException
+    {
+        ZipOutputStream os = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String name : names )
+            {
+                ZipEntry entry = new ZipEntry( name );
+                entry.setTime( time );
+                os.putNextEntry( entry );
+                if ( name.equals( "META-INF/MANIFEST.MF" ) )
+                {
+                    os.write( "Manifest-Version: 1.0\r\n\r\n".getBytes( "UTF-8" ) );
+                }
+                else if ( !name.endsWith( "/" ) )
+                {
+                    os.write( name.getBytes( "UTF-8" ) );
+                }
+                os.closeEntry();
+            }
+            ZipEntry entry = new ZipEntry( POM_PROPERTIES );
+            entry.setTime( time );
+            os.putNextEntry( entry );
+            os.write( pomProperties.getBytes( "ISO-8859-1" ) );
+            os.closeEntry();
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+}
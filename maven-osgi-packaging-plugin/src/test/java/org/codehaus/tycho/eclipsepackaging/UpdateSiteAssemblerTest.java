@@ -0,0 +1,187 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.eclipsepackaging.pack200.Pack200Archiver;
+import org.codehaus.tycho.utils.DigestUtils;
+
+public class UpdateSiteAssemblerTest
+    extends TestCase
+{
+    private File basedir;
+
+    private File site;
+
+    private File cache;
+
+    private File jar;
+
+    private File packFile;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/updatesiteassembler" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        site = new File( basedir, "site" );
+        cache = new File( basedir, "cache" );
+
+        jar = new File( site, UpdateSiteAssembler.PLUGINS_DIR + "test_1.0.0.jar" );
+        jar.getParentFile().mkdirs();
+        writeJar( jar, "test.properties", "key=value" );
+        packFile = new File( jar.getParentFile(), jar.getName() + ".pack.gz" );
+    }
+
+    public void testConditioning()
+        throws Exception
+    {
+        shipPack200( null );
+
+        // the archive unpacks to exactly the shipped jar
+        File unpacked = new File( basedir, "unpacked.jar" );
+        Pack200Archiver.unpack( packFile, unpacked );
+        assertEquals( DigestUtils.digest( jar ), DigestUtils.digest( unpacked ) );
+        assertHasEntry( jar, "test.properties" );
+    }
+
+    public void testPack200Cache()
+        throws Exception
+    {
+        File original = new File( basedir, "original.jar" );
+        FileUtils.copyFile( jar, original );
+        shipPack200( cache );
+        assertTrue( packFile.isFile() );
+
+        // archives are cached by checksum of the jar before it was conditioned
+        File cachedPack = new File( cache, DigestUtils.digest( original ) + ".pack.gz" );
+        assertTrue( cachedPack.isFile() );
+        assertEquals( DigestUtils.digest( packFile ), DigestUtils.digest( cachedPack ) );
+        assertEquals( 1, cache.listFiles().length );
+
+        // cached archives are used instead of packing the jar again, and the jar is conditioned from them
+        File other = new File( basedir, "other.jar" );
+        writeJar( other, "other.properties", "" );
+        createArchive( other, cachedPack );
+        FileUtils.copyFile( original, jar );
+        assertTrue( packFile.delete() );
+        shipPack200( cache );
+        assertEquals( DigestUtils.digest( cachedPack ), DigestUtils.digest( packFile ) );
+        assertHasEntry( jar, "other.properties" );
+    }
+
+    public void testChangedJarIsPackedAgain()
+        throws Exception
+    {
+        shipPack200( cache );
+
+        writeJar( jar, "other.properties", "" );
+        assertTrue( packFile.delete() );
+        shipPack200( cache );
+
+        assertEquals( 2, cache.listFiles().length );
+        File unpacked = new File( basedir, "unpacked.jar" );
+        Pack200Archiver.unpack( packFile, unpacked );
+        assertHasEntry( unpacked, "other.properties" );
+    }
+
+    public void testSignedJarIsNotPacked()
+        throws Exception
+    {
+        writeJar( jar, "META-INF/TEST.SF", "Signature-Version: 1.0" );
+        String digest = DigestUtils.digest( jar );
+        shipPack200( null );
+
+        // conditioning would break the signature
+        assertFalse( packFile.exists() );
+        assertEquals( digest, DigestUtils.digest( jar ) );
+    }
+
+    public void testConditionedSignedJarIsPacked()
+        throws Exception
+    {
+        writeJar( jar, "META-INF/TEST.SF", "Signature-Version: 1.0", "META-INF/eclipse.inf", "pack200.conditioned=true" );
+        String digest = DigestUtils.digest( jar );
+        shipPack200( null );
+
+        assertTrue( packFile.isFile() );
+        assertEquals( digest, DigestUtils.digest( jar ) );
+    }
+
+    public void testExcludedJarIsNotPacked()
+        throws Exception
+    {
+        writeJar( jar, "META-INF/eclipse.inf", "jarprocessor.exclude.pack=true" );
+        shipPack200( null );
+
+        assertFalse( packFile.exists() );
+    }
+
+    private void shipPack200( File pack200Cache )
+    {
+        UpdateSiteAssembler assembler = new UpdateSiteAssembler( null, site );
+        assembler.setPack200Cache( pack200Cache );
+        try
+        {
+            assembler.shipPack200( jar );
+            assembler.finish();
+        }
+        finally
+        {
+            assembler.dispose();
+        }
+    }
+
+    /**
+     * @param entries alternating entry names and contents
+     */
+    private static void writeJar( File file, String... entries )
+        throws IOException
+    {
+        JarOutputStream os = new JarOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( int i = 0; i < entries.length; i += 2 )
+            {
+                os.putNextEntry( new ZipEntry( entries[i] ) );
+                os.write( entries[i + 1].getBytes( "UTF-8" ) );
+                os.closeEntry();
+            }
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    private static void createArchive( File sourceJar, File packFile )
+        throws IOException
+    {
+        Pack200Archiver archiver = new Pack200Archiver();
+        archiver.setSourceJar( sourceJar );
+        archiver.setDestFile( packFile );
+        archiver.createArchive();
+    }
+
+    private static void assertHasEntry( File file, String name )
+        throws IOException
+    {
+        JarFile jarFile = new JarFile( file );
+        try
+        {
+            assertNotNull( jarFile.getEntry( name ) );
+        }
+        finally
+        {
+            jarFile.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.codehaus.tycho.eclipsepackaging.pack200;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class Pack200ArchiverTest
+    extends TestCase
+{
+    private File basedir;
+
+    private File jar;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/pack200" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+
+        jar = new File( basedir, "test.jar" );
+        JarOutputStream os = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            os.putNextEntry( new ZipEntry( "test.properties" ) );
+            os.write( "key=value".getBytes( "UTF-8" ) );
+            os.closeEntry();
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    public void testGzippedArchive()
+        throws Exception
+    {
+        File packFile = new File( basedir, "test.jar.pack.gz" );
+        createArchive( packFile );
+
+        // the pack200 stream is gzipped on the fly
+        assertFalse( new File( basedir, "test.jar.pack" ).exists() );
+        assertUnpacks( new GZIPInputStream( new FileInputStream( packFile ) ) );
+    }
+
+    public void testPlainArchive()
+        throws Exception
+    {
+        File packFile = new File( basedir, "test.jar.pack" );
+        createArchive( packFile );
+
+        assertUnpacks( new BufferedInputStream( new FileInputStream( packFile ) ) );
+    }
+
+    public void testNoPartialArchive()
+        throws Exception
+    {
+        File packFile = new File( basedir, "missing.jar.pack.gz" );
+        Pack200Archiver archiver = new Pack200Archiver();
+        archiver.setSourceJar( new File( basedir, "missing.jar" ) );
+        archiver.setDestFile( packFile );
+        try
+        {
+            archiver.createArchive();
+            fail();
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        assertFalse( packFile.exists() );
+    }
+
+    private void createArchive( File packFile )
+        throws IOException
+    {
+        Pack200Archiver archiver = new Pack200Archiver();
+        archiver.setSourceJar( jar );
+        archiver.setDestFile( packFile );
+        archiver.createArchive();
+        assertTrue( packFile.isFile() );
+    }
+
+    private void assertUnpacks( InputStream is )
+        throws IOException
+    {
+        File unpacked = new File( basedir, "unpacked.jar" );
+        try
+        {
+            JarOutputStream os = new JarOutputStream( new FileOutputStream( unpacked ) );
+            try
+            {
+                Pack200.newUnpacker().unpack( is, os );
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+
+        JarFile jarFile = new JarFile( unpacked );
+        try
+        {
+            assertNotNull( jarFile.getEntry( "test.properties" ) );
+        }
+        finally
+        {
+            jarFile.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.AccessRestriction;
+import org.eclipse.jdt.internal.compiler.env.AccessRule;
+import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+/**
+ * Binary name environment of the in-process compiler. Classpath jars are shared with other compilations in the same
+ * JVM through {@link SharedJarCache}, so {@link #release()} must be called when the compilation is done.
+ * <p>
+ * Lookup follows the JDT batch compiler: entries are searched in classpath order, and an answer with an access
+ * restriction marked to keep looking (<code>?</code> rules) is only used if no better answer is found.
+ */
+class ClasspathNameEnvironment implements INameEnvironment {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private static abstract class Entry {
+
+		final AccessRuleSet accessRuleSet;
+
+		Entry(AccessRuleSet accessRuleSet) {
+			this.accessRuleSet = accessRuleSet;
+		}
+
+		abstract NameEnvironmentAnswer findClass(String qualifiedBinaryFileName);
+
+		abstract boolean isPackage(String qualifiedPackageName);
+
+		void release() {
+		}
+
+		AccessRestriction getAccessRestriction(String qualifiedBinaryFileName) {
+			if (accessRuleSet == null) {
+				return null;
+			}
+			return accessRuleSet.getViolatedRestriction(qualifiedBinaryFileName.substring(0,
+					qualifiedBinaryFileName.length() - CLASS_SUFFIX.length()).toCharArray());
+		}
+	}
+
+	private static class DirectoryEntry extends Entry {
+
+		private final File directory;
+
+		DirectoryEntry(File directory, AccessRuleSet accessRuleSet) {
+			super(accessRuleSet);
+			this.directory = directory;
+		}
+
+		@Override
+		NameEnvironmentAnswer findClass(String qualifiedBinaryFileName) {
+			File file = new File(directory, qualifiedBinaryFileName);
+			if (!file.isFile()) {
+				return null;
+			}
+			try {
+				return new NameEnvironmentAnswer(ClassFileReader.read(file),
+						getAccessRestriction(qualifiedBinaryFileName));
+			} catch (ClassFormatException e) {
+				return null;
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		boolean isPackage(String qualifiedPackageName) {
+			return new File(directory, qualifiedPackageName).isDirectory();
+		}
+	}
+
+	private static class ArchiveEntry extends Entry {
+
+		private final SharedJarCache.SharedJar jar;
+
+		ArchiveEntry(SharedJarCache.SharedJar jar, AccessRuleSet accessRuleSet) {
+			super(accessRuleSet);
+			this.jar = jar;
+		}
+
+		@Override
+		NameEnvironmentAnswer findClass(String qualifiedBinaryFileName) {
+			int idx = qualifiedBinaryFileName.lastIndexOf('/');
+			if (idx > 0 && !jar.packages.contains(qualifiedBinaryFileName.substring(0, idx))) {
+				return null;
+			}
+			try {
+				ClassFileReader reader = ClassFileReader.read(jar.zipFile, qualifiedBinaryFileName);
+				if (reader == null) {
+					return null;
+				}
+				return new NameEnvironmentAnswer(reader, getAccessRestriction(qualifiedBinaryFileName));
+			} catch (ClassFormatException e) {
+				return null;
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		boolean isPackage(String qualifiedPackageName) {
+			return jar.packages.contains(qualifiedPackageName);
+		}
+
+		@Override
+		void release() {
+			SharedJarCache.release(jar);
+		}
+	}
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * @param classpath classpath entries in the format of the JDT batch compiler, i.e. the location optionally
+	 *            followed by access rules in square brackets
+	 */
+	public ClasspathNameEnvironment(List<String> classpath) throws IOException {
+		try {
+			for (String entry : classpath) {
+				String location = getLocation(entry);
+				AccessRuleSet accessRuleSet = null;
+				if (location.length() < entry.length()) {
+					accessRuleSet = parseAccessRules(location, entry.substring(location.length() + 1, entry.length() - 1));
+				}
+				add(new File(location), accessRuleSet);
+			}
+		} catch (IOException e) {
+			release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the location of the given classpath entry, without access rules
+	 */
+	static String getLocation(String entry) {
+		int idx = entry.lastIndexOf('[');
+		if (idx > 0 && entry.endsWith("]")) {
+			return entry.substring(0, idx);
+		}
+		return entry;
+	}
+
+	private void add(File location, AccessRuleSet accessRuleSet) throws IOException {
+		if (location.isDirectory()) {
+			entries.add(new DirectoryEntry(location, accessRuleSet));
+		} else if (location.isFile()) {
+			entries.add(new ArchiveEntry(SharedJarCache.acquire(location), accessRuleSet));
+		}
+		// like the batch compiler, ignore missing entries
+	}
+
+	/**
+	 * Parses access rules like <code>+p001/*:~p002/*:?**&#47;*</code>.
+	 */
+	static AccessRuleSet parseAccessRules(String location, String rules) {
+		List<AccessRule> accessRules = new ArrayList<AccessRule>();
+		for (StringTokenizer tokens = new StringTokenizer(rules, File.pathSeparator); tokens.hasMoreTokens();) {
+			String rule = tokens.nextToken();
+			if (rule.length() < 2) {
+				continue;
+			}
+			char[] pattern = rule.substring(1).toCharArray();
+			switch (rule.charAt(0)) {
+			case '+':
+				accessRules.add(new AccessRule(pattern, 0));
+				break;
+			case '~':
+				accessRules.add(new AccessRule(pattern, IProblem.DiscouragedReference));
+				break;
+			case '-':
+				accessRules.add(new AccessRule(pattern, IProblem.ForbiddenReference));
+				break;
+			case '?':
+				accessRules.add(new AccessRule(pattern, IProblem.ForbiddenReference, true));
+				break;
+			}
+		}
+		return new AccessRuleSet(accessRules.toArray(new AccessRule[accessRules.size()]),
+				AccessRestriction.COMMAND_LINE, location);
+	}
+
+	public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+		if (compoundTypeName == null) {
+			return null;
+		}
+		return findClass(new String(CharOperation.concatWith(compoundTypeName, '/')) + CLASS_SUFFIX);
+	}
+
+	public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+		if (typeName == null) {
+			return null;
+		}
+		return findClass(new String(CharOperation.concatWith(packageName, typeName, '/')) + CLASS_SUFFIX);
+	}
+
+	private NameEnvironmentAnswer findClass(String qualifiedBinaryFileName) {
+		NameEnvironmentAnswer suggestedAnswer = null;
+		for (Entry entry : entries) {
+			NameEnvironmentAnswer answer = entry.findClass(qualifiedBinaryFileName);
+			if (answer != null) {
+				if (!answer.ignoreIfBetter()) {
+					if (answer.isBetter(suggestedAnswer)) {
+						return answer;
+					}
+				} else if (answer.isBetter(suggestedAnswer)) {
+					// remember but keep looking
+					suggestedAnswer = answer;
+				}
+			}
+		}
+		return suggestedAnswer;
+	}
+
+	public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+		String qualifiedPackageName = new String(CharOperation.concatWith(parentPackageName, packageName, '/'));
+		for (Entry entry : entries) {
+			if (entry.isPackage(qualifiedPackageName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void cleanup() {
+		// called by the compiler between compilation phases, shared jars are released in release()
+	}
+
+	/**
+	 * Releases all shared jars.
+	 */
+	public void release() {
+		for (Entry entry : entries) {
+			entry.release();
+		}
+		entries.clear();
+	}
+}
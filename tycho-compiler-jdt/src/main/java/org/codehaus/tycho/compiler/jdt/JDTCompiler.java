@@ -2,7 +2,9 @@ package org.codehaus.tycho.compiler.jdt;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -11,6 +13,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,13 +24,24 @@ import org.codehaus.plexus.compiler.CompilerError;
 import org.codehaus.plexus.compiler.CompilerException;
 import org.codehaus.plexus.compiler.CompilerOutputStyle;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
 import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
 import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 import org.eclipse.jdt.internal.compiler.util.SuffixConstants;
 import org.eclipse.jdt.internal.compiler.util.Util;
 
@@ -37,7 +51,7 @@ import org.eclipse.jdt.internal.compiler.util.Util;
 
 @SuppressWarnings("unchecked")
 @Component( role = org.codehaus.plexus.compiler.Compiler.class, hint = "jdt" )
-public class JDTCompiler extends AbstractCompiler {
+public class JDTCompiler extends AbstractCompiler implements Disposable {
 
 	private static final String SEPARATOR = "----------";
 
@@ -49,6 +63,8 @@ public class JDTCompiler extends AbstractCompiler {
 
 	private static final char[] ADAPTER_ACCESS = "ACCESS#".toCharArray(); //$NON-NLS-1$
 
+	private static final String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor"; //$NON-NLS-1$
+
 	String logFileName;
 
 	Map customDefaultOptions;
@@ -59,6 +75,8 @@ public class JDTCompiler extends AbstractCompiler {
 
 	private List accessRules = null;
 
+	private static List bootClasspath;
+
 	public JDTCompiler() {
 		super(CompilerOutputStyle.ONE_OUTPUT_FILE_PER_INPUT_FILE, ".java",
 				".class", null);
@@ -85,26 +103,32 @@ public class JDTCompiler extends AbstractCompiler {
 				+ "source file" + (sourceFiles.length == 1 ? "" : "s") + " to "
 				+ destinationDir.getAbsolutePath());
 
-		checkCompilerArgs(config.getCustomCompilerArguments());
+		if (!config.isFork() && canCompileInProcess(config)) {
+			return compileInProcess(config, sourceFiles, destinationDir);
+		}
 
-		String[] args = buildCompilerArguments(config, sourceFiles);
+		// adapter arguments are kept in fields, so compilations with custom
+		// arguments must not run concurrently
+		synchronized (this) {
+			checkCompilerArgs(config.getCustomCompilerArguments());
 
-		List messages;
+			if (config.isFork()) {
+				String executable = config.getExecutable();
 
-		if (config.isFork()) {
-			String executable = config.getExecutable();
+				if (StringUtils.isEmpty(executable)) {
+					executable = "javac";
+				}
 
-			if (StringUtils.isEmpty(executable)) {
-				executable = "javac";
+				return compileOutOfProcess(config.getWorkingDirectory(),
+						executable, buildCompilerArguments(config, sourceFiles));
 			}
-
-			messages = compileOutOfProcess(config.getWorkingDirectory(),
-					executable, args);
-		} else {
-			messages = compileInProcess(args);
+			return compileInProcess(buildCompilerArguments(config, sourceFiles));
 		}
+	}
 
-		return messages;
+	public void dispose() {
+		// the build is over, don't keep classpath jars open in this JVM
+		SharedJarCache.closeAll();
 	}
 
 	public String[] createCommandLine(CompilerConfiguration config)
@@ -331,6 +355,259 @@ public class JDTCompiler extends AbstractCompiler {
 		return messages;
 	}
 
+	/**
+	 * The programmatic compiler supports all settings of
+	 * {@link CompilerConfiguration}, but not arbitrary batch compiler
+	 * arguments. It does not run annotation processors, so the batch compiler
+	 * is used whenever processors could apply, and it needs the boot classpath
+	 * of the running VM, which is only known for VMs with
+	 * <code>sun.boot.class.path</code>.
+	 */
+	static boolean canCompileInProcess(CompilerConfiguration config) {
+		if (!config.getCustomCompilerArguments().isEmpty()
+				|| suppressSource(config)
+				|| System.getProperty("sun.boot.class.path") == null) {
+			return false;
+		}
+		long source = CompilerOptions.versionToJdkLevel(getSourceVersion(config));
+		if (source == 0
+				|| CompilerOptions.versionToJdkLevel(getTargetVersion(config)) == 0) {
+			return false;
+		}
+		return source < ClassFileConstants.JDK1_6
+				|| !hasAnnotationProcessors(config.getClasspathEntries());
+	}
+
+	/**
+	 * @return <code>true</code> if a classpath entry contributes annotation
+	 *         processors, which the batch compiler runs for source level 1.6
+	 *         and higher
+	 */
+	private static boolean hasAnnotationProcessors(List classpathEntries) {
+		if (classpathEntries == null) {
+			return false;
+		}
+		for (Iterator it = classpathEntries.iterator(); it.hasNext();) {
+			File location = new File(ClasspathNameEnvironment
+					.getLocation((String) it.next()));
+			if (location.isDirectory()) {
+				if (new File(location, PROCESSOR_SERVICE).isFile()) {
+					return true;
+				}
+			} else if (location.isFile()) {
+				try {
+					SharedJarCache.SharedJar jar = SharedJarCache.acquire(location);
+					try {
+						if (jar.zipFile.getEntry(PROCESSOR_SERVICE) != null) {
+							return true;
+						}
+					} finally {
+						SharedJarCache.release(jar);
+					}
+				} catch (IOException e) {
+					// let the batch compiler report the broken jar
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compile the java sources in the current JVM using the JDT compiler API
+	 * directly. Unlike the batch compiler, classpath jars are shared with
+	 * other compilations in the same JVM, see {@link SharedJarCache}, and
+	 * problems are converted to CompilerError objects without formatting and
+	 * parsing the compiler output.
+	 * 
+	 * @return List of CompilerError objects with the errors encountered.
+	 */
+	List compileInProcess(CompilerConfiguration config, String[] sourceFiles,
+			final File destinationDir) throws CompilerException {
+		CompilerOptions options = new CompilerOptions(getCompilerOptions(config));
+
+		String encoding = StringUtils.isEmpty(config.getSourceEncoding()) ? null
+				: config.getSourceEncoding();
+		ICompilationUnit[] units = new ICompilationUnit[sourceFiles.length];
+		for (int i = 0; i < sourceFiles.length; i++) {
+			units[i] = new CompilationUnit(null, sourceFiles[i], encoding);
+		}
+
+		List classpath = new ArrayList(getBootClasspath());
+		if (config.getClasspathEntries() != null) {
+			classpath.addAll(config.getClasspathEntries());
+		}
+
+		final List messages = new ArrayList();
+		final IOException[] writeFailure = new IOException[1];
+		ICompilerRequestor requestor = new ICompilerRequestor() {
+			public void acceptResult(CompilationResult result) {
+				boolean hasErrors = false;
+				CategorizedProblem[] problems = result.getAllProblems();
+				if (problems != null) {
+					for (CategorizedProblem problem : problems) {
+						messages.add(toCompilerError(result, problem));
+						hasErrors |= problem.isError();
+					}
+				}
+				// like the batch compiler, units with errors produce no class files
+				if (!hasErrors && writeFailure[0] == null) {
+					try {
+						writeClassFiles(destinationDir, result.getClassFiles());
+					} catch (IOException e) {
+						writeFailure[0] = e;
+					}
+				}
+			}
+		};
+
+		ClasspathNameEnvironment environment;
+		try {
+			environment = new ClasspathNameEnvironment(classpath);
+		} catch (IOException e) {
+			throw new CompilerException("Could not open classpath", e);
+		}
+		try {
+			Compiler compiler = new Compiler(environment,
+					DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+					options, requestor, new DefaultProblemFactory(Locale
+							.getDefault()));
+			compiler.compile(units);
+		} finally {
+			environment.release();
+		}
+
+		if (writeFailure[0] != null) {
+			throw new CompilerException("Could not write class files to "
+					+ destinationDir, writeFailure[0]);
+		}
+		return messages;
+	}
+
+	/**
+	 * Translates the configuration like the batch compiler translates the
+	 * corresponding command line arguments.
+	 */
+	private static Map getCompilerOptions(CompilerConfiguration config) {
+		Map settings = new CompilerOptions().getMap();
+
+		if (!config.isShowWarnings() && !config.isShowDeprecation()) {
+			// -nowarn
+			for (Iterator it = settings.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				if (CompilerOptions.WARNING.equals(entry.getValue())) {
+					entry.setValue(CompilerOptions.IGNORE);
+				}
+			}
+		}
+		settings.put(CompilerOptions.OPTION_ReportForbiddenReference,
+				CompilerOptions.ERROR);
+
+		String source = getSourceVersion(config);
+		String target = getTargetVersion(config);
+		settings.put(CompilerOptions.OPTION_Source, source);
+		settings.put(CompilerOptions.OPTION_TargetPlatform, target);
+		settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions
+				.versionToJdkLevel(target) > CompilerOptions
+				.versionToJdkLevel(source) ? target : source);
+
+		// without -g, the batch compiler generates line numbers and source file names
+		settings.put(CompilerOptions.OPTION_LocalVariableAttribute, config
+				.isDebug() ? CompilerOptions.GENERATE
+				: CompilerOptions.DO_NOT_GENERATE);
+		settings.put(CompilerOptions.OPTION_LineNumberAttribute,
+				CompilerOptions.GENERATE);
+		settings.put(CompilerOptions.OPTION_SourceFileAttribute,
+				CompilerOptions.GENERATE);
+
+		if (!StringUtils.isEmpty(config.getSourceEncoding())) {
+			settings.put(CompilerOptions.OPTION_Encoding, config
+					.getSourceEncoding());
+		}
+		return settings;
+	}
+
+	private static String getSourceVersion(CompilerConfiguration config) {
+		return StringUtils.isEmpty(config.getSourceVersion()) ? "1.3" : config
+				.getSourceVersion();
+	}
+
+	private static String getTargetVersion(CompilerConfiguration config) {
+		return StringUtils.isEmpty(config.getTargetVersion()) ? "1.1" : config
+				.getTargetVersion();
+	}
+
+	/**
+	 * @return jars of the running VM, as used by the batch compiler if no
+	 *         boot classpath is specified
+	 */
+	private static synchronized List getBootClasspath() {
+		if (bootClasspath == null) {
+			List entries = new ArrayList();
+			String path = System.getProperty("sun.boot.class.path");
+			if (path != null) {
+				for (String entry : path.split(File.pathSeparator)) {
+					if (new File(entry).exists()) {
+						entries.add(entry);
+					}
+				}
+			}
+			String extDirs = System.getProperty("java.ext.dirs");
+			if (extDirs != null) {
+				for (String extDir : extDirs.split(File.pathSeparator)) {
+					File[] jars = new File(extDir).listFiles();
+					if (jars != null) {
+						for (File jar : jars) {
+							String name = jar.getName().toLowerCase();
+							if (jar.isFile()
+									&& (name.endsWith(".jar") || name
+											.endsWith(".zip"))) {
+								entries.add(jar.getAbsolutePath());
+							}
+						}
+					}
+				}
+			}
+			bootClasspath = Collections.unmodifiableList(entries);
+		}
+		return bootClasspath;
+	}
+
+	private static CompilerError toCompilerError(CompilationResult result,
+			CategorizedProblem problem) {
+		char[] fileName = problem.getOriginatingFileName() != null ? problem
+				.getOriginatingFileName() : result.getFileName();
+		int line = problem.getSourceLineNumber();
+
+		int lineStart = 0;
+		int[] lineEnds = result.getLineSeparatorPositions();
+		if (lineEnds != null && line > 1 && line - 2 < lineEnds.length) {
+			lineStart = lineEnds[line - 2] + 1;
+		}
+		int startColumn = Math.max(problem.getSourceStart() - lineStart, 0);
+		int endColumn = Math.max(problem.getSourceEnd() - lineStart + 1,
+				startColumn);
+
+		return new CompilerError(new String(fileName), problem.isError(),
+				line, startColumn, line, endColumn, problem.getMessage());
+	}
+
+	private static void writeClassFiles(File destinationDir,
+			ClassFile[] classFiles) throws IOException {
+		for (ClassFile classFile : classFiles) {
+			File file = new File(destinationDir, new String(classFile
+					.fileName())
+					+ SuffixConstants.SUFFIX_STRING_class);
+			file.getParentFile().mkdirs();
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(classFile.getBytes());
+			} finally {
+				out.close();
+			}
+		}
+	}
+
 	/**
 	 * Parse the output from the compiler into a list of CompilerError objects
 	 * 
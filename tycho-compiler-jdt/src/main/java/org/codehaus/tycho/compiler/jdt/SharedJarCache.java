@@ -0,0 +1,142 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Open classpath jars shared by all compilations in the same JVM, so jars used by several reactor modules, in
+ * particular the JRE and target platform bundles, are opened and indexed only once.
+ * <p>
+ * Jars are reference counted: a jar is never closed while a compilation uses it. Jars that are not used by any
+ * compilation are kept open up to a fixed number and closed in least recently used order. Jars are validated against
+ * their timestamp and length on each acquisition, so jars rebuilt by the reactor are opened again. All jars are
+ * closed by {@link #closeAll()} at the end of the build.
+ */
+class SharedJarCache {
+
+	private static final int MAX_IDLE_JARS = 256;
+
+	static class SharedJar {
+
+		final File file;
+
+		final long lastModified;
+
+		final long length;
+
+		final ZipFile zipFile;
+
+		/** all packages in the jar, as slash separated names */
+		final Set<String> packages = new HashSet<String>();
+
+		int references;
+
+		boolean obsolete;
+
+		SharedJar(File file) throws IOException {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.zipFile = new ZipFile(file);
+
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				String name = entries.nextElement().getName();
+				int idx = name.lastIndexOf('/');
+				while (idx > 0) {
+					name = name.substring(0, idx);
+					if (!packages.add(name)) {
+						break;
+					}
+					idx = name.lastIndexOf('/');
+				}
+			}
+		}
+
+		boolean isValid() {
+			return !obsolete && file.lastModified() == lastModified && file.length() == length;
+		}
+
+		void close() {
+			try {
+				zipFile.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
+
+	private static final Map<File, SharedJar> jars = new LinkedHashMap<File, SharedJar>(16, 0.75f, true);
+
+	private static int idle;
+
+	private SharedJarCache() {
+	}
+
+	/**
+	 * Returns the open jar for the given file and increments its reference count. Callers must
+	 * {@link #release(SharedJar)} the jar when done.
+	 */
+	static synchronized SharedJar acquire(File file) throws IOException {
+		SharedJar jar = jars.get(file);
+		if (jar != null && !jar.isValid()) {
+			jars.remove(file);
+			jar.obsolete = true;
+			if (jar.references == 0) {
+				idle--;
+				jar.close();
+			}
+			jar = null;
+		}
+		if (jar == null) {
+			jar = new SharedJar(file);
+			jars.put(file, jar);
+			idle++;
+		}
+		if (jar.references++ == 0) {
+			idle--;
+		}
+		return jar;
+	}
+
+	static synchronized void release(SharedJar jar) {
+		if (--jar.references > 0) {
+			return;
+		}
+		if (jar.obsolete) {
+			jar.close();
+			return;
+		}
+		idle++;
+		for (Iterator<SharedJar> iter = jars.values().iterator(); idle > MAX_IDLE_JARS && iter.hasNext();) {
+			SharedJar eldest = iter.next();
+			if (eldest.references == 0) {
+				iter.remove();
+				idle--;
+				eldest.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes all jars not used by any compilation and forgets the others, which are closed when they are released.
+	 */
+	static synchronized void closeAll() {
+		for (SharedJar jar : jars.values()) {
+			if (jar.references == 0) {
+				jar.close();
+			} else {
+				jar.obsolete = true;
+			}
+		}
+		jars.clear();
+		idle = 0;
+	}
+}
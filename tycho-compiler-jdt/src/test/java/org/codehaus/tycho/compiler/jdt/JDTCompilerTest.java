@@ -0,0 +1,175 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.codehaus.plexus.compiler.CompilerConfiguration;
+import org.codehaus.plexus.compiler.CompilerError;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JDTCompilerTest {
+
+	private static final String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor";
+
+	private File basedir;
+
+	private JDTCompiler compiler;
+
+	@Before
+	public void setUp() throws Exception {
+		basedir = File.createTempFile("jdtcompiler", "");
+		basedir.delete();
+		basedir.mkdirs();
+
+		compiler = new JDTCompiler();
+		compiler.enableLogging(new ConsoleLogger(Logger.LEVEL_INFO, "test"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		compiler.dispose();
+		FileUtils.deleteDirectory(basedir);
+	}
+
+	@Test
+	public void testCompileInProcess() throws Exception {
+		CompilerConfiguration config = newConfiguration("1.5");
+		writeSource("p/A.java", "package p; public class A { }");
+		writeSource("p/B.java", "package p;\npublic class B {\n  Missing missing;\n}");
+
+		Assert.assertTrue(JDTCompiler.canCompileInProcess(config));
+		List messages = compiler.compile(config);
+
+		Assert.assertTrue(new File(basedir, "classes/p/A.class").isFile());
+		Assert.assertFalse(new File(basedir, "classes/p/B.class").exists());
+
+		Assert.assertEquals(1, messages.size());
+		CompilerError error = (CompilerError) messages.get(0);
+		Assert.assertTrue(error.isError());
+		Assert.assertEquals(3, error.getStartLine());
+		Assert.assertTrue(error.getFile().endsWith("B.java"));
+	}
+
+	@Test
+	public void testCompileInProcessAgainstJar() throws Exception {
+		File jar = new File(basedir, "lib.jar");
+		writeJar(jar, "lib/");
+
+		CompilerConfiguration config = newConfiguration("1.5");
+		config.addClasspathEntry(jar.getAbsolutePath() + "[?**/*]");
+		writeSource("p/A.java", "package p; public class A { }");
+
+		Assert.assertTrue(compiler.compile(config).isEmpty());
+		Assert.assertTrue(new File(basedir, "classes/p/A.class").isFile());
+
+		// the jar is not locked after the end of the build
+		compiler.dispose();
+		Assert.assertTrue(jar.delete());
+	}
+
+	@Test
+	public void testAnnotationProcessorsInDirectory() throws Exception {
+		File classes = new File(basedir, "processor");
+		File service = new File(classes, PROCESSOR_SERVICE);
+		service.getParentFile().mkdirs();
+		FileUtils.fileWrite(service.getAbsolutePath(), "p.Processor");
+
+		CompilerConfiguration config = newConfiguration("1.6");
+		config.addClasspathEntry(classes.getAbsolutePath() + "[?**/*]");
+		Assert.assertFalse(JDTCompiler.canCompileInProcess(config));
+
+		// processors don't run for source level 1.5
+		config.setSourceVersion("1.5");
+		Assert.assertTrue(JDTCompiler.canCompileInProcess(config));
+	}
+
+	@Test
+	public void testAnnotationProcessorsInJar() throws Exception {
+		File jar = new File(basedir, "processor.jar");
+		writeJar(jar, PROCESSOR_SERVICE);
+
+		CompilerConfiguration config = newConfiguration("1.6");
+		config.addClasspathEntry(jar.getAbsolutePath());
+		Assert.assertFalse(JDTCompiler.canCompileInProcess(config));
+
+		File other = new File(basedir, "other.jar");
+		writeJar(other, "lib/");
+		config = newConfiguration("1.6");
+		config.addClasspathEntry(other.getAbsolutePath());
+		Assert.assertTrue(JDTCompiler.canCompileInProcess(config));
+	}
+
+	@Test
+	public void testCustomArguments() throws Exception {
+		CompilerConfiguration config = newConfiguration("1.5");
+		LinkedHashMap<String, String> args = new LinkedHashMap<String, String>();
+		args.put("-warn:+unused", null);
+		config.setCustomCompilerArguments(args);
+		Assert.assertFalse(JDTCompiler.canCompileInProcess(config));
+	}
+
+	@Test
+	public void testCloseAll() throws Exception {
+		File jar = new File(basedir, "lib.jar");
+		writeJar(jar, "lib/");
+
+		SharedJarCache.SharedJar idle = SharedJarCache.acquire(jar);
+		SharedJarCache.release(idle);
+		SharedJarCache.SharedJar used = SharedJarCache.acquire(jar);
+		Assert.assertSame(idle, used);
+
+		SharedJarCache.closeAll();
+
+		// jars in use stay open until they are released
+		Assert.assertNotNull(used.zipFile.getEntry("lib/"));
+		SharedJarCache.SharedJar reopened = SharedJarCache.acquire(jar);
+		Assert.assertNotSame(used, reopened);
+		SharedJarCache.release(reopened);
+		SharedJarCache.release(used);
+		try {
+			used.zipFile.getEntry("lib/");
+			Assert.fail("jar not closed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private CompilerConfiguration newConfiguration(String source) {
+		File sources = new File(basedir, "src");
+		sources.mkdirs();
+
+		CompilerConfiguration config = new CompilerConfiguration();
+		config.setOutputLocation(new File(basedir, "classes").getAbsolutePath());
+		config.addSourceLocation(sources.getAbsolutePath());
+		config.setSourceVersion(source);
+		config.setTargetVersion(source);
+		return config;
+	}
+
+	private void writeSource(String path, String content) throws IOException {
+		File file = new File(basedir, "src/" + path);
+		file.getParentFile().mkdirs();
+		FileUtils.fileWrite(file.getAbsolutePath(), content);
+	}
+
+	private static void writeJar(File file, String entry) throws IOException {
+		JarOutputStream os = new JarOutputStream(new FileOutputStream(file));
+		try {
+			os.putNextEntry(new ZipEntry(entry));
+			os.closeEntry();
+		} finally {
+			os.close();
+		}
+	}
+}
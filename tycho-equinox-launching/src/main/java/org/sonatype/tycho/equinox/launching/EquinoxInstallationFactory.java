@@ -5,4 +5,15 @@ import java.io.File;
 public interface EquinoxInstallationFactory
 {
     public EquinoxInstallation createInstallation( EquinoxInstallationDescription description, File location );
+
+    /**
+     * Like {@link #createInstallation(EquinoxInstallationDescription, File)}, but bundles that need to be unpacked are
+     * unpacked into the given directory, once for all installations that use the same directory. Bundles built by the
+     * reactor are always unpacked into the installation location.
+     * 
+     * @param unpackedBundles directory shared with other installations, possibly of concurrent builds, or
+     *            <code>null</code> to unpack all bundles into the installation location
+     */
+    public EquinoxInstallation createInstallation( EquinoxInstallationDescription description, File location,
+                                                   File unpackedBundles );
 }
@@ -22,6 +22,7 @@ import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.tycho.TychoConstants;
 import org.codehaus.tycho.osgitools.BundleReader;
+import org.codehaus.tycho.utils.DigestUtils;
 import org.eclipse.osgi.util.ManifestElement;
 import org.osgi.framework.Constants;
 import org.sonatype.tycho.ArtifactDescriptor;
@@ -35,6 +36,11 @@ import org.sonatype.tycho.equinox.launching.EquinoxInstallationFactory;
 public class DefaultEquinoxInstallationFactory
     implements EquinoxInstallationFactory
 {
+    /**
+     * Shared unpacked bundles not used for 30 days are deleted
+     */
+    static final long MAX_UNUSED_AGE = 30L * 24 * 60 * 60 * 1000;
+
     @Requirement
     private PlexusContainer plexus;
 
@@ -42,6 +48,12 @@ public class DefaultEquinoxInstallationFactory
     private BundleReader manifestReader;
 
     public EquinoxInstallation createInstallation( EquinoxInstallationDescription description, File location )
+    {
+        return createInstallation( description, location, null );
+    }
+
+    public EquinoxInstallation createInstallation( EquinoxInstallationDescription description, File location,
+                                                   File unpackedBundles )
     {
         Set<String> bundlesToExplode = description.getBundlesToExplode();
         List<File> frameworkExtensions = description.getFrameworkExtensions();
@@ -57,7 +69,11 @@ public class DefaultEquinoxInstallationFactory
 
             boolean directoryShape = bundlesToExplode.contains( key.getId() ) || manifestReader.isDirectoryShape( mf );
 
-            if ( !file.isDirectory() && directoryShape )
+            if ( !file.isDirectory() && directoryShape && unpackedBundles != null && artifact.getMavenProject() == null )
+            {
+                effective.put( key, getUnpackedBundle( key, file, unpackedBundles ) );
+            }
+            else if ( !file.isDirectory() && directoryShape )
             {
                 String filename = key.getId() + "_" + key.getVersion();
                 File unpacked = new File( location, "plugins/" + filename );
@@ -171,6 +187,98 @@ public class DefaultEquinoxInstallationFactory
         }
     }
 
+    /**
+     * Returns the shared unpacked directory of the given bundle jar, unpacking the jar if necessary. Directories are
+     * named after the bundle and a digest of location, length and timestamp of the jar, so a changed jar is unpacked
+     * into a new directory and directories in use are never modified. Jars are unpacked into a temporary directory
+     * that is renamed when complete, so concurrent builds never see partially unpacked bundles.
+     * <p>
+     * The timestamp of a directory is updated each time it is used. Whenever a jar is unpacked, directories that were
+     * not used for {@link #MAX_UNUSED_AGE} are deleted, so directories of jars that changed or are no longer used don't
+     * accumulate.
+     */
+    File getUnpackedBundle( ArtifactKey key, File file, File unpackedBundles )
+    {
+        String stamp = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        File unpacked =
+            new File( unpackedBundles, key.getId() + "_" + key.getVersion() + "_" + DigestUtils.digest( stamp ) );
+        if ( unpacked.isDirectory() )
+        {
+            unpacked.setLastModified( System.currentTimeMillis() );
+            // checked again, the directory may have been deleted as unused in between
+            if ( unpacked.isDirectory() )
+            {
+                return unpacked;
+            }
+        }
+
+        try
+        {
+            unpackedBundles.mkdirs();
+            File tmpDir = File.createTempFile( unpacked.getName(), ".tmp", unpackedBundles );
+            tmpDir.delete();
+            try
+            {
+                unpack( file, tmpDir );
+                if ( !tmpDir.renameTo( unpacked ) && !unpacked.isDirectory() )
+                {
+                    throw new IOException( "Could not rename " + tmpDir + " to " + unpacked );
+                }
+            }
+            finally
+            {
+                // only left if another build unpacked the same bundle first
+                if ( tmpDir.exists() )
+                {
+                    FileUtils.deleteDirectory( tmpDir );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Could not unpack bundle " + file, e );
+        }
+
+        pruneUnpackedBundles( unpackedBundles );
+        return unpacked;
+    }
+
+    /**
+     * Deletes directories, including temporary directories left by failed builds, that were not used for
+     * {@link #MAX_UNUSED_AGE}. Directories are renamed before they are deleted, so a directory is either complete or
+     * not found by other builds.
+     */
+    private void pruneUnpackedBundles( File unpackedBundles )
+    {
+        File[] files = unpackedBundles.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        long limit = System.currentTimeMillis() - MAX_UNUSED_AGE;
+        for ( File file : files )
+        {
+            if ( !file.isDirectory() || file.lastModified() >= limit )
+            {
+                continue;
+            }
+            File deleted = new File( unpackedBundles, file.getName() + "." + System.nanoTime() + ".deleted" );
+            if ( !file.renameTo( deleted ) )
+            {
+                // deleted by a concurrent build
+                continue;
+            }
+            try
+            {
+                FileUtils.deleteDirectory( deleted );
+            }
+            catch ( IOException e )
+            {
+                // the renamed directory keeps its timestamp and is deleted by a later build
+            }
+        }
+    }
+
     private List<String> unpackFrameworkExtensions( File location, Collection<File> frameworkExtensions )
         throws IOException
     {
@@ -0,0 +1,224 @@
+package org.sonatype.tycho.equinox.launching.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.tycho.osgitools.DefaultArtifactKey;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.ArtifactKey;
+
+public class DefaultEquinoxInstallationFactoryTest
+{
+    private static final ArtifactKey KEY = new DefaultArtifactKey( "eclipse-plugin", "bundle", "1.0.0" );
+
+    private File basedir;
+
+    private File unpackedBundles;
+
+    private File jar;
+
+    /** number of jars unpacked by all factories */
+    private int unpackCount;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/unpacked-bundles-test" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        unpackedBundles = new File( basedir, "unpacked-bundles" );
+        jar = createJar( new File( basedir, "bundle_1.0.0.jar" ) );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( basedir );
+    }
+
+    @Test
+    public void testBundleIsUnpackedOnce()
+        throws Exception
+    {
+        TestFactory factory = new TestFactory();
+        File unpacked = factory.getUnpackedBundle( KEY, jar, unpackedBundles );
+        Assert.assertTrue( new File( unpacked, "plugin.xml" ).isFile() );
+
+        unpacked.setLastModified( unpacked.lastModified() - 60000L );
+        long lastModified = unpacked.lastModified();
+
+        Assert.assertEquals( unpacked, factory.getUnpackedBundle( KEY, jar, unpackedBundles ) );
+        Assert.assertEquals( 1, unpackCount );
+
+        // use is recorded in the timestamp
+        Assert.assertTrue( unpacked.lastModified() > lastModified );
+    }
+
+    @Test
+    public void testUnusedBundlesArePruned()
+        throws Exception
+    {
+        TestFactory factory = new TestFactory();
+        File unpacked = factory.getUnpackedBundle( KEY, jar, unpackedBundles );
+
+        File recent = new File( unpackedBundles, "recent_1.0.0_0" );
+        recent.mkdirs();
+        File stale = new File( unpackedBundles, "stale_1.0.0_0" );
+        stale.mkdirs();
+        stale.setLastModified( System.currentTimeMillis() - DefaultEquinoxInstallationFactory.MAX_UNUSED_AGE - 60000L );
+
+        // directory of the same bundle in an earlier version of the jar, only used by earlier builds
+        unpacked.setLastModified( System.currentTimeMillis() - DefaultEquinoxInstallationFactory.MAX_UNUSED_AGE
+            - 60000L );
+        jar.setLastModified( jar.lastModified() - 10000L );
+        File changed = factory.getUnpackedBundle( KEY, jar, unpackedBundles );
+
+        Assert.assertFalse( unpacked.equals( changed ) );
+        Assert.assertTrue( changed.isDirectory() );
+        Assert.assertTrue( recent.isDirectory() );
+        Assert.assertFalse( unpacked.exists() );
+        Assert.assertFalse( stale.exists() );
+        Assert.assertEquals( 2, unpackedBundles.list().length );
+    }
+
+    @Test
+    public void testConcurrentBuilds()
+        throws Exception
+    {
+        final int builds = 4;
+        final CyclicBarrier barrier = new CyclicBarrier( builds );
+        ExecutorService executor = Executors.newFixedThreadPool( builds );
+        try
+        {
+            Future<?>[] results = new Future<?>[builds];
+            for ( int i = 0; i < builds; i++ )
+            {
+                // each build has its own factory
+                final TestFactory factory = new TestFactory()
+                {
+                    @Override
+                    protected void unpack( File source, File destination )
+                    {
+                        super.unpack( source, destination );
+                        try
+                        {
+                            // all builds unpack the bundle at the same time
+                            barrier.await();
+                        }
+                        catch ( Exception e )
+                        {
+                            throw new RuntimeException( e );
+                        }
+                    }
+                };
+                results[i] = executor.submit( new Callable<File>()
+                {
+                    public File call()
+                    {
+                        return factory.getUnpackedBundle( KEY, jar, unpackedBundles );
+                    }
+                } );
+            }
+
+            File unpacked = (File) results[0].get();
+            for ( Future<?> result : results )
+            {
+                Assert.assertEquals( unpacked, result.get() );
+            }
+            Assert.assertEquals( builds, unpackCount );
+            Assert.assertTrue( new File( unpacked, "plugin.xml" ).isFile() );
+            Assert.assertTrue( new File( unpacked, "META-INF/MANIFEST.MF" ).isFile() );
+
+            // no temporary directories left behind
+            Assert.assertEquals( 1, unpackedBundles.list().length );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private class TestFactory
+        extends DefaultEquinoxInstallationFactory
+    {
+        @Override
+        protected void unpack( File source, File destination )
+        {
+            synchronized ( DefaultEquinoxInstallationFactoryTest.this )
+            {
+                unpackCount++;
+            }
+            try
+            {
+                ZipFile zip = new ZipFile( source );
+                try
+                {
+                    for ( Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); )
+                    {
+                        ZipEntry entry = entries.nextElement();
+                        File file = new File( destination, entry.getName() );
+                        file.getParentFile().mkdirs();
+                        InputStream is = zip.getInputStream( entry );
+                        OutputStream os = new FileOutputStream( file );
+                        try
+                        {
+                            IOUtil.copy( is, os );
+                        }
+                        finally
+                        {
+                            IOUtil.close( os );
+                            IOUtil.close( is );
+                        }
+                    }
+                }
+                finally
+                {
+                    zip.close();
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    private static File createJar( File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        ZipOutputStream os = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            os.putNextEntry( new ZipEntry( "META-INF/MANIFEST.MF" ) );
+            os.write( "Manifest-Version: 1.0\n".getBytes( "UTF-8" ) );
+            os.closeEntry();
+            os.putNextEntry( new ZipEntry( "plugin.xml" ) );
+            os.write( "<plugin/>".getBytes( "UTF-8" ) );
+            os.closeEntry();
+        }
+        finally
+        {
+            os.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,90 @@
+package org.sonatype.tycho.test.TYCHO491PublishFeaturesAndCategories;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.it.Verifier;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+import org.sonatype.tycho.test.AbstractTychoIntegrationTest;
+import org.sonatype.tycho.test.TYCHO188P2EnabledRcp.Util;
+
+import de.pdark.decentxml.Document;
+import de.pdark.decentxml.Element;
+
+/**
+ * Publishes the same repository with the publisher running in a forked Equinox runtime and in the Equinox runtime
+ * embedded in the build, which must lead to the same repository content.
+ */
+public class Tycho491InProcessPublisherTest
+    extends AbstractTychoIntegrationTest
+{
+    private static final String REPOSITORY = "eclipse-repository/target/repository";
+
+    @Test
+    public void testInProcessPublisherMatchesForkedPublisher()
+        throws Exception
+    {
+        Verifier forked = getVerifier( "/TYCHO491PublishFeaturesAndCategories", false );
+        forked.getCliOptions().add( "-Dp2.fork=true" );
+        forked.executeGoal( "install" );
+        forked.verifyErrorFreeLog();
+        File forkedRepository = new File( forked.getBasedir(), REPOSITORY );
+        Set<String> forkedUnits = getUnits( forkedRepository );
+        Set<String> forkedArtifacts = getArtifacts( forkedRepository );
+
+        Verifier inProcess = getVerifier( "/TYCHO491PublishFeaturesAndCategories", false );
+        inProcess.executeGoal( "install" );
+        inProcess.verifyErrorFreeLog();
+        assertNotForked( inProcess );
+        File inProcessRepository = new File( inProcess.getBasedir(), REPOSITORY );
+
+        assertTrue( forkedUnits.contains( "example.bundle 1.0.0.12345-forcedQualifier" ) );
+        assertEquals( forkedUnits, getUnits( inProcessRepository ) );
+        assertEquals( forkedArtifacts, getArtifacts( inProcessRepository ) );
+    }
+
+    private static void assertNotForked( Verifier verifier )
+        throws Exception
+    {
+        String log = FileUtils.fileRead( new File( verifier.getBasedir(), "log.txt" ) );
+        assertFalse( log.contains( "in embedded Equinox runtime, forking" ) );
+        assertFalse( log.contains( "Embedded Equinox runtime cannot run applications" ) );
+    }
+
+    /**
+     * @return ids and versions of the installable units of the repository
+     */
+    private static Set<String> getUnits( File repository )
+        throws Exception
+    {
+        Document contentXml = Util.openXmlFromZip( new File( repository, "content.jar" ), "content.xml" );
+        Set<String> units = new TreeSet<String>();
+        for ( Element unit : contentXml.getRootElement().getChild( "units" ).getChildren( "unit" ) )
+        {
+            units.add( unit.getAttributeValue( "id" ) + " " + unit.getAttributeValue( "version" ) );
+        }
+        return units;
+    }
+
+    /**
+     * @return classifiers, ids and versions of the artifacts of the repository
+     */
+    private static Set<String> getArtifacts( File repository )
+        throws Exception
+    {
+        Document artifactsXml = Util.openXmlFromZip( new File( repository, "artifacts.jar" ), "artifacts.xml" );
+        Set<String> artifacts = new TreeSet<String>();
+        for ( Element artifact : artifactsXml.getRootElement().getChild( "artifacts" ).getChildren( "artifact" ) )
+        {
+            artifacts.add( artifact.getAttributeValue( "classifier" ) + " " + artifact.getAttributeValue( "id" ) + " "
+                + artifact.getAttributeValue( "version" ) );
+        }
+        return artifacts;
+    }
+}
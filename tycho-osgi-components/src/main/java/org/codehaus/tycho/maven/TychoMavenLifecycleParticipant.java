@@ -4,6 +4,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
@@ -13,9 +19,12 @@ import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.tycho.TargetPlatform;
+import org.codehaus.tycho.TychoConstants;
 import org.codehaus.tycho.osgitools.BundleReader;
 import org.codehaus.tycho.osgitools.DefaultBundleReader;
 import org.codehaus.tycho.osgitools.DefaultReactorProject;
+import org.codehaus.tycho.resolver.DefaultTychoDependencyResolver;
 import org.sonatype.tycho.ReactorProject;
 import org.sonatype.tycho.equinox.embedder.EquinoxEmbedder;
 import org.sonatype.tycho.resolver.TychoDependencyResolver;
@@ -25,6 +34,16 @@ public class TychoMavenLifecycleParticipant
     extends AbstractMavenLifecycleParticipant
     implements Disposable
 {
+    /**
+     * Number of threads used to resolve reactor projects. Defaults to the number of threads configured with -T.
+     */
+    public static final String PROP_RESOLVER_THREADS = "tycho.resolver.threads";
+
+    /**
+     * If <code>true</code>, manifests of target platform bundles are cached in the local repository across builds.
+     */
+    public static final String PROP_PERSISTENT_MANIFEST_CACHE = "tycho.manifestCache.persistent";
+
     @Requirement
     private Logger logger;
 
@@ -57,6 +76,8 @@ public class TychoMavenLifecycleParticipant
 
         File localRepository = new File( session.getLocalRepository().getBasedir() );
         ( (DefaultBundleReader) bundleReader ).setLocationRepository( localRepository );
+        String persistentManifestCache = session.getUserProperties().getProperty( PROP_PERSISTENT_MANIFEST_CACHE );
+        ( (DefaultBundleReader) bundleReader ).setPersistentManifestCache( Boolean.parseBoolean( persistentManifestCache ) );
 
         try
         {
@@ -89,9 +110,147 @@ public class TychoMavenLifecycleParticipant
 
         List<ReactorProject> reactorProjects = DefaultReactorProject.adapt( session );
 
-        for ( MavenProject project : projects )
+        int threads = getResolverThreads( session );
+        if ( threads > 1 && projects.size() > 1 )
+        {
+            resolveProjectsConcurrently( session, projects, reactorProjects, threads );
+        }
+        else
+        {
+            for ( MavenProject project : projects )
+            {
+                resolver.resolveProject( session, project, reactorProjects );
+            }
+        }
+    }
+
+    /**
+     * Resolves the target platforms of reactor projects on a pool of worker threads. Target platform resolution only
+     * reads the dependency metadata from the setup of the other reactor projects, which is complete at this point and
+     * replaced rather than modified later. The workers do not modify any project: the calling thread assigns the
+     * resolved target platforms and resolves the projects after all workers are done. The first Tycho project is
+     * still resolved on the calling thread, so remote repositories and the local repository index are loaded into the
+     * shared caches only once.
+     */
+    private void resolveProjectsConcurrently( final MavenSession session, List<MavenProject> projects,
+                                              final List<ReactorProject> reactorProjects, int threads )
+        throws MavenExecutionException
+    {
+        List<MavenProject> remaining = new ArrayList<MavenProject>( projects );
+        while ( !remaining.isEmpty() )
         {
+            MavenProject project = remaining.remove( 0 );
             resolver.resolveProject( session, project, reactorProjects );
+            if ( project.getContextValue( TychoConstants.CTX_TARGET_PLATFORM_CONFIGURATION ) != null )
+            {
+                break;
+            }
+        }
+
+        if ( remaining.isEmpty() )
+        {
+            return;
+        }
+
+        logger.info( "Resolving " + remaining.size() + " projects using " + threads + " threads" );
+
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool( threads, new ThreadFactory()
+        {
+            private int count;
+
+            public synchronized Thread newThread( Runnable r )
+            {
+                Thread thread = new Thread( r, "tycho-resolver-" + ( ++count ) );
+                thread.setContextClassLoader( contextClassLoader );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+        final DefaultTychoDependencyResolver dependencyResolver = (DefaultTychoDependencyResolver) resolver;
+        List<TargetPlatform> targetPlatforms = new ArrayList<TargetPlatform>();
+        try
+        {
+            List<Future<TargetPlatform>> futures = new ArrayList<Future<TargetPlatform>>();
+            for ( final MavenProject project : remaining )
+            {
+                futures.add( executor.submit( new Callable<TargetPlatform>()
+                {
+                    public TargetPlatform call()
+                        throws Exception
+                    {
+                        return dependencyResolver.resolvePlatform( session, project, reactorProjects );
+                    }
+                } ) );
+            }
+
+            for ( Future<TargetPlatform> future : futures )
+            {
+                try
+                {
+                    targetPlatforms.add( future.get() );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MavenExecutionException( "Interrupted while resolving projects", e );
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new MavenExecutionException( cause.getMessage(), cause );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < remaining.size(); i++ )
+        {
+            if ( targetPlatforms.get( i ) != null )
+            {
+                dependencyResolver.resolveProject( session, remaining.get( i ), targetPlatforms.get( i ) );
+            }
+        }
+    }
+
+    private int getResolverThreads( MavenSession session )
+    {
+        String threads = session.getUserProperties().getProperty( PROP_RESOLVER_THREADS );
+        if ( threads == null )
+        {
+            threads = session.getRequest().getThreadCount();
+        }
+        if ( threads == null )
+        {
+            return 1;
+        }
+
+        threads = threads.trim();
+        try
+        {
+            if ( threads.endsWith( "C" ) )
+            {
+                float perCore = Float.parseFloat( threads.substring( 0, threads.length() - 1 ) );
+                return Math.max( 1, (int) ( perCore * Runtime.getRuntime().availableProcessors() ) );
+            }
+            return Math.max( 1, Integer.parseInt( threads ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.warn( "Invalid number of resolver threads " + threads + ", resolving projects sequentially" );
+            return 1;
         }
     }
 
@@ -4,9 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Properties;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
@@ -37,10 +35,13 @@ public class DefaultBundleReader
 
     private File cacheDir;
 
-    private static final Map<File, Manifest> manifestCache = new HashMap<File, Manifest>();
+    private static final int MANIFEST_CACHE_SIZE = 4096;
+
+    private static final ManifestCache manifestCache = new ManifestCache( MANIFEST_CACHE_SIZE );
 
     public Manifest loadManifest( File bundleLocation )
     {
+        // manifests of the same bundle may get loaded more than once by concurrent callers, which is harmless
         Manifest manifest = manifestCache.get( bundleLocation );
         if ( manifest == null )
         {
@@ -171,6 +172,15 @@ public class DefaultBundleReader
         this.cacheDir = new File( basedir, CACHE_PATH );
     }
 
+    /**
+     * Enables or disables persistent caching of bundle manifests in the local repository. Must be called after
+     * {@link #setLocationRepository(File)}.
+     */
+    public void setPersistentManifestCache( boolean persistent )
+    {
+        manifestCache.setDirectory( persistent ? new File( cacheDir, "manifests" ) : null );
+    }
+
     public Properties toProperties( Manifest mf )
     {
         Attributes attrs = mf.getMainAttributes();
@@ -210,7 +220,7 @@ public class DefaultBundleReader
         return elements != null && elements.length > 0 && "dir".equals( elements[0].getValue() );
     }
 
-    public File getEntry( File bundleLocation, String path )
+    public synchronized File getEntry( File bundleLocation, String path )
     {
         if ( bundleLocation.isDirectory() )
         {
@@ -45,6 +45,12 @@ public class DefaultClasspathEntry
             return isDiscouraged() == other.isDiscouraged() && getPattern().equals( other.getPattern() );
         }
 
+        @Override
+        public int hashCode()
+        {
+            return pattern.hashCode() * 31 + ( discouraged ? 1 : 0 );
+        }
+
         public String getPattern()
         {
             return pattern;
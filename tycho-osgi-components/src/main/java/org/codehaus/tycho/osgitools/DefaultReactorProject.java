@@ -2,6 +2,7 @@ package org.codehaus.tycho.osgitools;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -139,15 +140,18 @@ public class DefaultReactorProject
 
     public void setDependencyMetadata( String classifier, Set<Object> installableUnits )
     {
-        Map<String, Set<Object>> metadata = getDependencyMetadata();
+        Map<String, Set<Object>> metadata = new HashMap<String, Set<Object>>();
 
-        if ( metadata == null )
+        Map<String, Set<Object>> oldMetadata = getDependencyMetadata();
+        if ( oldMetadata != null )
         {
-            metadata = new HashMap<String, Set<Object>>();
-            project.setContextValue( CTX_DEPENDENCY_METADATA, metadata );
+            metadata.putAll( oldMetadata );
         }
 
         metadata.put( classifier, installableUnits );
+
+        // copy on write, so other projects resolved concurrently read a snapshot that is never modified
+        project.setContextValue( CTX_DEPENDENCY_METADATA, Collections.unmodifiableMap( metadata ) );
     }
 
     public Map<String, Set<Object>> getDependencyMetadata()
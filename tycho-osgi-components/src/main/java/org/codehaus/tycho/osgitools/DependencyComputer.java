@@ -1,8 +1,9 @@
 package org.codehaus.tycho.osgitools;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -47,7 +48,11 @@ public class DependencyComputer {
 				return false;
 			}
 			DependencyEntry other = (DependencyEntry) obj;
-            return desc.equals(other.desc) && rules.equals(other.rules);
+			return desc.equals(other.desc) && (rules != null ? rules.equals(other.rules) : other.rules == null);
+		}
+
+		public int hashCode() {
+			return desc.hashCode();
 		}
 	}
 
@@ -97,14 +102,20 @@ public class DependencyComputer {
 	}
 
 	private Map<BundleDescription, ArrayList<AccessRule>> retrieveVisiblePackagesFromState(StateHelper helper, BundleDescription desc) {
-		Map<BundleDescription, ArrayList<AccessRule>> visiblePackages = new HashMap<BundleDescription, ArrayList<AccessRule>>();
-		addVisiblePackagesFromState(helper, desc, visiblePackages);
+		// rules are collected in insertion ordered sets, so duplicate rules are dropped in constant time
+		Map<BundleDescription, LinkedHashSet<AccessRule>> rules = new IdentityHashMap<BundleDescription, LinkedHashSet<AccessRule>>();
+		addVisiblePackagesFromState(helper, desc, rules);
 		if (desc.getHost() != null)
-			addVisiblePackagesFromState(helper, (BundleDescription) desc.getHost().getSupplier(), visiblePackages);
+			addVisiblePackagesFromState(helper, (BundleDescription) desc.getHost().getSupplier(), rules);
+
+		Map<BundleDescription, ArrayList<AccessRule>> visiblePackages = new IdentityHashMap<BundleDescription, ArrayList<AccessRule>>();
+		for (Map.Entry<BundleDescription, LinkedHashSet<AccessRule>> entry : rules.entrySet()) {
+			visiblePackages.put(entry.getKey(), new ArrayList<AccessRule>(entry.getValue()));
+		}
 		return visiblePackages;
 	}
 
-	private void addVisiblePackagesFromState(StateHelper helper, BundleDescription desc, Map<BundleDescription, ArrayList<AccessRule>> visiblePackages) {
+	private void addVisiblePackagesFromState(StateHelper helper, BundleDescription desc, Map<BundleDescription, LinkedHashSet<AccessRule>> visiblePackages) {
 		if (desc == null)
 			return;
 		ExportPackageDescription[] exports = helper.getVisiblePackages(desc);
@@ -112,20 +123,19 @@ public class DependencyComputer {
 			BundleDescription exporter = exports[i].getExporter();
 			if (exporter == null)
 				continue;
-			ArrayList<AccessRule> list = visiblePackages.get(exporter);
-			if (list == null)
-				list = new ArrayList<AccessRule>();
-			AccessRule rule = getRule(helper, desc, exports[i]);
-			if (!list.contains(rule))
-				list.add(rule);
-			visiblePackages.put(exporter, list);
+			LinkedHashSet<AccessRule> list = visiblePackages.get(exporter);
+			if (list == null) {
+				list = new LinkedHashSet<AccessRule>();
+				visiblePackages.put(exporter, list);
+			}
+			list.add(getRule(helper, desc, exports[i]));
 		}
 	}
 
 	private AccessRule getRule(StateHelper helper, BundleDescription desc, ExportPackageDescription export) {
 		boolean discouraged = helper.getAccessCode(desc, export) == StateHelper.ACCESS_DISCOURAGED;
 		String name = export.getName();
-		String path = (name.equals(".")) ? "*" : name.replaceAll("\\.", "/") + "/*";
+		String path = (name.equals(".")) ? "*" : name.replace('.', '/') + "/*";
 		return new DefaultAccessRule(path, discouraged);
 	}
 
@@ -185,9 +195,9 @@ public class DependencyComputer {
 	        return false;
 	    }
 		List<AccessRule> rules = useInclusions ? getInclusions(map, desc) : null;
-		DependencyEntry entry = new DependencyEntry(desc, rules);
-		if (!entries.contains(entry))
-			entries.add(entry);
+		// all callers add desc to the 'added' set first, so there is at most one entry per bundle and no need for
+		// a linear entries.contains() check
+		entries.add(new DependencyEntry(desc, rules));
 		return true;
 	}
 
@@ -4,7 +4,9 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.jar.Manifest;
@@ -17,6 +19,7 @@ import org.codehaus.tycho.TargetEnvironment;
 import org.codehaus.tycho.TargetPlatform;
 import org.codehaus.tycho.TargetPlatformConfiguration;
 import org.codehaus.tycho.TychoConstants;
+import org.codehaus.tycho.utils.DigestUtils;
 import org.codehaus.tycho.utils.ExecutionEnvironmentUtils;
 import org.codehaus.tycho.utils.PlatformPropertiesUtils;
 import org.eclipse.osgi.service.resolver.BundleDescription;
@@ -44,14 +47,40 @@ public class EquinoxResolver
     @Requirement
     private Logger logger;
 
+    /**
+     * Maximum number of cached resolved states. States of large target platforms use a lot of memory, but all
+     * projects of a reactor usually share the same state.
+     */
+    private static final int MAX_STATES = 4;
+
+    /**
+     * Platform properties the Equinox resolver uses, all other properties are ignored by
+     * {@link State#setPlatformProperties(Dictionary)}. Merged project properties contain many more properties, which
+     * differ between projects but do not affect resolution.
+     */
+    private static final String[] STATE_PROPERTIES = { PlatformPropertiesUtils.OSGI_OS, PlatformPropertiesUtils.OSGI_WS,
+        "osgi.nl", PlatformPropertiesUtils.OSGI_ARCH, Constants.FRAMEWORK_SYSTEMPACKAGES,
+        Constants.FRAMEWORK_SYSTEMPACKAGES_EXTRA, "osgi.resolverMode", Constants.FRAMEWORK_EXECUTIONENVIRONMENT,
+        "osgi.resolveOptional", "osgi.genericAliases", Constants.FRAMEWORK_OS_NAME, Constants.FRAMEWORK_OS_VERSION,
+        Constants.FRAMEWORK_PROCESSOR, Constants.FRAMEWORK_LANGUAGE };
+
+    private final Map<String, State> states = new LinkedHashMap<String, State>( MAX_STATES * 2, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, State> eldest )
+        {
+            return size() > MAX_STATES;
+        }
+    };
+
     public State newResolvedState( MavenProject project, TargetPlatform platform )
         throws BundleException
     {
         Properties properties = getPlatformProperties( project );
 
-        State state = newState( platform, properties );
-
-        resolveState( state );
+        State state = getResolvedState( platform, properties );
 
         BundleDescription bundleDescription = state.getBundleByLocation( project.getBasedir().getAbsolutePath() );
 
@@ -65,9 +94,7 @@ public class EquinoxResolver
     {
         Properties properties = getPlatformProperties( new Properties(), null );
 
-        State state = newState( platform, properties );
-
-        resolveState( state );
+        State state = getResolvedState( platform, properties );
 
         BundleDescription bundleDescription = state.getBundleByLocation( basedir.getAbsolutePath() );
 
@@ -76,6 +103,60 @@ public class EquinoxResolver
         return state;
     }
 
+    /**
+     * Returns resolved state of the given target platform. Resolved states are shared by all projects with the same
+     * target platform bundles and platform properties, and must not be modified by callers.
+     */
+    protected State getResolvedState( TargetPlatform platform, Properties properties )
+        throws BundleException
+    {
+        String key = getStateKey( platform, properties );
+
+        synchronized ( states )
+        {
+            State state = states.get( key );
+            if ( state != null )
+            {
+                return state;
+            }
+        }
+
+        // concurrent callers may create the same state more than once, which is harmless
+        State state = newState( platform, properties );
+
+        resolveState( state );
+
+        synchronized ( states )
+        {
+            states.put( key, state );
+        }
+        return state;
+    }
+
+    /**
+     * State key covers everything that goes into {@link #newState(TargetPlatform, Properties)}: platform properties
+     * used by the resolver, bundle locations in order, whether they are reactor projects, and timestamp and length of
+     * their manifests.
+     */
+    private String getStateKey( TargetPlatform platform, Properties properties )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( String name : STATE_PROPERTIES )
+        {
+            sb.append( name ).append( '=' ).append( properties.getProperty( name ) ).append( '\n' );
+        }
+        for ( ArtifactDescriptor artifact : platform.getArtifacts( ArtifactKey.TYPE_ECLIPSE_PLUGIN ) )
+        {
+            File location = artifact.getLocation();
+            File stampFile = ManifestCache.getStampFile( location );
+            sb.append( location.getAbsolutePath() ).append( '|' ).append( artifact.getMavenProject() != null );
+            sb.append( '|' ).append( stampFile.lastModified() ).append( '|' ).append( stampFile.length() );
+            sb.append( '\n' );
+        }
+
+        return DigestUtils.digest( sb.toString() );
+    }
+
     protected void resolveState( State state )
     {
         state.resolve( false );
@@ -0,0 +1,264 @@
+package org.codehaus.tycho.osgitools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.codehaus.tycho.utils.DigestUtils;
+
+/**
+ * Size bounded cache of bundle manifests, shared by all builds running in the same JVM. Entries are validated
+ * against timestamp and length of the bundle jar file, or of the file the manifest of a directory bundle is read or
+ * generated from, so changed bundles are read again.
+ * <p>
+ * Optionally, manifests of bundle jars are also stored on disk, one small file per jar, so subsequent builds do not
+ * need to open the jars again. Disk entries are validated the same way as memory entries.
+ */
+public class ManifestCache
+{
+    private static final int MAGIC = 0x544d4643; // "TMFC"
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String[] MANIFEST_SOURCES = { JarFile.MANIFEST_NAME, "plugin.xml", "fragment.xml" };
+
+    private final int maxEntries;
+
+    private final Map<File, Entry> entries;
+
+    private File directory;
+
+    private static class Entry
+    {
+        final long lastModified;
+
+        final long length;
+
+        final Manifest manifest;
+
+        Entry( long lastModified, long length, Manifest manifest )
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.manifest = manifest;
+        }
+
+        boolean isValid( File stampFile )
+        {
+            return stampFile.lastModified() == lastModified && stampFile.length() == length;
+        }
+    }
+
+    public ManifestCache( final int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<File, Entry>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<File, Entry> eldest )
+            {
+                return size() > ManifestCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param directory directory of persistent cache entries, or <code>null</code> to cache in memory only
+     */
+    public synchronized void setDirectory( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return cached manifest, or <code>null</code> if there is no valid entry for the given location
+     */
+    public Manifest get( File bundleLocation )
+    {
+        File stampFile = getStampFile( bundleLocation );
+
+        Entry entry;
+        File diskFile;
+        synchronized ( this )
+        {
+            entry = entries.get( bundleLocation );
+            diskFile = getDiskFile( bundleLocation );
+        }
+
+        if ( entry == null || !entry.isValid( stampFile ) )
+        {
+            entry = diskFile != null ? read( diskFile, bundleLocation ) : null;
+            if ( entry == null || !entry.isValid( stampFile ) )
+            {
+                return null;
+            }
+            synchronized ( this )
+            {
+                entries.put( bundleLocation, entry );
+            }
+        }
+
+        return entry.manifest;
+    }
+
+    public void put( File bundleLocation, Manifest manifest )
+    {
+        if ( manifest == null )
+        {
+            // locations that are not bundles are not cached
+            return;
+        }
+
+        File stampFile = getStampFile( bundleLocation );
+        Entry entry = new Entry( stampFile.lastModified(), stampFile.length(), manifest );
+
+        File diskFile;
+        synchronized ( this )
+        {
+            entries.put( bundleLocation, entry );
+            diskFile = getDiskFile( bundleLocation );
+        }
+
+        if ( diskFile != null )
+        {
+            try
+            {
+                write( diskFile, bundleLocation, entry );
+            }
+            catch ( IOException e )
+            {
+                // persistent cache is optional, manifest is still cached in memory
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Directory bundles are not stored on disk: they are usually reactor projects and cheap to read.
+     */
+    private File getDiskFile( File bundleLocation )
+    {
+        if ( directory == null || !bundleLocation.isFile() )
+        {
+            return null;
+        }
+        return new File( directory, DigestUtils.digest( bundleLocation.getAbsolutePath() ) + ".mf" );
+    }
+
+    /**
+     * @return file whose timestamp and length change when the manifest of the given bundle changes
+     */
+    static File getStampFile( File bundleLocation )
+    {
+        if ( bundleLocation.isDirectory() )
+        {
+            // same order as DefaultBundleReader, manifests of plugins without MANIFEST.MF are generated
+            for ( String name : MANIFEST_SOURCES )
+            {
+                File file = new File( bundleLocation, name );
+                if ( file.isFile() )
+                {
+                    return file;
+                }
+            }
+        }
+        return bundleLocation;
+    }
+
+    private static Entry read( File file, File bundleLocation )
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            try
+            {
+                if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION )
+                {
+                    return null;
+                }
+                if ( !bundleLocation.getAbsolutePath().equals( in.readUTF() ) )
+                {
+                    // digest collision
+                    return null;
+                }
+                long lastModified = in.readLong();
+                long length = in.readLong();
+
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully( bytes );
+                return new Entry( lastModified, length, new Manifest( new ByteArrayInputStream( bytes ) ) );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // corrupted or truncated, will be overwritten
+            return null;
+        }
+    }
+
+    private static void write( File file, File bundleLocation, Entry entry )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+
+        // write to a unique temporary file and rename, so concurrent builds never see partial files
+        File tmpFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+        try
+        {
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
+            try
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                out.writeUTF( bundleLocation.getAbsolutePath() );
+                out.writeLong( entry.lastModified );
+                out.writeLong( entry.length );
+
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                entry.manifest.write( buf );
+                out.writeInt( buf.size() );
+                buf.writeTo( out );
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if ( !tmpFile.renameTo( file ) )
+            {
+                file.delete();
+                tmpFile.renameTo( file );
+            }
+        }
+        finally
+        {
+            tmpFile.delete();
+        }
+    }
+}
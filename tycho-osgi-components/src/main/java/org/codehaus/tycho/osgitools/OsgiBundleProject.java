@@ -127,6 +127,10 @@ public class OsgiBundleProject
         }
         
         project.setContextValue( CTX_ARTIFACT_KEY, key );
+
+        // created while projects are set up one after another, because reactor projects may be resolved concurrently
+        // and read each other's build.properties
+        getEclipsePluginProject( DefaultReactorProject.adapt( project ) );
     }
 
     public ArtifactKey readArtifactKey( File location )
@@ -224,21 +228,24 @@ public class OsgiBundleProject
     
     public EclipsePluginProjectImpl getEclipsePluginProject( ReactorProject otherProject )
     {
-        EclipsePluginProjectImpl pdeProject =
-            (EclipsePluginProjectImpl) otherProject.getContextValue( TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT );
-        if ( pdeProject == null )
+        synchronized ( otherProject )
         {
-            try
-            {
-                pdeProject = new EclipsePluginProjectImpl( otherProject );
-                otherProject.setContextValue( TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT, pdeProject );
-            }
-            catch ( IOException e )
+            EclipsePluginProjectImpl pdeProject =
+                (EclipsePluginProjectImpl) otherProject.getContextValue( TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT );
+            if ( pdeProject == null )
             {
-                throw new RuntimeException( e );
+                try
+                {
+                    pdeProject = new EclipsePluginProjectImpl( otherProject );
+                    otherProject.setContextValue( TychoConstants.CTX_ECLIPSE_PLUGIN_PROJECT, pdeProject );
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( e );
+                }
             }
+            return pdeProject;
         }
-        return pdeProject;
     }
 
     public List<ClasspathEntry> getClasspath( MavenProject project )
@@ -3,13 +3,11 @@ package org.codehaus.tycho.osgitools.targetplatform;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -36,6 +34,11 @@ public class DefaultTargetPlatform
     protected final Map<ArtifactKey, ArtifactDescriptor> artifacts =
         new LinkedHashMap<ArtifactKey, ArtifactDescriptor>();
 
+    /**
+     * Keys of {@link #artifacts} by type and id.
+     */
+    private final Map<String, Map<String, Versions>> index = new HashMap<String, Map<String, Versions>>();
+
     protected final Map<File, ArtifactDescriptor> locations = new LinkedHashMap<File, ArtifactDescriptor>();
 
     protected final Set<Object/* IInstallableUnit */> installableUnits = new LinkedHashSet<Object>();
@@ -68,31 +71,85 @@ public class DefaultTargetPlatform
     {
         ArtifactKey key = normalizeKey( artifact.getKey() );
 
-        ArtifactKey cachedKey = KEY_CACHE.get( key );
-        if ( cachedKey != null )
-        {
-            key = cachedKey;
-        }
-        else
+        artifact = normalizeArtifact( artifact );
+
+        // target platforms of different projects may be populated concurrently
+        synchronized ( KEY_CACHE )
         {
-            KEY_CACHE.put( key, key );
+            ArtifactKey cachedKey = KEY_CACHE.get( key );
+            if ( cachedKey != null )
+            {
+                key = cachedKey;
+            }
+            else
+            {
+                KEY_CACHE.put( key, key );
+            }
+
+            ArtifactDescriptor cachedArtifact = ARTIFACT_CACHE.get( key );
+            if ( cachedArtifact != null && eq( cachedArtifact.getLocation(), artifact.getLocation() )
+                && eq( cachedArtifact.getMavenProject(), artifact.getMavenProject() ) )
+            {
+                artifact = cachedArtifact;
+            }
+            else
+            {
+                ARTIFACT_CACHE.put( key, artifact );
+            }
         }
 
-        artifact = normalizeArtifact( artifact );
+        putArtifact( key, artifact );
+        locations.put( artifact.getLocation(), artifact );
+    }
+
+    /**
+     * Adds artifact with normalized key to {@link #artifacts} and the type/id index.
+     */
+    protected void putArtifact( ArtifactKey key, ArtifactDescriptor artifact )
+    {
+        artifacts.put( key, artifact );
 
-        ArtifactDescriptor cachedArtifact = ARTIFACT_CACHE.get( key );
-        if ( cachedArtifact != null && eq( cachedArtifact.getLocation(), artifact.getLocation() )
-            && eq( cachedArtifact.getMavenProject(), artifact.getMavenProject() ) )
+        Versions versions = getVersions( key.getType(), key.getId(), true );
+        try
         {
-            artifact = cachedArtifact;
+            Version version = Version.parseVersion( key.getVersion() );
+            List<ArtifactKey> keys = versions.parsed.get( version );
+            if ( keys == null )
+            {
+                keys = new ArrayList<ArtifactKey>( 1 );
+                versions.parsed.put( version, keys );
+            }
+            if ( !keys.contains( key ) )
+            {
+                keys.add( key );
+            }
         }
-        else
+        catch ( IllegalArgumentException e )
         {
-            ARTIFACT_CACHE.put( key, artifact );
+            // not an OSGi version, artifact can only be looked up by its exact key
+            versions.unparsed.add( key );
         }
+    }
 
-        artifacts.put( key, artifact );
-        locations.put( artifact.getLocation(), artifact );
+    private Versions getVersions( String type, String id, boolean create )
+    {
+        Map<String, Versions> ids = index.get( type );
+        if ( ids == null )
+        {
+            if ( !create )
+            {
+                return null;
+            }
+            ids = new HashMap<String, Versions>();
+            index.put( type, ids );
+        }
+        Versions versions = ids.get( id );
+        if ( versions == null && create )
+        {
+            versions = new Versions();
+            ids.put( id, versions );
+        }
+        return versions;
     }
 
     private ArtifactDescriptor normalizeArtifact( ArtifactDescriptor artifact )
@@ -159,57 +216,56 @@ public class DefaultTargetPlatform
             return null;
         }
 
-        // features with matching id, sorted by version, highest version first
-        SortedMap<Version, ArtifactDescriptor> relevantArtifacts =
-            new TreeMap<Version, ArtifactDescriptor>( new Comparator<Version>()
-            {
-                public int compare( Version o1, Version o2 )
-                {
-                    return -o1.compareTo( o2 );
-                };
-            } );
+        // artifacts with matching id, sorted by version
+        Versions versions = getVersions( type, id, false );
+        SortedMap<Version, List<ArtifactKey>> relevantArtifacts = versions != null ? versions.parsed : null;
 
-        for ( Map.Entry<ArtifactKey, ArtifactDescriptor> entry : this.artifacts.entrySet() )
-        {
-            ArtifactKey key = entry.getKey();
-            if ( type.equals( key.getType() ) && id.equals( key.getId() ) )
-            {
-                relevantArtifacts.put( Version.parseVersion( key.getVersion() ), entry.getValue() );
-            }
-        }
-
-        if ( relevantArtifacts.isEmpty() )
+        if ( relevantArtifacts == null || relevantArtifacts.isEmpty() )
         {
             return null;
         }
 
         if ( version == null )
         {
-            return relevantArtifacts.get( relevantArtifacts.firstKey() ); // latest version
+            return getArtifact( relevantArtifacts.get( relevantArtifacts.lastKey() ) ); // latest version
         }
 
         Version parsedVersion = new Version( version );
         if ( VERSION_0_0_0.equals( parsedVersion ) )
         {
-            return relevantArtifacts.get( relevantArtifacts.firstKey() ); // latest version
+            return getArtifact( relevantArtifacts.get( relevantArtifacts.lastKey() ) ); // latest version
         }
 
         String qualifier = parsedVersion.getQualifier();
 
         if ( qualifier == null || "".equals( qualifier ) || ANY_QUALIFIER.equals( qualifier ) )
         {
-            // latest qualifier
-            for ( Map.Entry<Version, ArtifactDescriptor> entry : relevantArtifacts.entrySet() )
+            // latest qualifier, i.e. the highest version below the next micro version
+            SortedMap<Version, List<ArtifactKey>> candidates = relevantArtifacts;
+            if ( parsedVersion.getMicro() < Integer.MAX_VALUE )
             {
-                if ( baseVersionEquals( parsedVersion, entry.getKey() ) )
-                {
-                    return entry.getValue();
-                }
+                candidates =
+                    relevantArtifacts.headMap( new Version( parsedVersion.getMajor(), parsedVersion.getMinor(),
+                                                            parsedVersion.getMicro() + 1 ) );
+            }
+            if ( !candidates.isEmpty() && baseVersionEquals( parsedVersion, candidates.lastKey() ) )
+            {
+                return getArtifact( candidates.get( candidates.lastKey() ) );
             }
         }
 
         // perfect match or nothing
-        return relevantArtifacts.get( parsedVersion );
+        List<ArtifactKey> keys = relevantArtifacts.get( parsedVersion );
+        return keys != null ? getArtifact( keys ) : null;
+    }
+
+    /**
+     * @param keys keys with equal versions, like 1.0 and 1.0.0
+     * @return the artifact of the key that was added last
+     */
+    private ArtifactDescriptor getArtifact( List<ArtifactKey> keys )
+    {
+        return artifacts.get( keys.get( keys.size() - 1 ) );
     }
 
     private static boolean baseVersionEquals( Version v1, Version v2 )
@@ -251,13 +307,20 @@ public class DefaultTargetPlatform
 
     public void removeAll( String type, String id )
     {
-        Iterator<Entry<ArtifactKey, ArtifactDescriptor>> iter = artifacts.entrySet().iterator();
-        while ( iter.hasNext() )
+        Map<String, Versions> ids = index.get( type );
+        Versions versions = ids != null ? ids.remove( id ) : null;
+        if ( versions != null )
         {
-            ArtifactKey key = iter.next().getKey();
-            if ( key.getType().equals( type ) && key.getId().equals( id ) )
+            for ( List<ArtifactKey> keys : versions.parsed.values() )
+            {
+                for ( ArtifactKey key : keys )
+                {
+                    artifacts.remove( key );
+                }
+            }
+            for ( ArtifactKey key : versions.unparsed )
             {
-                iter.remove();
+                artifacts.remove( key );
             }
         }
     }
@@ -291,4 +354,15 @@ public class DefaultTargetPlatform
             sb.append( "\n" );
         }
     }
+
+    /**
+     * Keys of one type and id. Keys with OSGi versions are sorted by parsed version, in the order they were added if
+     * their versions are equal, like 1.0 and 1.0.0. Other keys are only kept so they can be removed.
+     */
+    private static class Versions
+    {
+        final SortedMap<Version, List<ArtifactKey>> parsed = new TreeMap<Version, List<ArtifactKey>>();
+
+        final Set<ArtifactKey> unparsed = new LinkedHashSet<ArtifactKey>();
+    }
 }
@@ -5,6 +5,8 @@ import java.util.Map;
 
 import org.codehaus.tycho.TargetEnvironment;
 import org.codehaus.tycho.TargetPlatform;
+import org.sonatype.tycho.ArtifactDescriptor;
+import org.sonatype.tycho.ArtifactKey;
 
 public class MultiEnvironmentTargetPlatform
     extends DefaultTargetPlatform
@@ -15,7 +17,10 @@ public class MultiEnvironmentTargetPlatform
     {
         platforms.put( environment, platform );
 
-        artifacts.putAll( platform.artifacts );
+        for ( Map.Entry<ArtifactKey, ArtifactDescriptor> entry : platform.artifacts.entrySet() )
+        {
+            putArtifact( entry.getKey(), entry.getValue() );
+        }
         locations.putAll( platform.locations );
         installableUnits.addAll( platform.installableUnits );
     }
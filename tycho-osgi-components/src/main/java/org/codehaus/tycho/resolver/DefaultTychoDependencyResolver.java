@@ -70,10 +70,25 @@ public class DefaultTychoDependencyResolver
 
     public void resolveProject( MavenSession session, MavenProject project, List<ReactorProject> reactorProjects )
     {
-        AbstractTychoProject dr = (AbstractTychoProject) projectTypes.get( project.getPackaging() );
-        if ( dr == null )
+        TargetPlatform targetPlatform = resolvePlatform( session, project, reactorProjects );
+        if ( targetPlatform != null )
         {
-            return;
+            resolveProject( session, project, targetPlatform );
+        }
+    }
+
+    /**
+     * Resolves the target platform of the given project. Neither the project nor the reactor projects are modified, so
+     * target platforms of several projects can be resolved concurrently.
+     * 
+     * @return the target platform, or <code>null</code> if the project is not a Tycho project
+     */
+    public TargetPlatform resolvePlatform( MavenSession session, MavenProject project,
+                                           List<ReactorProject> reactorProjects )
+    {
+        if ( projectTypes.get( project.getPackaging() ) == null )
+        {
+            return null;
         }
 
         TargetPlatformResolver resolver = targetPlatformResolverLocator.lookupPlatformResolver( project );
@@ -90,6 +105,18 @@ public class DefaultTychoDependencyResolver
             logger.debug( sb.toString() );
         }
 
+        return targetPlatform;
+    }
+
+    /**
+     * Assigns the resolved target platform to the given project, resolves the project against it and injects its
+     * dependencies. This modifies the project, so it must not run while target platforms of other projects are
+     * resolved.
+     */
+    public void resolveProject( MavenSession session, MavenProject project, TargetPlatform targetPlatform )
+    {
+        AbstractTychoProject dr = (AbstractTychoProject) projectTypes.get( project.getPackaging() );
+
         dr.setTargetPlatform( session, project, targetPlatform );
 
         dr.resolve( session, project );
@@ -0,0 +1,90 @@
+package org.codehaus.tycho.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 digests as hex strings, used as cache keys and file names of cache entries.
+ */
+public class DigestUtils
+{
+    public static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            // every Java platform is required to support SHA-1
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Adds the UTF-8 bytes of the given string to the digest.
+     */
+    public static void update( MessageDigest digest, String str )
+    {
+        try
+        {
+            digest.update( str.getBytes( "UTF-8" ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Adds the contents of the given file to the digest.
+     */
+    public static void update( MessageDigest digest, File file )
+        throws IOException
+    {
+        InputStream is = new FileInputStream( file );
+        try
+        {
+            byte[] buf = new byte[8192];
+            int n;
+            while ( ( n = is.read( buf ) ) > 0 )
+            {
+                digest.update( buf, 0, n );
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    public static String digest( String str )
+    {
+        MessageDigest digest = newDigest();
+        update( digest, str );
+        return toHex( digest.digest() );
+    }
+
+    public static String digest( File file )
+        throws IOException
+    {
+        MessageDigest digest = newDigest();
+        update( digest, file );
+        return toHex( digest.digest() );
+    }
+
+    public static String toHex( byte[] bytes )
+    {
+        StringBuilder sb = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            sb.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return sb.toString();
+    }
+}
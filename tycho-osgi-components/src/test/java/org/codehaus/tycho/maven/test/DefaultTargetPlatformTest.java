@@ -54,6 +54,85 @@ public class DefaultTargetPlatformTest
         Assert.assertNull( tp.getArtifact( type, id, "9.9.9.qualifier" ) );
     }
 
+    @Test
+    public void testRemoveAll()
+    {
+        DefaultTargetPlatform tp = new DefaultTargetPlatform();
+
+        addArtifact( tp, "foo", "foo", "1.0.0" );
+        addArtifact( tp, "foo", "foo", "2.0.0" );
+        addArtifact( tp, "foo", "bar", "1.0.0" );
+        addArtifact( tp, "bar", "foo", "1.0.0" );
+
+        tp.removeAll( "foo", "foo" );
+
+        Assert.assertNull( tp.getArtifact( "foo", "foo", null ) );
+        Assert.assertNull( tp.getArtifact( new DefaultArtifactKey( "foo", "foo", "2.0.0" ) ) );
+        Assert.assertEquals( 2, tp.getArtifacts().size() );
+        Assert.assertNotNull( tp.getArtifact( "foo", "bar", "1.0.0" ) );
+        Assert.assertNotNull( tp.getArtifact( "bar", "foo", "1.0.0" ) );
+
+        addArtifact( tp, "foo", "foo", "3.0.0" );
+        Assert.assertEquals( "3.0.0", tp.getArtifact( "foo", "foo", null ).getKey().getVersion() );
+    }
+
+    @Test
+    public void testRemoveAllWithNonOSGiVersions()
+    {
+        DefaultTargetPlatform tp = new DefaultTargetPlatform();
+
+        addArtifact( tp, "foo", "foo", "1.0.0" );
+        addArtifact( tp, "foo", "foo", "1.0-SNAPSHOT" );
+        Assert.assertNotNull( tp.getArtifact( new DefaultArtifactKey( "foo", "foo", "1.0-SNAPSHOT" ) ) );
+
+        tp.removeAll( "foo", "foo" );
+
+        Assert.assertNull( tp.getArtifact( new DefaultArtifactKey( "foo", "foo", "1.0-SNAPSHOT" ) ) );
+        Assert.assertTrue( tp.getArtifacts().isEmpty() );
+    }
+
+    @Test
+    public void testEqualVersions()
+    {
+        DefaultTargetPlatform tp = new DefaultTargetPlatform();
+
+        addArtifact( tp, "foo", "foo", "1.0" );
+        addArtifact( tp, "foo", "foo", "1.0.0" );
+
+        // both artifacts are kept, the one added last is found by version
+        Assert.assertEquals( 2, tp.getArtifacts().size() );
+        Assert.assertEquals( "1.0.0", tp.getArtifact( "foo", "foo", "1.0.0" ).getKey().getVersion() );
+        Assert.assertEquals( "1.0.0", tp.getArtifact( "foo", "foo", null ).getKey().getVersion() );
+        Assert.assertNotNull( tp.getArtifact( new DefaultArtifactKey( "foo", "foo", "1.0" ) ) );
+
+        tp.removeAll( "foo", "foo" );
+
+        Assert.assertTrue( tp.getArtifacts().isEmpty() );
+    }
+
+    @Test
+    public void testLargePlatform()
+    {
+        DefaultTargetPlatform tp = new DefaultTargetPlatform();
+
+        int bundles = 5000;
+        for ( int i = 0; i < bundles; i++ )
+        {
+            addArtifact( tp, "foo", "bundle" + i, "1.0.0.v" + i );
+            addArtifact( tp, "foo", "bundle" + i, "1.1.0.v" + i );
+        }
+
+        // each lookup is a hash lookup plus a binary search, so this completes in milliseconds
+        for ( int i = 0; i < bundles; i++ )
+        {
+            String id = "bundle" + i;
+            Assert.assertEquals( "1.1.0.v" + i, tp.getArtifact( "foo", id, null ).getKey().getVersion() );
+            Assert.assertEquals( "1.0.0.v" + i, tp.getArtifact( "foo", id, "1.0.0.qualifier" ).getKey().getVersion() );
+            Assert.assertEquals( "1.0.0.v" + i, tp.getArtifact( "foo", id, "1.0.0.v" + i ).getKey().getVersion() );
+            Assert.assertNull( tp.getArtifact( "foo", id, "1.2.0" ) );
+        }
+    }
+
     private void addArtifact( DefaultTargetPlatform tp, String type, String id, String version )
     {
         ArtifactKey key = new DefaultArtifactKey( type, id, version );
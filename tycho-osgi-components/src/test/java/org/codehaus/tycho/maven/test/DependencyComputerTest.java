@@ -1,6 +1,8 @@
 package org.codehaus.tycho.maven.test;
 
 import java.io.File;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
@@ -9,6 +11,7 @@ import org.apache.maven.execution.MavenExecutionResult;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.tycho.TargetPlatform;
 import org.codehaus.tycho.TychoConstants;
+import org.codehaus.tycho.osgitools.DefaultClasspathEntry.DefaultAccessRule;
 import org.codehaus.tycho.osgitools.DependencyComputer;
 import org.codehaus.tycho.osgitools.DependencyComputer.DependencyEntry;
 import org.codehaus.tycho.osgitools.EquinoxResolver;
@@ -16,8 +19,10 @@ import org.codehaus.tycho.testing.AbstractTychoMojoTestCase;
 import org.codehaus.tycho.utils.MavenSessionUtils;
 import org.eclipse.osgi.service.resolver.BundleDescription;
 import org.eclipse.osgi.service.resolver.State;
+import org.eclipse.osgi.service.resolver.StateObjectFactory;
 import org.junit.Assert;
 import org.junit.Test;
+import org.osgi.framework.Constants;
 
 public class DependencyComputerTest
     extends AbstractTychoMojoTestCase
@@ -79,4 +84,64 @@ public class DependencyComputerTest
 
         Assert.assertEquals( 0, result.getProject().getDependencies().size() );
     }
+
+    @Test
+    public void testLargeState()
+        throws Exception
+    {
+        int bundles = 2000;
+
+        StateObjectFactory factory = StateObjectFactory.defaultFactory;
+        State state = factory.createState( true );
+
+        StringBuilder imports = new StringBuilder();
+        for ( int i = 0; i < bundles; i++ )
+        {
+            Dictionary<String, String> manifest = newManifest( "exporter" + i );
+            manifest.put( Constants.EXPORT_PACKAGE, "p" + i + ".a,p" + i + ".b" );
+            state.addBundle( factory.createBundleDescription( state, manifest, "exporter" + i, i + 1 ) );
+
+            if ( i > 0 )
+            {
+                imports.append( ',' );
+            }
+            imports.append( "p" ).append( i ).append( ".a,p" ).append( i ).append( ".b" );
+        }
+
+        Dictionary<String, String> manifest = newManifest( "importer" );
+        manifest.put( Constants.IMPORT_PACKAGE, imports.toString() );
+        BundleDescription importer = factory.createBundleDescription( state, manifest, "importer", bundles + 1 );
+        state.addBundle( importer );
+
+        state.resolve( false );
+        Assert.assertTrue( importer.isResolved() );
+
+        List<DependencyEntry> dependencies = dependencyComputer.computeDependencies( state.getStateHelper(), importer );
+
+        Assert.assertEquals( bundles, dependencies.size() );
+        for ( int i = 0; i < dependencies.size(); i++ )
+        {
+            DependencyEntry entry = dependencies.get( i );
+
+            // same order as PDE, i.e. sorted by symbolicName_version
+            if ( i > 0 )
+            {
+                Assert.assertTrue( dependencies.get( i - 1 ).desc.toString().compareTo( entry.desc.toString() ) < 0 );
+            }
+
+            String name = entry.desc.getSymbolicName().substring( "exporter".length() );
+            Assert.assertEquals( 2, entry.rules.size() );
+            Assert.assertTrue( entry.rules.contains( new DefaultAccessRule( "p" + name + "/a/*", false ) ) );
+            Assert.assertTrue( entry.rules.contains( new DefaultAccessRule( "p" + name + "/b/*", false ) ) );
+        }
+    }
+
+    private static Dictionary<String, String> newManifest( String symbolicName )
+    {
+        Dictionary<String, String> manifest = new Hashtable<String, String>();
+        manifest.put( Constants.BUNDLE_MANIFESTVERSION, "2" );
+        manifest.put( Constants.BUNDLE_SYMBOLICNAME, symbolicName );
+        manifest.put( Constants.BUNDLE_VERSION, "1.0.0" );
+        return manifest;
+    }
 }
@@ -0,0 +1,48 @@
+package org.codehaus.tycho.maven.test;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.tycho.TargetPlatform;
+import org.codehaus.tycho.TychoConstants;
+import org.codehaus.tycho.osgitools.EquinoxResolver;
+import org.codehaus.tycho.testing.AbstractTychoMojoTestCase;
+import org.codehaus.tycho.utils.MavenSessionUtils;
+import org.eclipse.osgi.service.resolver.State;
+
+public class EquinoxResolverTest
+    extends AbstractTychoMojoTestCase
+{
+    public void testResolvedStateIsShared()
+        throws Exception
+    {
+        File basedir = getBasedir( "projects/exportpackage" );
+        File pom = new File( basedir, "pom.xml" );
+        MavenExecutionRequest request = newMavenExecutionRequest( pom );
+        request.getProjectBuildingRequest().setProcessPlugins( false );
+        MavenExecutionResult result = maven.execute( request );
+
+        EquinoxResolver resolver = lookup( EquinoxResolver.class );
+
+        Map<File, MavenProject> basedirMap = MavenSessionUtils.getBasedirMap( result.getTopologicallySortedProjects() );
+
+        MavenProject project = basedirMap.get( new File( basedir, "bundle" ) );
+        TargetPlatform platform = (TargetPlatform) project.getContextValue( TychoConstants.CTX_TARGET_PLATFORM );
+
+        State state = resolver.newResolvedState( project, platform );
+        assertSame( state, resolver.newResolvedState( project, platform ) );
+
+        // properties the resolver does not use, like most Maven project properties, don't prevent sharing
+        Properties properties = (Properties) project.getContextValue( TychoConstants.CTX_MERGED_PROPERTIES );
+        properties.put( "project.specific.property", "value" );
+        assertSame( state, resolver.newResolvedState( project, platform ) );
+
+        // properties the resolver uses do
+        properties.put( "osgi.nl", "de" );
+        assertNotSame( state, resolver.newResolvedState( project, platform ) );
+    }
+}
@@ -0,0 +1,122 @@
+package org.codehaus.tycho.maven.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.osgitools.ManifestCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManifestCacheTest
+{
+    private File tmpDir;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        tmpDir = File.createTempFile( "manifestcache", "" );
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( tmpDir );
+    }
+
+    @Test
+    public void testInvalidatedByLength()
+        throws IOException
+    {
+        File jar = new File( tmpDir, "bundle.jar" );
+        Manifest manifest = writeJar( jar, "1.0.0" );
+
+        ManifestCache cache = new ManifestCache( 10 );
+        cache.put( jar, manifest );
+        Assert.assertSame( manifest, cache.get( jar ) );
+
+        writeJar( jar, "1.0.0.extra-long-qualifier" );
+        Assert.assertNull( cache.get( jar ) );
+    }
+
+    @Test
+    public void testDirectoryInvalidatedByPluginXml()
+        throws IOException
+    {
+        File bundle = new File( tmpDir, "bundle" );
+        bundle.mkdirs();
+        File pluginXml = new File( bundle, "plugin.xml" );
+        FileUtils.fileWrite( pluginXml.getAbsolutePath(), "<plugin id=\"bundle\" version=\"1.0.0\"/>" );
+
+        Manifest manifest = new Manifest();
+        ManifestCache cache = new ManifestCache( 10 );
+        cache.put( bundle, manifest );
+        Assert.assertSame( manifest, cache.get( bundle ) );
+
+        FileUtils.fileWrite( pluginXml.getAbsolutePath(), "<plugin id=\"bundle\" version=\"1.0.0.qualifier\"/>" );
+        Assert.assertNull( cache.get( bundle ) );
+    }
+
+    @Test
+    public void testBounded()
+        throws IOException
+    {
+        ManifestCache cache = new ManifestCache( 2 );
+        File[] jars = new File[3];
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            jars[i] = new File( tmpDir, "bundle" + i + ".jar" );
+            cache.put( jars[i], writeJar( jars[i], "1.0." + i ) );
+        }
+
+        Assert.assertNull( cache.get( jars[0] ) );
+        Assert.assertNotNull( cache.get( jars[1] ) );
+        Assert.assertNotNull( cache.get( jars[2] ) );
+    }
+
+    @Test
+    public void testPersistent()
+        throws IOException
+    {
+        File jar = new File( tmpDir, "bundle.jar" );
+        File cacheDir = new File( tmpDir, "cache" );
+
+        ManifestCache cache = new ManifestCache( 10 );
+        cache.setDirectory( cacheDir );
+        cache.put( jar, writeJar( jar, "1.0.0" ) );
+
+        // new JVM
+        ManifestCache newCache = new ManifestCache( 10 );
+        newCache.setDirectory( cacheDir );
+        Manifest manifest = newCache.get( jar );
+        Assert.assertNotNull( manifest );
+        Assert.assertEquals( "1.0.0", manifest.getMainAttributes().getValue( "Bundle-Version" ) );
+
+        // memory only
+        Assert.assertNull( new ManifestCache( 10 ).get( jar ) );
+    }
+
+    private static Manifest writeJar( File jar, String version )
+        throws IOException
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        manifest.getMainAttributes().putValue( "Bundle-SymbolicName", "bundle" );
+        manifest.getMainAttributes().putValue( "Bundle-Version", version );
+
+        OutputStream os = new JarOutputStream( new FileOutputStream( jar ), manifest );
+        os.close();
+        return manifest;
+    }
+}
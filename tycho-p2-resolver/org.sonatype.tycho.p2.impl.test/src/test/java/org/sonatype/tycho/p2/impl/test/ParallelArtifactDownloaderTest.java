@@ -0,0 +1,121 @@
+package org.sonatype.tycho.p2.impl.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.impl.Activator;
+import org.sonatype.tycho.p2.impl.resolver.ParallelArtifactDownloader;
+import org.sonatype.tycho.p2.maven.repository.LocalArtifactRepository;
+import org.sonatype.tycho.p2.maven.repository.MavenMirrorRequest;
+
+public class ParallelArtifactDownloaderTest
+{
+    private static final int ARTIFACTS = 20;
+
+    private File basedir;
+
+    private IProvisioningAgent agent;
+
+    private IArtifactRepository sourceRepository;
+
+    private List<IArtifactKey> keys = new ArrayList<IArtifactKey>();
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        basedir = File.createTempFile( "paralleldownloader", "" );
+        basedir.delete();
+        basedir.mkdirs();
+
+        agent = Activator.newProvisioningAgent();
+        IArtifactRepositoryManager manager =
+            (IArtifactRepositoryManager) agent.getService( IArtifactRepositoryManager.SERVICE_NAME );
+        sourceRepository =
+            manager.createRepository( new File( basedir, "source" ).toURI(), "source",
+                                      IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null );
+
+        for ( int i = 0; i < ARTIFACTS; i++ )
+        {
+            IArtifactKey key = BundlesAction.createBundleArtifactKey( "bundle" + i, "1.0." + i );
+            OutputStream os = sourceRepository.getOutputStream( new ArtifactDescriptor( key ) );
+            try
+            {
+                os.write( ( "content of bundle" + i ).getBytes( "UTF-8" ) );
+            }
+            finally
+            {
+                os.close();
+            }
+            keys.add( key );
+        }
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        agent.stop();
+        delete( basedir );
+    }
+
+    @Test
+    public void testConcurrentDownloadsIntoOneRepository()
+        throws Exception
+    {
+        File localRepositoryLocation = new File( basedir, "local" );
+        LocalArtifactRepository localRepository = new LocalArtifactRepository( localRepositoryLocation );
+
+        List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        for ( IArtifactKey key : keys )
+        {
+            requests.add( new MavenMirrorRequest( key, localRepository ) );
+        }
+
+        ParallelArtifactDownloader downloader =
+            new ParallelArtifactDownloader( Collections.singletonList( sourceRepository ), 8, 2, new NullP2Logger() );
+        List<MavenMirrorRequest> failed = downloader.download( requests );
+
+        Assert.assertEquals( Collections.emptyList(), failed );
+        for ( IArtifactKey key : keys )
+        {
+            Assert.assertEquals( key.toString(), 1, localRepository.getArtifactDescriptors( key ).length );
+        }
+
+        localRepository.save();
+
+        // no descriptor or index entry got lost by concurrent updates
+        LocalArtifactRepository reloaded = new LocalArtifactRepository( localRepositoryLocation );
+        for ( IArtifactKey key : keys )
+        {
+            Assert.assertEquals( key.toString(), 1, reloaded.getArtifactDescriptors( key ).length );
+            Assert.assertTrue( key.toString(), reloaded.contains( reloaded.getArtifactDescriptors( key )[0] ) );
+        }
+    }
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
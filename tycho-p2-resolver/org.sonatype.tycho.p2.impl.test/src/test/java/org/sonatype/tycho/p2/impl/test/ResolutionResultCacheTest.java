@@ -0,0 +1,166 @@
+package org.sonatype.tycho.p2.impl.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.query.CollectionResult;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.impl.resolver.ResolutionResultCache;
+import org.sonatype.tycho.test.util.InstallableUnitUtil;
+
+public class ResolutionResultCacheTest
+{
+    private File tmpDir;
+
+    private Map<String, String> context;
+
+    private List<IRequirement> requirements = Collections.emptyList();
+
+    private Set<IInstallableUnit> noExtras = Collections.emptySet();
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        tmpDir = File.createTempFile( "resolutioncache", "" );
+        tmpDir.delete();
+        tmpDir.mkdirs();
+
+        context = new HashMap<String, String>();
+        context.put( "osgi.os", "linux" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        for ( File file : tmpDir.listFiles() )
+        {
+            file.delete();
+        }
+        tmpDir.delete();
+    }
+
+    @Test
+    public void testRootUnitsAreMappedToCurrentInstances()
+    {
+        ResolutionResultCache cache = new ResolutionResultCache();
+
+        IInstallableUnit dependency = InstallableUnitUtil.createIU( "dependency", "1.0.0" );
+        IQueryable<IInstallableUnit> available = newQueryable( dependency );
+
+        Set<IInstallableUnit> roots = newRoots( "1.0.0" );
+        String key = cache.getKey( available, context, roots, requirements, new NullProgressMonitor() );
+        cache.put( key, union( roots, dependency ), roots, noExtras, null );
+
+        Set<IInstallableUnit> otherRoots = newRoots( "1.0.0" );
+        Assert.assertEquals( key,
+                             cache.getKey( available, context, otherRoots, requirements, new NullProgressMonitor() ) );
+
+        Collection<IInstallableUnit> cached =
+            cache.get( key, available, otherRoots, noExtras, null, new NullProgressMonitor() );
+        Assert.assertEquals( 2, cached.size() );
+        Assert.assertTrue( cached.contains( dependency ) );
+        Assert.assertSame( otherRoots.iterator().next(), findUnit( cached, "root" ) );
+    }
+
+    @Test
+    public void testKeyDependsOnInputs()
+    {
+        ResolutionResultCache cache = new ResolutionResultCache();
+        NullProgressMonitor monitor = new NullProgressMonitor();
+
+        IQueryable<IInstallableUnit> available = newQueryable( InstallableUnitUtil.createIU( "dependency", "1.0.0" ) );
+        Set<IInstallableUnit> roots = newRoots( "1.0.0" );
+        String key = cache.getKey( available, context, roots, requirements, monitor );
+
+        IQueryable<IInstallableUnit> otherAvailable =
+            newQueryable( InstallableUnitUtil.createIU( "dependency", "1.0.1" ) );
+        Assert.assertFalse( key.equals( cache.getKey( otherAvailable, context, roots, requirements, monitor ) ) );
+
+        Set<IInstallableUnit> otherRoots = newRoots( "[1.0.0,2.0.0)" );
+        Assert.assertFalse( key.equals( cache.getKey( available, context, otherRoots, requirements, monitor ) ) );
+
+        Map<String, String> otherContext = new HashMap<String, String>( context );
+        otherContext.put( "osgi.os", "win32" );
+        Assert.assertFalse( key.equals( cache.getKey( available, otherContext, roots, requirements, monitor ) ) );
+
+        // properties that are not part of the selection context
+        Map<String, String> otherProperties = new HashMap<String, String>( context );
+        otherProperties.put( "org.eclipse.update.install.features", "false" );
+        Assert.assertFalse( key.equals( cache.getKey( available, otherProperties, roots, requirements, monitor ) ) );
+    }
+
+    @Test
+    public void testPersistentCache()
+    {
+        NullProgressMonitor monitor = new NullProgressMonitor();
+
+        IInstallableUnit dependency = InstallableUnitUtil.createIU( "dependency", "1.0.0" );
+        IQueryable<IInstallableUnit> available = newQueryable( dependency );
+        Set<IInstallableUnit> roots = newRoots( "1.0.0" );
+
+        ResolutionResultCache cache = new ResolutionResultCache();
+        String key = cache.getKey( available, context, roots, requirements, monitor );
+        cache.put( key, union( roots, dependency ), roots, noExtras, tmpDir );
+        Assert.assertTrue( new File( tmpDir, key ).isFile() );
+
+        // new build
+        IInstallableUnit newDependency = InstallableUnitUtil.createIU( "dependency", "1.0.0" );
+        IQueryable<IInstallableUnit> newAvailable = newQueryable( newDependency );
+        ResolutionResultCache newCache = new ResolutionResultCache();
+        Assert.assertEquals( key, newCache.getKey( newAvailable, context, roots, requirements, monitor ) );
+
+        Collection<IInstallableUnit> cached = newCache.get( key, newAvailable, roots, noExtras, tmpDir, monitor );
+        Assert.assertNotNull( cached );
+        Assert.assertSame( newDependency, findUnit( cached, "dependency" ) );
+
+        // unit no longer available
+        Assert.assertNull( new ResolutionResultCache().get( key, newQueryable(), roots, noExtras, tmpDir, monitor ) );
+    }
+
+    private static IQueryable<IInstallableUnit> newQueryable( IInstallableUnit... units )
+    {
+        return new CollectionResult<IInstallableUnit>( Arrays.asList( units ) );
+    }
+
+    private static Set<IInstallableUnit> newRoots( String dependencyRange )
+    {
+        Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+        result.add( InstallableUnitUtil.createIURequirement( "root", "1.0.0", "dependency", dependencyRange ) );
+        return result;
+    }
+
+    private static Collection<IInstallableUnit> union( Set<IInstallableUnit> units, IInstallableUnit iu )
+    {
+        List<IInstallableUnit> result = new ArrayList<IInstallableUnit>( units );
+        result.add( iu );
+        return result;
+    }
+
+    private static IInstallableUnit findUnit( Collection<IInstallableUnit> units, String id )
+    {
+        for ( IInstallableUnit iu : units )
+        {
+            if ( id.equals( iu.getId() ) )
+            {
+                return iu;
+            }
+        }
+        return null;
+    }
+}
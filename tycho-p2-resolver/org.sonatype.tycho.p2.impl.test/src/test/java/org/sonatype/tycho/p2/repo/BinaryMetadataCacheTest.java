@@ -0,0 +1,179 @@
+package org.sonatype.tycho.p2.repo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.impl.Activator;
+import org.sonatype.tycho.p2.impl.repo.BinaryMetadataCache;
+
+public class BinaryMetadataCacheTest
+{
+    private IProvisioningAgent agent;
+
+    private File tmpDir;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        agent = Activator.newProvisioningAgent();
+
+        tmpDir = File.createTempFile( "binarycache", "" );
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        agent.stop();
+
+        for ( File file : tmpDir.listFiles() )
+        {
+            file.delete();
+        }
+        tmpDir.delete();
+    }
+
+    @Test
+    public void testWriteAndRead()
+        throws Exception
+    {
+        File repositoryLocation = new File( "resources/repositories/e342" ).getCanonicalFile();
+        IMetadataRepository repository = loadRepository( repositoryLocation );
+
+        File contentFile = new File( tmpDir, "content.xml" );
+        copy( new File( repositoryLocation, "content.xml" ), contentFile );
+
+        BinaryMetadataCache cache = new BinaryMetadataCache();
+        Assert.assertTrue( cache.write( repository, contentFile ) );
+
+        IMetadataRepository cached = cache.read( agent, repositoryLocation.toURI(), contentFile );
+        Assert.assertNotNull( cached );
+        Assert.assertEquals( repository.getName(), cached.getName() );
+
+        Map<IInstallableUnit, IInstallableUnit> expected = getUnits( repository );
+        Map<IInstallableUnit, IInstallableUnit> actual = getUnits( cached );
+        Assert.assertEquals( expected.keySet(), actual.keySet() );
+
+        for ( IInstallableUnit iu : expected.keySet() )
+        {
+            IInstallableUnit other = actual.get( iu );
+            Assert.assertEquals( iu.getProperties(), other.getProperties() );
+            Assert.assertEquals( iu.getFilter(), other.getFilter() );
+            Assert.assertEquals( new HashSet<Object>( iu.getProvidedCapabilities() ),
+                                 new HashSet<Object>( other.getProvidedCapabilities() ) );
+            Assert.assertEquals( new HashSet<Object>( iu.getRequirements() ),
+                                 new HashSet<Object>( other.getRequirements() ) );
+            Assert.assertEquals( new ArrayList<Object>( iu.getArtifacts() ),
+                                 new ArrayList<Object>( other.getArtifacts() ) );
+            Assert.assertEquals( iu.getTouchpointType(), other.getTouchpointType() );
+            Assert.assertEquals( new ArrayList<Object>( iu.getTouchpointData() ),
+                                 new ArrayList<Object>( other.getTouchpointData() ) );
+        }
+    }
+
+    @Test
+    public void testStaleCache()
+        throws Exception
+    {
+        File repositoryLocation = new File( "resources/repositories/e342" ).getCanonicalFile();
+        IMetadataRepository repository = loadRepository( repositoryLocation );
+
+        File contentFile = new File( tmpDir, "content.xml" );
+        copy( new File( repositoryLocation, "content.xml" ), contentFile );
+
+        BinaryMetadataCache cache = new BinaryMetadataCache();
+        Assert.assertTrue( cache.write( repository, contentFile ) );
+
+        contentFile.setLastModified( contentFile.lastModified() - 10000L );
+
+        Assert.assertNull( cache.read( agent, repositoryLocation.toURI(), contentFile ) );
+    }
+
+    @Test
+    public void testRewriteAfterRead()
+        throws Exception
+    {
+        File repositoryLocation = new File( "resources/repositories/e342" ).getCanonicalFile();
+        IMetadataRepository repository = loadRepository( repositoryLocation );
+
+        File contentFile = new File( tmpDir, "content.xml" );
+        copy( new File( repositoryLocation, "content.xml" ), contentFile );
+
+        BinaryMetadataCache cache = new BinaryMetadataCache();
+        Assert.assertTrue( cache.write( repository, contentFile ) );
+        Assert.assertNotNull( cache.read( agent, repositoryLocation.toURI(), contentFile ) );
+
+        // the file read before must not be locked
+        contentFile.setLastModified( contentFile.lastModified() - 10000L );
+        Assert.assertTrue( cache.write( repository, contentFile ) );
+        Assert.assertNotNull( cache.read( agent, repositoryLocation.toURI(), contentFile ) );
+
+        // no temporary files left behind
+        Assert.assertEquals( 2, tmpDir.listFiles().length );
+    }
+
+    private IMetadataRepository loadRepository( File location )
+        throws ProvisionException
+    {
+        IMetadataRepositoryManager manager =
+            (IMetadataRepositoryManager) agent.getService( IMetadataRepositoryManager.SERVICE_NAME );
+        return manager.loadRepository( location.toURI(), null );
+    }
+
+    private static Map<IInstallableUnit, IInstallableUnit> getUnits( IMetadataRepository repository )
+    {
+        Map<IInstallableUnit, IInstallableUnit> result = new HashMap<IInstallableUnit, IInstallableUnit>();
+        for ( IInstallableUnit iu : repository.query( QueryUtil.ALL_UNITS, null ).toSet() )
+        {
+            result.put( iu, iu );
+        }
+        return result;
+    }
+
+    private static void copy( File source, File target )
+        throws IOException
+    {
+        InputStream is = new FileInputStream( source );
+        try
+        {
+            OutputStream os = new FileOutputStream( target );
+            try
+            {
+                byte[] buf = new byte[4096];
+                int n;
+                while ( ( n = is.read( buf ) ) != -1 )
+                {
+                    os.write( buf, 0, n );
+                }
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,764 @@
+package org.sonatype.tycho.p2.impl.repo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.ICopyright;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitFragment;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitPatch;
+import org.eclipse.equinox.p2.metadata.ILicense;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.ITouchpointData;
+import org.eclipse.equinox.p2.metadata.ITouchpointInstruction;
+import org.eclipse.equinox.p2.metadata.ITouchpointType;
+import org.eclipse.equinox.p2.metadata.IUpdateDescriptor;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * Compact binary form of the installable units of a p2 metadata repository, stored next to the raw
+ * <code>content.jar</code>/<code>content.xml</code> file cached by
+ * {@link org.sonatype.tycho.p2.impl.resolver.TychoP2RepositoryCacheManager}. Loading the binary form avoids parsing the
+ * repository XML on every build.
+ * <p>
+ * All strings, including versions and version ranges, are stored once in a string table and referenced by index.
+ * Provided capabilities are stored in separate namespace, name and version columns. The binary form is only valid
+ * for the exact cached content file it was created from, as identified by its timestamp and length.
+ * <p>
+ * Only installable units with well-known structure are supported. If a repository contains any unit that cannot be
+ * represented exactly (e.g. patches or requirements based on arbitrary match expressions), no binary form is written
+ * and the repository is always loaded from XML.
+ */
+@SuppressWarnings( "restriction" )
+public class BinaryMetadataCache
+{
+    public static final String FILE_SUFFIX = ".tycho-bin";
+
+    private static final int MAGIC = 0x54503242; // "TP2B"
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NONE = -1;
+
+    private static final int FLAG_SINGLETON = 1;
+
+    private static final int FLAG_FRAGMENT = 1 << 1;
+
+    private static final int FLAG_TOUCHPOINT_TYPE = 1 << 2;
+
+    private static final int FLAG_UPDATE_DESCRIPTOR = 1 << 3;
+
+    private static final int FLAG_COPYRIGHT = 1 << 4;
+
+    /**
+     * Thrown when an installable unit cannot be represented in the binary form.
+     */
+    private static class UnsupportedUnitException
+        extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedUnitException( String message )
+        {
+            super( message );
+        }
+    }
+
+    public static File getCacheFile( File contentFile )
+    {
+        return new File( contentFile.getParentFile(), contentFile.getName() + FILE_SUFFIX );
+    }
+
+    /**
+     * @return the cached metadata repository, or <code>null</code> if there is no valid binary form for the given
+     *         content file
+     */
+    public IMetadataRepository read( IProvisioningAgent agent, URI location, File contentFile )
+        throws IOException
+    {
+        File cacheFile = getCacheFile( contentFile );
+        if ( !cacheFile.isFile() || !contentFile.isFile() )
+        {
+            return null;
+        }
+
+        FileInputStream is = new FileInputStream( cacheFile );
+        try
+        {
+            // read into the heap rather than mapping the file, a mapping would keep the file locked on Windows until
+            // it is garbage collected, so the cache file could not be replaced
+            FileChannel channel = is.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate( (int) channel.size() );
+            while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 )
+            {
+                // read fully
+            }
+            buffer.flip();
+
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                || buffer.getLong() != contentFile.lastModified() || buffer.getLong() != contentFile.length() )
+            {
+                return null;
+            }
+
+            Reader reader = new Reader( buffer );
+
+            // skip size of repository header
+            buffer.getInt();
+            String name = reader.string( buffer.getInt() );
+            Map<String, String> properties = reader.properties();
+            List<IInstallableUnit> units = reader.units();
+
+            return new CachedMetadataRepository( agent, name, location, properties, units );
+        }
+        catch ( RuntimeException e )
+        {
+            // corrupted or truncated file
+            throw (IOException) new IOException( "Invalid p2 metadata cache " + cacheFile ).initCause( e );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Writes binary form of the given repository, if all its installable units can be represented exactly.
+     *
+     * @return <code>true</code> if binary form was written
+     */
+    public boolean write( IMetadataRepository repository, File contentFile )
+        throws IOException
+    {
+        Writer writer = new Writer();
+        try
+        {
+            writer.repository( repository );
+        }
+        catch ( UnsupportedUnitException e )
+        {
+            return false;
+        }
+
+        File cacheFile = getCacheFile( contentFile );
+        // unique name, builds sharing the local repository may write the same cache file at the same time
+        File tmpFile = File.createTempFile( cacheFile.getName(), ".tmp", cacheFile.getParentFile() );
+
+        try
+        {
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
+            try
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( FORMAT_VERSION );
+                out.writeLong( contentFile.lastModified() );
+                out.writeLong( contentFile.length() );
+                writer.writeTo( out );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            tmpFile.delete();
+            throw e;
+        }
+
+        cacheFile.delete();
+        if ( !tmpFile.renameTo( cacheFile ) )
+        {
+            tmpFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static class Writer
+    {
+        private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+        private final IntBuffer header = new IntBuffer();
+
+        private final IntBuffer units = new IntBuffer();
+
+        private final IntBuffer capabilityNamespaces = new IntBuffer();
+
+        private final IntBuffer capabilityNames = new IntBuffer();
+
+        private final IntBuffer capabilityVersions = new IntBuffer();
+
+        private int unitCount;
+
+        public void repository( IMetadataRepository repository )
+            throws UnsupportedUnitException
+        {
+            header.add( string( repository.getName() ) );
+            properties( header, repository.getProperties() );
+
+            Iterator<IInstallableUnit> iter = repository.query( QueryUtil.ALL_UNITS, null ).iterator();
+            while ( iter.hasNext() )
+            {
+                unit( iter.next() );
+                unitCount++;
+            }
+        }
+
+        private void unit( IInstallableUnit iu )
+            throws UnsupportedUnitException
+        {
+            if ( iu instanceof IInstallableUnitPatch )
+            {
+                throw new UnsupportedUnitException( "Patch " + iu );
+            }
+            if ( !iu.getMetaRequirements().isEmpty() )
+            {
+                throw new UnsupportedUnitException( "Meta requirements " + iu );
+            }
+
+            int flags = 0;
+            if ( iu.isSingleton() )
+            {
+                flags |= FLAG_SINGLETON;
+            }
+            if ( iu instanceof IInstallableUnitFragment )
+            {
+                flags |= FLAG_FRAGMENT;
+            }
+            if ( iu.getTouchpointType() != null )
+            {
+                flags |= FLAG_TOUCHPOINT_TYPE;
+            }
+            if ( iu.getUpdateDescriptor() != null )
+            {
+                flags |= FLAG_UPDATE_DESCRIPTOR;
+            }
+            if ( iu.getCopyright() != null )
+            {
+                flags |= FLAG_COPYRIGHT;
+            }
+
+            units.add( flags );
+            units.add( string( iu.getId() ) );
+            units.add( string( iu.getVersion().toString() ) );
+            units.add( filter( iu.getFilter() ) );
+            properties( units, iu.getProperties() );
+
+            Collection<IProvidedCapability> capabilities = iu.getProvidedCapabilities();
+            units.add( capabilities.size() );
+            for ( IProvidedCapability capability : capabilities )
+            {
+                capabilityNamespaces.add( string( capability.getNamespace() ) );
+                capabilityNames.add( string( capability.getName() ) );
+                capabilityVersions.add( string( capability.getVersion().toString() ) );
+            }
+
+            requirements( iu.getRequirements() );
+
+            if ( iu instanceof IInstallableUnitFragment )
+            {
+                requirements( ( (IInstallableUnitFragment) iu ).getHost() );
+            }
+
+            Collection<IArtifactKey> artifacts = iu.getArtifacts();
+            units.add( artifacts.size() );
+            for ( IArtifactKey artifact : artifacts )
+            {
+                units.add( string( artifact.getClassifier() ) );
+                units.add( string( artifact.getId() ) );
+                units.add( string( artifact.getVersion().toString() ) );
+            }
+
+            ITouchpointType touchpointType = iu.getTouchpointType();
+            if ( touchpointType != null )
+            {
+                units.add( string( touchpointType.getId() ) );
+                units.add( string( touchpointType.getVersion().toString() ) );
+            }
+
+            Collection<ITouchpointData> touchpointData = iu.getTouchpointData();
+            units.add( touchpointData.size() );
+            for ( ITouchpointData data : touchpointData )
+            {
+                Map<String, ITouchpointInstruction> instructions = data.getInstructions();
+                units.add( instructions.size() );
+                for ( Map.Entry<String, ITouchpointInstruction> instruction : instructions.entrySet() )
+                {
+                    units.add( string( instruction.getKey() ) );
+                    units.add( string( instruction.getValue().getBody() ) );
+                    units.add( string( instruction.getValue().getImportAttribute() ) );
+                }
+            }
+
+            IUpdateDescriptor updateDescriptor = iu.getUpdateDescriptor();
+            if ( updateDescriptor != null )
+            {
+                updateDescriptor( updateDescriptor );
+            }
+
+            Collection<ILicense> licenses = iu.getLicenses();
+            units.add( licenses.size() );
+            for ( ILicense license : licenses )
+            {
+                units.add( string( license.getLocation() != null ? license.getLocation().toString() : null ) );
+                units.add( string( license.getBody() ) );
+            }
+
+            ICopyright copyright = iu.getCopyright();
+            if ( copyright != null )
+            {
+                units.add( string( copyright.getLocation() != null ? copyright.getLocation().toString() : null ) );
+                units.add( string( copyright.getBody() ) );
+            }
+        }
+
+        private void requirements( Collection<IRequirement> requirements )
+            throws UnsupportedUnitException
+        {
+            units.add( requirements.size() );
+            for ( IRequirement requirement : requirements )
+            {
+                if ( !( requirement instanceof RequiredCapability ) )
+                {
+                    throw new UnsupportedUnitException( "Requirement " + requirement );
+                }
+                RequiredCapability capability = (RequiredCapability) requirement;
+                units.add( string( capability.getNamespace() ) );
+                units.add( string( capability.getName() ) );
+                units.add( string( capability.getRange().toString() ) );
+                units.add( filter( capability.getFilter() ) );
+                units.add( capability.getMin() );
+                units.add( capability.getMax() );
+                units.add( capability.isGreedy() ? 1 : 0 );
+                units.add( string( capability.getDescription() ) );
+            }
+        }
+
+        private void updateDescriptor( IUpdateDescriptor descriptor )
+            throws UnsupportedUnitException
+        {
+            Collection<IMatchExpression<IInstallableUnit>> updated = descriptor.getIUsBeingUpdated();
+            if ( updated.size() != 1 )
+            {
+                throw new UnsupportedUnitException( "Update descriptor " + descriptor );
+            }
+            IMatchExpression<IInstallableUnit> match = updated.iterator().next();
+            if ( !RequiredCapability.isSimpleRequirement( match ) )
+            {
+                throw new UnsupportedUnitException( "Update descriptor " + descriptor );
+            }
+            String id = RequiredCapability.extractName( match );
+            VersionRange range = RequiredCapability.extractRange( match );
+
+            // make sure the descriptor can be recreated exactly
+            IUpdateDescriptor recreated =
+                MetadataFactory.createUpdateDescriptor( id, range, descriptor.getSeverity(),
+                                                        descriptor.getDescription() );
+            if ( !updated.equals( recreated.getIUsBeingUpdated() ) )
+            {
+                throw new UnsupportedUnitException( "Update descriptor " + descriptor );
+            }
+
+            units.add( string( id ) );
+            units.add( string( range.toString() ) );
+            units.add( descriptor.getSeverity() );
+            units.add( string( descriptor.getDescription() ) );
+        }
+
+        private int filter( IMatchExpression<IInstallableUnit> filter )
+            throws UnsupportedUnitException
+        {
+            if ( filter == null )
+            {
+                return NONE;
+            }
+            Object[] parameters = filter.getParameters();
+            if ( parameters.length != 1 || parameters[0] == null )
+            {
+                throw new UnsupportedUnitException( "Filter " + filter );
+            }
+            String ldap = parameters[0].toString();
+
+            // make sure the filter can be recreated exactly
+            if ( !filter.equals( InstallableUnit.parseFilter( ldap ) ) )
+            {
+                throw new UnsupportedUnitException( "Filter " + filter );
+            }
+            return string( ldap );
+        }
+
+        private void properties( IntBuffer buffer, Map<String, String> properties )
+        {
+            buffer.add( properties.size() );
+            for ( Map.Entry<String, String> property : properties.entrySet() )
+            {
+                buffer.add( string( property.getKey() ) );
+                buffer.add( string( property.getValue() ) );
+            }
+        }
+
+        private int string( String str )
+        {
+            if ( str == null )
+            {
+                return NONE;
+            }
+            Integer index = strings.get( str );
+            if ( index == null )
+            {
+                index = Integer.valueOf( strings.size() );
+                strings.put( str, index );
+            }
+            return index.intValue();
+        }
+
+        public void writeTo( DataOutputStream out )
+            throws IOException
+        {
+            out.writeInt( strings.size() );
+            for ( String str : strings.keySet() )
+            {
+                byte[] bytes = str.getBytes( "UTF-8" );
+                out.writeInt( bytes.length );
+                out.write( bytes );
+            }
+
+            header.writeTo( out );
+
+            out.writeInt( unitCount );
+            capabilityNamespaces.writeTo( out );
+            capabilityNames.writeTo( out );
+            capabilityVersions.writeTo( out );
+            units.writeTo( out );
+        }
+    }
+
+    private static class Reader
+    {
+        private final ByteBuffer buffer;
+
+        private final String[] strings;
+
+        private final Version[] versions;
+
+        private final VersionRange[] ranges;
+
+        private final IMatchExpression<?>[] filters;
+
+        public Reader( ByteBuffer buffer )
+            throws IOException
+        {
+            this.buffer = buffer;
+
+            int count = buffer.getInt();
+            strings = new String[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get( bytes );
+                strings[i] = new String( bytes, "UTF-8" );
+            }
+
+            versions = new Version[count];
+            ranges = new VersionRange[count];
+            filters = new IMatchExpression<?>[count];
+        }
+
+        public String string( int index )
+        {
+            return index != NONE ? strings[index] : null;
+        }
+
+        private Version version( int index )
+        {
+            Version version = versions[index];
+            if ( version == null )
+            {
+                version = Version.create( strings[index] );
+                versions[index] = version;
+            }
+            return version;
+        }
+
+        private VersionRange range( int index )
+        {
+            VersionRange range = ranges[index];
+            if ( range == null )
+            {
+                range = new VersionRange( strings[index] );
+                ranges[index] = range;
+            }
+            return range;
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private IMatchExpression<IInstallableUnit> filter( int index )
+        {
+            if ( index == NONE )
+            {
+                return null;
+            }
+            IMatchExpression<?> filter = filters[index];
+            if ( filter == null )
+            {
+                filter = InstallableUnit.parseFilter( strings[index] );
+                filters[index] = filter;
+            }
+            return (IMatchExpression<IInstallableUnit>) filter;
+        }
+
+        public Map<String, String> properties()
+        {
+            int count = buffer.getInt();
+            Map<String, String> properties = new LinkedHashMap<String, String>( count * 2 );
+            for ( int i = 0; i < count; i++ )
+            {
+                String key = string( buffer.getInt() );
+                properties.put( key, string( buffer.getInt() ) );
+            }
+            return properties;
+        }
+
+        public List<IInstallableUnit> units()
+            throws IOException
+        {
+            int count = buffer.getInt();
+
+            int[] namespaces = readInts();
+            int[] names = readInts();
+            int[] capabilityVersions = readInts();
+
+            Map<Long, IProvidedCapability> capabilities = new HashMap<Long, IProvidedCapability>();
+
+            // skip size of unit records
+            buffer.getInt();
+
+            List<IInstallableUnit> result = new ArrayList<IInstallableUnit>( count );
+            int capability = 0;
+            for ( int i = 0; i < count; i++ )
+            {
+                int flags = buffer.getInt();
+
+                InstallableUnitDescription iud;
+                if ( ( flags & FLAG_FRAGMENT ) != 0 )
+                {
+                    iud = new InstallableUnitFragmentDescription();
+                }
+                else
+                {
+                    iud = new InstallableUnitDescription();
+                }
+
+                iud.setSingleton( ( flags & FLAG_SINGLETON ) != 0 );
+                iud.setId( string( buffer.getInt() ) );
+                iud.setVersion( version( buffer.getInt() ) );
+                iud.setFilter( filter( buffer.getInt() ) );
+                for ( Map.Entry<String, String> property : properties().entrySet() )
+                {
+                    iud.setProperty( property.getKey(), property.getValue() );
+                }
+
+                IProvidedCapability[] provided = new IProvidedCapability[buffer.getInt()];
+                for ( int j = 0; j < provided.length; j++, capability++ )
+                {
+                    // identical capabilities are shared by all units
+                    Long key =
+                        Long.valueOf( ( (long) names[capability] << 32 ) ^ ( (long) capabilityVersions[capability] << 16 )
+                            ^ namespaces[capability] );
+                    IProvidedCapability cached = capabilities.get( key );
+                    if ( cached == null
+                        || !isSame( cached, namespaces[capability], names[capability], capabilityVersions[capability] ) )
+                    {
+                        cached =
+                            MetadataFactory.createProvidedCapability( strings[namespaces[capability]],
+                                                                      strings[names[capability]],
+                                                                      version( capabilityVersions[capability] ) );
+                        capabilities.put( key, cached );
+                    }
+                    provided[j] = cached;
+                }
+                iud.setCapabilities( provided );
+
+                iud.setRequirements( requirements() );
+
+                if ( ( flags & FLAG_FRAGMENT ) != 0 )
+                {
+                    ( (InstallableUnitFragmentDescription) iud ).setHost( requirements() );
+                }
+
+                IArtifactKey[] artifacts = new IArtifactKey[buffer.getInt()];
+                for ( int j = 0; j < artifacts.length; j++ )
+                {
+                    String classifier = string( buffer.getInt() );
+                    String id = string( buffer.getInt() );
+                    artifacts[j] = new ArtifactKey( classifier, id, version( buffer.getInt() ) );
+                }
+                iud.setArtifacts( artifacts );
+
+                if ( ( flags & FLAG_TOUCHPOINT_TYPE ) != 0 )
+                {
+                    String id = string( buffer.getInt() );
+                    iud.setTouchpointType( MetadataFactory.createTouchpointType( id, version( buffer.getInt() ) ) );
+                }
+
+                int dataCount = buffer.getInt();
+                for ( int j = 0; j < dataCount; j++ )
+                {
+                    int instructionCount = buffer.getInt();
+                    Map<String, ITouchpointInstruction> instructions =
+                        new LinkedHashMap<String, ITouchpointInstruction>( instructionCount * 2 );
+                    for ( int k = 0; k < instructionCount; k++ )
+                    {
+                        String key = string( buffer.getInt() );
+                        String body = string( buffer.getInt() );
+                        String importAttribute = string( buffer.getInt() );
+                        instructions.put( key, MetadataFactory.createTouchpointInstruction( body, importAttribute ) );
+                    }
+                    iud.addTouchpointData( MetadataFactory.createTouchpointData( instructions ) );
+                }
+
+                if ( ( flags & FLAG_UPDATE_DESCRIPTOR ) != 0 )
+                {
+                    String id = string( buffer.getInt() );
+                    VersionRange range = range( buffer.getInt() );
+                    int severity = buffer.getInt();
+                    String description = string( buffer.getInt() );
+                    iud.setUpdateDescriptor( MetadataFactory.createUpdateDescriptor( id, range, severity, description ) );
+                }
+
+                ILicense[] licenses = new ILicense[buffer.getInt()];
+                for ( int j = 0; j < licenses.length; j++ )
+                {
+                    URI location = uri( buffer.getInt() );
+                    licenses[j] = MetadataFactory.createLicense( location, string( buffer.getInt() ) );
+                }
+                iud.setLicenses( licenses );
+
+                if ( ( flags & FLAG_COPYRIGHT ) != 0 )
+                {
+                    URI location = uri( buffer.getInt() );
+                    iud.setCopyright( MetadataFactory.createCopyright( location, string( buffer.getInt() ) ) );
+                }
+
+                if ( ( flags & FLAG_FRAGMENT ) != 0 )
+                {
+                    result.add( MetadataFactory.createInstallableUnitFragment( (InstallableUnitFragmentDescription) iud ) );
+                }
+                else
+                {
+                    result.add( MetadataFactory.createInstallableUnit( iud ) );
+                }
+            }
+            return result;
+        }
+
+        private boolean isSame( IProvidedCapability capability, int namespace, int name, int version )
+        {
+            return capability.getNamespace().equals( strings[namespace] ) && capability.getName().equals( strings[name] )
+                && capability.getVersion().equals( version( version ) );
+        }
+
+        private IRequirement[] requirements()
+        {
+            IRequirement[] requirements = new IRequirement[buffer.getInt()];
+            for ( int i = 0; i < requirements.length; i++ )
+            {
+                String namespace = string( buffer.getInt() );
+                String name = string( buffer.getInt() );
+                VersionRange range = range( buffer.getInt() );
+                IMatchExpression<IInstallableUnit> filter = filter( buffer.getInt() );
+                int min = buffer.getInt();
+                int max = buffer.getInt();
+                boolean greedy = buffer.getInt() != 0;
+                String description = string( buffer.getInt() );
+                requirements[i] = new RequiredCapability( namespace, name, range, filter, min, max, greedy, description );
+            }
+            return requirements;
+        }
+
+        private URI uri( int index )
+            throws IllegalArgumentException
+        {
+            if ( index == NONE )
+            {
+                return null;
+            }
+            try
+            {
+                return new URI( strings[index] );
+            }
+            catch ( URISyntaxException e )
+            {
+                throw new IllegalArgumentException( e );
+            }
+        }
+
+        private int[] readInts()
+        {
+            int[] ints = new int[buffer.getInt()];
+            buffer.asIntBuffer().get( ints );
+            buffer.position( buffer.position() + ints.length * 4 );
+            return ints;
+        }
+    }
+
+    /**
+     * Growable int array, written as size followed by the values.
+     */
+    private static class IntBuffer
+    {
+        private int[] values = new int[1024];
+
+        private int size;
+
+        public void add( int value )
+        {
+            if ( size == values.length )
+            {
+                int[] newValues = new int[values.length * 2];
+                System.arraycopy( values, 0, newValues, 0, size );
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        public void writeTo( DataOutputStream out )
+            throws IOException
+        {
+            out.writeInt( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                out.writeInt( values[i] );
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.sonatype.tycho.p2.impl.repo;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository;
+
+/**
+ * Read-only in-memory metadata repository with installable units loaded from {@link BinaryMetadataCache}.
+ */
+public class CachedMetadataRepository
+    extends AbstractMetadataRepository
+{
+    private final List<IInstallableUnit> units;
+
+    public CachedMetadataRepository( IProvisioningAgent agent, String name, URI location,
+                                     Map<String, String> properties, List<IInstallableUnit> units )
+    {
+        super( agent, name, CachedMetadataRepository.class.getName(), "1.0.0", location, null, null, properties ); //$NON-NLS-1$
+        this.units = Collections.unmodifiableList( units );
+    }
+
+    @Override
+    public void initialize( RepositoryState state )
+    {
+    }
+
+    public Collection<IRepositoryReference> getReferences()
+    {
+        return Collections.emptyList();
+    }
+
+    public IQueryResult<IInstallableUnit> query( IQuery<IInstallableUnit> query, IProgressMonitor monitor )
+    {
+        return query.perform( units.iterator() );
+    }
+
+    @Override
+    public boolean isModifiable()
+    {
+        return false;
+    }
+}
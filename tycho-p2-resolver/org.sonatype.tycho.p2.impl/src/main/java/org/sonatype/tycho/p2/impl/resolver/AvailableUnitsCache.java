@@ -0,0 +1,246 @@
+package org.sonatype.tycho.p2.impl.resolver;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.publisher.PublisherInfo;
+import org.eclipse.equinox.p2.publisher.PublisherResult;
+import org.eclipse.equinox.p2.publisher.actions.JREAction;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.sonatype.tycho.p2.IArtifactFacade;
+import org.sonatype.tycho.p2.IReactorArtifactFacade;
+import org.sonatype.tycho.p2.maven.repository.AbstractMavenMetadataRepository;
+import org.sonatype.tycho.p2.resolver.P2Logger;
+
+/**
+ * Caches installable units available for resolution, so they are gathered from the metadata repositories only once
+ * per set of repositories instead of once for every resolved project and environment.
+ * <p>
+ * Two levels are cached. Installable units of a set of metadata repositories are shared by all resolvers that use
+ * these repositories. The resulting {@link QueryableArray}, which also includes the reactor and maven IUs of the
+ * resolver, is shared by all resolvers with the same reactor and maven IUs, which is normally the case for all
+ * projects of a reactor. Reusing the same {@link QueryableArray} instance also means its id and capability indexes
+ * are built only once.
+ * <p>
+ * Maven repositories that load their units lazily are not flattened into the array, but combined with it using
+ * {@link LazyCompoundQueryable}, so their units are only loaded when they are candidates for a query.
+ * <p>
+ * Repositories and installable units are compared by identity. Both are created once per build and shared through
+ * {@link org.sonatype.tycho.p2.resolver.P2RepositoryCache} and reactor project metadata, so equal content is
+ * represented by the same instances.
+ * <p>
+ * The factory service that owns the cache lives as long as the JVM, which may run several builds, e.g. in an IDE.
+ * Entries of builds that are over are never hit again, so the cache keeps only the {@value #MAX_ENTRIES} most recently
+ * used entries per level, and holds them softly, so they can be reclaimed when memory gets low.
+ */
+@SuppressWarnings( "restriction" )
+public class AvailableUnitsCache
+{
+    private static final int MAX_ENTRIES = 4;
+
+    private static Collection<IInstallableUnit> jreUnits;
+
+    private final Map<IdentityKey, Reference<List<IInstallableUnit>>> repositoryUnits = newLRUMap();
+
+    private final Map<List<IdentityKey>, Reference<IQueryable<IInstallableUnit>>> availableUnits = newLRUMap();
+
+    public synchronized IQueryable<IInstallableUnit> getAvailableUnits( List<IMetadataRepository> repositories,
+                                                                      Map<IInstallableUnit, IArtifactFacade> mavenUnits,
+                                                                      P2Logger logger, IProgressMonitor monitor )
+    {
+        IdentityKey repositoriesKey = new IdentityKey( repositories );
+
+        Set<IInstallableUnit> reactorUnits = new LinkedHashSet<IInstallableUnit>();
+        for ( Map.Entry<IInstallableUnit, IArtifactFacade> entry : mavenUnits.entrySet() )
+        {
+            if ( entry.getValue() instanceof IReactorArtifactFacade )
+            {
+                reactorUnits.add( entry.getKey() );
+            }
+        }
+
+        List<IdentityKey> key = new ArrayList<IdentityKey>();
+        key.add( repositoriesKey );
+        key.add( new IdentityKey( mavenUnits.keySet() ) );
+        key.add( new IdentityKey( reactorUnits ) );
+
+        IQueryable<IInstallableUnit> result = get( availableUnits, key );
+        if ( result == null )
+        {
+            List<IMetadataRepository> eager = new ArrayList<IMetadataRepository>();
+            List<AbstractMavenMetadataRepository> lazy = new ArrayList<AbstractMavenMetadataRepository>();
+            for ( IMetadataRepository repository : repositories )
+            {
+                if ( repository instanceof AbstractMavenMetadataRepository )
+                {
+                    lazy.add( (AbstractMavenMetadataRepository) repository );
+                }
+                else
+                {
+                    eager.add( repository );
+                }
+            }
+
+            List<IInstallableUnit> units = get( repositoryUnits, repositoriesKey );
+            if ( units == null )
+            {
+                units = gatherRepositoryUnits( eager, logger, monitor );
+                repositoryUnits.put( repositoriesKey, new SoftReference<List<IInstallableUnit>>( units ) );
+            }
+
+            Set<IInstallableUnit> all = new LinkedHashSet<IInstallableUnit>( mavenUnits.keySet() );
+            for ( IInstallableUnit iu : units )
+            {
+                if ( !reactorUnits.contains( iu ) )
+                {
+                    all.add( iu );
+                }
+            }
+            all.addAll( getJREUnits() );
+
+            if ( lazy.isEmpty() )
+            {
+                result = new QueryableArray( all.toArray( new IInstallableUnit[all.size()] ) );
+            }
+            else
+            {
+                result = new LazyCompoundQueryable( all, lazy );
+            }
+            availableUnits.put( key, new SoftReference<IQueryable<IInstallableUnit>>( result ) );
+        }
+        return result;
+    }
+
+    private static <K, V> V get( Map<K, Reference<V>> map, K key )
+    {
+        Reference<V> reference = map.get( key );
+        V value = reference != null ? reference.get() : null;
+        if ( reference != null && value == null )
+        {
+            map.remove( key );
+        }
+        return value;
+    }
+
+    private static List<IInstallableUnit> gatherRepositoryUnits( List<IMetadataRepository> repositories,
+                                                                 P2Logger logger, IProgressMonitor monitor )
+    {
+        Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+
+        SubMonitor sub = SubMonitor.convert( monitor, repositories.size() * 200 );
+        for ( IMetadataRepository repository : repositories )
+        {
+            IQueryResult<IInstallableUnit> matches = repository.query( QueryUtil.ALL_UNITS, sub.newChild( 100 ) );
+            for ( Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext(); )
+            {
+                IInstallableUnit iu = it.next();
+
+                if ( isPartialIU( iu ) )
+                {
+                    logger.debug( "PARTIAL IU: " + iu );
+                    continue;
+                }
+                result.add( iu );
+            }
+        }
+        sub.done();
+
+        return Collections.unmodifiableList( new ArrayList<IInstallableUnit>( result ) );
+    }
+
+    static boolean isPartialIU( IInstallableUnit iu )
+    {
+        return Boolean.valueOf( iu.getProperty( IInstallableUnit.PROP_PARTIAL_IU ) ).booleanValue();
+    }
+
+    /**
+     * these dummy IUs are needed to satisfy Import-Package requirements to packages provided by the JDK.
+     */
+    private static synchronized Collection<IInstallableUnit> getJREUnits()
+    {
+        if ( jreUnits == null )
+        {
+            PublisherResult results = new PublisherResult();
+            // TODO use the appropriate profile name
+            new JREAction( (String) null ).perform( new PublisherInfo(), results, new NullProgressMonitor() );
+            jreUnits = results.query( QueryUtil.ALL_UNITS, new NullProgressMonitor() ).toSet();
+        }
+        return jreUnits;
+    }
+
+    private static <K, V> Map<K, V> newLRUMap()
+    {
+        return new LinkedHashMap<K, V>( MAX_ENTRIES * 2, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<K, V> eldest )
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Set of objects compared by identity.
+     */
+    private static class IdentityKey
+    {
+        private final Map<Object, Object> elements = new IdentityHashMap<Object, Object>();
+
+        private final int hash;
+
+        public IdentityKey( Collection<?> elements )
+        {
+            int hash = 0;
+            for ( Object element : elements )
+            {
+                if ( this.elements.put( element, element ) == null )
+                {
+                    hash += System.identityHashCode( element );
+                }
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof IdentityKey ) )
+            {
+                return false;
+            }
+            IdentityKey other = (IdentityKey) obj;
+            return hash == other.hash && elements.keySet().equals( other.elements.keySet() );
+        }
+    }
+}
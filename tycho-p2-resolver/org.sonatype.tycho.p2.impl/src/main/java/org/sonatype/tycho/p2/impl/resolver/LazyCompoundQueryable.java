@@ -0,0 +1,135 @@
+package org.sonatype.tycho.p2.impl.resolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
+import org.eclipse.equinox.p2.metadata.expression.IExpression;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.sonatype.tycho.p2.maven.repository.AbstractMavenMetadataRepository;
+import org.sonatype.tycho.p2.maven.repository.InstallableUnitFingerprint;
+
+/**
+ * Combines an in-memory {@link QueryableArray} with repositories that load their installable units lazily, like the
+ * maven local repository. Index lookups are delegated to all parts, so lazy repositories only load units that are
+ * candidates for a query. Units of lazy repositories that are equal to units of the array (e.g. reactor units) or
+ * that are partial are skipped, same as when all units are gathered into a single array.
+ */
+@SuppressWarnings( "restriction" )
+public class LazyCompoundQueryable
+    extends IndexProvider<IInstallableUnit>
+{
+    private final QueryableArray array;
+
+    private final Set<IInstallableUnit> arrayUnits;
+
+    private final List<AbstractMavenMetadataRepository> lazy;
+
+    public LazyCompoundQueryable( Collection<IInstallableUnit> units, List<AbstractMavenMetadataRepository> lazy )
+    {
+        this.array = new QueryableArray( units.toArray( new IInstallableUnit[units.size()] ) );
+        this.arrayUnits = new HashSet<IInstallableUnit>( units );
+        this.lazy = lazy;
+    }
+
+    public IIndex<IInstallableUnit> getIndex( String memberName )
+    {
+        final List<IIndex<IInstallableUnit>> indexes = new ArrayList<IIndex<IInstallableUnit>>();
+        indexes.add( array.getIndex( memberName ) );
+        for ( AbstractMavenMetadataRepository provider : lazy )
+        {
+            indexes.add( provider.getIndex( memberName ) );
+        }
+        if ( indexes.contains( null ) )
+        {
+            return null;
+        }
+
+        return new IIndex<IInstallableUnit>()
+        {
+            public Iterator<IInstallableUnit> getCandidates( IEvaluationContext ctx, IExpression variable,
+                                                             IExpression booleanExpr )
+            {
+                Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+                for ( int i = 0; i < indexes.size(); i++ )
+                {
+                    Iterator<IInstallableUnit> candidates = indexes.get( i ).getCandidates( ctx, variable, booleanExpr );
+                    if ( candidates == null )
+                    {
+                        // index not applicable to this expression
+                        return null;
+                    }
+                    addUnits( result, candidates, i > 0 );
+                }
+                return result.iterator();
+            }
+        };
+    }
+
+    public Iterator<IInstallableUnit> everything()
+    {
+        Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+        addUnits( result, array.everything(), false );
+        for ( AbstractMavenMetadataRepository provider : lazy )
+        {
+            addUnits( result, provider.everything(), true );
+        }
+        return result.iterator();
+    }
+
+    private void addUnits( Set<IInstallableUnit> result, Iterator<IInstallableUnit> units, boolean filter )
+    {
+        while ( units.hasNext() )
+        {
+            IInstallableUnit iu = units.next();
+            if ( filter && ( arrayUnits.contains( iu ) || AvailableUnitsCache.isPartialIU( iu ) ) )
+            {
+                continue;
+            }
+            result.add( iu );
+        }
+    }
+
+    /**
+     * Adds the units of the array, in order, and the contents of the lazy repositories to the given fingerprint,
+     * without loading units of lazy repositories.
+     */
+    public void updateFingerprint( InstallableUnitFingerprint fingerprint )
+    {
+        int i = 0;
+        for ( Iterator<IInstallableUnit> units = array.everything(); units.hasNext(); i++ )
+        {
+            fingerprint.add( i + ":" + InstallableUnitFingerprint.digest( units.next() ) );
+        }
+        for ( AbstractMavenMetadataRepository provider : lazy )
+        {
+            provider.updateFingerprint( fingerprint );
+        }
+    }
+
+    /**
+     * @return a value that changes whenever the contents of lazy repositories change
+     */
+    public String getModificationStamp()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( AbstractMavenMetadataRepository provider : lazy )
+        {
+            sb.append( provider.getModificationCount() ).append( ',' );
+        }
+        return sb.toString();
+    }
+
+    public Object getManagedProperty( Object client, String memberName, Object key )
+    {
+        return array.getManagedProperty( client, memberName, key );
+    }
+}
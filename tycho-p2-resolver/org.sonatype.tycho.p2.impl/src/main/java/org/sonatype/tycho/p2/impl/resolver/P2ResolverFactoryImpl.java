@@ -1,15 +1,50 @@
 package org.sonatype.tycho.p2.impl.resolver;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import org.sonatype.tycho.p2.resolver.P2Resolver;
 import org.sonatype.tycho.p2.resolver.P2ResolverFactory;
 
 public class P2ResolverFactoryImpl
     implements P2ResolverFactory
 {
+    /**
+     * Available installable units are shared by all resolvers created by this factory
+     */
+    private final AvailableUnitsCache availableUnitsCache = new AvailableUnitsCache();
+
+    /**
+     * Resolution results are shared by all resolvers created by this factory
+     */
+    private final ResolutionResultCache resolutionCache = new ResolutionResultCache();
+
+    /**
+     * Environments of all projects are solved on one bounded pool, so the number of threads does not grow with the
+     * number of projects resolved concurrently
+     */
+    private final ExecutorService solverExecutor =
+        Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+        {
+            private int count;
+
+            public synchronized Thread newThread( Runnable r )
+            {
+                Thread thread = new Thread( r, "tycho-p2-solver-" + ( ++count ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
 
     public P2Resolver createResolver()
     {
-        return new P2ResolverImpl();
+        return new P2ResolverImpl( availableUnitsCache, resolutionCache, solverExecutor );
+    }
+
+    protected void deactivate()
+    {
+        solverExecutor.shutdownNow();
     }
 
 }
@@ -1,6 +1,7 @@
 package org.sonatype.tycho.p2.impl.resolver;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.net.URI;
@@ -15,16 +16,19 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
-import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -34,12 +38,7 @@ import org.eclipse.equinox.p2.metadata.IProvidedCapability;
 import org.eclipse.equinox.p2.metadata.IRequirement;
 import org.eclipse.equinox.p2.metadata.MetadataFactory;
 import org.eclipse.equinox.p2.metadata.VersionRange;
-import org.eclipse.equinox.p2.publisher.PublisherInfo;
-import org.eclipse.equinox.p2.publisher.PublisherResult;
-import org.eclipse.equinox.p2.publisher.actions.JREAction;
-import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.IQueryable;
-import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
@@ -56,6 +55,7 @@ import org.sonatype.tycho.p2.IArtifactFacade;
 import org.sonatype.tycho.p2.IReactorArtifactFacade;
 import org.sonatype.tycho.p2.impl.Activator;
 import org.sonatype.tycho.p2.impl.publisher.P2GeneratorImpl;
+import org.sonatype.tycho.p2.impl.repo.BinaryMetadataCache;
 import org.sonatype.tycho.p2.maven.repository.LocalArtifactRepository;
 import org.sonatype.tycho.p2.maven.repository.LocalMetadataRepository;
 import org.sonatype.tycho.p2.maven.repository.MavenArtifactRepository;
@@ -136,12 +136,50 @@ public class P2ResolverImpl
 
     private boolean offline;
 
+    private TychoP2RepositoryCacheManager cacheMgr;
+
+    private final BinaryMetadataCache binaryMetadataCache = new BinaryMetadataCache();
+
     private IProvisioningAgent agent;
 
     private File localRepositoryLocation;
 
+    /**
+     * Number of concurrent artifact downloads, <code>1</code> means artifacts are downloaded sequentially.
+     */
+    private int downloadThreads = 1;
+
+    /**
+     * Maximum number of concurrent artifact downloads from the same host.
+     */
+    private int connectionsPerHost = 2;
+
+    private final AvailableUnitsCache availableUnitsCache;
+
+    private final ResolutionResultCache resolutionCache;
+
+    private boolean resolutionCacheEnabled;
+
+    private boolean resolutionCachePersistent;
+
+    private boolean resolutionCacheVerify;
+
+    /**
+     * Shared pool environments are solved on, or <code>null</code> to solve environments sequentially.
+     */
+    private final ExecutorService solverExecutor;
+
     public P2ResolverImpl()
     {
+        this( new AvailableUnitsCache(), new ResolutionResultCache(), null );
+    }
+
+    public P2ResolverImpl( AvailableUnitsCache availableUnitsCache, ResolutionResultCache resolutionCache,
+                           ExecutorService solverExecutor )
+    {
+        this.availableUnitsCache = availableUnitsCache;
+        this.resolutionCache = resolutionCache;
+        this.solverExecutor = solverExecutor;
     }
 
     public void addReactorArtifact( IReactorArtifactFacade artifact )
@@ -217,7 +255,7 @@ public class P2ResolverImpl
             {
                 agent = Activator.newProvisioningAgent();
 
-                TychoP2RepositoryCacheManager cacheMgr = new TychoP2RepositoryCacheManager();
+                cacheMgr = new TychoP2RepositoryCacheManager();
                 cacheMgr.setOffline( offline );
                 cacheMgr.setLocalRepositoryLocation( localRepositoryLocation );
 
@@ -238,7 +276,7 @@ public class P2ResolverImpl
                 throw new IllegalStateException( "No metadata repository manager found" ); //$NON-NLS-1$
             }
 
-            metadataRepository = metadataRepositoryManager.loadRepository( location, monitor );
+            metadataRepository = loadMetadataRepository( metadataRepositoryManager, location );
             metadataRepositories.add( metadataRepository );
 
             if ( !offline || URIUtil.isFileURI( location ) )
@@ -266,6 +304,61 @@ public class P2ResolverImpl
         }
     }
 
+    /**
+     * Loads remote simple metadata repositories from binary cache, if the cached repository content is still up to
+     * date. Falls back to p2 repository manager for everything else.
+     */
+    private IMetadataRepository loadMetadataRepository( IMetadataRepositoryManager metadataRepositoryManager,
+                                                        URI location )
+        throws ProvisionException
+    {
+        if ( URIUtil.isFileURI( location ) )
+        {
+            return metadataRepositoryManager.loadRepository( location, monitor );
+        }
+
+        File contentFile;
+        try
+        {
+            // refreshes cached content.jar/content.xml if the remote copy has changed
+            contentFile = cacheMgr.createCache( location, "content", monitor ); //$NON-NLS-1$
+        }
+        catch ( Exception e )
+        {
+            // composite repository, update site or repository not available, let p2 sort it out
+            return metadataRepositoryManager.loadRepository( location, monitor );
+        }
+
+        try
+        {
+            IMetadataRepository cached = binaryMetadataCache.read( agent, location, contentFile );
+            if ( cached != null )
+            {
+                return cached;
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Could not read binary metadata cache for " + location + ": " + e.getMessage() );
+        }
+
+        IMetadataRepository metadataRepository = metadataRepositoryManager.loadRepository( location, monitor );
+
+        if ( !( metadataRepository instanceof CompositeMetadataRepository ) )
+        {
+            try
+            {
+                binaryMetadataCache.write( metadataRepository, contentFile );
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Could not write binary metadata cache for " + location + ": " + e.getMessage() );
+            }
+        }
+
+        return metadataRepository;
+    }
+
     protected void forceSingleThreadedDownload( IArtifactRepositoryManager artifactRepositoryManager,
                                                 IArtifactRepository artifactRepository )
     {
@@ -311,16 +404,134 @@ public class P2ResolverImpl
 
     public List<P2ResolutionResult> resolveProject( File projectLocation )
     {
-        ArrayList<P2ResolutionResult> results = new ArrayList<P2ResolutionResult>();
+        assertNoDuplicateReactorUIs();
+
+        // environment independent inputs are gathered once and shared by all environments
+        final IQueryable<IInstallableUnit> availableIUs = gatherAvailableInstallableUnits( monitor );
+        final LinkedHashSet<IInstallableUnit> projectIUs = getProjectIUs( projectLocation );
 
+        // environments may be solved on several threads
+        final IProgressMonitor solveMonitor = new SynchronizedProgressMonitor( monitor );
+
+        List<Callable<Collection<IInstallableUnit>>> solves = new ArrayList<Callable<Collection<IInstallableUnit>>>();
         for ( Map<String, String> properties : environments )
         {
-            results.add( resolveProject( projectLocation, new ProjectorResolutionStrategy( properties, logger ) ) );
+            final ResolutionStrategy strategy = newProjectorResolutionStrategy( properties );
+            strategy.setAvailableInstallableUnits( availableIUs );
+            strategy.setRootInstallableUnits( projectIUs );
+            strategy.setAdditionalRequirements( additionalRequirements );
+            solves.add( new Callable<Collection<IInstallableUnit>>()
+            {
+                public Collection<IInstallableUnit> call()
+                {
+                    return strategy.resolve( solveMonitor );
+                }
+            } );
+        }
+
+        List<Collection<IInstallableUnit>> newStates = solve( solves );
+
+        // artifacts of all environments are downloaded and saved in one pass
+        List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        Set<IArtifactKey> requestedKeys = new HashSet<IArtifactKey>();
+        for ( Collection<IInstallableUnit> newState : newStates )
+        {
+            addMirrorRequests( newState, requests, requestedKeys );
         }
+        mirrorArtifacts( requests );
 
+        ArrayList<P2ResolutionResult> results = new ArrayList<P2ResolutionResult>();
+        for ( Collection<IInstallableUnit> newState : newStates )
+        {
+            results.add( toResolutionResult( newState, projectIUs ) );
+        }
         return results;
     }
 
+    /**
+     * Solves independent resolution problems, concurrently on the shared solver pool if there is more than one. The
+     * calling thread solves the first problem itself, so it does not hold a pool thread while it waits.
+     */
+    private List<Collection<IInstallableUnit>> solve( List<Callable<Collection<IInstallableUnit>>> solves )
+    {
+        List<Collection<IInstallableUnit>> results = new ArrayList<Collection<IInstallableUnit>>();
+
+        if ( solverExecutor == null || solves.size() <= 1 )
+        {
+            for ( Callable<Collection<IInstallableUnit>> solve : solves )
+            {
+                results.add( call( solve ) );
+            }
+            return results;
+        }
+
+        List<Future<Collection<IInstallableUnit>>> futures = new ArrayList<Future<Collection<IInstallableUnit>>>();
+        try
+        {
+            for ( Callable<Collection<IInstallableUnit>> solve : solves.subList( 1, solves.size() ) )
+            {
+                futures.add( solverExecutor.submit( solve ) );
+            }
+            results.add( call( solves.get( 0 ) ) );
+            for ( Future<Collection<IInstallableUnit>> future : futures )
+            {
+                results.add( getResult( future ) );
+            }
+            return results;
+        }
+        finally
+        {
+            // no-op for completed solves, frees the pool if one of the solves failed
+            for ( Future<Collection<IInstallableUnit>> future : futures )
+            {
+                future.cancel( true );
+            }
+        }
+    }
+
+    private static Collection<IInstallableUnit> call( Callable<Collection<IInstallableUnit>> solve )
+    {
+        try
+        {
+            return solve.call();
+        }
+        catch ( RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static Collection<IInstallableUnit> getResult( Future<Collection<IInstallableUnit>> future )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            // preserve exceptions thrown by the resolution strategy, e.g. resolution errors
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
     public P2ResolutionResult collectProjectDependencies( File projectLocation )
     {
         return resolveProject( projectLocation, new DependencyCollector( logger ) );
@@ -328,7 +539,7 @@ public class P2ResolverImpl
 
     public P2ResolutionResult resolveMetadata( Map<String, String> properties )
     {
-        ProjectorResolutionStrategy strategy = new ProjectorResolutionStrategy( properties, logger );
+        ProjectorResolutionStrategy strategy = newProjectorResolutionStrategy( properties );
         strategy.setAvailableInstallableUnits( gatherAvailableInstallableUnits( monitor ) );
         strategy.setRootInstallableUnits( new HashSet<IInstallableUnit>() );
         strategy.setAdditionalRequirements( additionalRequirements );
@@ -341,6 +552,21 @@ public class P2ResolverImpl
         return result;
     }
 
+    private ProjectorResolutionStrategy newProjectorResolutionStrategy( Map<String, String> properties )
+    {
+        ProjectorResolutionStrategy strategy = new ProjectorResolutionStrategy( properties, logger );
+        if ( resolutionCacheEnabled )
+        {
+            File directory = null;
+            if ( resolutionCachePersistent && localRepositoryLocation != null )
+            {
+                directory = new File( localRepositoryLocation, ResolutionResultCache.CACHE_RELPATH );
+            }
+            strategy.setResolutionCache( resolutionCache, directory, resolutionCacheVerify );
+        }
+        return strategy;
+    }
+
     protected P2ResolutionResult resolveProject( File projectLocation, ResolutionStrategy strategy )
     {
         assertNoDuplicateReactorUIs();
@@ -353,6 +579,15 @@ public class P2ResolverImpl
         Collection<IInstallableUnit> newState = strategy.resolve( monitor );
 
         List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        addMirrorRequests( newState, requests, new HashSet<IArtifactKey>() );
+        mirrorArtifacts( requests );
+
+        return toResolutionResult( newState, projectIUs );
+    }
+
+    private void addMirrorRequests( Collection<IInstallableUnit> newState, List<MavenMirrorRequest> requests,
+                                    Set<IArtifactKey> requestedKeys )
+    {
         for ( IInstallableUnit iu : newState )
         {
             // maven IUs either come from reactor or local maven repository, no need to download them from p2 repos
@@ -361,17 +596,23 @@ public class P2ResolverImpl
                 Collection<IArtifactKey> artifactKeys = iu.getArtifacts();
                 for ( IArtifactKey key : artifactKeys )
                 {
-                    requests.add( new MavenMirrorRequest( key, localRepository ) );
+                    if ( requestedKeys.add( key ) )
+                    {
+                        requests.add( new MavenMirrorRequest( key, localRepository ) );
+                    }
                 }
             }
         }
+    }
 
-        for ( IArtifactRepository artifactRepository : artifactRepositories )
-        {
-            artifactRepository.getArtifacts( requests.toArray( ARTIFACT_REQUEST_ARRAY ), monitor );
-
-            requests = filterCompletedRequests( requests );
-        }
+    /**
+     * Downloads artifacts into the local maven repository and saves local repository metadata.
+     * 
+     * @throws RuntimeException if some artifacts are not available from any repository
+     */
+    private void mirrorArtifacts( List<MavenMirrorRequest> requests )
+    {
+        requests = downloadArtifacts( requests );
 
         localRepository.save();
         localMetadataRepository.save();
@@ -391,18 +632,35 @@ public class P2ResolverImpl
             StringBuilder msg = new StringBuilder( "Could not download artifacts from any repository\n" );
             for ( MavenMirrorRequest request : requests )
             {
-                msg.append( "   " ).append( request.getArtifactKey().toExternalForm() ).append( '\n' );
+                msg.append( "   " ).append( request.getArtifactKey().toExternalForm() );
+                if ( request.getResult() != null && request.getResult().getMessage() != null )
+                {
+                    msg.append( ": " ).append( request.getResult().getMessage() );
+                }
+                msg.append( '\n' );
             }
 
             throw new RuntimeException( msg.toString() );
         }
-
-        return toResolutionResult( newState, projectIUs );
     }
 
-    private boolean isReactorInstallableUnit( IInstallableUnit iu )
+    private List<MavenMirrorRequest> downloadArtifacts( List<MavenMirrorRequest> requests )
     {
-        return mavenInstallableUnits.get( iu ) instanceof IReactorArtifactFacade;
+        if ( downloadThreads > 1 && requests.size() > 1 )
+        {
+            ParallelArtifactDownloader downloader =
+                new ParallelArtifactDownloader( artifactRepositories, downloadThreads, connectionsPerHost, logger );
+            return downloader.download( requests );
+        }
+
+        for ( IArtifactRepository artifactRepository : artifactRepositories )
+        {
+            artifactRepository.getArtifacts( requests.toArray( ARTIFACT_REQUEST_ARRAY ), monitor );
+
+            requests = filterCompletedRequests( requests );
+        }
+
+        return requests;
     }
 
     private void assertNoDuplicateReactorUIs()
@@ -591,49 +849,7 @@ public class P2ResolverImpl
 
     public IQueryable<IInstallableUnit> gatherAvailableInstallableUnits( IProgressMonitor monitor )
     {
-        Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
-
-        result.addAll( mavenInstallableUnits.keySet() );
-
-        SubMonitor sub = SubMonitor.convert( monitor, metadataRepositories.size() * 200 );
-        for ( IMetadataRepository repository : metadataRepositories )
-        {
-            IQueryResult<IInstallableUnit> matches = repository.query( QueryUtil.ALL_UNITS, sub.newChild( 100 ) );
-            for ( Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext(); )
-            {
-                IInstallableUnit iu = it.next();
-
-                if ( isPartialIU( iu ) )
-                {
-                    System.out.println( "PARTIAL IU: " + iu );
-                    continue;
-                }
-                if ( !isReactorInstallableUnit( iu ) )
-                {
-                    result.add( iu );
-                }
-            }
-        }
-        result.addAll( createJREIUs() );
-        sub.done();
-        // this is a real shame
-        return new QueryableArray( result.toArray( new IInstallableUnit[result.size()] ) );
-    }
-
-    private static boolean isPartialIU( IInstallableUnit iu )
-    {
-        return Boolean.valueOf( iu.getProperty( IInstallableUnit.PROP_PARTIAL_IU ) ).booleanValue();
-    }
-
-    /**
-     * these dummy IUs are needed to satisfy Import-Package requirements to packages provided by the JDK.
-     */
-    private Collection<IInstallableUnit> createJREIUs()
-    {
-        PublisherResult results = new PublisherResult();
-        // TODO use the appropriate profile name
-        new JREAction( (String) null ).perform( new PublisherInfo(), results, new NullProgressMonitor() );
-        return results.query( QueryUtil.ALL_UNITS, new NullProgressMonitor() ).toSet();
+        return availableUnitsCache.getAvailableUnits( metadataRepositories, mavenInstallableUnits, logger, monitor );
     }
 
     public void setLocalRepositoryLocation( File location )
@@ -789,6 +1005,19 @@ public class P2ResolverImpl
         this.offline = offline;
     }
 
+    public void setDownloadThreads( int threads, int connectionsPerHost )
+    {
+        this.downloadThreads = threads;
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    public void setResolutionCache( boolean enabled, boolean persistent, boolean verify )
+    {
+        this.resolutionCacheEnabled = enabled;
+        this.resolutionCachePersistent = persistent;
+        this.resolutionCacheVerify = verify;
+    }
+
     public void stop()
     {
         if ( agent != null )
@@ -0,0 +1,167 @@
+package org.sonatype.tycho.p2.impl.resolver;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+import org.sonatype.tycho.p2.maven.repository.MavenMirrorRequest;
+import org.sonatype.tycho.p2.resolver.P2Logger;
+
+/**
+ * Downloads artifacts into the maven local repository using a bounded pool of worker threads. Each request is tried
+ * against all artifact repositories in order, same as the sequential implementation in {@link P2ResolverImpl}, but
+ * independent requests are processed concurrently. The number of concurrent connections to the same repository host
+ * is limited separately from the total number of worker threads.
+ */
+public class ParallelArtifactDownloader
+{
+    private final List<IArtifactRepository> artifactRepositories;
+
+    private final int threads;
+
+    private final int connectionsPerHost;
+
+    private final P2Logger logger;
+
+    private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+
+    public ParallelArtifactDownloader( List<IArtifactRepository> artifactRepositories, int threads,
+                                       int connectionsPerHost, P2Logger logger )
+    {
+        this.artifactRepositories = artifactRepositories;
+        this.threads = Math.max( 1, threads );
+        this.connectionsPerHost = Math.max( 1, connectionsPerHost );
+        this.logger = logger;
+    }
+
+    /**
+     * @return requests that could not be completed from any of the artifact repositories
+     */
+    public List<MavenMirrorRequest> download( List<MavenMirrorRequest> requests )
+    {
+        if ( requests.isEmpty() )
+        {
+            return requests;
+        }
+
+        int poolSize = Math.min( threads, requests.size() );
+
+        logger.info( "Downloading " + requests.size() + " artifacts using " + poolSize + " threads" );
+
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        try
+        {
+            List<Future<MavenMirrorRequest>> futures = new ArrayList<Future<MavenMirrorRequest>>();
+            for ( final MavenMirrorRequest request : requests )
+            {
+                futures.add( executor.submit( new Callable<MavenMirrorRequest>()
+                {
+                    public MavenMirrorRequest call()
+                        throws Exception
+                    {
+                        return download( request ) ? null : request;
+                    }
+                } ) );
+            }
+
+            List<MavenMirrorRequest> failed = new ArrayList<MavenMirrorRequest>();
+            for ( Future<MavenMirrorRequest> future : futures )
+            {
+                MavenMirrorRequest request = getResult( future );
+                if ( request != null )
+                {
+                    failed.add( request );
+                }
+            }
+            return failed;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean download( MavenMirrorRequest request )
+        throws InterruptedException
+    {
+        IArtifactRequest[] single = new IArtifactRequest[] { request };
+
+        for ( IArtifactRepository artifactRepository : artifactRepositories )
+        {
+            Semaphore permits = getHostPermits( artifactRepository.getLocation() );
+            if ( permits != null )
+            {
+                permits.acquire();
+            }
+            try
+            {
+                artifactRepository.getArtifacts( single, new NullProgressMonitor() );
+            }
+            finally
+            {
+                if ( permits != null )
+                {
+                    permits.release();
+                }
+            }
+
+            if ( request.getResult() != null && request.getResult().isOK() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private synchronized Semaphore getHostPermits( URI location )
+    {
+        String host = location != null ? location.getHost() : null;
+        if ( host == null )
+        {
+            // local file system repositories are not limited
+            return null;
+        }
+
+        Semaphore permits = hostPermits.get( host );
+        if ( permits == null )
+        {
+            permits = new Semaphore( connectionsPerHost );
+            hostPermits.put( host, permits );
+        }
+        return permits;
+    }
+
+    private static MavenMirrorRequest getResult( Future<MavenMirrorRequest> future )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while downloading artifacts", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+}
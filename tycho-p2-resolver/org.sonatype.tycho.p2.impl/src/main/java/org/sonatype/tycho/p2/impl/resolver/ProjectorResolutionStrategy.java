@@ -1,5 +1,6 @@
 package org.sonatype.tycho.p2.impl.resolver;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -27,6 +28,7 @@ import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescriptio
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.metadata.VersionRange;
 import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryable;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.sonatype.tycho.p2.resolver.P2Logger;
@@ -41,12 +43,30 @@ public class ProjectorResolutionStrategy
 
     private final P2Logger logger;
 
+    private ResolutionResultCache resolutionCache;
+
+    private File resolutionCacheDirectory;
+
+    private boolean verifyResolutionCache;
+
     public ProjectorResolutionStrategy( Map<String, String> properties, P2Logger logger )
     {
         this.properties = properties;
         this.logger = logger;
     }
 
+    /**
+     * @param cache cache of resolution results, or <code>null</code> to always slice and solve
+     * @param directory directory of persistent resolution results, or <code>null</code> to cache in memory only
+     * @param verify if <code>true</code>, cached results are compared with a fresh solution
+     */
+    public void setResolutionCache( ResolutionResultCache cache, File directory, boolean verify )
+    {
+        this.resolutionCache = cache;
+        this.resolutionCacheDirectory = directory;
+        this.verifyResolutionCache = verify;
+    }
+
     public Collection<IInstallableUnit> resolve( IProgressMonitor monitor )
     {
         Map<String, String> newSelectionContext = SimplePlanner.createSelectionContext( properties );
@@ -60,6 +80,24 @@ public class ProjectorResolutionStrategy
 
         Set<IInstallableUnit> extraIUs = createAdditionalRequirementsIU();
 
+        String cacheKey = null;
+        Collection<IInstallableUnit> cached = null;
+        if ( resolutionCache != null )
+        {
+            cacheKey =
+                resolutionCache.getKey( availableIUs, properties, rootIUs, additionalRequirements, monitor );
+            cached =
+                resolutionCache.get( cacheKey, availableIUs, rootIUs, extraIUs, resolutionCacheDirectory, monitor );
+            if ( cached != null && !verifyResolutionCache )
+            {
+                if ( logger.isDebugEnabled() )
+                {
+                    logger.debug( "Resolved IUs (cached):\n" + ResolverDebugUtils.toDebugString( cached, false ) );
+                }
+                return cached;
+            }
+        }
+
         Set<IInstallableUnit> rootWithExtraIUs = new LinkedHashSet<IInstallableUnit>();
         rootWithExtraIUs.addAll( rootIUs );
         rootWithExtraIUs.addAll( extraIUs );
@@ -101,6 +139,20 @@ public class ProjectorResolutionStrategy
 
         fixSWT( newState, newSelectionContext, monitor );
 
+        if ( cached != null )
+        {
+            if ( !new HashSet<IInstallableUnit>( cached ).equals( new HashSet<IInstallableUnit>( newState ) ) )
+            {
+                throw new IllegalStateException( "Cached resolution result differs from actual result\nCached:\n"
+                    + ResolverDebugUtils.toDebugString( cached, false ) + "Actual:\n"
+                    + ResolverDebugUtils.toDebugString( newState, false ) );
+            }
+        }
+        else if ( resolutionCache != null )
+        {
+            resolutionCache.put( cacheKey, newState, rootIUs, extraIUs, resolutionCacheDirectory );
+        }
+
         if ( logger.isDebugEnabled() )
         {
             logger.debug( "Resolved IUs:\n" + ResolverDebugUtils.toDebugString( newState, false ) );
@@ -129,7 +181,13 @@ public class ProjectorResolutionStrategy
 
         IInstallableUnit swtFragment = null;
 
-        all_ius: for ( Iterator<IInstallableUnit> iter = availableIUs.query( QueryUtil.ALL_UNITS, monitor ).iterator(); iter.hasNext(); )
+        // query by capability, so lazily loaded repositories do not have to load all units
+        IRequirement swtFragments =
+            MetadataFactory.createRequirement( "osgi.fragment", "org.eclipse.swt", VersionRange.emptyRange, null, true,
+                                               true );
+        IQuery<IInstallableUnit> swtQuery = QueryUtil.createMatchQuery( swtFragments.getMatches() );
+
+        all_ius: for ( Iterator<IInstallableUnit> iter = availableIUs.query( swtQuery, monitor ).iterator(); iter.hasNext(); )
         {
             IInstallableUnit iu = iter.next();
             if ( iu.getId().startsWith( "org.eclipse.swt" ) && isApplicable( newSelectionContext, iu.getFilter() ) )
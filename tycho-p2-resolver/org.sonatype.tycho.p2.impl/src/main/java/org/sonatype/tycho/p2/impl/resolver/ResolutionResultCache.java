@@ -0,0 +1,358 @@
+package org.sonatype.tycho.p2.impl.resolver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.sonatype.tycho.p2.maven.repository.InstallableUnitFingerprint;
+
+/**
+ * Caches results of {@link ProjectorResolutionStrategy}, so projects with the same root installable units,
+ * selection context and additional requirements are sliced and solved only once for the same available units.
+ * <p>
+ * The cache key is a digest of all solver inputs: all resolution properties and the selection context derived from
+ * them, the resolution relevant parts of the root installable units and additional requirements, and a fingerprint of
+ * the available installable units. Since slicer
+ * and projector are deterministic, equal keys yield equal solutions. Root and additional requirements installable
+ * units are part of the solution, so cached solutions refer to them by position and are mapped to the instances of
+ * the current resolution on lookup.
+ * <p>
+ * Solutions are kept in memory and, optionally, in a directory shared by all builds using the same local Maven
+ * repository. Persisted solutions refer to available units by id and version, and are ignored if any of the units
+ * cannot be found.
+ */
+public class ResolutionResultCache
+{
+    public static final String CACHE_RELPATH = ".cache/tycho/resolution";
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static final int MAX_FINGERPRINTS = 4;
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String ROOT = "root:";
+
+    private static final String EXTRA = "extra:";
+
+    private static final String IU = "iu:";
+
+    private final Map<String, List<Object>> solutions = newLRUMap( MAX_ENTRIES );
+
+    private final Map<IQueryable<IInstallableUnit>, String[]> fingerprints = newLRUMap( MAX_FINGERPRINTS );
+
+    public String getKey( IQueryable<IInstallableUnit> availableIUs, Map<String, String> properties,
+                          Set<IInstallableUnit> rootIUs, List<IRequirement> additionalRequirements,
+                          IProgressMonitor monitor )
+    {
+        StringBuilder sb = new StringBuilder();
+        // all properties, not only the ones that end up in the selection context, so new resolution inputs can't be
+        // forgotten
+        for ( Map.Entry<String, String> entry : new TreeMap<String, String>( properties ).entrySet() )
+        {
+            sb.append( "prop:" ).append( entry.getKey() ).append( '=' ).append( entry.getValue() ).append( '\n' );
+        }
+        Map<String, String> selectionContext = SimplePlanner.createSelectionContext( properties );
+        for ( Map.Entry<String, String> entry : new TreeMap<String, String>( selectionContext ).entrySet() )
+        {
+            sb.append( "ctx:" ).append( entry.getKey() ).append( '=' ).append( entry.getValue() ).append( '\n' );
+        }
+        for ( IInstallableUnit iu : rootIUs )
+        {
+            sb.append( ROOT ).append( InstallableUnitFingerprint.digest( iu ) ).append( '\n' );
+        }
+        for ( IRequirement requirement : additionalRequirements )
+        {
+            sb.append( "req:" ).append( InstallableUnitFingerprint.toString( requirement ) ).append( '\n' );
+        }
+        sb.append( "available:" ).append( getFingerprint( availableIUs, monitor ) );
+        return InstallableUnitFingerprint.digest( sb.toString() );
+    }
+
+    private String getFingerprint( IQueryable<IInstallableUnit> availableIUs, IProgressMonitor monitor )
+    {
+        String stamp = "";
+        if ( availableIUs instanceof LazyCompoundQueryable )
+        {
+            stamp = ( (LazyCompoundQueryable) availableIUs ).getModificationStamp();
+        }
+
+        // computed under lock, so environments resolved concurrently compute the fingerprint only once
+        synchronized ( fingerprints )
+        {
+            String[] cached = fingerprints.get( availableIUs );
+            if ( cached != null && cached[0].equals( stamp ) )
+            {
+                return cached[1];
+            }
+
+            InstallableUnitFingerprint fingerprint = new InstallableUnitFingerprint();
+            if ( availableIUs instanceof LazyCompoundQueryable )
+            {
+                ( (LazyCompoundQueryable) availableIUs ).updateFingerprint( fingerprint );
+            }
+            else
+            {
+                Iterator<IInstallableUnit> units = availableIUs.query( QueryUtil.ALL_UNITS, monitor ).iterator();
+                for ( int i = 0; units.hasNext(); i++ )
+                {
+                    fingerprint.add( i + ":" + InstallableUnitFingerprint.digest( units.next() ) );
+                }
+            }
+            String result = fingerprint.getFingerprint();
+
+            fingerprints.put( availableIUs, new String[] { stamp, result } );
+            return result;
+        }
+    }
+
+    /**
+     * @return cached solution or <code>null</code> if there is no solution for the given key
+     */
+    public Collection<IInstallableUnit> get( String key, IQueryable<IInstallableUnit> availableIUs,
+                                             Set<IInstallableUnit> rootIUs, Set<IInstallableUnit> extraIUs,
+                                             File directory, IProgressMonitor monitor )
+    {
+        List<Object> solution;
+        synchronized ( solutions )
+        {
+            solution = solutions.get( key );
+        }
+
+        if ( solution == null && directory != null )
+        {
+            solution = read( new File( directory, key ), availableIUs, monitor );
+            if ( solution != null )
+            {
+                synchronized ( solutions )
+                {
+                    solutions.put( key, solution );
+                }
+            }
+        }
+
+        if ( solution == null )
+        {
+            return null;
+        }
+
+        List<IInstallableUnit> roots = new ArrayList<IInstallableUnit>( rootIUs );
+        List<IInstallableUnit> extras = new ArrayList<IInstallableUnit>( extraIUs );
+
+        List<IInstallableUnit> result = new ArrayList<IInstallableUnit>( solution.size() );
+        for ( Object element : solution )
+        {
+            if ( element instanceof IInstallableUnit )
+            {
+                result.add( (IInstallableUnit) element );
+            }
+            else
+            {
+                String ref = (String) element;
+                if ( ref.startsWith( ROOT ) )
+                {
+                    result.add( roots.get( Integer.parseInt( ref.substring( ROOT.length() ) ) ) );
+                }
+                else
+                {
+                    result.add( extras.get( Integer.parseInt( ref.substring( EXTRA.length() ) ) ) );
+                }
+            }
+        }
+        return result;
+    }
+
+    public void put( String key, Collection<IInstallableUnit> newState, Set<IInstallableUnit> rootIUs,
+                     Set<IInstallableUnit> extraIUs, File directory )
+    {
+        List<IInstallableUnit> roots = new ArrayList<IInstallableUnit>( rootIUs );
+        List<IInstallableUnit> extras = new ArrayList<IInstallableUnit>( extraIUs );
+
+        List<Object> solution = new ArrayList<Object>( newState.size() );
+        for ( IInstallableUnit iu : newState )
+        {
+            // roots and extras are compared by identity, equal units from other projects are regular units
+            int idx;
+            if ( ( idx = indexOf( roots, iu ) ) >= 0 )
+            {
+                solution.add( ROOT + idx );
+            }
+            else if ( ( idx = indexOf( extras, iu ) ) >= 0 )
+            {
+                solution.add( EXTRA + idx );
+            }
+            else
+            {
+                solution.add( iu );
+            }
+        }
+        solution = Collections.unmodifiableList( solution );
+
+        synchronized ( solutions )
+        {
+            solutions.put( key, solution );
+        }
+
+        if ( directory != null )
+        {
+            try
+            {
+                write( new File( directory, key ), solution );
+            }
+            catch ( IOException e )
+            {
+                // persistent cache is optional, solution is still cached in memory
+            }
+        }
+    }
+
+    private static int indexOf( List<IInstallableUnit> units, IInstallableUnit iu )
+    {
+        for ( int i = 0; i < units.size(); i++ )
+        {
+            if ( units.get( i ) == iu )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Object> read( File file, IQueryable<IInstallableUnit> availableIUs,
+                                      IProgressMonitor monitor )
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            List<Object> solution = new ArrayList<Object>();
+
+            BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), ENCODING ) );
+            try
+            {
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    if ( line.startsWith( IU ) )
+                    {
+                        int idx = line.lastIndexOf( '/' );
+                        String id = line.substring( IU.length(), idx );
+                        Version version = Version.create( line.substring( idx + 1 ) );
+
+                        Iterator<IInstallableUnit> units =
+                            availableIUs.query( QueryUtil.createIUQuery( id, version ), monitor ).iterator();
+                        if ( !units.hasNext() )
+                        {
+                            // available units changed in a way not covered by the key, e.g. corrupted cache file
+                            return null;
+                        }
+                        solution.add( units.next() );
+                    }
+                    else if ( line.startsWith( ROOT ) || line.startsWith( EXTRA ) )
+                    {
+                        solution.add( line );
+                    }
+                    else if ( line.length() > 0 )
+                    {
+                        return null;
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+
+            return Collections.unmodifiableList( solution );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+        catch ( RuntimeException e )
+        {
+            // malformed id or version
+            return null;
+        }
+    }
+
+    private static void write( File file, List<Object> solution )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+
+        // write to a unique temporary file and rename, so concurrent builds never see partial files
+        File tmpFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+        try
+        {
+            Writer writer = new OutputStreamWriter( new FileOutputStream( tmpFile ), ENCODING );
+            try
+            {
+                for ( Object element : solution )
+                {
+                    if ( element instanceof IInstallableUnit )
+                    {
+                        IInstallableUnit iu = (IInstallableUnit) element;
+                        writer.write( IU + iu.getId() + "/" + iu.getVersion() + "\n" );
+                    }
+                    else
+                    {
+                        writer.write( element + "\n" );
+                    }
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+
+            // same key means same content, so it does not matter which concurrent build wins
+            if ( !tmpFile.renameTo( file ) && !file.isFile() )
+            {
+                throw new IOException( "Could not rename " + tmpFile + " to " + file );
+            }
+        }
+        finally
+        {
+            tmpFile.delete();
+        }
+    }
+
+    private static <K, V> Map<K, V> newLRUMap( final int maxEntries )
+    {
+        return new LinkedHashMap<K, V>( maxEntries * 2, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<K, V> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
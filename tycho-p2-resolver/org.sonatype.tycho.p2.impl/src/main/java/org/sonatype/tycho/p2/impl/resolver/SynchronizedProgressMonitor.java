@@ -0,0 +1,57 @@
+package org.sonatype.tycho.p2.impl.resolver;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Serializes calls to a progress monitor, so it can be shared by resolutions running on several threads.
+ */
+public class SynchronizedProgressMonitor
+    implements IProgressMonitor
+{
+    private final IProgressMonitor monitor;
+
+    public SynchronizedProgressMonitor( IProgressMonitor monitor )
+    {
+        this.monitor = monitor;
+    }
+
+    public synchronized void beginTask( String name, int totalWork )
+    {
+        monitor.beginTask( name, totalWork );
+    }
+
+    public synchronized void done()
+    {
+        monitor.done();
+    }
+
+    public synchronized void internalWorked( double work )
+    {
+        monitor.internalWorked( work );
+    }
+
+    public synchronized boolean isCanceled()
+    {
+        return monitor.isCanceled();
+    }
+
+    public synchronized void setCanceled( boolean value )
+    {
+        monitor.setCanceled( value );
+    }
+
+    public synchronized void setTaskName( String name )
+    {
+        monitor.setTaskName( name );
+    }
+
+    public synchronized void subTask( String name )
+    {
+        monitor.subTask( name );
+    }
+
+    public synchronized void worked( int work )
+    {
+        monitor.worked( work );
+    }
+}
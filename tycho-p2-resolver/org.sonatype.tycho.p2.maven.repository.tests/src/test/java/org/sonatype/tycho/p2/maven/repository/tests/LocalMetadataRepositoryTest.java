@@ -12,9 +12,12 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
 import org.eclipse.equinox.p2.metadata.MetadataFactory;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -98,4 +101,38 @@ public class LocalMetadataRepositoryTest
         Assert.assertEquals( 1, ius.size() );
     }
 
+    @Test
+    public void queryLazilyLoadedRepository()
+        throws CoreException
+    {
+        File location = new File( "target/lazyMetadataRepo" );
+        new File( location, LocalMetadataRepository.SUMMARY_RELPATH ).delete();
+        createRepository( location, "group", "artifact", "version" );
+        LocalMetadataRepository repository = (LocalMetadataRepository) loadRepository( location );
+
+        InstallableUnitDescription iud = new MetadataFactory.InstallableUnitDescription();
+        iud.setId( "lazy" );
+        iud.setVersion( Version.parseVersion( "1.0.0" ) );
+        iud.setProperty( RepositoryLayoutHelper.PROP_GROUP_ID, "group" );
+        iud.setProperty( RepositoryLayoutHelper.PROP_ARTIFACT_ID, "lazy" );
+        iud.setProperty( RepositoryLayoutHelper.PROP_VERSION, "version" );
+        iud.setCapabilities( new IProvidedCapability[] { MetadataFactory.createProvidedCapability( "test.ns", "lazy.capability", Version.parseVersion( "1.0.0" ) ) } );
+
+        repository.addInstallableUnits( Arrays.asList( MetadataFactory.createInstallableUnit( iud ) ) );
+
+        Assert.assertTrue( new File( location, LocalMetadataRepository.SUMMARY_RELPATH ).exists() );
+
+        // loaded from summary, metadata file is only parsed by the query
+        repository = (LocalMetadataRepository) loadRepository( location );
+
+        Set<IInstallableUnit> byId = repository.query( QueryUtil.createIUQuery( "lazy" ), monitor ).toSet();
+        Assert.assertEquals( 1, byId.size() );
+        Assert.assertEquals( "group", byId.iterator().next().getProperty( RepositoryLayoutHelper.PROP_GROUP_ID ) );
+
+        IRequirement requirement =
+            MetadataFactory.createRequirement( "test.ns", "lazy.capability", VersionRange.emptyRange, null, false, false );
+        Set<IInstallableUnit> byCapability =
+            repository.query( QueryUtil.createMatchQuery( requirement.getMatches() ), monitor ).toSet();
+        Assert.assertEquals( byId, byCapability );
+    }
 }
@@ -0,0 +1,175 @@
+package org.sonatype.tycho.p2.maven.repository.tests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.repository.GAV;
+import org.sonatype.tycho.p2.repository.LocalTychoRepositoryIndex;
+
+public class LocalTychoRepositoryIndexTest
+{
+    private File basedir = new File( "target/indexRepo" );
+
+    @Before
+    public void deleteIndex()
+    {
+        new File( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH ).delete();
+    }
+
+    @Test
+    public void saveMergesConcurrentChanges()
+        throws IOException
+    {
+        LocalTychoRepositoryIndex first =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+        LocalTychoRepositoryIndex second =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+
+        first.addProject( "group", "first", "1.0.0" );
+        first.save();
+
+        second.addProject( "group", "second", "1.0.0" );
+        second.save();
+
+        List<GAV> gavs =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH ).getProjectGAVs();
+        Assert.assertEquals( 2, gavs.size() );
+        Assert.assertTrue( gavs.contains( new GAV( "group", "first", "1.0.0" ) ) );
+        Assert.assertTrue( gavs.contains( new GAV( "group", "second", "1.0.0" ) ) );
+
+        // second index now also knows about entries saved by first index
+        Assert.assertEquals( 2, second.getProjectGAVs().size() );
+    }
+
+    @Test
+    public void concurrentSave()
+        throws Exception
+    {
+        final int threadCount = 8;
+        final int projectsPerThread = 50;
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final String artifactId = "artifact" + i;
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < projectsPerThread; j++ )
+                        {
+                            LocalTychoRepositoryIndex index =
+                                new LocalTychoRepositoryIndex( basedir,
+                                                               LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+                            index.addProject( "group", artifactId, "1.0." + j );
+                            index.save();
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        synchronized ( errors )
+                        {
+                            errors.add( t );
+                        }
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        Assert.assertTrue( errors.toString(), errors.isEmpty() );
+
+        LocalTychoRepositoryIndex index =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+        Assert.assertEquals( threadCount * projectsPerThread, index.getProjectGAVs().size() );
+    }
+
+    @Test
+    public void saveAppendsAtCompactionThreshold()
+        throws IOException
+    {
+        // 65 duplicates of one unique entry, which is exactly the threshold of 1 + 64
+        writeIndexLines( "group:a:1.0.0", 66 );
+
+        LocalTychoRepositoryIndex index =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+        index.addProject( "group", "b", "1.0.0" );
+        index.save();
+
+        Assert.assertEquals( 67, countIndexLines() );
+    }
+
+    @Test
+    public void saveCompactsAboveCompactionThreshold()
+        throws IOException
+    {
+        writeIndexLines( "group:a:1.0.0", 67 );
+
+        LocalTychoRepositoryIndex index =
+            new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+        index.addProject( "group", "b", "1.0.0" );
+        index.save();
+
+        Assert.assertEquals( 2, countIndexLines() );
+        Assert.assertEquals( 2, new LocalTychoRepositoryIndex( basedir,
+                                                               LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH ).getProjectGAVs().size() );
+    }
+
+    private void writeIndexLines( String line, int count )
+        throws IOException
+    {
+        File indexFile = new File( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH );
+        indexFile.getParentFile().mkdirs();
+        Writer writer = new FileWriter( indexFile );
+        try
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                writer.write( line + "\n" );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private int countIndexLines()
+        throws IOException
+    {
+        BufferedReader reader =
+            new BufferedReader( new FileReader( new File( basedir, LocalTychoRepositoryIndex.ARTIFACTS_INDEX_RELPATH ) ) );
+        try
+        {
+            int lines = 0;
+            while ( reader.readLine() != null )
+            {
+                lines++;
+            }
+            return lines;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
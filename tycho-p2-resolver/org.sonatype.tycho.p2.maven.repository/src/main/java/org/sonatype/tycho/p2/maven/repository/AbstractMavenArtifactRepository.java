@@ -1,16 +1,23 @@
 package org.sonatype.tycho.p2.maven.repository;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.IQueryable;
@@ -23,6 +30,7 @@ import org.sonatype.tycho.p2.repository.RepositoryLayoutHelper;
 import org.sonatype.tycho.p2.repository.RepositoryReader;
 import org.sonatype.tycho.p2.repository.TychoRepositoryIndex;
 
+@SuppressWarnings( "restriction" )
 public abstract class AbstractMavenArtifactRepository
     extends AbstractArtifactRepository
 {
@@ -34,6 +42,13 @@ public abstract class AbstractMavenArtifactRepository
 
     protected Set<IArtifactDescriptor> descriptors = new HashSet<IArtifactDescriptor>();
 
+    /**
+     * Artifact keys of GAVs with up-to-date summary that have not been loaded yet
+     */
+    private final Map<IArtifactKey, GAV> unloadedKeys = new LinkedHashMap<IArtifactKey, GAV>();
+
+    protected GAVSummaryFile summary;
+
     private final RepositoryReader contentLocator;
 
     private final TychoRepositoryIndex projectIndex;
@@ -48,56 +63,154 @@ public abstract class AbstractMavenArtifactRepository
         loadMaven();
     }
 
+    /**
+     * Reads artifacts files of all GAVs in the project index. If the subclass provides a {@link GAVSummaryFile},
+     * artifacts files with up-to-date summary are only read when the artifact key they describe is accessed.
+     */
     protected void loadMaven()
     {
-        ArtifactsIO io = new ArtifactsIO();
+        summary = createSummaryFile();
 
         for ( GAV gav : projectIndex.getProjectGAVs() )
         {
-            try
+            if ( summary != null )
             {
-                InputStream is = contentLocator.getContents(
-                    gav,
-                    RepositoryLayoutHelper.CLASSIFIER_P2_ARTIFACTS,
-                    RepositoryLayoutHelper.EXTENSION_P2_ARTIFACTS );
-                try
+                GAVSummaryFile.Entry entry = summary.get( gav, getArtifactsFile( gav ) );
+                if ( entry != null )
                 {
-                    Set<IArtifactDescriptor> gavDescriptors = (Set<IArtifactDescriptor>) io.readXML( is );
-
-                    if ( !gavDescriptors.isEmpty() )
+                    for ( String[] record : entry.records )
                     {
-                        IArtifactKey key = gavDescriptors.iterator().next().getArtifactKey();
-                        descriptorsMap.put( key, gavDescriptors );
-                        descriptors.addAll( gavDescriptors );
+                        unloadedKeys.put( new ArtifactKey( record[0], record[1], Version.create( record[2] ) ), gav );
                     }
+                    continue;
                 }
-                finally
+            }
+
+            IArtifactKey key = loadGAV( gav );
+            updateSummary( gav, key );
+        }
+
+        saveSummary();
+    }
+
+    private IArtifactKey loadGAV( GAV gav )
+    {
+        try
+        {
+            InputStream is = contentLocator.getContents(
+                gav,
+                RepositoryLayoutHelper.CLASSIFIER_P2_ARTIFACTS,
+                RepositoryLayoutHelper.EXTENSION_P2_ARTIFACTS );
+            try
+            {
+                Set<IArtifactDescriptor> gavDescriptors = (Set<IArtifactDescriptor>) new ArtifactsIO().readXML( is );
+
+                if ( !gavDescriptors.isEmpty() )
                 {
-                    is.close();
+                    IArtifactKey key = gavDescriptors.iterator().next().getArtifactKey();
+                    descriptorsMap.put( key, gavDescriptors );
+                    descriptors.addAll( gavDescriptors );
+                    return key;
                 }
             }
+            finally
+            {
+                is.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // too bad
+        }
+        return null;
+    }
+
+    /**
+     * @return summary of the artifacts files of this repository, or <code>null</code> to load all artifacts files
+     *         eagerly
+     */
+    protected GAVSummaryFile createSummaryFile()
+    {
+        return null;
+    }
+
+    /**
+     * @return local artifacts file of the given GAV; only used if {@link #createSummaryFile()} is implemented
+     */
+    protected File getArtifactsFile( GAV gav )
+    {
+        return null;
+    }
+
+    protected void updateSummary( GAV gav, IArtifactKey key )
+    {
+        if ( summary != null )
+        {
+            List<String[]> records = new ArrayList<String[]>();
+            if ( key != null )
+            {
+                records.add( new String[] { key.getClassifier(), key.getId(), key.getVersion().toString() } );
+            }
+            summary.put( gav, getArtifactsFile( gav ), records );
+        }
+    }
+
+    protected void saveSummary()
+    {
+        if ( summary != null )
+        {
+            try
+            {
+                summary.save();
+            }
             catch ( IOException e )
             {
-                // too bad
+                // not fatal, artifacts files will be parsed again next time
             }
         }
     }
 
+    /**
+     * Loads the artifacts file that describes the given key, if it has not been loaded yet.
+     */
+    protected void ensureLoaded( IArtifactKey key )
+    {
+        GAV gav = key != null ? unloadedKeys.remove( key ) : null;
+        if ( gav != null )
+        {
+            loadGAV( gav );
+        }
+    }
+
+    protected void loadAll()
+    {
+        for ( IArtifactKey key : new ArrayList<IArtifactKey>( unloadedKeys.keySet() ) )
+        {
+            ensureLoaded( key );
+        }
+    }
+
     @Override
     public boolean contains( IArtifactDescriptor descriptor )
     {
-        return descriptor != null && descriptors.contains( descriptor );
+        if ( descriptor == null )
+        {
+            return false;
+        }
+        ensureLoaded( descriptor.getArtifactKey() );
+        return descriptors.contains( descriptor );
     }
 
     @Override
     public boolean contains( IArtifactKey key )
     {
-        return key != null && descriptorsMap.containsKey( key );
+        return key != null && ( descriptorsMap.containsKey( key ) || unloadedKeys.containsKey( key ) );
     }
 
     @Override
     public IArtifactDescriptor[] getArtifactDescriptors( IArtifactKey key )
     {
+        ensureLoaded( key );
         Set<IArtifactDescriptor> descriptors = descriptorsMap.get( key );
         if ( descriptors == null )
         {
@@ -124,6 +237,8 @@ public abstract class AbstractMavenArtifactRepository
     @Override
     public void addDescriptor( IArtifactDescriptor descriptor )
     {
+        ensureLoaded( descriptor.getArtifactKey() );
+
         super.addDescriptor( descriptor );
 
         descriptors.add( descriptor );
@@ -155,7 +270,9 @@ public abstract class AbstractMavenArtifactRepository
 
     public IQueryResult<IArtifactKey> query( IQuery<IArtifactKey> query, IProgressMonitor monitor )
     {
-        return query.perform( descriptorsMap.keySet().iterator() );
+        Set<IArtifactKey> keys = new LinkedHashSet<IArtifactKey>( descriptorsMap.keySet() );
+        keys.addAll( unloadedKeys.keySet() );
+        return query.perform( keys.iterator() );
     }
 
     public IQueryable<IArtifactDescriptor> descriptorQueryable()
@@ -164,6 +281,7 @@ public abstract class AbstractMavenArtifactRepository
         {
             public IQueryResult<IArtifactDescriptor> query( IQuery<IArtifactDescriptor> query, IProgressMonitor monitor )
             {
+                loadAll();
                 return query.perform( descriptors.iterator() );
             }
         };
@@ -1,16 +1,33 @@
 package org.sonatype.tycho.p2.maven.repository;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IdIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
+import org.eclipse.equinox.p2.metadata.expression.IExpression;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.repository.IRepositoryReference;
@@ -21,8 +38,18 @@ import org.sonatype.tycho.p2.repository.RepositoryLayoutHelper;
 import org.sonatype.tycho.p2.repository.RepositoryReader;
 import org.sonatype.tycho.p2.repository.TychoRepositoryIndex;
 
+/**
+ * Metadata repository backed by per-GAV <code>p2metadata.xml</code> files.
+ * <p>
+ * If the subclass provides a {@link GAVSummaryFile}, metadata files are loaded lazily. For GAVs with an up-to-date
+ * summary, only lightweight stand-in units with id, version and provided capabilities are created initially. Queries
+ * that can use the id or capability index are answered from these stand-ins, and the metadata file of a GAV is only
+ * parsed when one of its units is a candidate. Queries that need to look at all units load everything.
+ */
+@SuppressWarnings( "restriction" )
 public abstract class AbstractMavenMetadataRepository
     extends AbstractMetadataRepository
+    implements IIndexProvider<IInstallableUnit>
 {
 //    private static final String REPOSITORY_TYPE = AbstractMavenMetadataRepository.class.getName();
 //
@@ -32,10 +59,34 @@ public abstract class AbstractMavenMetadataRepository
 
     protected final RepositoryReader contentLocator;
 
-    protected Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
-
+    /**
+     * Units of all loaded GAVs
+     */
     protected Map<GAV, Set<IInstallableUnit>> unitsMap = new LinkedHashMap<GAV, Set<IInstallableUnit>>();
 
+    /**
+     * Stand-in units of GAVs that have not been loaded yet
+     */
+    private final Map<GAV, List<IInstallableUnit>> unloaded = new LinkedHashMap<GAV, List<IInstallableUnit>>();
+
+    protected GAVSummaryFile summary;
+
+    /**
+     * Summary entries of GAVs whose units have not been changed since they were read from or written to disk
+     */
+    private final Map<GAV, GAVSummaryFile.Entry> unchanged = new LinkedHashMap<GAV, GAVSummaryFile.Entry>();
+
+    private int modificationCount;
+
+    /**
+     * Maps loaded units and stand-in units to their GAV, by identity. <code>null</code> if it needs to be rebuilt.
+     */
+    private Map<IInstallableUnit, GAV> indexedUnits;
+
+    private IdIndex idIndex;
+
+    private CapabilityIndex capabilityIndex;
+
     public AbstractMavenMetadataRepository( URI location, TychoRepositoryIndex projectIndex,
                                             RepositoryReader contentLocator )
     {
@@ -55,33 +106,153 @@ public abstract class AbstractMavenMetadataRepository
 
     protected void load()
     {
-        MetadataIO io = new MetadataIO();
+        summary = createSummaryFile();
 
         for ( GAV gav : projectIndex.getProjectGAVs() )
         {
-            try
+            if ( summary != null )
             {
-                InputStream is =
-                    contentLocator.getContents( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
-                                                RepositoryLayoutHelper.EXTENSION_P2_METADATA );
-                try
+                GAVSummaryFile.Entry entry = summary.get( gav, getMetadataFile( gav ) );
+                if ( entry != null )
                 {
-                    Set<IInstallableUnit> gavUnits = io.readXML( is );
-
-                    unitsMap.put( gav, gavUnits );
-                    units.addAll( gavUnits );
-                }
-                finally
-                {
-                    is.close();
+                    unloaded.put( gav, toStandInUnits( entry.records ) );
+                    unchanged.put( gav, entry );
+                    continue;
                 }
             }
+
+            Set<IInstallableUnit> gavUnits = readGAV( gav );
+            if ( gavUnits != null )
+            {
+                unitsMap.put( gav, gavUnits );
+                updateSummary( gav, gavUnits );
+            }
+        }
+
+        saveSummary();
+    }
+
+    /**
+     * @return summary of the metadata files of this repository, or <code>null</code> to load all metadata eagerly
+     */
+    protected GAVSummaryFile createSummaryFile()
+    {
+        return null;
+    }
+
+    /**
+     * @return local file with the metadata of the given GAV; only used if {@link #createSummaryFile()} is implemented
+     */
+    protected File getMetadataFile( GAV gav )
+    {
+        return null;
+    }
+
+    protected void updateSummary( GAV gav, Collection<IInstallableUnit> gavUnits )
+    {
+        if ( summary != null )
+        {
+            unchanged.put( gav, summary.put( gav, getMetadataFile( gav ), toRecords( gavUnits ) ) );
+        }
+    }
+
+    protected void saveSummary()
+    {
+        if ( summary != null )
+        {
+            try
+            {
+                summary.save();
+            }
             catch ( IOException e )
             {
-                // too bad
+                // not fatal, metadata files will be parsed again next time
+            }
+        }
+    }
+
+    private Set<IInstallableUnit> readGAV( GAV gav )
+    {
+        try
+        {
+            InputStream is =
+                contentLocator.getContents( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
+                                            RepositoryLayoutHelper.EXTENSION_P2_METADATA );
+            try
+            {
+                return new MetadataIO().readXML( is );
+            }
+            finally
+            {
+                is.close();
             }
+        }
+        catch ( IOException e )
+        {
+            // too bad
+            return null;
+        }
+    }
 
+    /**
+     * @return units of the given GAV, loading them if necessary, or <code>null</code> if the GAV is not known
+     */
+    protected Set<IInstallableUnit> getUnits( GAV gav )
+    {
+        if ( unloaded.remove( gav ) != null )
+        {
+            Set<IInstallableUnit> gavUnits = readGAV( gav );
+            if ( gavUnits == null )
+            {
+                gavUnits = new LinkedHashSet<IInstallableUnit>();
+            }
+            unitsMap.put( gav, gavUnits );
+        }
+        return unitsMap.get( gav );
+    }
+
+    protected void loadAll()
+    {
+        for ( GAV gav : new ArrayList<GAV>( unloaded.keySet() ) )
+        {
+            getUnits( gav );
+        }
+    }
+
+    /**
+     * Must be called when units of the given loaded GAV are changed.
+     */
+    protected void unitsChanged( GAV gav )
+    {
+        unchanged.remove( gav );
+        modificationCount++;
+
+        indexedUnits = null;
+        idIndex = null;
+        capabilityIndex = null;
+    }
+
+    private Map<IInstallableUnit, GAV> getIndexedUnits()
+    {
+        if ( indexedUnits == null )
+        {
+            indexedUnits = new IdentityHashMap<IInstallableUnit, GAV>();
+            for ( Map.Entry<GAV, List<IInstallableUnit>> entry : unloaded.entrySet() )
+            {
+                for ( IInstallableUnit unit : entry.getValue() )
+                {
+                    indexedUnits.put( unit, entry.getKey() );
+                }
+            }
+            for ( Map.Entry<GAV, Set<IInstallableUnit>> entry : unitsMap.entrySet() )
+            {
+                for ( IInstallableUnit unit : entry.getValue() )
+                {
+                    indexedUnits.put( unit, entry.getKey() );
+                }
+            }
         }
+        return indexedUnits;
     }
 
     @Override
@@ -91,14 +262,181 @@ public abstract class AbstractMavenMetadataRepository
 
     public IQueryResult<IInstallableUnit> query( IQuery<IInstallableUnit> query, IProgressMonitor monitor )
     {
-        return query.perform( units.iterator() );
+        return IndexProvider.query( this, query, monitor );
+    }
+
+    public synchronized IIndex<IInstallableUnit> getIndex( String memberName )
+    {
+        if ( InstallableUnit.MEMBER_ID.equals( memberName ) )
+        {
+            if ( idIndex == null )
+            {
+                idIndex = new IdIndex( getIndexedUnits().keySet().iterator() );
+            }
+            return new LazyIndex( idIndex );
+        }
+        if ( InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals( memberName ) )
+        {
+            if ( capabilityIndex == null )
+            {
+                capabilityIndex = new CapabilityIndex( getIndexedUnits().keySet().iterator() );
+            }
+            return new LazyIndex( capabilityIndex );
+        }
+        return null;
+    }
+
+    public synchronized Iterator<IInstallableUnit> everything()
+    {
+        loadAll();
+
+        return getAllUnits().iterator();
+    }
+
+    public Object getManagedProperty( Object client, String memberName, Object key )
+    {
+        return null;
+    }
+
+    private Set<IInstallableUnit> getAllUnits()
+    {
+        Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+        for ( Set<IInstallableUnit> gavUnits : unitsMap.values() )
+        {
+            result.addAll( gavUnits );
+        }
+        return result;
+    }
+
+    /**
+     * Maps candidates found in the index, which may be stand-in units, to the actual units of their GAVs. The result
+     * may contain units that do not match, these are filtered by the query.
+     */
+    private class LazyIndex
+        implements IIndex<IInstallableUnit>
+    {
+        private final IIndex<IInstallableUnit> index;
+
+        public LazyIndex( IIndex<IInstallableUnit> index )
+        {
+            this.index = index;
+        }
+
+        public Iterator<IInstallableUnit> getCandidates( IEvaluationContext ctx, IExpression variable,
+                                                         IExpression booleanExpr )
+        {
+            synchronized ( AbstractMavenMetadataRepository.this )
+            {
+                Iterator<IInstallableUnit> candidates = index.getCandidates( ctx, variable, booleanExpr );
+                if ( candidates == null )
+                {
+                    return null;
+                }
+
+                Map<IInstallableUnit, GAV> indexedUnits = getIndexedUnits();
+                Set<GAV> gavs = new LinkedHashSet<GAV>();
+                while ( candidates.hasNext() )
+                {
+                    gavs.add( indexedUnits.get( candidates.next() ) );
+                }
+
+                Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+                for ( GAV gav : gavs )
+                {
+                    Set<IInstallableUnit> gavUnits = getUnits( gav );
+                    if ( gavUnits != null )
+                    {
+                        result.addAll( gavUnits );
+                    }
+                }
+                return result.iterator();
+            }
+        }
+    }
+
+    /**
+     * Record format is id, version, followed by namespace, name and version of each provided capability.
+     */
+    private static List<String[]> toRecords( Collection<IInstallableUnit> units )
+    {
+        List<String[]> records = new ArrayList<String[]>( units.size() );
+        for ( IInstallableUnit unit : units )
+        {
+            Collection<IProvidedCapability> capabilities = unit.getProvidedCapabilities();
+            String[] record = new String[2 + capabilities.size() * 3];
+            record[0] = unit.getId();
+            record[1] = unit.getVersion().toString();
+            int i = 2;
+            for ( IProvidedCapability capability : capabilities )
+            {
+                record[i++] = capability.getNamespace();
+                record[i++] = capability.getName();
+                record[i++] = capability.getVersion().toString();
+            }
+            records.add( record );
+        }
+        return records;
+    }
+
+    private static List<IInstallableUnit> toStandInUnits( List<String[]> records )
+    {
+        List<IInstallableUnit> units = new ArrayList<IInstallableUnit>( records.size() );
+        for ( String[] record : records )
+        {
+            InstallableUnitDescription iud = new InstallableUnitDescription();
+            iud.setId( record[0] );
+            iud.setVersion( Version.create( record[1] ) );
+
+            IProvidedCapability[] capabilities = new IProvidedCapability[( record.length - 2 ) / 3];
+            for ( int i = 0; i < capabilities.length; i++ )
+            {
+                int offset = 2 + i * 3;
+                capabilities[i] =
+                    MetadataFactory.createProvidedCapability( record[offset], record[offset + 1],
+                                                              Version.create( record[offset + 2] ) );
+            }
+            iud.setCapabilities( capabilities );
+
+            units.add( MetadataFactory.createInstallableUnit( iud ) );
+        }
+        return units;
+    }
+
+    /**
+     * @return number of changes to the units of this repository, for use in cache keys
+     */
+    public synchronized int getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    /**
+     * Adds the contents of this repository to the given fingerprint without loading all units. GAVs that have not been
+     * changed since they were read are represented by the timestamp and length of their metadata file.
+     */
+    public synchronized void updateFingerprint( InstallableUnitFingerprint fingerprint )
+    {
+        for ( Map.Entry<GAV, GAVSummaryFile.Entry> entry : unchanged.entrySet() )
+        {
+            fingerprint.add( getLocation() + "/" + entry.getKey() + "/" + entry.getValue().lastModified + "/"
+                + entry.getValue().length );
+        }
+        for ( Map.Entry<GAV, Set<IInstallableUnit>> entry : unitsMap.entrySet() )
+        {
+            if ( !unchanged.containsKey( entry.getKey() ) )
+            {
+                fingerprint.addAll( entry.getValue() );
+            }
+        }
     }
 
     /**
      * For testing purposes only
      */
-    public Map<GAV, Set<IInstallableUnit>> getGAVs()
+    public synchronized Map<GAV, Set<IInstallableUnit>> getGAVs()
     {
+        loadAll();
+
         return unitsMap;
     }
 
@@ -0,0 +1,218 @@
+package org.sonatype.tycho.p2.maven.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.tycho.p2.repository.GAV;
+import org.sonatype.tycho.p2.repository.LocalTychoRepositoryIndex;
+
+/**
+ * Persistent summary of per-GAV p2 metadata or artifacts files in the local Maven repository. For each GAV, the
+ * summary holds a few string records (e.g. installable unit ids and provided capabilities) that are sufficient to
+ * decide if the GAV is relevant for a query, so the actual XML file only needs to be parsed when it is.
+ * <p>
+ * Entries are validated against timestamp and length of the summarized file. Updates are merged with the current
+ * file contents under the local repository index lock, so concurrent builds do not drop each others entries.
+ */
+public class GAVSummaryFile
+{
+    private static final int MAGIC = 0x54475346; // "TGSF"
+
+    private static final int FORMAT_VERSION = 1;
+
+    public static class Entry
+    {
+        public final long lastModified;
+
+        public final long length;
+
+        public final List<String[]> records;
+
+        public Entry( long lastModified, long length, List<String[]> records )
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.records = records;
+        }
+
+        public boolean isValid( File file )
+        {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+
+    private final File basedir;
+
+    private final File file;
+
+    private final Map<GAV, Entry> entries = new LinkedHashMap<GAV, Entry>();
+
+    private final Map<GAV, Entry> changed = new LinkedHashMap<GAV, Entry>();
+
+    public GAVSummaryFile( File basedir, String relpath )
+    {
+        this.basedir = basedir;
+        this.file = new File( basedir, relpath );
+        try
+        {
+            read( file, entries );
+        }
+        catch ( IOException e )
+        {
+            // missing or corrupted, all files will be parsed and the summary recreated
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return summary of the given GAV, or <code>null</code> if there is no summary or it is out of date
+     */
+    public Entry get( GAV gav, File summarized )
+    {
+        Entry entry = entries.get( gav );
+        return entry != null && entry.isValid( summarized ) ? entry : null;
+    }
+
+    public Entry put( GAV gav, File summarized, List<String[]> records )
+    {
+        Entry entry = new Entry( summarized.lastModified(), summarized.length(), records );
+        entries.put( gav, entry );
+        changed.put( gav, entry );
+        return entry;
+    }
+
+    public boolean isChanged()
+    {
+        return !changed.isEmpty();
+    }
+
+    public void save()
+        throws IOException
+    {
+        if ( changed.isEmpty() )
+        {
+            return;
+        }
+
+        LocalTychoRepositoryIndex.lock( basedir );
+        try
+        {
+            Map<GAV, Entry> merged = new LinkedHashMap<GAV, Entry>();
+            try
+            {
+                read( file, merged );
+            }
+            catch ( IOException e )
+            {
+                merged.clear();
+            }
+            merged.putAll( changed );
+
+            file.getParentFile().mkdirs();
+            File tmpFile = new File( file.getParentFile(), file.getName() + ".tmp" );
+            write( tmpFile, merged );
+
+            if ( !tmpFile.renameTo( file ) )
+            {
+                file.delete();
+                if ( !tmpFile.renameTo( file ) )
+                {
+                    throw new IOException( "Could not rename " + tmpFile + " to " + file );
+                }
+            }
+
+            changed.clear();
+        }
+        finally
+        {
+            LocalTychoRepositoryIndex.unlock( basedir );
+        }
+    }
+
+    private static void read( File file, Map<GAV, Entry> entries )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return;
+        }
+
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION )
+            {
+                return;
+            }
+
+            int count = in.readInt();
+            for ( int i = 0; i < count; i++ )
+            {
+                GAV gav = GAV.parse( in.readUTF() );
+                long lastModified = in.readLong();
+                long length = in.readLong();
+
+                int recordCount = in.readInt();
+                List<String[]> records = new ArrayList<String[]>( recordCount );
+                for ( int j = 0; j < recordCount; j++ )
+                {
+                    String[] record = new String[in.readInt()];
+                    for ( int k = 0; k < record.length; k++ )
+                    {
+                        record[k] = in.readUTF();
+                    }
+                    records.add( record );
+                }
+
+                entries.put( gav, new Entry( lastModified, length, records ) );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void write( File file, Map<GAV, Entry> entries )
+        throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeInt( entries.size() );
+            for ( Map.Entry<GAV, Entry> entry : entries.entrySet() )
+            {
+                out.writeUTF( entry.getKey().toExternalForm() );
+                out.writeLong( entry.getValue().lastModified );
+                out.writeLong( entry.getValue().length );
+
+                List<String[]> records = entry.getValue().records;
+                out.writeInt( records.size() );
+                for ( String[] record : records )
+                {
+                    out.writeInt( record.length );
+                    for ( String str : record )
+                    {
+                        out.writeUTF( str );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
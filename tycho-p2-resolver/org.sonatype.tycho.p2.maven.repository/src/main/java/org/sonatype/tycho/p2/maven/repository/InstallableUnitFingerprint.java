@@ -0,0 +1,129 @@
+package org.sonatype.tycho.p2.maven.repository;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitFragment;
+import org.eclipse.equinox.p2.metadata.IInstallableUnitPatch;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+
+/**
+ * Order independent content digest of a set of installable units, limited to the parts of an installable unit that
+ * are relevant for dependency resolution: id, version, singleton flag, filter, provided capabilities and requirements.
+ * Two sets with the same fingerprint yield the same slicer and projector input.
+ */
+public class InstallableUnitFingerprint
+{
+    private final List<String> elements = new ArrayList<String>();
+
+    public void add( IInstallableUnit iu )
+    {
+        elements.add( digest( iu ) );
+    }
+
+    /**
+     * @return digest of the parts of the given installable unit that are relevant for dependency resolution
+     */
+    public static String digest( IInstallableUnit iu )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "iu:" ).append( iu.getId() ).append( '/' ).append( iu.getVersion() );
+        sb.append( '/' ).append( iu.isSingleton() ).append( '/' ).append( iu.getFilter() );
+        for ( IProvidedCapability capability : iu.getProvidedCapabilities() )
+        {
+            sb.append( "\nc:" ).append( capability.getNamespace() ).append( '/' ).append( capability.getName() );
+            sb.append( '/' ).append( capability.getVersion() );
+        }
+        appendRequirements( sb, "r", iu.getRequirements() );
+        appendRequirements( sb, "m", iu.getMetaRequirements() );
+        if ( iu instanceof IInstallableUnitFragment )
+        {
+            appendRequirements( sb, "h", ( (IInstallableUnitFragment) iu ).getHost() );
+        }
+        if ( iu instanceof IInstallableUnitPatch )
+        {
+            // patches are rare, full string representation is good enough
+            sb.append( "\np:" ).append( ( (IInstallableUnitPatch) iu ).getRequirementsChange() );
+            sb.append( '/' ).append( ( (IInstallableUnitPatch) iu ).getLifeCycle() );
+        }
+        return digest( sb.toString() );
+    }
+
+    /**
+     * Adds an arbitrary element, e.g. an identifier of a group of units that is known to be unchanged.
+     */
+    public void add( String element )
+    {
+        elements.add( digest( "s:" + element ) );
+    }
+
+    public void addAll( Collection<IInstallableUnit> units )
+    {
+        for ( IInstallableUnit iu : units )
+        {
+            add( iu );
+        }
+    }
+
+    public String getFingerprint()
+    {
+        List<String> sorted = new ArrayList<String>( elements );
+        Collections.sort( sorted );
+
+        StringBuilder sb = new StringBuilder();
+        for ( String element : sorted )
+        {
+            sb.append( element ).append( '\n' );
+        }
+        return digest( sb.toString() );
+    }
+
+    private static void appendRequirements( StringBuilder sb, String prefix, Collection<IRequirement> requirements )
+    {
+        for ( IRequirement requirement : requirements )
+        {
+            sb.append( '\n' ).append( prefix ).append( ':' ).append( toString( requirement ) );
+        }
+    }
+
+    public static String toString( IRequirement requirement )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( requirement.getMatches() );
+        sb.append( '/' ).append( requirement.getFilter() );
+        sb.append( '/' ).append( requirement.getMin() ).append( '/' ).append( requirement.getMax() );
+        sb.append( '/' ).append( requirement.isGreedy() );
+        return sb.toString();
+    }
+
+    public static String digest( String str )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            byte[] bytes = digest.digest( str.getBytes( "UTF-8" ) );
+
+            StringBuilder sb = new StringBuilder( bytes.length * 2 );
+            for ( byte b : bytes )
+            {
+                sb.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+            }
+            return sb.toString();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+}
@@ -30,10 +30,16 @@ import org.sonatype.tycho.p2.repository.RepositoryLayoutHelper;
 import org.sonatype.tycho.p2.repository.RepositoryReader;
 import org.sonatype.tycho.p2.repository.TychoRepositoryIndex;
 
+/**
+ * Maven local repository as p2 artifact repository. Access to repository state is synchronized, so artifacts can be
+ * downloaded into the repository from several threads concurrently.
+ */
 public class LocalArtifactRepository
     extends AbstractMavenArtifactRepository
 {
 
+    public static final String SUMMARY_RELPATH = ".meta/p2-artifacts.summary";
+
     private final Set<IArtifactKey> changedDescriptors = new HashSet<IArtifactKey>();
 
     public LocalArtifactRepository( File location )
@@ -47,6 +53,18 @@ public class LocalArtifactRepository
         super( location.toURI(), projectIndex, contentLocator );
     }
 
+    @Override
+    protected GAVSummaryFile createSummaryFile()
+    {
+        return new GAVSummaryFile( getBasedir(), SUMMARY_RELPATH );
+    }
+
+    @Override
+    protected File getArtifactsFile( GAV gav )
+    {
+        return new File( getBasedir(), getMetadataRelpath( gav ) );
+    }
+
     private void saveMaven()
     {
         File location = getBasedir();
@@ -87,6 +105,8 @@ public class LocalArtifactRepository
                     {
                         os.close();
                     }
+
+                    updateSummary( gav, key );
                 }
                 catch ( IOException e )
                 {
@@ -104,6 +124,8 @@ public class LocalArtifactRepository
             throw new RuntimeException( e );
         }
 
+        saveSummary();
+
         changedDescriptors.clear();
     }
 
@@ -115,7 +137,7 @@ public class LocalArtifactRepository
         return relpath;
     }
 
-    public void save()
+    public synchronized void save()
     {
         saveMaven();
     }
@@ -176,9 +198,11 @@ public class LocalArtifactRepository
 
         ArtifactDescriptor newDescriptor = new ArtifactDescriptor( descriptor );
         newDescriptor.setRepository( this );
-        descriptors.add( newDescriptor );
 
         IArtifactKey key = newDescriptor.getArtifactKey();
+        ensureLoaded( key );
+
+        descriptors.add( newDescriptor );
         Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get( key );
         if ( keyDescriptors == null )
         {
@@ -277,13 +301,25 @@ public class LocalArtifactRepository
     }
 
     @Override
-    public boolean contains( IArtifactDescriptor descriptor )
+    public synchronized boolean contains( IArtifactDescriptor descriptor )
     {
         return super.contains( descriptor ) && getLocationFile( descriptor ).canRead();
     }
 
     @Override
-    public void addDescriptor( IArtifactDescriptor descriptor )
+    public synchronized boolean contains( IArtifactKey key )
+    {
+        return super.contains( key );
+    }
+
+    @Override
+    public synchronized IArtifactDescriptor[] getArtifactDescriptors( IArtifactKey key )
+    {
+        return super.getArtifactDescriptors( key );
+    }
+
+    @Override
+    public synchronized void addDescriptor( IArtifactDescriptor descriptor )
     {
         super.addDescriptor( descriptor );
 
@@ -291,11 +327,12 @@ public class LocalArtifactRepository
     }
 
     @Override
-    public void removeDescriptor( IArtifactDescriptor descriptor )
+    public synchronized void removeDescriptor( IArtifactDescriptor descriptor )
     {
-        super.removeDescriptor( descriptor );
-
         IArtifactKey key = descriptor.getArtifactKey();
+        ensureLoaded( key );
+
+        super.removeDescriptor( descriptor );
 
         Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get( key );
 
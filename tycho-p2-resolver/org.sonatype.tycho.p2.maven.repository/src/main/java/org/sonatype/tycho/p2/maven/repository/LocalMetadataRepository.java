@@ -7,7 +7,10 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
 import org.sonatype.tycho.p2.maven.repository.xmlio.MetadataIO;
 import org.sonatype.tycho.p2.repository.GAV;
 import org.sonatype.tycho.p2.repository.LocalTychoRepositoryIndex;
@@ -18,6 +21,7 @@ import org.sonatype.tycho.p2.repository.TychoRepositoryIndex;
 public class LocalMetadataRepository
     extends AbstractMavenMetadataRepository
 {
+    public static final String SUMMARY_RELPATH = ".meta/p2-local-metadata.summary";
 
     private Set<GAV> changedGAVs = new LinkedHashSet<GAV>();
 
@@ -46,7 +50,31 @@ public class LocalMetadataRepository
     }
 
     @Override
-    public void addInstallableUnits( Collection<IInstallableUnit> newUnits )
+    protected GAVSummaryFile createSummaryFile()
+    {
+        return new GAVSummaryFile( new File( getLocation() ), SUMMARY_RELPATH );
+    }
+
+    @Override
+    protected File getMetadataFile( GAV gav )
+    {
+        return new File( new File( getLocation() ), getMetadataRelpath( gav ) );
+    }
+
+    private static String getMetadataRelpath( GAV gav )
+    {
+        return RepositoryLayoutHelper.getRelativePath( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
+                                                       RepositoryLayoutHelper.EXTENSION_P2_METADATA );
+    }
+
+    @Override
+    public synchronized IQueryResult<IInstallableUnit> query( IQuery<IInstallableUnit> query, IProgressMonitor monitor )
+    {
+        return super.query( query, monitor );
+    }
+
+    @Override
+    public synchronized void addInstallableUnits( Collection<IInstallableUnit> newUnits )
     {
         for ( IInstallableUnit unit : newUnits )
         {
@@ -58,11 +86,9 @@ public class LocalMetadataRepository
         save();
     }
 
-    public void addInstallableUnit( IInstallableUnit unit, GAV gav )
+    public synchronized void addInstallableUnit( IInstallableUnit unit, GAV gav )
     {
-        this.units.add( unit );
-
-        Set<IInstallableUnit> gavUnits = unitsMap.get( gav );
+        Set<IInstallableUnit> gavUnits = getUnits( gav );
         if ( gavUnits == null )
         {
             gavUnits = new LinkedHashSet<IInstallableUnit>();
@@ -71,13 +97,13 @@ public class LocalMetadataRepository
         gavUnits.add( unit );
 
         changedGAVs.add( gav );
+        unitsChanged( gav );
     }
 
-    public void save()
+    public synchronized void save()
     {
         File basedir = new File( getLocation() );
 
-        // XXX lock
         LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( basedir, LocalTychoRepositoryIndex.METADATA_INDEX_RELPATH );
 
         MetadataIO io = new MetadataIO();
@@ -88,11 +114,7 @@ public class LocalMetadataRepository
 
             if ( gavUnits != null && !gavUnits.isEmpty() )
             {
-                String relpath =
-                    RepositoryLayoutHelper.getRelativePath( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
-                                                            RepositoryLayoutHelper.EXTENSION_P2_METADATA );
-
-                File file = new File( basedir, relpath );
+                File file = new File( basedir, getMetadataRelpath( gav ) );
                 file.getParentFile().mkdirs();
 
                 try
@@ -100,6 +122,7 @@ public class LocalMetadataRepository
                     io.writeXML( gavUnits, file );
 
                     index.addProject( gav );
+                    updateSummary( gav, gavUnits );
                 }
                 catch ( IOException e )
                 {
@@ -117,6 +140,8 @@ public class LocalMetadataRepository
             throw new RuntimeException( e );
         }
 
+        saveSummary();
+
         changedGAVs.clear();
     }
 
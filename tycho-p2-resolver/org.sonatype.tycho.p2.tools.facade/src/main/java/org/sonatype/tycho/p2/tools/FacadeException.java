@@ -8,6 +8,11 @@ public class FacadeException
 {
     private static final long serialVersionUID = 1864994424422146579L;
 
+    public FacadeException( String message )
+    {
+        super( message );
+    }
+
     public FacadeException( Throwable cause )
     {
         super( cause.getClass().getSimpleName() + " in OSGi bundle code", cause );
@@ -0,0 +1,16 @@
+package org.sonatype.tycho.p2.tools.application;
+
+/**
+ * Thrown if an application run by the {@link ApplicationRunner} failed with an exception, like a forked Equinox
+ * runtime that terminates with a non-zero exit code.
+ */
+public class ApplicationFailedException
+    extends Exception
+{
+    private static final long serialVersionUID = -4389262613417521434L;
+
+    public ApplicationFailedException( String applicationId, Throwable cause )
+    {
+        super( "Application " + applicationId + " failed", cause );
+    }
+}
@@ -0,0 +1,32 @@
+package org.sonatype.tycho.p2.tools.application;
+
+import org.sonatype.tycho.p2.tools.FacadeException;
+
+/**
+ * Runs Eclipse applications, like the p2 publisher applications, in the Equinox runtime embedded in the build instead
+ * of a forked Equinox runtime.
+ */
+public interface ApplicationRunner
+{
+    /**
+     * @see org.eclipse.equinox.app.IApplication#EXIT_OK
+     */
+    public static final Integer EXIT_OK = Integer.valueOf( 0 );
+
+    /**
+     * Runs an application in the calling thread. Each call uses a new instance of the application, which only sees the
+     * given arguments, and a new p2 provisioning agent, so repositories loaded by the build or by earlier calls are
+     * not reused. Calls are serialized, so applications that keep state in the runtime don't interfere with each
+     * other.
+     *
+     * @param applicationId The id of the application extension, e.g.
+     *            <tt>org.eclipse.equinox.p2.publisher.FeaturesAndBundlesPublisher</tt>
+     * @param args The application arguments
+     * @return The exit value of the application
+     * @throws FacadeException if the application is not installed or cannot be instantiated; the application didn't
+     *             run in this case
+     * @throws ApplicationFailedException if the application failed with an exception
+     */
+    Object run( String applicationId, String[] args )
+        throws FacadeException, ApplicationFailedException;
+}
@@ -12,6 +12,13 @@ import org.osgi.framework.ServiceReference;
 public class Activator
     implements BundleActivator
 {
+    /**
+     * Held while applications run that use the current provisioning agent service, which
+     * {@link org.sonatype.tycho.p2.tools.impl.application.ApplicationRunnerImpl} temporarily replaces. Such
+     * applications may look up the current agent at any time, so the lock is held for their whole run.
+     */
+    public static final Object CURRENT_AGENT_LOCK = new Object();
+
     private static BundleContext context;
 
     public void start( BundleContext context )
@@ -25,6 +32,11 @@ public class Activator
     {
     }
 
+    public static BundleContext getContext()
+    {
+        return context;
+    }
+
     public static IProvisioningAgent createProvisioningAgent( final URI location )
         throws ProvisionException
     {
@@ -0,0 +1,218 @@
+package org.sonatype.tycho.p2.tools.impl.application;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtension;
+import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.RegistryFactory;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.sonatype.tycho.p2.tools.FacadeException;
+import org.sonatype.tycho.p2.tools.application.ApplicationFailedException;
+import org.sonatype.tycho.p2.tools.application.ApplicationRunner;
+import org.sonatype.tycho.p2.tools.impl.Activator;
+
+public final class ApplicationRunnerImpl
+    implements ApplicationRunner
+{
+    private static final String APPLICATIONS_EXTENSION_POINT = "org.eclipse.core.runtime.applications";
+
+    public Object run( String applicationId, String[] args )
+        throws FacadeException, ApplicationFailedException
+    {
+        // the temporary agent must neither be seen by other applications nor be replaced while the application runs
+        synchronized ( Activator.CURRENT_AGENT_LOCK )
+        {
+            IApplication application = createApplication( applicationId );
+
+            File agentLocation = createTempDirectory();
+            try
+            {
+                // the application uses the current agent, whose repository managers would otherwise hand out the
+                // repositories cached by the build or by earlier calls
+                IProvisioningAgent agent;
+                try
+                {
+                    agent = Activator.createProvisioningAgent( agentLocation.toURI() );
+                }
+                catch ( ProvisionException e )
+                {
+                    throw new FacadeException( e );
+                }
+                Dictionary<String, Object> properties = new Hashtable<String, Object>();
+                properties.put( Constants.SERVICE_RANKING, Integer.valueOf( Integer.MAX_VALUE ) );
+                properties.put( IProvisioningAgent.SERVICE_CURRENT, Boolean.TRUE.toString() );
+                ServiceRegistration registration =
+                    Activator.getContext().registerService( IProvisioningAgent.SERVICE_NAME, agent, properties );
+                try
+                {
+                    return start( applicationId, application, args );
+                }
+                finally
+                {
+                    registration.unregister();
+                    agent.stop();
+                }
+            }
+            finally
+            {
+                deleteDirectory( agentLocation );
+            }
+        }
+    }
+
+    private static Object start( String applicationId, IApplication application, String[] args )
+        throws ApplicationFailedException
+    {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader( application.getClass().getClassLoader() );
+        try
+        {
+            return application.start( new ApplicationContext( args ) );
+        }
+        catch ( Exception e )
+        {
+            // the application did run, so this is not a reason to try again in a forked runtime
+            throw new ApplicationFailedException( applicationId, e );
+        }
+        finally
+        {
+            thread.setContextClassLoader( contextClassLoader );
+        }
+    }
+
+    private static File createTempDirectory()
+        throws FacadeException
+    {
+        try
+        {
+            File dir = File.createTempFile( "tycho-p2-agent", "" );
+            if ( dir.delete() && dir.mkdir() )
+            {
+                return dir;
+            }
+            throw new FacadeException( "Could not create directory " + dir );
+        }
+        catch ( IOException e )
+        {
+            throw new FacadeException( e );
+        }
+    }
+
+    private static void deleteDirectory( File dir )
+    {
+        File[] files = dir.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                deleteDirectory( file );
+            }
+        }
+        dir.delete();
+    }
+
+    private static IApplication createApplication( String applicationId )
+        throws FacadeException
+    {
+        IExtensionRegistry registry = RegistryFactory.getRegistry();
+        if ( registry == null )
+        {
+            throw new FacadeException( "Extension registry is not available" );
+        }
+
+        IExtension extension = registry.getExtension( APPLICATIONS_EXTENSION_POINT, applicationId );
+        if ( extension == null )
+        {
+            throw new FacadeException( "Application " + applicationId + " is not installed" );
+        }
+
+        for ( IConfigurationElement element : extension.getConfigurationElements() )
+        {
+            for ( IConfigurationElement run : element.getChildren( "run" ) )
+            {
+                Object executable;
+                try
+                {
+                    executable = run.createExecutableExtension( "class" );
+                }
+                catch ( CoreException e )
+                {
+                    throw new FacadeException( e );
+                }
+                if ( !( executable instanceof IApplication ) )
+                {
+                    // legacy IPlatformRunnable
+                    throw new FacadeException( "Application " + applicationId + " does not implement "
+                        + IApplication.class.getName() );
+                }
+                return (IApplication) executable;
+            }
+        }
+        throw new FacadeException( "Application " + applicationId + " does not specify a class to run" );
+    }
+
+    private static final class ApplicationContext
+        implements IApplicationContext
+    {
+        private final Map<String, Object> arguments;
+
+        public ApplicationContext( String[] args )
+        {
+            this.arguments = Collections.<String, Object> singletonMap( IApplicationContext.APPLICATION_ARGS, args );
+        }
+
+        public Map getArguments()
+        {
+            return arguments;
+        }
+
+        public void applicationRunning()
+        {
+            // there is no splash screen to take down
+        }
+
+        public String getBrandingApplication()
+        {
+            return null;
+        }
+
+        public String getBrandingName()
+        {
+            return null;
+        }
+
+        public String getBrandingDescription()
+        {
+            return null;
+        }
+
+        public String getBrandingId()
+        {
+            return null;
+        }
+
+        public String getBrandingProperty( String key )
+        {
+            return null;
+        }
+
+        public Bundle getBrandingBundle()
+        {
+            return null;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.sonatype.tycho.p2.tools.impl.director;
 
 import org.eclipse.equinox.internal.p2.director.app.DirectorApplication;
 import org.sonatype.tycho.p2.tools.director.DirectorApplicationWrapper;
+import org.sonatype.tycho.p2.tools.impl.Activator;
 
 @SuppressWarnings( "restriction" )
 public final class DirectorApplicationWrapperImpl
@@ -10,7 +11,11 @@ public final class DirectorApplicationWrapperImpl
 
     public Object run( String[] args )
     {
-        return new DirectorApplication().run( args );
+        // the director uses the current agent, which must not be a temporary agent of an application run meanwhile
+        synchronized ( Activator.CURRENT_AGENT_LOCK )
+        {
+            return new DirectorApplication().run( args );
+        }
     }
 
 }
@@ -1,13 +1,27 @@
 package org.sonatype.tycho.p2.repository;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Simplistic local Maven repository index to allow efficient lookup of all installed Tycho projects.
+ * <p>
+ * The index file is shared by all builds using the same local Maven repository, possibly running concurrently.
+ * Updates are done under an exclusive file lock and only append new entries to the end of the index file, so entries
+ * added by other builds are never lost. When the file accumulates too many duplicate entries, it is compacted by
+ * writing a new file and renaming it over the old one. Since the file format does not change, the index file can
+ * still be read by {@link DefaultTychoRepositoryIndex}.
  */
 public class LocalTychoRepositoryIndex
     extends DefaultTychoRepositoryIndex
@@ -18,12 +32,25 @@ public class LocalTychoRepositoryIndex
 
     public static final String METADATA_INDEX_RELPATH = ".meta/p2-local-metadata.properties";
 
+    public static final String LOCK_RELPATH = ".meta/p2-index.lock";
+
+    /**
+     * Index file is compacted when the number of duplicate entries exceeds the number of unique entries plus this
+     * value.
+     */
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private static final Map<File, IndexLock> locks = new HashMap<File, IndexLock>();
+
+    private final File basedir;
+
     public LocalTychoRepositoryIndex( File basedir, String relpath )
     {
+        this.basedir = basedir;
         this.indexFile = new File( basedir, relpath );
         try
         {
-            this.gavs = read( new FileInputStream( indexFile ) );
+            this.gavs = new IndexContent( indexFile ).gavs;
         }
         catch ( IOException e )
         {
@@ -53,24 +80,263 @@ public class LocalTychoRepositoryIndex
         }
     }
 
+    /**
+     * Appends entries not yet present in the index file and merges entries added by other builds into this index.
+     */
     public void save()
         throws IOException
+    {
+        lock( basedir );
+
+        try
+        {
+            IndexContent content = new IndexContent( indexFile );
+
+            Set<GAV> added = new LinkedHashSet<GAV>( gavs );
+            added.removeAll( content.gavs );
+
+            gavs.addAll( content.gavs );
+
+            // appending only adds entries that are not in the file yet, so it does not add duplicates
+            if ( content.lines - content.gavs.size() > content.gavs.size() + COMPACT_THRESHOLD )
+            {
+                compact();
+            }
+            else if ( !added.isEmpty() )
+            {
+                append( added );
+            }
+        }
+        finally
+        {
+            unlock( basedir );
+        }
+    }
+
+    private void append( Set<GAV> added )
+        throws IOException
     {
         indexFile.getParentFile().mkdirs();
 
-        write( new FileOutputStream( indexFile ) );
+        StringBuilder sb = new StringBuilder();
+        for ( GAV gav : added )
+        {
+            sb.append( gav.toExternalForm() ).append( EOL );
+        }
+
+        // single write, so a concurrent reader without lock sees either nothing or complete lines in most cases
+        FileOutputStream os = new FileOutputStream( indexFile, true );
+        try
+        {
+            os.write( sb.toString().getBytes( ENCODING ) );
+            os.getFD().sync();
+        }
+        finally
+        {
+            os.close();
+        }
     }
 
-    public static void unlock( File basedir )
+    private void compact()
+        throws IOException
     {
-        // TODO Auto-generated method stub
+        indexFile.getParentFile().mkdirs();
+
+        File tmpFile = new File( indexFile.getParentFile(), indexFile.getName() + ".tmp" );
+        write( new FileOutputStream( tmpFile ) );
 
+        // File.renameTo does not replace existing files on all platforms; we hold the lock, so this is safe
+        if ( !tmpFile.renameTo( indexFile ) )
+        {
+            indexFile.delete();
+            if ( !tmpFile.renameTo( indexFile ) )
+            {
+                throw new IOException( "Could not rename " + tmpFile + " to " + indexFile );
+            }
+        }
     }
 
+    /**
+     * Acquires exclusive lock on the indexes of the given local repository. The lock is held on behalf of the current
+     * thread and excludes both other threads and other processes. Locks are reentrant and must be released with
+     * {@link #unlock(File)}.
+     */
     public static void lock( File basedir )
+        throws IOException
     {
-        // TODO Auto-generated method stub
+        getLock( basedir ).lock();
+    }
 
+    public static void unlock( File basedir )
+        throws IOException
+    {
+        getLock( basedir ).unlock();
     }
 
+    private static IndexLock getLock( File basedir )
+        throws IOException
+    {
+        File lockFile = new File( basedir, LOCK_RELPATH ).getCanonicalFile();
+        synchronized ( locks )
+        {
+            IndexLock lock = locks.get( lockFile );
+            if ( lock == null )
+            {
+                lock = new IndexLock( lockFile );
+                locks.put( lockFile, lock );
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * In-process lock combined with a file lock. FileChannel locks are held on behalf of the whole JVM and cannot be
+     * acquired twice, so threads are serialized first and only the outermost lock/unlock touches the file.
+     */
+    private static class IndexLock
+    {
+        private final File lockFile;
+
+        private final ReentrantLock threadLock = new ReentrantLock();
+
+        private RandomAccessFile file;
+
+        private FileLock fileLock;
+
+        public IndexLock( File lockFile )
+        {
+            this.lockFile = lockFile;
+        }
+
+        public void lock()
+            throws IOException
+        {
+            threadLock.lock();
+            if ( threadLock.getHoldCount() > 1 )
+            {
+                return;
+            }
+
+            try
+            {
+                lockFile.getParentFile().mkdirs();
+                file = new RandomAccessFile( lockFile, "rw" );
+                fileLock = file.getChannel().lock();
+            }
+            catch ( IOException e )
+            {
+                release();
+                throw e;
+            }
+        }
+
+        public void unlock()
+            throws IOException
+        {
+            if ( !threadLock.isHeldByCurrentThread() )
+            {
+                throw new IllegalStateException( "Lock " + lockFile + " is not held by current thread" );
+            }
+
+            if ( threadLock.getHoldCount() > 1 )
+            {
+                threadLock.unlock();
+                return;
+            }
+
+            try
+            {
+                if ( fileLock != null )
+                {
+                    fileLock.release();
+                }
+            }
+            finally
+            {
+                release();
+            }
+        }
+
+        private void release()
+            throws IOException
+        {
+            try
+            {
+                if ( file != null )
+                {
+                    file.close();
+                }
+            }
+            finally
+            {
+                file = null;
+                fileLock = null;
+                threadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Entries of the index file, as well as total number of lines including duplicates. A trailing line without line
+     * terminator is the result of an interrupted append and is ignored.
+     */
+    private static class IndexContent
+    {
+        final Set<GAV> gavs = new LinkedHashSet<GAV>();
+
+        int lines;
+
+        public IndexContent( File indexFile )
+            throws IOException
+        {
+            if ( !indexFile.exists() )
+            {
+                return;
+            }
+
+            String str = new String( readFully( new FileInputStream( indexFile ) ), ENCODING );
+
+            int start = 0;
+            int end;
+            while ( ( end = str.indexOf( EOL, start ) ) >= 0 )
+            {
+                String line = str.substring( start, end );
+                start = end + EOL.length();
+
+                lines++;
+                try
+                {
+                    GAV gav = GAV.parse( line );
+                    if ( gav != null )
+                    {
+                        gavs.add( gav );
+                    }
+                }
+                catch ( IllegalArgumentException e )
+                {
+                    // corrupted line, will be dropped on next compaction
+                }
+            }
+        }
+
+        private static byte[] readFully( InputStream is )
+            throws IOException
+        {
+            try
+            {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                byte[] b = new byte[8192];
+                int n;
+                while ( ( n = is.read( b ) ) != -1 )
+                {
+                    buf.write( b, 0, n );
+                }
+                return buf.toByteArray();
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+    }
 }
@@ -63,6 +63,27 @@ public interface P2Resolver
 
     public void setOffline( boolean offline );
 
+    /**
+     * Configures concurrent download of artifacts from remote repositories.
+     * 
+     * @param threads maximum number of concurrent downloads, <code>1</code> disables concurrent download
+     * @param connectionsPerHost maximum number of concurrent downloads from the same host
+     */
+    public void setDownloadThreads( int threads, int connectionsPerHost );
+
+    /**
+     * Configures caching of resolution results. Projects with the same root installable units, resolution
+     * properties and additional requirements are only resolved once for the same available installable units.
+     * Disabled by default.
+     * 
+     * @param enabled <code>false</code> resolves every project and environment from scratch
+     * @param persistent if <code>true</code>, results are also stored in the local Maven repository and reused by
+     *            subsequent builds
+     * @param verify if <code>true</code>, cached results are compared with a fresh resolution, which fails if they
+     *            differ
+     */
+    public void setResolutionCache( boolean enabled, boolean persistent, boolean verify );
+
     /**
      * Releases all resources used by the resolver instance
      */
@@ -100,6 +100,27 @@ public class P2TargetPlatformResolver
 
     private DependencyMetadataGenerator sourcesGenerator;
 
+    /**
+     * Number of concurrent artifact downloads from remote p2 repositories.
+     */
+    public static final String PROP_DOWNLOAD_THREADS = "tycho.p2.downloadThreads";
+
+    /**
+     * Maximum number of concurrent artifact downloads from the same remote host.
+     */
+    public static final String PROP_CONNECTIONS_PER_HOST = "tycho.p2.connectionsPerHost";
+
+    /**
+     * Caching of resolution results, <code>true</code> caches in memory, <code>persistent</code> also in the local
+     * Maven repository, <code>false</code> (default) disables the cache.
+     */
+    public static final String PROP_RESOLUTION_CACHE = "tycho.p2.resolutionCache";
+
+    /**
+     * If <code>true</code>, cached resolution results are compared with a fresh resolution.
+     */
+    public static final String PROP_RESOLUTION_CACHE_VERIFY = "tycho.p2.resolutionCache.verify";
+
     private static final ArtifactRepositoryPolicy P2_REPOSITORY_POLICY =
         new ArtifactRepositoryPolicy( true, ArtifactRepositoryPolicy.UPDATE_POLICY_NEVER,
                                       ArtifactRepositoryPolicy.CHECKSUM_POLICY_IGNORE );
@@ -168,6 +189,15 @@ public class P2TargetPlatformResolver
 
         resolver.setOffline( session.isOffline() );
 
+        resolver.setDownloadThreads( getIntProperty( session, PROP_DOWNLOAD_THREADS, 1 ),
+                                     getIntProperty( session, PROP_CONNECTIONS_PER_HOST, 2 ) );
+
+        String resolutionCache = getProperty( session, PROP_RESOLUTION_CACHE, "false" );
+        boolean verifyResolutionCache =
+            Boolean.parseBoolean( getProperty( session, PROP_RESOLUTION_CACHE_VERIFY, "false" ) );
+        resolver.setResolutionCache( "true".equals( resolutionCache ) || "persistent".equals( resolutionCache ), "persistent".equals( resolutionCache ),
+                                     verifyResolutionCache );
+
         resolver.setLogger( new P2Logger()
         {
             public void debug( String message )
@@ -556,6 +586,33 @@ public class P2TargetPlatformResolver
         return environments;
     }
 
+    private String getProperty( MavenSession session, String name, String defaultValue )
+    {
+        String value = session.getUserProperties().getProperty( name );
+        if ( value == null )
+        {
+            value = session.getSystemProperties().getProperty( name );
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    private int getIntProperty( MavenSession session, String name, int defaultValue )
+    {
+        String value = getProperty( session, name, null );
+        if ( value != null )
+        {
+            try
+            {
+                return Integer.parseInt( value.trim() );
+            }
+            catch ( NumberFormatException e )
+            {
+                getLogger().warn( "Invalid value of " + name + " property: " + value );
+            }
+        }
+        return defaultValue;
+    }
+
     private String getRepositoryKey( ArtifactRepository repository )
     {
         StringBuilder sb = new StringBuilder();
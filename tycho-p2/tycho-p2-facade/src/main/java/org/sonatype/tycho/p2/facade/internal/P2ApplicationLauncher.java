@@ -14,21 +14,33 @@ import org.codehaus.tycho.TychoProject;
 import org.codehaus.tycho.osgitools.OsgiBundleProject;
 import org.sonatype.tycho.ArtifactKey;
 import org.sonatype.tycho.equinox.EquinoxRuntimeLocator;
+import org.sonatype.tycho.equinox.EquinoxServiceFactory;
 import org.sonatype.tycho.equinox.launching.DefaultEquinoxInstallationDescription;
 import org.sonatype.tycho.equinox.launching.EquinoxInstallation;
 import org.sonatype.tycho.equinox.launching.EquinoxInstallationDescription;
 import org.sonatype.tycho.equinox.launching.EquinoxInstallationFactory;
 import org.sonatype.tycho.equinox.launching.EquinoxLauncher;
 import org.sonatype.tycho.equinox.launching.internal.EquinoxLaunchConfiguration;
+import org.sonatype.tycho.p2.tools.FacadeException;
+import org.sonatype.tycho.p2.tools.application.ApplicationFailedException;
+import org.sonatype.tycho.p2.tools.application.ApplicationRunner;
 
 /**
  * Convenience wrapper around {@link Commandline} to run Eclipse applications from tycho-p2-runtime
+ * <p>
+ * Unless forking is requested, applications run in the Equinox runtime embedded in the build, which saves starting a
+ * JVM and an Equinox runtime for each call. The application is run in a forked Equinox runtime if VM arguments are
+ * given or if the embedded runtime cannot run the application. Note that the working directory is the one of the
+ * Maven process in the embedded runtime, so arguments should be absolute paths or URLs.
  * 
  * @author igor
  */
 @Component( role = P2ApplicationLauncher.class, instantiationStrategy = "per-lookup" )
 public class P2ApplicationLauncher
 {
+    /** exit code of an Equinox runtime if the application failed with an exception */
+    private static final Integer EXIT_ERROR = Integer.valueOf( 13 );
+
     @Requirement
     private Logger logger;
 
@@ -41,6 +53,9 @@ public class P2ApplicationLauncher
     @Requirement
     private EquinoxRuntimeLocator runtimeLocator;
 
+    @Requirement
+    private EquinoxServiceFactory equinox;
+
     @Requirement( role = TychoProject.class, hint = ArtifactKey.TYPE_ECLIPSE_PLUGIN )
     private OsgiBundleProject osgiBundle;
 
@@ -48,6 +63,8 @@ public class P2ApplicationLauncher
 
     private String applicationName;
 
+    private boolean fork;
+
     private final List<String> vmargs = new ArrayList<String>();
 
     private final List<String> args = new ArrayList<String>();
@@ -62,6 +79,14 @@ public class P2ApplicationLauncher
         this.applicationName = applicationName;
     }
 
+    /**
+     * Always run the application in a forked Equinox runtime, never in the embedded one.
+     */
+    public void setFork( boolean fork )
+    {
+        this.fork = fork;
+    }
+
     public void addArguments( String... args )
     {
         for ( String arg : args )
@@ -78,7 +103,63 @@ public class P2ApplicationLauncher
         }
     }
 
+    /**
+     * @param forkedProcessTimeoutInSeconds only applies if the application runs in a forked Equinox runtime
+     */
     public int execute( int forkedProcessTimeoutInSeconds )
+    {
+        // -vmargs ends the program arguments in a forked runtime
+        if ( !fork && vmargs.isEmpty() && !args.contains( "-vmargs" ) )
+        {
+            Integer result = executeInProcess();
+            if ( result != null )
+            {
+                return result.intValue();
+            }
+        }
+        return executeForked( forkedProcessTimeoutInSeconds );
+    }
+
+    /**
+     * @return exit code of the application, or <code>null</code> if the application could not be run in the embedded
+     *         Equinox runtime
+     */
+    private Integer executeInProcess()
+    {
+        ApplicationRunner runner;
+        try
+        {
+            runner = equinox.getService( ApplicationRunner.class );
+        }
+        catch ( IllegalStateException e )
+        {
+            // tycho-p2-runtime without the service
+            logger.debug( "Embedded Equinox runtime cannot run applications, forking " + applicationName, e );
+            return null;
+        }
+
+        Object result;
+        try
+        {
+            result = runner.run( applicationName, args.toArray( new String[args.size()] ) );
+        }
+        catch ( FacadeException e )
+        {
+            logger.debug( "Could not run " + applicationName + " in embedded Equinox runtime, forking", e );
+            return null;
+        }
+        catch ( ApplicationFailedException e )
+        {
+            // like a forked runtime, which logs the exception and exits with 13, see EclipseStarter
+            logger.error( e.getMessage(), e.getCause() );
+            return EXIT_ERROR;
+        }
+
+        // like the exit code of a forked runtime, see EclipseStarter
+        return result instanceof Integer ? (Integer) result : ApplicationRunner.EXIT_OK;
+    }
+
+    private int executeForked( int forkedProcessTimeoutInSeconds )
     {
         try
         {
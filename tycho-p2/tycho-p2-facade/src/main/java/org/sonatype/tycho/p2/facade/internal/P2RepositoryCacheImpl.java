@@ -18,7 +18,7 @@ public class P2RepositoryCacheImpl implements P2RepositoryCache
 
     private HashMap<String, TychoRepositoryIndex> indexes = new HashMap<String, TychoRepositoryIndex>();
 
-    public Object getArtifactRepository( URI uri )
+    public synchronized Object getArtifactRepository( URI uri )
     {
         return dereference( artifactRepositories.get( uri ) );
     }
@@ -28,12 +28,12 @@ public class P2RepositoryCacheImpl implements P2RepositoryCache
         return reference != null ? reference.get() : null;
     }
 
-    public Object getMetadataRepository( URI uri )
+    public synchronized Object getMetadataRepository( URI uri )
     {
         return dereference( metadataRepositories.get( uri ) );
     }
 
-    public void putRepository( URI uri, Object metadataRepository, Object artifactRepository )
+    public synchronized void putRepository( URI uri, Object metadataRepository, Object artifactRepository )
     {
         if ( metadataRepository != null )
         {
@@ -46,12 +46,12 @@ public class P2RepositoryCacheImpl implements P2RepositoryCache
         }
     }
 
-    public TychoRepositoryIndex getRepositoryIndex( String repositoryKey )
+    public synchronized TychoRepositoryIndex getRepositoryIndex( String repositoryKey )
     {
         return indexes.get( repositoryKey );
     }
 
-    public void putRepositoryIndex( String repositoryKey, TychoRepositoryIndex index )
+    public synchronized void putRepositoryIndex( String repositoryKey, TychoRepositoryIndex index )
     {
         indexes.put( repositoryKey, index );
     }
@@ -50,6 +50,14 @@ public abstract class AbstractP2MetadataMojo
      */
     private int forkedProcessTimeoutInSeconds;
 
+    /**
+     * Run the p2 publisher in a forked Equinox runtime. By default, the publisher runs in the Equinox runtime embedded
+     * in the build, unless <code>argLine</code> is set.
+     * 
+     * @parameter expression="${p2.fork}" default-value="false"
+     */
+    private boolean fork;
+
     /**
      * Arbitrary JVM options to set on the command line.
      * 
@@ -106,6 +114,7 @@ public abstract class AbstractP2MetadataMojo
 
         launcher.setWorkingDirectory( project.getBasedir() );
         launcher.setApplicationName( getPublisherApplication() );
+        launcher.setFork( fork );
 
         addArguments( launcher );
 
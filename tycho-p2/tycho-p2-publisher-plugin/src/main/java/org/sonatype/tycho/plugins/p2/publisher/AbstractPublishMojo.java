@@ -47,6 +47,14 @@ public abstract class AbstractPublishMojo
      */
     private int forkedProcessTimeoutInSeconds;
 
+    /**
+     * Run the p2 publisher in a forked Equinox runtime. By default, the publisher runs in the Equinox runtime embedded
+     * in the build, unless the embedded runtime cannot run it.
+     * 
+     * @parameter expression="${p2.fork}" default-value="false"
+     */
+    private boolean fork;
+
     protected void executePublisherApplication( String publishApplicationName, String[] additionalArgs )
         throws MojoExecutionException, MojoFailureException
     {
@@ -62,6 +70,7 @@ public abstract class AbstractPublishMojo
 
             launcher.setWorkingDirectory( getProject().getBasedir() );
             launcher.setApplicationName( publishApplicationName );
+            launcher.setFork( fork );
             launcher.addArguments( "-artifactRepository", getRepositoryUrl(), //
                                    "-metadataRepository", getRepositoryUrl(), //
                                    "-contextMetadata", contextRepositoryUrl, //
@@ -0,0 +1,312 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.tycho.surefire.osgibooter.TestEvents;
+
+/**
+ * Receives the events sent by the <code>EventReporter</code> of the OSGi booter while tests are running, see there
+ * for the protocol. Failing tests are logged as soon as they fail, and the durations of test classes are recorded for
+ * {@link TestShards}. Test runtimes connect to the port of the receiver, several of them at the same time if tests run
+ * in several Equinox instances.
+ * <p>
+ * Events are read by background threads, but only logged by the thread of the mojo, see {@link #logEvents(Future...)}
+ * and {@link #close()}.
+ */
+public class TestEventReceiver
+{
+    private static final long READER_TIMEOUT = 1000;
+
+    /** how often {@link #logEvents(Future...)} checks whether the test runs are done */
+    private static final long POLL_INTERVAL = 100;
+
+    private final Log log;
+
+    private final ServerSocket serverSocket;
+
+    /** seconds by test class name */
+    private final Map<String, Double> durations = new HashMap<String, Double>();
+
+    private final List<Thread> readers = new ArrayList<Thread>();
+
+    /** messages of the readers, not logged yet */
+    private final BlockingQueue<Message> messages = new LinkedBlockingQueue<Message>();
+
+    public TestEventReceiver( Log log )
+        throws IOException
+    {
+        this.log = log;
+        this.serverSocket = new ServerSocket( 0, 50, InetAddress.getByName( null ) );
+
+        Thread acceptor = new Thread( "Test event receiver" )
+        {
+            public void run()
+            {
+                accept();
+            }
+        };
+        acceptor.setDaemon( true );
+        acceptor.start();
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return durations in seconds of the test classes completed so far, by test class name
+     */
+    public synchronized Map<String, Double> getDurations()
+    {
+        return new HashMap<String, Double>( durations );
+    }
+
+    /**
+     * Logs events as they arrive until all the given test runs are done. Must be called by the thread of the mojo.
+     */
+    public void logEvents( Future<?>... testRuns )
+        throws InterruptedException
+    {
+        while ( true )
+        {
+            Message message = messages.poll( POLL_INTERVAL, TimeUnit.MILLISECONDS );
+            if ( message != null )
+            {
+                message.log( log );
+            }
+            else if ( isDone( testRuns ) )
+            {
+                return;
+            }
+        }
+    }
+
+    private static boolean isDone( Future<?>[] testRuns )
+    {
+        for ( Future<?> testRun : testRuns )
+        {
+            if ( !testRun.isDone() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting connections, waits a moment for the events of terminated test runtimes still in transit and
+     * logs all events not logged yet. Must be called by the thread of the mojo.
+     */
+    public void close()
+    {
+        try
+        {
+            serverSocket.close();
+        }
+        catch ( IOException e )
+        {
+            // nothing is accepted anymore either way
+        }
+
+        List<Thread> readers;
+        synchronized ( this )
+        {
+            readers = new ArrayList<Thread>( this.readers );
+        }
+        for ( Thread reader : readers )
+        {
+            try
+            {
+                reader.join( READER_TIMEOUT );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        Message message;
+        while ( ( message = messages.poll() ) != null )
+        {
+            message.log( log );
+        }
+    }
+
+    private void accept()
+    {
+        while ( true )
+        {
+            final Socket socket;
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch ( IOException e )
+            {
+                // closed
+                return;
+            }
+            Thread reader = new Thread( "Test event reader" )
+            {
+                public void run()
+                {
+                    try
+                    {
+                        receive( new DataInputStream( new BufferedInputStream( socket.getInputStream() ) ) );
+                    }
+                    catch ( EOFException e )
+                    {
+                        // test runtime terminated, results are in the report files
+                    }
+                    catch ( IOException e )
+                    {
+                        messages.add( new Message( false, "Could not receive test events", e ) );
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            socket.close();
+                        }
+                        catch ( IOException e )
+                        {
+                            // ignore
+                        }
+                    }
+                }
+            };
+            reader.setDaemon( true );
+            synchronized ( this )
+            {
+                readers.add( reader );
+            }
+            reader.start();
+        }
+    }
+
+    private void receive( DataInputStream in )
+        throws IOException
+    {
+        while ( true )
+        {
+            byte type = in.readByte();
+            switch ( type )
+            {
+                case TestEvents.TEST_SET_STARTING:
+                    debug( "Running " + readString( in ) );
+                    break;
+                case TestEvents.TEST_SET_COMPLETED:
+                    String testClass = readString( in );
+                    double seconds = in.readLong() / 1000.0;
+                    synchronized ( this )
+                    {
+                        durations.put( testClass, Double.valueOf( seconds ) );
+                    }
+                    debug( "Completed " + testClass + " in " + seconds + " s" );
+                    break;
+                case TestEvents.TEST_STARTING:
+                case TestEvents.TEST_SKIPPED:
+                    readString( in );
+                    break;
+                case TestEvents.TEST_SUCCEEDED:
+                    String test = readString( in );
+                    debug( "Passed " + test + " in " + in.readLong() / 1000.0 + " s" );
+                    break;
+                case TestEvents.TEST_FAILED:
+                case TestEvents.TEST_ERROR:
+                    String failedTest = readString( in );
+                    long elapsed = in.readLong();
+                    String message = readString( in );
+                    String trace = readString( in );
+                    String stdOut = readString( in );
+                    String stdErr = readString( in );
+                    error( ( type == TestEvents.TEST_FAILED ? "Failed " : "Error in " ) + failedTest + " after " + elapsed
+                        / 1000.0 + " s" + ( message != null ? ": " + message : "" ) );
+                    for ( String output : new String[] { trace, stdOut, stdErr } )
+                    {
+                        if ( output != null && output.length() > 0 )
+                        {
+                            debug( output );
+                        }
+                    }
+                    break;
+                case TestEvents.RUN_COMPLETED:
+                    return;
+                default:
+                    throw new IOException( "Unknown test event " + type );
+            }
+        }
+    }
+
+    private void debug( String message )
+    {
+        messages.add( new Message( false, message, null ) );
+    }
+
+    private void error( String message )
+    {
+        messages.add( new Message( true, message, null ) );
+    }
+
+    private static String readString( DataInputStream in )
+        throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, "UTF-8" );
+    }
+
+    private static class Message
+    {
+        private final boolean error;
+
+        private final String content;
+
+        private final Throwable cause;
+
+        Message( boolean error, String content, Throwable cause )
+        {
+            this.error = error;
+            this.content = content;
+            this.cause = cause;
+        }
+
+        void log( Log log )
+        {
+            if ( error )
+            {
+                log.error( content );
+            }
+            else if ( cause != null )
+            {
+                log.debug( content, cause );
+            }
+            else
+            {
+                log.debug( content );
+            }
+        }
+    }
+}
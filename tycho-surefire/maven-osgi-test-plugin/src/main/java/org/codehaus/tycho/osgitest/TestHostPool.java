@@ -0,0 +1,329 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+import org.sonatype.tycho.equinox.launching.EquinoxLauncher;
+import org.sonatype.tycho.equinox.launching.internal.EquinoxLaunchConfiguration;
+
+/**
+ * Keeps a test runtime running between the test runs of the test bundles of a reactor, see
+ * {@link TestMojo#reuseTestHost}. The test runtime runs the <code>testhost</code> application of the OSGi booter,
+ * which installs and uninstalls bundles as required by each test run.
+ * <p>
+ * There is at most one host per build. A host is only reused by test runs with the same compatibility key, which
+ * covers everything that cannot be changed in a running framework, like VM arguments and framework configuration. A
+ * test run with a different key stops the current host and starts a new one. A host that fails or times out is
+ * destroyed and never reused. The host is stopped when the build ends.
+ */
+public class TestHostPool
+{
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /** maximum time for a new host to connect */
+    private static final int START_TIMEOUT = 120 * 1000;
+
+    /** maximum time for a host to terminate after its connection was closed */
+    private static final int STOP_TIMEOUT = 10 * 1000;
+
+    private static final TestHostPool INSTANCE = new TestHostPool();
+
+    private TestHost host;
+
+    private boolean busy;
+
+    TestHostPool()
+    {
+        Runtime.getRuntime().addShutdownHook( new Thread()
+        {
+            public void run()
+            {
+                stop();
+            }
+        } );
+    }
+
+    public static TestHostPool getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs tests in a host with the given key, starting a new host if necessary.
+     *
+     * @param key compatibility key of the test run
+     * @param hostConfiguration launch configuration used if a new host has to be started, without
+     *            <code>-testhostport</code>
+     * @param bundles bundles of the test run in <code>osgi.bundles</code> syntax
+     * @return result of the test run, or <code>null</code> if the tests could not be run in a host, e.g. because the
+     *         host is used by a concurrent test run, and need to run in a fresh fork
+     * @throws IOException if the connection to the host fails or times out during the test run
+     */
+    public Integer execute( String key, EquinoxLaunchConfiguration hostConfiguration, EquinoxLauncher launcher,
+                            List<String> bundles, File testProperties, int timeoutInSeconds, Log log )
+        throws IOException
+    {
+        TestHost host;
+        synchronized ( this )
+        {
+            if ( busy )
+            {
+                return null;
+            }
+            if ( this.host != null && !this.host.key.equals( key ) )
+            {
+                this.host.stop();
+                this.host = null;
+            }
+            if ( this.host == null )
+            {
+                try
+                {
+                    this.host = TestHost.start( key, hostConfiguration, launcher );
+                }
+                catch ( IOException e )
+                {
+                    log.warn( "Could not start test host", e );
+                    return null;
+                }
+                catch ( TestHostFailedException e )
+                {
+                    log.warn( "Test host terminated before it was ready", e.getCause() );
+                    return null;
+                }
+            }
+            host = this.host;
+            busy = true;
+        }
+
+        boolean reusable = false;
+        try
+        {
+            Integer result = host.run( bundles, testProperties, timeoutInSeconds, log );
+            reusable = result != null;
+            return result;
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                if ( !reusable )
+                {
+                    // the state of the host is unknown, e.g. after a timeout the tests may still be running
+                    host.destroy();
+                    this.host = null;
+                }
+                busy = false;
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a host with the given key is running
+     */
+    public synchronized boolean isRunning( String key )
+    {
+        return host != null && host.key.equals( key );
+    }
+
+    synchronized void stop()
+    {
+        if ( host != null )
+        {
+            host.stop();
+            host = null;
+        }
+    }
+
+    private static class TestHostFailedException
+        extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        TestHostFailedException( Throwable cause )
+        {
+            super( cause );
+        }
+    }
+
+    private static class TestHost
+    {
+        final String key;
+
+        /**
+         * Runs the launcher, which blocks until the host process terminates. Interrupting the thread destroys the
+         * process.
+         */
+        private final Thread process;
+
+        /** why the launcher failed, or <code>null</code> */
+        private volatile Exception failure;
+
+        private Socket socket;
+
+        private DataInputStream in;
+
+        private DataOutputStream out;
+
+        private TestHost( String key, final EquinoxLaunchConfiguration configuration, final EquinoxLauncher launcher )
+        {
+            this.key = key;
+            this.process = new Thread( "Test host" )
+            {
+                public void run()
+                {
+                    try
+                    {
+                        launcher.execute( configuration, 0 );
+                    }
+                    catch ( Exception e )
+                    {
+                        // reported by the thread that uses the host
+                        failure = e;
+                    }
+                }
+            };
+            process.setDaemon( true );
+        }
+
+        /**
+         * @return the connected host
+         * @throws TestHostFailedException if the host process terminated or did not connect in time
+         */
+        static TestHost start( String key, EquinoxLaunchConfiguration configuration, EquinoxLauncher launcher )
+            throws IOException, TestHostFailedException
+        {
+            ServerSocket serverSocket = new ServerSocket( 0, 1, InetAddress.getByName( null ) );
+            TestHost host = null;
+            boolean connected = false;
+            try
+            {
+                configuration.addProgramArguments( "-testhostport", Integer.toString( serverSocket.getLocalPort() ) );
+
+                host = new TestHost( key, configuration, launcher );
+                host.process.start();
+
+                serverSocket.setSoTimeout( CONNECT_TIMEOUT );
+                long deadline = System.currentTimeMillis() + START_TIMEOUT;
+                while ( true )
+                {
+                    try
+                    {
+                        host.connect( serverSocket.accept() );
+                        connected = true;
+                        return host;
+                    }
+                    catch ( SocketTimeoutException e )
+                    {
+                        if ( !host.process.isAlive() )
+                        {
+                            throw new TestHostFailedException( host.failure );
+                        }
+                        if ( System.currentTimeMillis() > deadline )
+                        {
+                            throw new TestHostFailedException( e );
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                serverSocket.close();
+                if ( host != null && !connected )
+                {
+                    host.destroy();
+                }
+            }
+        }
+
+        private void connect( Socket socket )
+            throws IOException
+        {
+            this.socket = socket;
+            this.in = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+            this.out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+        }
+
+        /**
+         * @return result of the test run, or <code>null</code> if the host could not install the bundles
+         */
+        Integer run( List<String> bundles, File testProperties, int timeoutInSeconds, Log log )
+            throws IOException
+        {
+            out.writeInt( bundles.size() );
+            for ( String bundle : bundles )
+            {
+                out.writeUTF( bundle );
+            }
+            out.writeUTF( testProperties.getAbsolutePath() );
+            out.flush();
+
+            socket.setSoTimeout( timeoutInSeconds * 1000 );
+            if ( !in.readBoolean() )
+            {
+                log.warn( in.readUTF() );
+                return null;
+            }
+            Integer result = Integer.valueOf( in.readInt() );
+            String error = in.readUTF();
+            if ( error.length() > 0 )
+            {
+                log.error( error );
+            }
+            return result;
+        }
+
+        /**
+         * Closes the connection, which makes the host terminate, and destroys the host process if it does not
+         * terminate in time.
+         */
+        void stop()
+        {
+            close();
+            try
+            {
+                process.join( STOP_TIMEOUT );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            destroy();
+        }
+
+        /**
+         * Destroys the host process immediately.
+         */
+        void destroy()
+        {
+            close();
+            process.interrupt();
+        }
+
+        private void close()
+        {
+            if ( socket == null )
+            {
+                return;
+            }
+            try
+            {
+                socket.close();
+            }
+            catch ( IOException e )
+            {
+                // connection is closed anyway
+            }
+        }
+    }
+}
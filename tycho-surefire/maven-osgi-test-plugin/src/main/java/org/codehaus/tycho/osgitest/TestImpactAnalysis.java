@@ -0,0 +1,245 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.tycho.utils.DigestUtils;
+import org.sonatype.tycho.ReactorProject;
+
+/**
+ * Decides whether the tests of a test bundle need to run, based on the bundles used by the last successful test run.
+ * <p>
+ * Each bundle of the test runtime is represented by a digest. For bundles built by the reactor, the digest covers the
+ * content of all files of the project except the build directory, so it does not depend on build qualifiers or file
+ * timestamps, e.g. of a fresh checkout. For other bundles, it covers version, location, length and timestamp. After a
+ * successful test run, the digests of the bundles used by the tests (see <code>UsedBundles</code> of the OSGi booter)
+ * are stored together with a digest of the test configuration and of the set of all bundles of the test runtime. The
+ * tests are skipped as long as none of these changes.
+ * <p>
+ * The used bundles are only known by symbolic name. If the test runtime contains several versions of a bundle, it is
+ * not known which of them the tests used, so the tests are never skipped.
+ */
+public class TestImpactAnalysis
+{
+    private static final int MAGIC = 0x54544941; // "TTIA"
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String CTX_PROJECT_DIGEST = "tycho.test-impact.project-digest";
+
+    private final File stateFile;
+
+    private final String configuration;
+
+    /** digests by bundle symbolic name */
+    private final Map<String, String> bundleDigests = new TreeMap<String, String>();
+
+    /** symbolic names of bundles with several versions in the test runtime */
+    private final Set<String> ambiguousBundles = new TreeSet<String>();
+
+    /**
+     * @param configuration everything besides the bundles that affects the test results, like VM arguments
+     */
+    public TestImpactAnalysis( File stateFile, String configuration )
+    {
+        this.stateFile = stateFile;
+        this.configuration = configuration;
+    }
+
+    public void addReactorBundle( String id, ReactorProject project )
+        throws IOException
+    {
+        // reactor sources don't change during the build, so each project is only read once
+        String digest = (String) project.getContextValue( CTX_PROJECT_DIGEST );
+        if ( digest == null )
+        {
+            digest = getProjectDigest( project );
+            project.setContextValue( CTX_PROJECT_DIGEST, digest );
+        }
+        putDigest( id, digest );
+    }
+
+    public void addBundle( String id, String version, File location )
+    {
+        File file = location;
+        if ( location.isDirectory() )
+        {
+            file = new File( location, "META-INF/MANIFEST.MF" );
+        }
+        putDigest( id, DigestUtils.digest( version + " " + location.getAbsolutePath() + " " + file.length() + " "
+            + file.lastModified() ) );
+    }
+
+    private void putDigest( String id, String digest )
+    {
+        if ( bundleDigests.put( id, digest ) != null )
+        {
+            ambiguousBundles.add( id );
+        }
+    }
+
+    /**
+     * @return <code>true</code> if no bundle used by the last successful test run and nothing else that affects the
+     *         tests changed since
+     */
+    public boolean isUnchanged()
+    {
+        if ( !ambiguousBundles.isEmpty() || !stateFile.isFile() )
+        {
+            return false;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( stateFile ) ) );
+            try
+            {
+                if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !getConfigurationDigest().equals( in.readUTF() ) )
+                {
+                    return false;
+                }
+                for ( int i = in.readInt(); i > 0; i-- )
+                {
+                    String id = in.readUTF();
+                    String digest = in.readUTF();
+                    if ( !digest.equals( bundleDigests.get( id ) ) )
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // corrupted or truncated, tests run again
+            return false;
+        }
+    }
+
+    /**
+     * Records a successful test run.
+     *
+     * @param usedBundlesFiles files with the symbolic names of the bundles used by the tests, one per line
+     */
+    public void recordSuccess( Collection<File> usedBundlesFiles )
+        throws IOException
+    {
+        if ( !ambiguousBundles.isEmpty() )
+        {
+            invalidate();
+            return;
+        }
+
+        TreeSet<String> usedBundles = new TreeSet<String>();
+        for ( File file : usedBundlesFiles )
+        {
+            BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+            try
+            {
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    if ( line.length() > 0 )
+                    {
+                        usedBundles.add( line );
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        // bundles of the runtime that are not known, e.g. the system bundle, are part of the configuration digest
+        usedBundles.retainAll( bundleDigests.keySet() );
+
+        stateFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( stateFile ) ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeUTF( getConfigurationDigest() );
+            out.writeInt( usedBundles.size() );
+            for ( String id : usedBundles )
+            {
+                out.writeUTF( id );
+                out.writeUTF( bundleDigests.get( id ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Forgets the last successful test run, so the tests run again next time.
+     */
+    public void invalidate()
+    {
+        stateFile.delete();
+    }
+
+    private String getConfigurationDigest()
+    {
+        // a new bundle in the test runtime may contribute services or extensions used by the tests
+        return DigestUtils.digest( configuration + "\n" + bundleDigests.keySet() );
+    }
+
+    private static String getProjectDigest( ReactorProject project )
+        throws IOException
+    {
+        MessageDigest digest = DigestUtils.newDigest();
+        File basedir = project.getBasedir();
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( basedir );
+        scanner.addDefaultExcludes();
+        String buildDirectory = getRelativePath( basedir, project.getBuildDirectory() );
+        if ( buildDirectory != null )
+        {
+            scanner.setExcludes( new String[] { buildDirectory + "/**" } );
+        }
+        scanner.scan();
+
+        String[] paths = scanner.getIncludedFiles();
+        // scanner order depends on the file system
+        Arrays.sort( paths );
+        for ( String path : paths )
+        {
+            DigestUtils.update( digest, path.replace( File.separatorChar, '/' ) );
+            digest.update( (byte) '\n' );
+            DigestUtils.update( digest, new File( basedir, path ) );
+        }
+        return DigestUtils.toHex( digest.digest() );
+    }
+
+    private static String getRelativePath( File basedir, File file )
+    {
+        String base = basedir.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        return path.startsWith( base ) ? path.substring( base.length() ).replace( File.separatorChar, '/' ) : null;
+    }
+}
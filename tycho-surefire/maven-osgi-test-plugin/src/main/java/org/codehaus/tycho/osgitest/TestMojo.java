@@ -9,12 +9,19 @@ import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
@@ -28,12 +35,14 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.RepositorySystem;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.tycho.BundleProject;
 import org.codehaus.tycho.TargetPlatform;
 import org.codehaus.tycho.TargetPlatformResolver;
 import org.codehaus.tycho.TychoConstants;
 import org.codehaus.tycho.TychoProject;
+import org.codehaus.tycho.osgitools.DefaultArtifactDescriptor;
 import org.codehaus.tycho.osgitools.DefaultReactorProject;
 import org.codehaus.tycho.osgitools.OsgiBundleProject;
 import org.codehaus.tycho.resolver.DefaultTargetPlatformResolverFactory;
@@ -60,6 +69,12 @@ import org.sonatype.tycho.launching.LaunchConfigurationFactory;
  */
 public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory {
 
+    private static final String UNPACKED_BUNDLES_PATH = ".cache/tycho/unpacked-bundles";
+
+    private static final String TEST_IMPACT_PATH = ".cache/tycho/test-impact";
+
+    private static final String USED_BUNDLES_FILE = "used-bundles.txt";
+
     /**
 	 * @parameter default-value="${project.build.directory}/work"
 	 */
@@ -144,6 +159,9 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 	/** @parameter expression="${project.build.directory}/surefire.properties" */
 	private File surefireProperties;
 
+	/** @parameter expression="${project.build.directory}/test-durations.properties" */
+	private File durationsFile;
+
 	/** @parameter expression="${project.build.directory}/dev.properties" */
 	private File devProperties;
 
@@ -274,6 +292,66 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
      */
     private BundleStartLevel[] bundleStartLevel;
 
+    /**
+     * If true, bundles that have to be unpacked for the test runtime are unpacked only once into the local repository
+     * and shared by all test runs, instead of being unpacked into the work directory of each test run. Bundles built
+     * by the reactor are always unpacked into the work directory.
+     * <p>
+     * Bundles are unpacked into <code>.cache/tycho/unpacked-bundles</code> of the local repository. Directories that
+     * were not used by any test run for 30 days are deleted automatically. The whole directory can be deleted manually
+     * while no build is running.
+     * 
+     * @parameter expression="${tycho.testRuntime.shareUnpackedBundles}" default-value="false"
+     */
+    private boolean shareUnpackedBundles;
+
+    /**
+     * Number of Equinox instances to distribute the test classes of the bundle to. Each instance runs in its own JVM
+     * with separate configuration and data areas. Test classes are assigned so that all instances take about the same
+     * time, based on the durations recorded in the reports of previous runs. Ignored if a single test is selected with
+     * <code>test</code> or <code>testClass</code>, or if <code>debugPort</code> is set.
+     * 
+     * @parameter expression="${tycho.test.forkCount}" default-value="1"
+     */
+    private int forkCount;
+
+    /**
+     * If true, tests run in a test runtime that is kept running for the test runs of later test bundles of the reactor.
+     * Bundles are installed and uninstalled in the running framework as required by each test run. A new runtime is
+     * started when VM arguments, environment variables or framework properties other than the installed bundles differ
+     * from the running one. Test runs are not isolated from each other: they share the JVM, its system properties and
+     * working directory, and the data area of the runtime. This should only be used for tests that don't depend on the
+     * working directory or on state left by tests of other bundles. Not used with <code>useUIHarness</code>,
+     * <code>application</code>, <code>product</code>, <code>appArgLine</code>, <code>debugPort</code> or
+     * <code>forkCount</code>.
+     * 
+     * @parameter expression="${tycho.test.reuseTestHost}" default-value="false"
+     */
+    private boolean reuseTestHost;
+
+    /**
+     * If true, a test runtime stops running tests after the first test class with failing tests.
+     * 
+     * @parameter expression="${tycho.test.failFast}" default-value="false"
+     */
+    private boolean failFast;
+
+    /**
+     * If true, tests are skipped if none of the bundles used by the last successful test run changed, and neither did
+     * the test configuration or the set of bundles in the test runtime. Bundles built by the reactor are compared by
+     * the content of their project files, other bundles by version, location, length and timestamp. The state of the
+     * last successful run is kept in the local repository. Tests are never skipped if the test runtime contains several
+     * versions of a bundle.
+     * 
+     * @parameter expression="${tycho.test.skipUnaffected}" default-value="false"
+     */
+    private boolean skipUnaffected;
+
+    /**
+     * Receives test events while tests are running, <code>null</code> if tests are launched from the IDE
+     */
+    private TestEventReceiver eventReceiver;
+
     /**
      * @component
      */
@@ -331,10 +409,43 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 			}
 		}
 
+		try {
+		    eventReceiver = new TestEventReceiver(getLog());
+		} catch (IOException e) {
+		    throw new MojoExecutionException("Could not create test event receiver", e);
+		}
+		try {
+		    runTests();
+		} finally {
+		    eventReceiver.close();
+		    storeDurations(eventReceiver.getDurations());
+		    eventReceiver = null;
+		}
+	}
+
+	private void runTests() throws MojoExecutionException, MojoFailureException {
 		EquinoxInstallation testRuntime = createEclipseInstallation(false, DefaultReactorProject.adapt(session));
 
+		TestImpactAnalysis testImpact = skipUnaffected ? createTestImpactAnalysis(testRuntime) : null;
+		if (testImpact != null && testImpact.isUnchanged()) {
+		    getLog().info("Skipping tests, no bundle used by the last successful test run has changed");
+		    return;
+		}
+
 		String testBundle = null;
-		boolean succeeded = runTest(testRuntime, testBundle);
+		boolean succeeded;
+		Boolean hostResult = useTestHost() ? runTestInHost(testRuntime) : null;
+		if (hostResult != null) {
+		    succeeded = hostResult.booleanValue();
+		} else if (forkCount > 1 && test == null && testClass == null && debugPort <= 0) {
+		    succeeded = runTestShards(testRuntime);
+		} else {
+		    succeeded = runTest(testRuntime, testBundle);
+		}
+
+		if (testImpact != null) {
+		    recordTestImpact(testImpact, succeeded);
+		}
 		
 		if (succeeded) {
 			getLog().info("All tests passed!");
@@ -388,12 +499,15 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 		    ReactorProject otherProject = artifact.getMavenProject();
 		    if (otherProject != null) {
 		        if (otherProject.sameProject(project)) {
-	                testRuntime.addBundle(artifact.getKey(), project.getBasedir());
+		            // a test host cannot read the dev.properties of each test run, so it gets the packaged bundle
+		            File bundle = useTestHost() ? project.getArtifact().getFile() : project.getBasedir();
+	                testRuntime.addBundle(artifact.getKey(), bundle);
 	                continue;
 	            }
                 File file = otherProject.getArtifact();
                 if (file != null) {
-                    testRuntime.addBundle(artifact.getKey(), file);
+                    // keeps the project, so the bundle is never unpacked into the shared directory
+                    testRuntime.addBundle(new DefaultArtifactDescriptor(artifact.getKey(), file, otherProject, null, null));
                     continue;
                 }
 		    }
@@ -409,7 +523,9 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 		createSurefireProperties(projectType.getArtifactKey(DefaultReactorProject.adapt(project)).getId(), testFramework);
 
 		reportsDirectory.mkdirs();
-        return installationFactory.createInstallation(testRuntime, work);
+        File unpackedBundles = shareUnpackedBundles ? new File(session.getLocalRepository().getBasedir(),
+                UNPACKED_BUNDLES_PATH) : null;
+        return installationFactory.createInstallation(testRuntime, work, unpackedBundles);
     }
 
     private ArtifactKey getBundleArtifacyKey( File file )
@@ -470,6 +586,15 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 		p.put("testclassesdirectory", testClassesDirectory.getAbsolutePath());
 		p.put("reportsdirectory", reportsDirectory.getAbsolutePath());
 		p.put("testrunner", getTestRunner(testFramework));
+		if (eventReceiver != null) {
+		    p.put("eventport", Integer.toString(eventReceiver.getPort()));
+		    p.put("failfast", Boolean.toString(failFast));
+		    if (skipUnaffected) {
+		        File usedBundles = new File(work, USED_BUNDLES_FILE).getAbsoluteFile();
+		        usedBundles.delete();
+		        p.put("usedbundlesfile", usedBundles.getPath());
+		    }
+		}
 
 		if (test != null) {
             String test = this.test;
@@ -533,7 +658,11 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
 
             getLog().info( "Expected eclipse log file: " + new File( workspace, ".metadata/.log" ).getCanonicalPath() );
 
-            result = launcher.execute( cli, forkedProcessTimeoutInSeconds );
+            result = launch( Collections.singletonList( cli ) ).get( 0 ).intValue();
+        }
+        catch ( ExecutionException e )
+        {
+            throw new MojoExecutionException( "Error while executing platform", e.getCause() );
         }
         catch ( Exception e )
         {
@@ -543,37 +672,370 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         return result == 0;
     }
 
-    LaunchConfiguration createCommandLine( EquinoxInstallation testRuntime, File workspace )
-        throws MalformedURLException
+    /**
+     * Runs the test classes in several Equinox instances concurrently, see {@link #forkCount}. All instances write
+     * their reports into the common reports directory. Reports are written per test class, so they do not collide.
+     */
+    private boolean runTestShards( final EquinoxInstallation testRuntime )
+        throws MojoExecutionException
     {
-        EquinoxLaunchConfiguration cli = new EquinoxLaunchConfiguration( testRuntime );
+        Properties properties = loadProperties( surefireProperties );
+        List<String> testClasses = getTestClasses( properties );
+        Map<String, Double> durations = TestShards.readDurations( reportsDirectory );
+        durations.putAll( TestShards.loadDurations( durationsFile ) );
+        List<List<String>> shards = TestShards.balance( testClasses, durations, forkCount );
+        if ( shards.size() <= 1 )
+        {
+            return runTest( testRuntime, null );
+        }
 
-        cli.setWorkingDirectory( project.getBasedir() );
+        getLog().info( "Running " + testClasses.size() + " test classes in " + shards.size() + " Equinox instances" );
 
-        if ( debugPort > 0 )
+        try
         {
-            cli.addVMArguments( "-Xdebug", "-Xrunjdwp:transport=dt_socket,address=" + debugPort + ",server=y,suspend=y" );
+            List<LaunchConfiguration> clis = new ArrayList<LaunchConfiguration>();
+            for ( int i = 0; i < shards.size(); i++ )
+            {
+                File shardWork = new File( work, "shard-" + i ).getAbsoluteFile();
+                File workspace = new File( shardWork, "data" );
+                File configuration = new File( shardWork, "configuration" );
+                File testProperties = new File( shardWork, "surefire.properties" );
+
+                FileUtils.deleteDirectory( shardWork );
+                configuration.mkdirs();
+                FileUtils.copyFile( new File( testRuntime.getLocation(), TychoConstants.CONFIG_INI_PATH ),
+                                    new File( configuration, "config.ini" ) );
+
+                properties.setProperty( "includes", getIncludesExcludes( shards.get( i ) ) );
+                properties.remove( "excludes" );
+                if ( properties.getProperty( "usedbundlesfile" ) != null )
+                {
+                    properties.setProperty( "usedbundlesfile", new File( shardWork, USED_BUNDLES_FILE ).getPath() );
+                }
+                storeProperties( properties, testProperties );
+
+                clis.add( createCommandLine( testRuntime, workspace, configuration, testProperties ) );
+                getLog().info( "Expected eclipse log file: " + new File( workspace, ".metadata/.log" ).getCanonicalPath() );
+            }
+
+            boolean succeeded = true;
+            for ( Integer result : launch( clis ) )
+            {
+                succeeded &= result.intValue() == 0;
+            }
+            return succeeded;
+        }
+        catch ( ExecutionException e )
+        {
+            throw new MojoExecutionException( "Error while executing platform", e.getCause() );
+        }
+        catch ( Exception e )
+        {
+            throw new MojoExecutionException( "Error while executing platform", e );
         }
+    }
 
-        cli.addVMArguments( "-Dosgi.noShutdown=false" );
+    /**
+     * Runs the given test runtimes concurrently in background threads, so that the thread of the mojo can log the
+     * test events while the tests are running.
+     *
+     * @return exit codes of the test runtimes
+     */
+    private List<Integer> launch( List<LaunchConfiguration> clis )
+        throws InterruptedException, ExecutionException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( clis.size() );
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for ( final LaunchConfiguration cli : clis )
+            {
+                results.add( executor.submit( new Callable<Integer>()
+                {
+                    public Integer call()
+                        throws Exception
+                    {
+                        return Integer.valueOf( launcher.execute( cli, forkedProcessTimeoutInSeconds ) );
+                    }
+                } ) );
+            }
 
-        Properties properties = (Properties) project.getContextValue( TychoConstants.CTX_MERGED_PROPERTIES );
-        cli.addVMArguments( "-Dosgi.os=" + PlatformPropertiesUtils.getOS( properties ), //
-                            "-Dosgi.ws=" + PlatformPropertiesUtils.getWS( properties ), //
-                            "-Dosgi.arch=" + PlatformPropertiesUtils.getArch( properties ) );
+            eventReceiver.logEvents( results.toArray( new Future<?>[results.size()] ) );
 
-        if ( argLine != null )
+            List<Integer> exitCodes = new ArrayList<Integer>();
+            for ( Future<Integer> result : results )
+            {
+                exitCodes.add( result.get() );
+            }
+            return exitCodes;
+        }
+        finally
         {
-            cli.addVMArguments( true, argLine );
+            executor.shutdownNow();
         }
+    }
 
-        if ( systemProperties != null )
+    private void storeDurations( Map<String, Double> durations )
+    {
+        if ( durations.isEmpty() )
         {
-            for ( Map.Entry<String, String> entry : systemProperties.entrySet() )
+            return;
+        }
+        try
+        {
+            TestShards.storeDurations( durations, durationsFile );
+        }
+        catch ( IOException e )
+        {
+            getLog().debug( "Could not store test durations", e );
+        }
+    }
+
+    private TestImpactAnalysis createTestImpactAnalysis( EquinoxInstallation testRuntime )
+        throws MojoExecutionException
+    {
+        File stateFile =
+            new File( session.getLocalRepository().getBasedir(), TEST_IMPACT_PATH + "/" + project.getGroupId() + "/"
+                + project.getArtifactId() + ".state" );
+
+        StringBuilder configuration = new StringBuilder();
+        Properties testProperties = loadProperties( surefireProperties );
+        for ( String key : new String[] { "testrunner", "includes", "excludes" } )
+        {
+            configuration.append( key ).append( '=' ).append( testProperties.getProperty( key ) ).append( '\n' );
+        }
+        EquinoxLaunchConfiguration cli = newLaunchConfiguration( testRuntime );
+        configuration.append( Arrays.asList( cli.getVMArguments() ) ).append( cli.getEnvironment() ).append( '\n' );
+        configuration.append( useUIHarness ).append( ' ' ).append( application ).append( ' ' ).append( product );
+        configuration.append( ' ' ).append( appArgLine );
+
+        TestImpactAnalysis testImpact = new TestImpactAnalysis( stateFile, configuration.toString() );
+        ReactorProject reactorProject = DefaultReactorProject.adapt( project );
+        String testBundleId = projectTypes.get( project.getPackaging() ).getArtifactKey( reactorProject ).getId();
+        try
+        {
+            for ( ArtifactDescriptor artifact : testRuntime.getInstallationDescription().getBundles() )
             {
-                cli.addVMArguments( true, "-D" + entry.getKey() + "=" + entry.getValue() );
+                ArtifactKey key = artifact.getKey();
+                if ( key.getId().equals( testBundleId ) )
+                {
+                    testImpact.addReactorBundle( key.getId(), reactorProject );
+                }
+                else if ( artifact.getMavenProject() != null )
+                {
+                    testImpact.addReactorBundle( key.getId(), artifact.getMavenProject() );
+                }
+                else
+                {
+                    testImpact.addBundle( key.getId(), key.getVersion(), artifact.getLocation() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not determine changed bundles", e );
+        }
+        return testImpact;
+    }
+
+    private void recordTestImpact( TestImpactAnalysis testImpact, boolean succeeded )
+    {
+        List<File> usedBundlesFiles = new ArrayList<File>();
+        if ( succeeded )
+        {
+            File usedBundles = new File( work, USED_BUNDLES_FILE );
+            if ( usedBundles.isFile() )
+            {
+                usedBundlesFiles.add( usedBundles );
             }
+            // shards of earlier runs only add bundles, which never causes tests to be skipped wrongly
+            File[] files = work.listFiles();
+            for ( int i = 0; files != null && i < files.length; i++ )
+            {
+                File shardUsedBundles = new File( files[i], USED_BUNDLES_FILE );
+                if ( files[i].getName().startsWith( "shard-" ) && shardUsedBundles.isFile() )
+                {
+                    usedBundlesFiles.add( shardUsedBundles );
+                }
+            }
+        }
+
+        if ( usedBundlesFiles.isEmpty() )
+        {
+            testImpact.invalidate();
+            return;
+        }
+        try
+        {
+            testImpact.recordSuccess( usedBundlesFiles );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Could not record bundles used by the tests", e );
+            testImpact.invalidate();
+        }
+    }
+
+    private boolean useTestHost()
+    {
+        return reuseTestHost && !useUIHarness && application == null && product == null && appArgLine == null
+            && debugPort <= 0 && forkCount <= 1 && project.getArtifact().getFile() != null;
+    }
+
+    /**
+     * Runs the tests in the test host of the build, see {@link #reuseTestHost}.
+     * 
+     * @return <code>null</code> if the tests could not be run in the test host
+     */
+    private Boolean runTestInHost( EquinoxInstallation testRuntime )
+        throws MojoExecutionException
+    {
+        Properties config = loadProperties( new File( testRuntime.getLocation(), TychoConstants.CONFIG_INI_PATH ) );
+        List<String> bundles = Arrays.asList( config.getProperty( "osgi.bundles" ).split( "," ) );
+
+        try
+        {
+            File hostWork = new File( work, "testhost" ).getAbsoluteFile();
+            File workspace = new File( hostWork, "data" );
+            File configuration = new File( hostWork, "configuration" );
+
+            EquinoxLaunchConfiguration cli = newLaunchConfiguration( testRuntime );
+            String key = getTestHostKey( cli, config, testRuntime.getLocation() );
+            if ( !TestHostPool.getInstance().isRunning( key ) )
+            {
+                FileUtils.deleteDirectory( hostWork );
+                configuration.mkdirs();
+                FileUtils.copyFile( new File( testRuntime.getLocation(), TychoConstants.CONFIG_INI_PATH ),
+                                    new File( configuration, "config.ini" ) );
+            }
+
+            if ( getLog().isDebugEnabled() || showEclipseLog )
+            {
+                cli.addProgramArguments( "-debug", "-consolelog" );
+            }
+            cli.addProgramArguments( "-data", workspace.getAbsolutePath(), //
+                                     "-install", testRuntime.getLocation().getAbsolutePath(), //
+                                     "-configuration", configuration.getAbsolutePath(), //
+                                     "-application", "org.sonatype.tycho.surefire.osgibooter.testhost" );
+
+            // the pool logs on this thread, so test events are only logged when the test run is done
+            Integer result =
+                TestHostPool.getInstance().execute( key, cli, launcher, bundles, surefireProperties,
+                                                    forkedProcessTimeoutInSeconds, getLog() );
+            if ( result == null )
+            {
+                getLog().info( "Test host is not available, running tests in a new process" );
+                return null;
+            }
+            return Boolean.valueOf( result.intValue() == 0 );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error while executing platform", e );
+        }
+    }
+
+    /**
+     * @return everything about the test runtime that cannot be changed in a running framework, i.e. the launch
+     *         configuration and all framework properties except the installed bundles. The location of the test
+     *         runtime differs for each project and is replaced by a placeholder.
+     */
+    static String getTestHostKey( EquinoxLaunchConfiguration cli, Properties config, File location )
+    {
+        StringBuilder key = new StringBuilder();
+        key.append( Arrays.asList( cli.getVMArguments() ) );
+        key.append( cli.getEnvironment() );
+
+        String locationPath = location.getAbsolutePath().replace( '\\', '/' );
+        Map<String, String> properties = new TreeMap<String, String>();
+        for ( Object name : config.keySet() )
+        {
+            if ( !"osgi.bundles".equals( name ) )
+            {
+                String value = config.getProperty( (String) name ).replace( '\\', '/' );
+                properties.put( (String) name, value.replace( locationPath, "${location}" ) );
+            }
+        }
+        key.append( properties );
+        return key.toString();
+    }
+
+    /**
+     * @return class file paths of the test classes selected by the includes and excludes of the test properties
+     */
+    private List<String> getTestClasses( Properties properties )
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( testClassesDirectory );
+        scanner.setIncludes( properties.getProperty( "includes" ).split( "," ) );
+        if ( properties.getProperty( "excludes" ) != null )
+        {
+            scanner.setExcludes( properties.getProperty( "excludes" ).split( "," ) );
+        }
+        scanner.scan();
+        List<String> testClasses = new ArrayList<String>();
+        for ( String path : scanner.getIncludedFiles() )
+        {
+            testClasses.add( path.replace( File.separatorChar, '/' ) );
+        }
+        return testClasses;
+    }
+
+    private Properties loadProperties( File file )
+        throws MojoExecutionException
+    {
+        Properties p = new Properties();
+        try
+        {
+            FileInputStream is = new FileInputStream( file );
+            try
+            {
+                p.load( is );
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Can't read test launcher properties file", e );
+        }
+        return p;
+    }
+
+    private void storeProperties( Properties p, File file )
+        throws MojoExecutionException
+    {
+        try
+        {
+            OutputStream out = new BufferedOutputStream( new FileOutputStream( file ) );
+            try
+            {
+                p.store( out, null );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Can't write test launcher properties file", e );
         }
+    }
+
+    LaunchConfiguration createCommandLine( EquinoxInstallation testRuntime, File workspace )
+        throws MalformedURLException
+    {
+        return createCommandLine( testRuntime, workspace, new File( work, "configuration" ), surefireProperties );
+    }
+
+    LaunchConfiguration createCommandLine( EquinoxInstallation testRuntime, File workspace, File configuration,
+                                           File testProperties )
+        throws MalformedURLException
+    {
+        EquinoxLaunchConfiguration cli = newLaunchConfiguration( testRuntime );
 
         if ( getLog().isDebugEnabled() || showEclipseLog )
         {
@@ -583,9 +1045,9 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         cli.addProgramArguments( "-data", workspace.getAbsolutePath(), //
                                  "-dev", devProperties.toURI().toURL().toExternalForm(), //
                                  "-install", testRuntime.getLocation().getAbsolutePath(), //
-                                 "-configuration", new File( work, "configuration" ).getAbsolutePath(), //
+                                 "-configuration", configuration.getAbsolutePath(), //
                                  "-application", getTestApplication( testRuntime.getInstallationDescription() ), //
-                                 "-testproperties", surefireProperties.getAbsolutePath() );
+                                 "-testproperties", testProperties.getAbsolutePath() );
         if ( application != null )
         {
             cli.addProgramArguments( "-testApplication", application );
@@ -602,6 +1064,43 @@ public class TestMojo extends AbstractMojo implements LaunchConfigurationFactory
         {
             cli.addProgramArguments( true, appArgLine );
         }
+        return cli;
+    }
+
+    /**
+     * @return launch configuration with the VM arguments and environment of the test runtime
+     */
+    private EquinoxLaunchConfiguration newLaunchConfiguration( EquinoxInstallation testRuntime )
+    {
+        EquinoxLaunchConfiguration cli = new EquinoxLaunchConfiguration( testRuntime );
+
+        cli.setWorkingDirectory( project.getBasedir() );
+
+        if ( debugPort > 0 )
+        {
+            cli.addVMArguments( "-Xdebug", "-Xrunjdwp:transport=dt_socket,address=" + debugPort + ",server=y,suspend=y" );
+        }
+
+        cli.addVMArguments( "-Dosgi.noShutdown=false" );
+
+        Properties properties = (Properties) project.getContextValue( TychoConstants.CTX_MERGED_PROPERTIES );
+        cli.addVMArguments( "-Dosgi.os=" + PlatformPropertiesUtils.getOS( properties ), //
+                            "-Dosgi.ws=" + PlatformPropertiesUtils.getWS( properties ), //
+                            "-Dosgi.arch=" + PlatformPropertiesUtils.getArch( properties ) );
+
+        if ( argLine != null )
+        {
+            cli.addVMArguments( true, argLine );
+        }
+
+        if ( systemProperties != null )
+        {
+            for ( Map.Entry<String, String> entry : systemProperties.entrySet() )
+            {
+                cli.addVMArguments( true, "-D" + entry.getKey() + "=" + entry.getValue() );
+            }
+        }
+
         if ( environmentVariables != null )
         {
             cli.addEnvironmentVariables( environmentVariables );
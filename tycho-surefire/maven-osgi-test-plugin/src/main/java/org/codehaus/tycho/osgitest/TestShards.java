@@ -0,0 +1,236 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Distributes test classes to several test runtimes, so that all runtimes take about the same time. Durations of test
+ * classes are taken from the events of previous test runs, see {@link TestEventReceiver}, or from the XML reports of
+ * previous test runs.
+ */
+public class TestShards
+{
+    private static final String REPORT_PREFIX = "TEST-";
+
+    private static final String REPORT_SUFFIX = ".xml";
+
+    /**
+     * Duration assumed for all test classes if there are no previous reports at all
+     */
+    private static final double DEFAULT_DURATION = 1.0;
+
+    /**
+     * Reads the durations of test classes from surefire XML reports.
+     *
+     * @return durations in seconds by fully qualified test class name
+     */
+    public static Map<String, Double> readDurations( File reportsDirectory )
+    {
+        Map<String, Double> durations = new HashMap<String, Double>();
+        File[] reports = reportsDirectory.listFiles();
+        if ( reports == null )
+        {
+            return durations;
+        }
+        for ( File report : reports )
+        {
+            String name = report.getName();
+            if ( !name.startsWith( REPORT_PREFIX ) || !name.endsWith( REPORT_SUFFIX ) )
+            {
+                continue;
+            }
+            try
+            {
+                Reader reader = new FileReader( report );
+                try
+                {
+                    Xpp3Dom testsuite = Xpp3DomBuilder.build( reader );
+                    String testClass = testsuite.getAttribute( "name" );
+                    String time = testsuite.getAttribute( "time" );
+                    if ( testClass != null && time != null )
+                    {
+                        // surefire formats times with grouping separators
+                        durations.put( testClass, Double.valueOf( time.replace( ",", "" ) ) );
+                    }
+                }
+                finally
+                {
+                    IOUtil.close( reader );
+                }
+            }
+            catch ( IOException e )
+            {
+                // test class is treated like a new one
+            }
+            catch ( XmlPullParserException e )
+            {
+                // incomplete report of an aborted run
+            }
+            catch ( NumberFormatException e )
+            {
+                // unexpected time format
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Assigns test classes to at most <code>shardCount</code> shards, longest test classes first, each to the shard
+     * with the least total duration so far. Test classes without known duration are assumed to take the average
+     * duration of the known ones.
+     *
+     * @param testClasses class file paths relative to the test classes directory, like
+     *            <code>org/example/FooTest.class</code>
+     * @param durations see {@link #readDurations(File)}
+     * @return non-empty shards of class file paths
+     */
+    public static List<List<String>> balance( List<String> testClasses, Map<String, Double> durations, int shardCount )
+    {
+        double total = 0;
+        int known = 0;
+        for ( String testClass : testClasses )
+        {
+            Double duration = durations.get( getClassName( testClass ) );
+            if ( duration != null )
+            {
+                total += duration.doubleValue();
+                known++;
+            }
+        }
+        double defaultDuration = known > 0 ? total / known : DEFAULT_DURATION;
+
+        final Map<String, Double> classDurations = new HashMap<String, Double>();
+        for ( String testClass : testClasses )
+        {
+            Double duration = durations.get( getClassName( testClass ) );
+            classDurations.put( testClass, duration != null ? duration : Double.valueOf( defaultDuration ) );
+        }
+
+        List<String> sorted = new ArrayList<String>( testClasses );
+        Collections.sort( sorted, new Comparator<String>()
+        {
+            public int compare( String a, String b )
+            {
+                int result = classDurations.get( b ).compareTo( classDurations.get( a ) );
+                // keeps shards stable between runs with equal durations
+                return result != 0 ? result : a.compareTo( b );
+            }
+        } );
+
+        List<List<String>> shards = new ArrayList<List<String>>();
+        double[] shardDurations = new double[Math.min( shardCount, sorted.size() )];
+        for ( int i = 0; i < shardDurations.length; i++ )
+        {
+            shards.add( new ArrayList<String>() );
+        }
+        for ( String testClass : sorted )
+        {
+            int shortest = 0;
+            for ( int i = 1; i < shardDurations.length; i++ )
+            {
+                if ( shardDurations[i] < shardDurations[shortest] )
+                {
+                    shortest = i;
+                }
+            }
+            shards.get( shortest ).add( testClass );
+            shardDurations[shortest] += classDurations.get( testClass ).doubleValue();
+        }
+        return shards;
+    }
+
+    /**
+     * Loads durations stored with {@link #storeDurations(Map, File)}.
+     */
+    public static Map<String, Double> loadDurations( File file )
+    {
+        Map<String, Double> durations = new HashMap<String, Double>();
+        if ( !file.isFile() )
+        {
+            return durations;
+        }
+        Properties properties = new Properties();
+        try
+        {
+            InputStream is = new FileInputStream( file );
+            try
+            {
+                properties.load( is );
+            }
+            finally
+            {
+                IOUtil.close( is );
+            }
+        }
+        catch ( IOException e )
+        {
+            return durations;
+        }
+        for ( Map.Entry<Object, Object> entry : properties.entrySet() )
+        {
+            try
+            {
+                durations.put( (String) entry.getKey(), Double.valueOf( (String) entry.getValue() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                // test class is treated like a new one
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Stores durations of test classes, keeping stored durations of other test classes.
+     */
+    public static void storeDurations( Map<String, Double> durations, File file )
+        throws IOException
+    {
+        Map<String, Double> merged = loadDurations( file );
+        merged.putAll( durations );
+        Properties properties = new Properties();
+        for ( Map.Entry<String, Double> entry : merged.entrySet() )
+        {
+            properties.setProperty( entry.getKey(), entry.getValue().toString() );
+        }
+        file.getParentFile().mkdirs();
+        OutputStream os = new BufferedOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            properties.store( os, null );
+        }
+        finally
+        {
+            IOUtil.close( os );
+        }
+    }
+
+    private static String getClassName( String classFile )
+    {
+        String name = classFile.replace( '\\', '/' );
+        if ( name.endsWith( ".class" ) )
+        {
+            name = name.substring( 0, name.length() - ".class".length() );
+        }
+        return name.replace( '/', '.' );
+    }
+}
@@ -0,0 +1,319 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.sonatype.tycho.equinox.launching.EquinoxLauncher;
+import org.sonatype.tycho.equinox.launching.EquinoxLaunchingException;
+import org.sonatype.tycho.equinox.launching.internal.EquinoxLaunchConfiguration;
+import org.sonatype.tycho.launching.LaunchConfiguration;
+
+public class TestHostPoolTest
+    extends TestCase
+{
+    private static final List<String> BUNDLES = Arrays.asList( "reference:file:/bundle.jar@4:start" );
+
+    private static final File TEST_PROPERTIES = new File( "surefire.properties" );
+
+    private TestHostPool pool;
+
+    private FakeLauncher launcher;
+
+    private CollectingLog log;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        pool = new TestHostPool();
+        launcher = new FakeLauncher();
+        log = new CollectingLog();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        pool.stop();
+    }
+
+    public void testHostIsReused()
+        throws Exception
+    {
+        assertEquals( Integer.valueOf( 0 ), execute( "key" ) );
+        assertEquals( Integer.valueOf( 0 ), execute( "key" ) );
+
+        assertEquals( 1, launcher.started );
+        assertEquals( 2, launcher.requests );
+        assertTrue( pool.isRunning( "key" ) );
+    }
+
+    public void testNewHostForDifferentKey()
+        throws Exception
+    {
+        execute( "key" );
+        execute( "other" );
+
+        assertEquals( 2, launcher.started );
+        assertEquals( 1, launcher.terminated );
+        assertFalse( pool.isRunning( "key" ) );
+        assertTrue( pool.isRunning( "other" ) );
+    }
+
+    public void testTimeoutDestroysHost()
+        throws Exception
+    {
+        launcher.mode = FakeLauncher.HANG;
+        try
+        {
+            pool.execute( "key", new EquinoxLaunchConfiguration( null ), launcher, BUNDLES, TEST_PROPERTIES, 1, log );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        assertFalse( pool.isRunning( "key" ) );
+        launcher.awaitTermination();
+        assertTrue( launcher.destroyed );
+
+        // the next test run starts a new host
+        launcher.mode = FakeLauncher.RUN;
+        assertEquals( Integer.valueOf( 0 ), execute( "key" ) );
+        assertEquals( 2, launcher.started );
+    }
+
+    public void testInstallFailure()
+        throws Exception
+    {
+        launcher.mode = FakeLauncher.FAIL_INSTALL;
+        assertNull( execute( "key" ) );
+
+        assertFalse( pool.isRunning( "key" ) );
+        assertEquals( Arrays.asList( "Could not install" ), log.messages );
+    }
+
+    public void testTestRunError()
+        throws Exception
+    {
+        launcher.mode = FakeLauncher.FAIL_RUN;
+        assertEquals( Integer.valueOf( 13 ), execute( "key" ) );
+
+        // the host stays usable
+        assertTrue( pool.isRunning( "key" ) );
+        assertEquals( Arrays.asList( "Test run failed" ), log.messages );
+    }
+
+    public void testLauncherFailure()
+        throws Exception
+    {
+        launcher.mode = FakeLauncher.FAIL_LAUNCH;
+        assertNull( execute( "key" ) );
+
+        assertFalse( pool.isRunning( "key" ) );
+        assertEquals( 1, log.messages.size() );
+        assertTrue( log.errors.get( 0 ) instanceof EquinoxLaunchingException );
+    }
+
+    public void testHostKey()
+        throws Exception
+    {
+        EquinoxLaunchConfiguration cli = new EquinoxLaunchConfiguration( null );
+        File location = new File( "target/work" ).getAbsoluteFile();
+        File otherLocation = new File( "other/target/work" ).getAbsoluteFile();
+
+        Properties config = new Properties();
+        config.setProperty( "osgi.bundles", "reference:file:/a.jar@4" );
+        config.setProperty( "osgi.install.area", "file:" + location.getAbsolutePath() );
+        config.setProperty( "osgi.framework", "file:/org.eclipse.osgi.jar" );
+        String key = TestMojo.getTestHostKey( cli, config, location );
+
+        // bundles are installed in the running host, each project has its own test runtime location
+        Properties other = new Properties();
+        other.putAll( config );
+        other.setProperty( "osgi.bundles", "reference:file:/b.jar@4" );
+        other.setProperty( "osgi.install.area", "file:" + otherLocation.getAbsolutePath() );
+        assertEquals( key, TestMojo.getTestHostKey( cli, other, otherLocation ) );
+
+        // all other framework properties require a new host
+        other.setProperty( "osgi.compatibility.bootdelegation", "true" );
+        assertFalse( key.equals( TestMojo.getTestHostKey( cli, other, otherLocation ) ) );
+
+        EquinoxLaunchConfiguration otherCli = new EquinoxLaunchConfiguration( null );
+        otherCli.addVMArguments( "-Xmx512m" );
+        assertFalse( key.equals( TestMojo.getTestHostKey( otherCli, config, location ) ) );
+    }
+
+    private Integer execute( String key )
+        throws IOException
+    {
+        return pool.execute( key, new EquinoxLaunchConfiguration( null ), launcher, BUNDLES, TEST_PROPERTIES, 0, log );
+    }
+
+    /**
+     * Runs the test host protocol in the calling thread instead of a new process.
+     */
+    private static class FakeLauncher
+        implements EquinoxLauncher
+    {
+        static final int RUN = 0;
+
+        static final int HANG = 1;
+
+        static final int FAIL_INSTALL = 2;
+
+        static final int FAIL_RUN = 3;
+
+        static final int FAIL_LAUNCH = 4;
+
+        volatile int mode = RUN;
+
+        volatile int started;
+
+        volatile int terminated;
+
+        volatile int requests;
+
+        volatile boolean destroyed;
+
+        public int execute( LaunchConfiguration configuration, int forkedProcessTimeoutInSeconds )
+            throws EquinoxLaunchingException
+        {
+            started++;
+            try
+            {
+                if ( mode == FAIL_LAUNCH )
+                {
+                    throw new EquinoxLaunchingException( new IOException( "Could not launch" ) );
+                }
+                List<String> args = Arrays.asList( configuration.getProgramArguments() );
+                int port = Integer.parseInt( args.get( args.indexOf( "-testhostport" ) + 1 ) );
+                Socket socket = new Socket( InetAddress.getByName( null ), port );
+                try
+                {
+                    serve( new DataInputStream( socket.getInputStream() ),
+                           new DataOutputStream( socket.getOutputStream() ) );
+                }
+                finally
+                {
+                    socket.close();
+                }
+                return 0;
+            }
+            catch ( IOException e )
+            {
+                throw new EquinoxLaunchingException( e );
+            }
+            finally
+            {
+                synchronized ( this )
+                {
+                    terminated++;
+                    notifyAll();
+                }
+            }
+        }
+
+        private void serve( DataInputStream in, DataOutputStream out )
+            throws IOException
+        {
+            while ( true )
+            {
+                List<String> bundles = new ArrayList<String>();
+                try
+                {
+                    for ( int i = in.readInt(); i > 0; i-- )
+                    {
+                        bundles.add( in.readUTF() );
+                    }
+                }
+                catch ( EOFException e )
+                {
+                    return;
+                }
+                in.readUTF();
+                requests++;
+
+                switch ( mode )
+                {
+                    case HANG:
+                        try
+                        {
+                            Thread.sleep( Long.MAX_VALUE );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            // like a destroyed process
+                            destroyed = true;
+                            return;
+                        }
+                    case FAIL_INSTALL:
+                        out.writeBoolean( false );
+                        out.writeUTF( "Could not install" );
+                        out.flush();
+                        return;
+                    case FAIL_RUN:
+                        out.writeBoolean( true );
+                        out.writeInt( 13 );
+                        out.writeUTF( "Test run failed" );
+                        out.flush();
+                        break;
+                    default:
+                        out.writeBoolean( true );
+                        out.writeInt( 0 );
+                        out.writeUTF( "" );
+                        out.flush();
+                }
+            }
+        }
+
+        synchronized void awaitTermination()
+            throws InterruptedException
+        {
+            while ( terminated < started )
+            {
+                wait( 10000 );
+            }
+        }
+    }
+
+    private static class CollectingLog
+        extends SystemStreamLog
+    {
+        final List<String> messages = new ArrayList<String>();
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        @Override
+        public void warn( CharSequence content )
+        {
+            messages.add( content.toString() );
+        }
+
+        @Override
+        public void warn( CharSequence content, Throwable error )
+        {
+            messages.add( content.toString() );
+            errors.add( error );
+        }
+
+        @Override
+        public void error( CharSequence content )
+        {
+            messages.add( content.toString() );
+        }
+    }
+}
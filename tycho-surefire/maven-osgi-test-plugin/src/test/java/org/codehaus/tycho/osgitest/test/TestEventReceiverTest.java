@@ -0,0 +1,194 @@
+package org.codehaus.tycho.osgitest.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.surefire.report.PojoStackTraceWriter;
+import org.apache.maven.surefire.report.ReportEntry;
+import org.apache.maven.surefire.report.ReporterException;
+import org.codehaus.tycho.osgitest.TestEventReceiver;
+import org.codehaus.tycho.surefire.osgibooter.EventReporter;
+
+public class TestEventReceiverTest
+    extends TestCase
+{
+    private TestEventReceiver receiver;
+
+    private CollectingLog log;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        log = new CollectingLog();
+        receiver = new TestEventReceiver( log );
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        executor.shutdownNow();
+        receiver.close();
+    }
+
+    public void testEvents()
+        throws Exception
+    {
+        Future<?> testRun = executor.submit( new Callable<Object>()
+        {
+            public Object call()
+                throws Exception
+            {
+                EventReporter reporter = new EventReporter( Integer.valueOf( receiver.getPort() ), Boolean.FALSE );
+                reporter.testSetStarting( newEntry( "a.ATest" ) );
+                reporter.testStarting( newEntry( "testPasses(a.ATest)" ) );
+                reporter.testSucceeded( newEntry( "testPasses(a.ATest)" ) );
+                reporter.testStarting( newEntry( "testFails(a.ATest)" ) );
+                reporter.testFailed( newFailure( "testFails(a.ATest)", "expected:<1> but was:<2>" ), "stdout of a test",
+                                     null );
+                reporter.testStarting( newEntry( "testSkipped(a.ATest)" ) );
+                reporter.testSkipped( newEntry( "testSkipped(a.ATest)" ) );
+                reporter.testSetCompleted( newEntry( "a.ATest" ) );
+                reporter.runCompleted();
+                return null;
+            }
+        } );
+
+        receiver.logEvents( testRun );
+        testRun.get();
+        receiver.close();
+
+        assertEquals( 1, log.errors.size() );
+        assertTrue( log.errors.get( 0 ), log.errors.get( 0 ).startsWith( "Failed testFails(a.ATest) after " ) );
+        assertTrue( log.errors.get( 0 ), log.errors.get( 0 ).endsWith( ": expected:<1> but was:<2>" ) );
+        assertTrue( log.debug.contains( "Running a.ATest" ) );
+        assertTrue( log.debug.contains( "stdout of a test" ) );
+
+        assertTrue( receiver.getDurations().containsKey( "a.ATest" ) );
+
+        // Maven logs are not thread safe
+        assertEquals( 1, log.threads.size() );
+        assertSame( Thread.currentThread(), log.threads.get( 0 ) );
+    }
+
+    public void testFailFast()
+        throws Exception
+    {
+        Future<Boolean> testRun = executor.submit( new Callable<Boolean>()
+        {
+            public Boolean call()
+                throws Exception
+            {
+                EventReporter reporter = new EventReporter( Integer.valueOf( receiver.getPort() ), Boolean.TRUE );
+                reporter.testSetStarting( newEntry( "a.ATest" ) );
+                reporter.testStarting( newEntry( "testFails(a.ATest)" ) );
+                reporter.testError( newFailure( "testFails(a.ATest)", "java.lang.NullPointerException" ), null, null );
+                reporter.testSetCompleted( newEntry( "a.ATest" ) );
+                try
+                {
+                    reporter.testSetStarting( newEntry( "a.BTest" ) );
+                    return Boolean.FALSE;
+                }
+                catch ( ReporterException e )
+                {
+                    return Boolean.TRUE;
+                }
+            }
+        } );
+
+        receiver.logEvents( testRun );
+        assertTrue( "test run not stopped", testRun.get().booleanValue() );
+        receiver.close();
+
+        assertEquals( 1, log.errors.size() );
+        assertTrue( log.errors.get( 0 ), log.errors.get( 0 ).startsWith( "Error in testFails(a.ATest) after " ) );
+        assertFalse( log.debug.contains( "Running a.BTest" ) );
+    }
+
+    public void testNoConnection()
+        throws Exception
+    {
+        // test runtimes which do not report events, e.g. because they failed to start
+        Future<?> testRun = executor.submit( new Runnable()
+        {
+            public void run()
+            {
+            }
+        } );
+
+        receiver.logEvents( testRun );
+        receiver.close();
+
+        assertTrue( log.errors.isEmpty() );
+        assertTrue( receiver.getDurations().isEmpty() );
+    }
+
+    private static ReportEntry newEntry( String name )
+    {
+        return new ReportEntry( TestEventReceiverTest.class, name, "" );
+    }
+
+    private static ReportEntry newFailure( String test, String message )
+    {
+        AssertionFailedError failure = new AssertionFailedError( message );
+        return new ReportEntry( TestEventReceiverTest.class, test, message,
+                                new PojoStackTraceWriter( "a.ATest", "testFails", failure ) );
+    }
+
+    private static class CollectingLog
+        extends SystemStreamLog
+    {
+        final List<String> errors = new ArrayList<String>();
+
+        final List<String> debug = new ArrayList<String>();
+
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        @Override
+        public boolean isDebugEnabled()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void debug( CharSequence content )
+        {
+            debug.add( content.toString() );
+            record();
+        }
+
+        @Override
+        public synchronized void debug( CharSequence content, Throwable error )
+        {
+            debug.add( content.toString() );
+            record();
+        }
+
+        @Override
+        public synchronized void error( CharSequence content )
+        {
+            errors.add( content.toString() );
+            record();
+        }
+
+        private void record()
+        {
+            if ( !threads.contains( Thread.currentThread() ) )
+            {
+                threads.add( Thread.currentThread() );
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.codehaus.tycho.osgitest.test;
+
+import java.io.File;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.osgitest.TestImpactAnalysis;
+
+public class TestImpactAnalysisTest
+    extends TestCase
+{
+    private File basedir;
+
+    private File stateFile;
+
+    private File usedBundles;
+
+    private File a;
+
+    private File b;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/testImpactAnalysis" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+        stateFile = new File( basedir, "test.state" );
+        usedBundles = new File( basedir, "used-bundles.txt" );
+        FileUtils.fileWrite( usedBundles.getPath(), "a\nsystem.bundle\n" );
+        a = new File( basedir, "a.jar" );
+        FileUtils.fileWrite( a.getPath(), "a" );
+        b = new File( basedir, "b.jar" );
+        FileUtils.fileWrite( b.getPath(), "b" );
+    }
+
+    public void testUnchanged()
+        throws Exception
+    {
+        TestImpactAnalysis analysis = newAnalysis( "config" );
+        assertFalse( analysis.isUnchanged() );
+        analysis.recordSuccess( Collections.singleton( usedBundles ) );
+
+        assertTrue( newAnalysis( "config" ).isUnchanged() );
+    }
+
+    public void testUnusedBundleChanged()
+        throws Exception
+    {
+        newAnalysis( "config" ).recordSuccess( Collections.singleton( usedBundles ) );
+
+        FileUtils.fileWrite( b.getPath(), "changed" );
+
+        assertTrue( newAnalysis( "config" ).isUnchanged() );
+    }
+
+    public void testUsedBundleChanged()
+        throws Exception
+    {
+        newAnalysis( "config" ).recordSuccess( Collections.singleton( usedBundles ) );
+
+        FileUtils.fileWrite( a.getPath(), "changed" );
+
+        assertFalse( newAnalysis( "config" ).isUnchanged() );
+    }
+
+    public void testConfigurationChanged()
+        throws Exception
+    {
+        newAnalysis( "config" ).recordSuccess( Collections.singleton( usedBundles ) );
+
+        assertFalse( newAnalysis( "other config" ).isUnchanged() );
+    }
+
+    public void testBundleAdded()
+        throws Exception
+    {
+        newAnalysis( "config" ).recordSuccess( Collections.singleton( usedBundles ) );
+
+        TestImpactAnalysis analysis = newAnalysis( "config" );
+        analysis.addBundle( "c", "1.0.0", b );
+
+        assertFalse( analysis.isUnchanged() );
+    }
+
+    public void testSeveralVersionsOfUsedBundle()
+        throws Exception
+    {
+        newAnalysis( "config" ).recordSuccess( Collections.singleton( usedBundles ) );
+
+        // the used bundles file does not tell which version was used
+        TestImpactAnalysis analysis = newAnalysis( "config" );
+        analysis.addBundle( "a", "2.0.0", b );
+        assertFalse( analysis.isUnchanged() );
+
+        analysis.recordSuccess( Collections.singleton( usedBundles ) );
+        assertFalse( stateFile.exists() );
+    }
+
+    public void testInvalidate()
+        throws Exception
+    {
+        TestImpactAnalysis analysis = newAnalysis( "config" );
+        analysis.recordSuccess( Collections.singleton( usedBundles ) );
+        analysis.invalidate();
+
+        assertFalse( newAnalysis( "config" ).isUnchanged() );
+    }
+
+    private TestImpactAnalysis newAnalysis( String configuration )
+    {
+        TestImpactAnalysis analysis = new TestImpactAnalysis( stateFile, configuration );
+        analysis.addBundle( "a", "1.0.0", a );
+        analysis.addBundle( "b", "1.0.0", b );
+        return analysis;
+    }
+}
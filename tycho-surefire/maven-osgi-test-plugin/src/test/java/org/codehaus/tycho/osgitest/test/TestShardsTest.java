@@ -0,0 +1,114 @@
+package org.codehaus.tycho.osgitest.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.osgitest.TestShards;
+
+public class TestShardsTest
+    extends TestCase
+{
+
+    public void testBalanceByDuration()
+        throws Exception
+    {
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put( "a.SlowTest", 10.0 );
+        durations.put( "a.MediumTest", 6.0 );
+        durations.put( "a.FastTest", 3.0 );
+        durations.put( "a.QuickTest", 2.0 );
+
+        List<List<String>> shards =
+            TestShards.balance( Arrays.asList( "a/FastTest.class", "a/MediumTest.class", "a/QuickTest.class",
+                                               "a/SlowTest.class" ), durations, 2 );
+
+        assertEquals( 2, shards.size() );
+        assertEquals( Arrays.asList( "a/SlowTest.class" ), shards.get( 0 ) );
+        assertEquals( Arrays.asList( "a/MediumTest.class", "a/FastTest.class", "a/QuickTest.class" ), shards.get( 1 ) );
+    }
+
+    public void testUnknownDurations()
+        throws Exception
+    {
+        List<List<String>> shards =
+            TestShards.balance( Arrays.asList( "ATest.class", "BTest.class", "CTest.class", "DTest.class" ),
+                                new HashMap<String, Double>(), 2 );
+
+        assertEquals( Arrays.asList( "ATest.class", "CTest.class" ), shards.get( 0 ) );
+        assertEquals( Arrays.asList( "BTest.class", "DTest.class" ), shards.get( 1 ) );
+    }
+
+    public void testNoEmptyShards()
+        throws Exception
+    {
+        List<List<String>> shards =
+            TestShards.balance( Arrays.asList( "ATest.class" ), new HashMap<String, Double>(), 4 );
+
+        assertEquals( 1, shards.size() );
+    }
+
+    public void testReadDurations()
+        throws Exception
+    {
+        File reports = new File( "target/testReadDurations" );
+        FileUtils.deleteDirectory( reports );
+        reports.mkdirs();
+        FileUtils.fileWrite( new File( reports, "TEST-a.SlowTest.xml" ).getAbsolutePath(),
+                             "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+                                 + "<testsuite failures=\"0\" time=\"1,234.5\" errors=\"0\" skipped=\"0\" tests=\"1\" name=\"a.SlowTest\">"
+                                 + "<testcase time=\"1,234.5\" name=\"testSlow\"/></testsuite>" );
+        FileUtils.fileWrite( new File( reports, "TEST-a.BrokenTest.xml" ).getAbsolutePath(), "<testsuite" );
+        FileUtils.fileWrite( new File( reports, "a.SlowTest.txt" ).getAbsolutePath(), "" );
+
+        Map<String, Double> durations = TestShards.readDurations( reports );
+
+        assertEquals( 1, durations.size() );
+        assertEquals( 1234.5, durations.get( "a.SlowTest" ).doubleValue(), 0.001 );
+    }
+
+    public void testStoreDurations()
+        throws Exception
+    {
+        File file = new File( "target/testStoreDurations/durations.properties" );
+        FileUtils.deleteDirectory( file.getParentFile() );
+
+        Map<String, Double> durations = new HashMap<String, Double>();
+        durations.put( "a.SlowTest", 10.5 );
+        durations.put( "a.FastTest", 1.0 );
+        TestShards.storeDurations( durations, file );
+
+        assertEquals( durations, TestShards.loadDurations( file ) );
+
+        // durations of test classes that did not run are kept
+        durations = new HashMap<String, Double>();
+        durations.put( "a.SlowTest", 12.0 );
+        TestShards.storeDurations( durations, file );
+
+        Map<String, Double> loaded = TestShards.loadDurations( file );
+        assertEquals( 2, loaded.size() );
+        assertEquals( 12.0, loaded.get( "a.SlowTest" ).doubleValue(), 0.001 );
+        assertEquals( 1.0, loaded.get( "a.FastTest" ).doubleValue(), 0.001 );
+    }
+
+    public void testLoadDurations()
+        throws Exception
+    {
+        File file = new File( "target/testLoadDurations/durations.properties" );
+        FileUtils.deleteDirectory( file.getParentFile() );
+
+        assertTrue( TestShards.loadDurations( file ).isEmpty() );
+
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), "a.SlowTest=10.5\na.BrokenTest=fast\n" );
+
+        Map<String, Double> durations = TestShards.loadDurations( file );
+        assertEquals( 1, durations.size() );
+        assertEquals( 10.5, durations.get( "a.SlowTest" ).doubleValue(), 0.001 );
+    }
+}
@@ -0,0 +1,148 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.apache.maven.surefire.report.AbstractReporter;
+import org.apache.maven.surefire.report.ReportEntry;
+import org.apache.maven.surefire.report.ReporterException;
+import org.apache.maven.surefire.report.StackTraceWriter;
+
+/**
+ * Sends test events to the Maven process while tests are running, so results are known without reading the report
+ * files. Each event is a type byte, see {@link TestEvents}, followed by the name of the test or test class and,
+ * depending on the type, the elapsed time in milliseconds, the failure message, the stack trace and the output
+ * captured during the test. Strings are written as length and UTF-8 bytes, with length -1 for <code>null</code>.
+ * <p>
+ * If fail fast is enabled, the first failing test class stops the test run before the next test class starts.
+ */
+public class EventReporter extends AbstractReporter {
+
+	private final boolean failFast;
+
+	private Socket socket;
+
+	private DataOutputStream out;
+
+	private long testSetStart;
+
+	private long testStart;
+
+	private boolean failed;
+
+	public EventReporter(Integer port, Boolean failFast) {
+		super(Boolean.TRUE);
+		this.failFast = failFast.booleanValue();
+		try {
+			socket = new Socket(InetAddress.getByName(null), port.intValue());
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		} catch (IOException e) {
+			// tests still run, results are in the report files
+			System.err.println("Could not connect to test event receiver: " + e.getMessage());
+		}
+	}
+
+	public void writeMessage(String message) {
+	}
+
+	public void testSetStarting(ReportEntry report) throws ReporterException {
+		super.testSetStarting(report);
+		if (failFast && failed) {
+			System.err.println("Skipping remaining test classes after test failure");
+			close();
+			throw new ReporterException("Test run stopped after first failing test class", null);
+		}
+		testSetStart = System.currentTimeMillis();
+		send(TestEvents.TEST_SET_STARTING, report, -1, null, null);
+	}
+
+	public void testSetCompleted(ReportEntry report) throws ReporterException {
+		super.testSetCompleted(report);
+		send(TestEvents.TEST_SET_COMPLETED, report, System.currentTimeMillis() - testSetStart, null, null);
+	}
+
+	public void testStarting(ReportEntry report) {
+		super.testStarting(report);
+		testStart = System.currentTimeMillis();
+		send(TestEvents.TEST_STARTING, report, -1, null, null);
+	}
+
+	public void testSucceeded(ReportEntry report) {
+		super.testSucceeded(report);
+		send(TestEvents.TEST_SUCCEEDED, report, System.currentTimeMillis() - testStart, null, null);
+	}
+
+	public void testFailed(ReportEntry report, String stdOut, String stdErr) {
+		super.testFailed(report, stdOut, stdErr);
+		failed = true;
+		send(TestEvents.TEST_FAILED, report, System.currentTimeMillis() - testStart, stdOut, stdErr);
+	}
+
+	public void testError(ReportEntry report, String stdOut, String stdErr) {
+		super.testError(report, stdOut, stdErr);
+		failed = true;
+		send(TestEvents.TEST_ERROR, report, System.currentTimeMillis() - testStart, stdOut, stdErr);
+	}
+
+	public void testSkipped(ReportEntry report) {
+		super.testSkipped(report);
+		send(TestEvents.TEST_SKIPPED, report, -1, null, null);
+	}
+
+	public void runCompleted() {
+		super.runCompleted();
+		send(TestEvents.RUN_COMPLETED, null, -1, null, null);
+		close();
+	}
+
+	private void send(byte type, ReportEntry report, long elapsed, String stdOut, String stdErr) {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(type);
+			if (report != null) {
+				writeString(report.getName());
+				if (elapsed >= 0) {
+					out.writeLong(elapsed);
+				}
+				if (type == TestEvents.TEST_FAILED || type == TestEvents.TEST_ERROR) {
+					StackTraceWriter writer = report.getStackTraceWriter();
+					writeString(report.getMessage());
+					writeString(writer != null ? writer.writeTrimmedTraceToString() : null);
+					writeString(stdOut);
+					writeString(stdErr);
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("Lost connection to test event receiver: " + e.getMessage());
+			close();
+		}
+	}
+
+	private void writeString(String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private void close() {
+		out = null;
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			socket = null;
+		}
+	}
+}
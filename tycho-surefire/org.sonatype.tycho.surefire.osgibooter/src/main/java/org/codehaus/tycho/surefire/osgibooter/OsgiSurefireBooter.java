@@ -35,7 +35,8 @@ public class OsgiSurefireBooter {
 		ArrayList<String> includes = getIncludesExcludes(p.getProperty("includes"));
 		ArrayList<String> excludes = getIncludesExcludes(p.getProperty("excludes"));
 
-		ClassLoader testClassLoader = getBundleClassLoader(plugin);
+		Bundle testBundle = getTestBundle(plugin);
+		ClassLoader testClassLoader = new BundleClassLoader(testBundle);
 		ClassLoader surefireClassLoader = Surefire.class.getClassLoader();
 
 		Surefire surefire = new Surefire();
@@ -62,6 +63,17 @@ public class OsgiSurefireBooter {
 			}
 		});
 
+		String eventPort = p.getProperty("eventport");
+		if (eventPort != null) {
+			reports.add(new Object[] {
+				EventReporter.class.getName(),
+				new Object[] {
+					Integer.valueOf(eventPort),
+					Boolean.valueOf(p.getProperty("failfast"))
+				}
+			});
+		}
+
 		List tests = new ArrayList();
 		tests.add(new Object[] {
 			runner,
@@ -72,7 +84,14 @@ public class OsgiSurefireBooter {
 			}
 		});
 
-		return surefire.run(reports, tests, surefireClassLoader, testClassLoader, true /*failIfNoTests*/);
+		int result = surefire.run(reports, tests, surefireClassLoader, testClassLoader, true /*failIfNoTests*/);
+
+		String usedBundlesFile = p.getProperty("usedbundlesfile");
+		if (usedBundlesFile != null && result == 0) {
+			UsedBundles.write(testBundle, new File(usedBundlesFile));
+		}
+
+		return result;
 	}
 
 	private static File getTestProperties(String[] args) throws CoreException {
@@ -111,7 +130,7 @@ public class OsgiSurefireBooter {
 		return p;
 	}
 
-	private static ClassLoader getBundleClassLoader(String symbolicName) throws BundleException {
+	private static Bundle getTestBundle(String symbolicName) throws BundleException {
 		Bundle bundle = Activator.getBundle(symbolicName);
 		if (bundle == null) {
 			throw new RuntimeException("Bundle " + symbolicName + " is not found");
@@ -127,7 +146,7 @@ public class OsgiSurefireBooter {
 
 		bundle.start();
 
-		return new BundleClassLoader(bundle);
+		return bundle;
 	}
 
 	private static class BundleClassLoader extends ClassLoader {
@@ -0,0 +1,35 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+/**
+ * Types of the test events sent by the {@link EventReporter} and received by the <code>TestEventReceiver</code> of
+ * the Maven plugin, which uses this class as well.
+ */
+public final class TestEvents {
+
+	/** test class name */
+	public static final byte TEST_SET_STARTING = 1;
+
+	/** test class name, elapsed time */
+	public static final byte TEST_SET_COMPLETED = 2;
+
+	/** test name */
+	public static final byte TEST_STARTING = 3;
+
+	/** test name, elapsed time */
+	public static final byte TEST_SUCCEEDED = 4;
+
+	/** test name, elapsed time, message, stack trace, stdout, stderr */
+	public static final byte TEST_FAILED = 5;
+
+	/** test name, elapsed time, message, stack trace, stdout, stderr */
+	public static final byte TEST_ERROR = 6;
+
+	/** test name */
+	public static final byte TEST_SKIPPED = 7;
+
+	/** no data, the last event of a test run */
+	public static final byte RUN_COMPLETED = 8;
+
+	private TestEvents() {
+	}
+}
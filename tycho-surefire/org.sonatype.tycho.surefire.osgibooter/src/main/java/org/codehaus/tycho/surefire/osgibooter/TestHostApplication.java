@@ -0,0 +1,289 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IPlatformRunnable;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.startlevel.StartLevel;
+
+/**
+ * Runs the tests of several test bundles one after the other in the same framework. The application connects to the
+ * port given with <code>-testhostport</code> and reads test run requests until the connection is closed.
+ * <p>
+ * A request consists of the number of bundles, the bundles in <code>osgi.bundles</code> syntax and the test properties
+ * file. Bundles that are not part of the request, or whose file changed since they were installed, are uninstalled and
+ * missing bundles are installed before the tests run. The response is <code>true</code> followed by the result of
+ * {@link OsgiSurefireBooter#run(String[])} and an error message, or <code>false</code> followed by an error message if
+ * the bundles could not be installed. The error message is empty if there was no error. The host stops after a
+ * failure to install the bundles, because the state of the framework is unknown.
+ * <p>
+ * Test runs are not isolated from each other. They share the VM, including system properties and the working
+ * directory, which is the working directory of the first test run.
+ */
+@SuppressWarnings("deprecation")
+public class TestHostApplication implements IPlatformRunnable {
+
+	/** exit code of an Eclipse application that terminated with an exception */
+	private static final int EXIT_ERROR = 13;
+
+	/** maximum time to wait for a package refresh, in seconds */
+	private static final int REFRESH_TIMEOUT = 60;
+
+	/** error messages are sent with writeUTF, which is limited to 64k bytes */
+	private static final int MAX_ERROR_LENGTH = 16 * 1024;
+
+	private static final String INITIAL_LOCATION = "initial@";
+
+	private static final String REFERENCE_PROTOCOL = "reference:";
+
+	private static final String FILE_PROTOCOL = "file:";
+
+	/** length and timestamp of the files of the installed bundles when they were installed, by bundle id */
+	private final Map<Long, String> installedStamps = new HashMap<Long, String>();
+
+	public Object run(Object object) throws Exception {
+		String[] args = Platform.getCommandLineArgs();
+		int port = Integer.parseInt(getArgument(args, "-testhostport"));
+
+		// bundles of the initial configuration were installed when the framework started
+		for (Bundle bundle : Activator.getContext().getBundles()) {
+			installedStamps.put(bundle.getBundleId(), getStamp(bundle.getLocation()));
+		}
+
+		Socket socket = new Socket(InetAddress.getByName(null), port);
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				List<String> bundles = new ArrayList<String>();
+				try {
+					for (int i = in.readInt(); i > 0; i--) {
+						bundles.add(in.readUTF());
+					}
+				} catch (EOFException e) {
+					// no more test runs
+					break;
+				}
+				String testProperties = in.readUTF();
+
+				try {
+					updateBundles(bundles);
+				} catch (Exception e) {
+					out.writeBoolean(false);
+					out.writeUTF(getError("Could not install the bundles of the test run", e));
+					out.flush();
+					break;
+				}
+
+				int result;
+				String error = "";
+				try {
+					result = OsgiSurefireBooter.run(new String[] { "-testproperties", testProperties });
+				} catch (Exception e) {
+					result = EXIT_ERROR;
+					error = getError("Test run failed", e);
+				}
+				out.writeBoolean(true);
+				out.writeInt(result);
+				out.writeUTF(error);
+				out.flush();
+			}
+		} finally {
+			socket.close();
+		}
+		return IPlatformRunnable.EXIT_OK;
+	}
+
+	private static String getError(String message, Exception e) {
+		StringWriter buffer = new StringWriter();
+		PrintWriter writer = new PrintWriter(buffer);
+		writer.println(message);
+		e.printStackTrace(writer);
+		writer.close();
+		String error = buffer.toString();
+		return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+	}
+
+	private static String getArgument(String[] args, String name) {
+		for (int i = 0; i < args.length - 1; i++) {
+			if (name.equalsIgnoreCase(args[i])) {
+				return args[i + 1];
+			}
+		}
+		throw new IllegalArgumentException(name + " command line parameter is not specified");
+	}
+
+	/**
+	 * Makes the installed bundles match the given <code>osgi.bundles</code> entries.
+	 */
+	private void updateBundles(List<String> entries) throws BundleException, InterruptedException {
+		BundleContext context = Activator.getContext();
+
+		Map<String, String> requested = new HashMap<String, String>();
+		for (String entry : entries) {
+			requested.put(getPath(getLocation(entry)), entry);
+		}
+
+		List<Bundle> uninstalled = new ArrayList<Bundle>();
+		for (Bundle bundle : context.getBundles()) {
+			if (bundle.getBundleId() == 0) {
+				continue; // system bundle
+			}
+			String path = getPath(bundle.getLocation());
+			if (requested.containsKey(path)
+					&& getStamp(bundle.getLocation()).equals(installedStamps.get(bundle.getBundleId()))) {
+				requested.remove(path);
+				continue;
+			}
+			if (bundle.equals(context.getBundle())) {
+				throw new BundleException("Test run requires a different test host bundle");
+			}
+			bundle.uninstall();
+			installedStamps.remove(bundle.getBundleId());
+			uninstalled.add(bundle);
+		}
+
+		PackageAdmin packageAdmin = (PackageAdmin) getService(context, PackageAdmin.class);
+		if (!uninstalled.isEmpty()) {
+			refreshPackages(context, packageAdmin, uninstalled.toArray(new Bundle[uninstalled.size()]));
+		}
+
+		StartLevel startLevel = (StartLevel) getService(context, StartLevel.class);
+		List<Bundle> started = new ArrayList<Bundle>();
+		for (String entry : requested.values()) {
+			String location = getLocation(entry);
+			String stamp = getStamp(location);
+			Bundle bundle = context.installBundle(location);
+			installedStamps.put(bundle.getBundleId(), stamp);
+			int level = getStartLevel(entry);
+			if (level > 0) {
+				startLevel.setBundleStartLevel(bundle, level);
+			}
+			if (entry.endsWith(":start") && bundle.getHeaders().get(Constants.FRAGMENT_HOST) == null) {
+				started.add(bundle);
+			}
+		}
+
+		packageAdmin.resolveBundles(null);
+		for (Bundle bundle : started) {
+			bundle.start();
+		}
+	}
+
+	private static void refreshPackages(BundleContext context, PackageAdmin packageAdmin, Bundle[] bundles)
+			throws InterruptedException, BundleException {
+		final CountDownLatch refreshed = new CountDownLatch(1);
+		FrameworkListener listener = new FrameworkListener() {
+			public void frameworkEvent(FrameworkEvent event) {
+				if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+					refreshed.countDown();
+				}
+			}
+		};
+		context.addFrameworkListener(listener);
+		try {
+			packageAdmin.refreshPackages(bundles);
+			if (!refreshed.await(REFRESH_TIMEOUT, TimeUnit.SECONDS)) {
+				throw new BundleException("Packages were not refreshed within " + REFRESH_TIMEOUT + " seconds");
+			}
+		} finally {
+			context.removeFrameworkListener(listener);
+		}
+	}
+
+	private static Object getService(BundleContext context, Class<?> type) throws BundleException {
+		ServiceReference reference = context.getServiceReference(type.getName());
+		if (reference == null) {
+			throw new BundleException("Service " + type.getName() + " is not available");
+		}
+		return context.getService(reference);
+	}
+
+	/**
+	 * @return the bundle location of an <code>osgi.bundles</code> entry, without start level and start flag
+	 */
+	private static String getLocation(String entry) {
+		int at = entry.lastIndexOf('@');
+		return at > 0 ? entry.substring(0, at) : entry;
+	}
+
+	private static int getStartLevel(String entry) {
+		int at = entry.lastIndexOf('@');
+		if (at < 0) {
+			return 0;
+		}
+		String level = entry.substring(at + 1);
+		int colon = level.indexOf(':');
+		if (colon >= 0) {
+			level = level.substring(0, colon);
+		}
+		return level.length() > 0 ? Integer.parseInt(level) : 0;
+	}
+
+	/**
+	 * @return length and timestamp of the file or directory of a bundle location, to detect bundles that changed since
+	 *         they were installed
+	 */
+	private static String getStamp(String location) {
+		String path = location;
+		if (path.startsWith(INITIAL_LOCATION)) {
+			path = path.substring(INITIAL_LOCATION.length());
+		}
+		if (path.startsWith(REFERENCE_PROTOCOL)) {
+			path = path.substring(REFERENCE_PROTOCOL.length());
+		}
+		if (!path.startsWith(FILE_PROTOCOL)) {
+			return location; // not a file, never changes
+		}
+		File file = new File(path.substring(FILE_PROTOCOL.length()));
+		return file.length() + ":" + file.lastModified();
+	}
+
+	/**
+	 * Bundles installed from <code>config.ini</code> and bundles installed by this class have different locations for
+	 * the same file, e.g. <code>initial@reference:file:/a/b/</code> and <code>reference:file:/a/b</code>.
+	 */
+	private static String getPath(String location) {
+		String path = location;
+		if (path.startsWith(INITIAL_LOCATION)) {
+			path = path.substring(INITIAL_LOCATION.length());
+		}
+		if (path.startsWith(REFERENCE_PROTOCOL)) {
+			path = path.substring(REFERENCE_PROTOCOL.length());
+		}
+		if (path.startsWith(FILE_PROTOCOL)) {
+			path = path.substring(FILE_PROTOCOL.length());
+		}
+		path = path.replace('\\', '/');
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		while (path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+}
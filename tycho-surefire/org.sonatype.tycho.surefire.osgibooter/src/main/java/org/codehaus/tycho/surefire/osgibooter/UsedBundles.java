@@ -0,0 +1,126 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.packageadmin.RequiredBundle;
+
+/**
+ * Determines the bundles a test run may have used, for test impact analysis in the Maven process. These are the test
+ * bundle, all bundles it is wired to directly or indirectly, all active bundles and the bundles wired to them, and the
+ * fragments and hosts of all of these. The result is deliberately conservative: a bundle that is not in the set could
+ * not have affected the tests.
+ */
+public class UsedBundles {
+
+	/**
+	 * Writes the symbolic names of the bundles used by the tests of the given bundle to a file, one per line.
+	 */
+	public static void write(Bundle testBundle, File file) throws IOException {
+		BundleContext context = Activator.getContext();
+		ServiceReference reference = context.getServiceReference(PackageAdmin.class.getName());
+		if (reference == null) {
+			throw new IOException("PackageAdmin service is not available");
+		}
+		PackageAdmin packageAdmin = (PackageAdmin) context.getService(reference);
+
+		Set<String> names = new TreeSet<String>();
+		for (Bundle bundle : getUsedBundles(context, packageAdmin, testBundle)) {
+			if (bundle.getSymbolicName() != null) {
+				names.add(bundle.getSymbolicName());
+			}
+		}
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (String name : names) {
+				writer.write(name);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static Set<Bundle> getUsedBundles(BundleContext context, PackageAdmin packageAdmin, Bundle testBundle) {
+		// bundles each bundle is wired to
+		Map<Bundle, Set<Bundle>> providers = new HashMap<Bundle, Set<Bundle>>();
+		ExportedPackage[] packages = packageAdmin.getExportedPackages((Bundle) null);
+		if (packages != null) {
+			for (ExportedPackage exportedPackage : packages) {
+				Bundle[] importers = exportedPackage.getImportingBundles();
+				if (importers == null) {
+					continue; // stale
+				}
+				for (Bundle importer : importers) {
+					addProvider(providers, importer, exportedPackage.getExportingBundle());
+				}
+			}
+		}
+		RequiredBundle[] requiredBundles = packageAdmin.getRequiredBundles(null);
+		if (requiredBundles != null) {
+			for (RequiredBundle requiredBundle : requiredBundles) {
+				Bundle[] requiring = requiredBundle.getRequiringBundles();
+				if (requiring == null) {
+					continue; // stale
+				}
+				for (Bundle bundle : requiring) {
+					addProvider(providers, bundle, requiredBundle.getBundle());
+				}
+			}
+		}
+
+		Set<Bundle> used = new HashSet<Bundle>();
+		LinkedList<Bundle> queue = new LinkedList<Bundle>();
+		queue.add(testBundle);
+		for (Bundle bundle : context.getBundles()) {
+			if (bundle.getState() == Bundle.ACTIVE) {
+				queue.add(bundle);
+			}
+		}
+		while (!queue.isEmpty()) {
+			Bundle bundle = queue.removeFirst();
+			if (bundle == null || !used.add(bundle)) {
+				continue;
+			}
+			Set<Bundle> bundleProviders = providers.get(bundle);
+			if (bundleProviders != null) {
+				queue.addAll(bundleProviders);
+			}
+			addAll(queue, packageAdmin.getFragments(bundle));
+			addAll(queue, packageAdmin.getHosts(bundle));
+		}
+		return used;
+	}
+
+	private static void addProvider(Map<Bundle, Set<Bundle>> providers, Bundle bundle, Bundle provider) {
+		Set<Bundle> bundleProviders = providers.get(bundle);
+		if (bundleProviders == null) {
+			bundleProviders = new HashSet<Bundle>();
+			providers.put(bundle, bundleProviders);
+		}
+		bundleProviders.add(provider);
+	}
+
+	private static void addAll(LinkedList<Bundle> queue, Bundle[] bundles) {
+		if (bundles != null) {
+			for (Bundle bundle : bundles) {
+				queue.add(bundle);
+			}
+		}
+	}
+}